@@ -2,7 +2,9 @@ package org.apache.streams.converter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.streams.core.StreamsDocument;
 import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.pojo.json.Activity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,7 +25,22 @@ public class TypeConverterUtil {
     public static Object convert(Object object, Class outClass, ObjectMapper mapper) {
         ObjectNode node = null;
         Object outDoc = null;
-        if( object instanceof String ) {
+        if( object instanceof StreamsDocument ) {
+            //hand back a form the document already holds without converting it again
+            StreamsDocument document = (StreamsDocument) object;
+            try {
+                if( outClass == String.class )
+                    return document.getString();
+                else if( outClass == ObjectNode.class )
+                    return document.getObjectNode();
+                else if( outClass == Activity.class )
+                    return document.getActivity();
+                node = document.getObjectNode();
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn(e.getMessage());
+                return null;
+            }
+        } else if( object instanceof String ) {
             try {
                 node = mapper.readValue((String)object, ObjectNode.class);
             } catch (IOException e) {
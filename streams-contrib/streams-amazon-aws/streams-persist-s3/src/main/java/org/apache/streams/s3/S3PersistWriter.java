@@ -39,7 +39,7 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class S3PersistWriter implements StreamsPersistWriter, DatumStatusCountable
+public class S3PersistWriter implements StreamsBulkPersistWriter, DatumStatusCountable
 {
     public final static String STREAMS_ID = "S3PersistWriter";
 
@@ -115,34 +115,57 @@ public class S3PersistWriter implements StreamsPersistWriter, DatumStatusCountab
     public void write(StreamsDatum streamsDatum) {
 
         synchronized (this) {
-            // Check to see if we need to reset the file that we are currently working with
-            if (this.currentWriter == null || ( this.bytesWrittenThisFile.get()  >= (this.s3WriterConfiguration.getMaxFileSize() * 1024 * 1024))) {
-                try {
-                    LOGGER.info("Resetting the file");
-                    this.currentWriter = resetFile();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+            writeDatum(streamsDatum);
+        }
 
-            String line = convertResultToString(streamsDatum);
+    }
+
+    @Override
+    public void write(List<StreamsDatum> streamsDatums) {
+
+        synchronized (this) {
+            for(StreamsDatum streamsDatum : streamsDatums)
+                writeDatum(streamsDatum);
+        }
+
+    }
 
+    /**
+     * Pushes buffered lines down to the current {@link org.apache.streams.s3.S3OutputStreamWrapper}.  The object itself
+     * is only uploaded to S3 when the file is rolled over or the writer is cleaned up.
+     */
+    @Override
+    public synchronized void flush() {
+        this.safeFlush(this.currentWriter);
+    }
+
+    private void writeDatum(StreamsDatum streamsDatum) {
+        // Check to see if we need to reset the file that we are currently working with
+        if (this.currentWriter == null || ( this.bytesWrittenThisFile.get()  >= (this.s3WriterConfiguration.getMaxFileSize() * 1024 * 1024))) {
             try {
-                this.currentWriter.write(line);
-            } catch (IOException e) {
+                LOGGER.info("Resetting the file");
+                this.currentWriter = resetFile();
+            } catch (Exception e) {
                 e.printStackTrace();
             }
+        }
 
-            // add the bytes we've written
-            int recordSize = line.getBytes().length;
-            this.totalBytesWritten.addAndGet(recordSize);
-            this.bytesWrittenThisFile.addAndGet(recordSize);
+        String line = convertResultToString(streamsDatum);
 
-            // increment the record count
-            this.totalRecordsWritten.incrementAndGet();
-            this.fileLineCounter.incrementAndGet();
+        try {
+            this.currentWriter.write(line);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
 
+        // add the bytes we've written
+        int recordSize = line.getBytes().length;
+        this.totalBytesWritten.addAndGet(recordSize);
+        this.bytesWrittenThisFile.addAndGet(recordSize);
+
+        // increment the record count
+        this.totalRecordsWritten.incrementAndGet();
+        this.fileLineCounter.incrementAndGet();
     }
 
     private synchronized OutputStreamWriter resetFile() throws Exception {
@@ -236,7 +259,7 @@ public class S3PersistWriter implements StreamsPersistWriter, DatumStatusCountab
         }
 
         // Save the class name that it came from
-        entry.metadata.put("class", entry.getDocument().getClass().getName());
+        entry.putMetadata("class", entry.getDocument().getClass().getName());
 
         if(Strings.isNullOrEmpty(documentJson))
             return null;
@@ -40,7 +40,7 @@ public class ElasticsearchPersistDeleter extends ElasticsearchPersistWriter impl
     }
 
     @Override
-    public void write(StreamsDatum streamsDatum) {
+    protected void writeDatum(StreamsDatum streamsDatum) {
 
         if(streamsDatum == null || streamsDatum.getDocument() == null)
             return;
@@ -92,7 +92,7 @@ public class ElasticsearchPersistDeleter extends ElasticsearchPersistWriter impl
 
             currentBatchItems.incrementAndGet();
 
-            checkForFlush();
+            checkForFullBatch();
         }
 
     }
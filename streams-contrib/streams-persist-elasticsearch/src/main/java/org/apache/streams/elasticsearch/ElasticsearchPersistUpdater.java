@@ -40,7 +40,7 @@ public class ElasticsearchPersistUpdater extends ElasticsearchPersistWriter impl
     }
 
     @Override
-    public void write(StreamsDatum streamsDatum) {
+    protected void writeDatum(StreamsDatum streamsDatum) {
 
         if(streamsDatum == null || streamsDatum.getDocument() == null)
             return;
@@ -103,7 +103,7 @@ public class ElasticsearchPersistUpdater extends ElasticsearchPersistWriter impl
             currentBatchBytes.addAndGet(request.doc().source().length());
             currentBatchItems.incrementAndGet();
 
-            checkForFlush();
+            checkForFullBatch();
         }
 
     }
@@ -48,7 +48,7 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class ElasticsearchPersistWriter implements StreamsPersistWriter, DatumStatusCountable, Serializable {
+public class ElasticsearchPersistWriter implements StreamsBulkPersistWriter, DatumStatusCountable, Serializable {
 
     public static final String STREAMS_ID = ElasticsearchPersistWriter.class.getCanonicalName();
 
@@ -78,7 +78,7 @@ public class ElasticsearchPersistWriter implements StreamsPersistWriter, DatumSt
 
     private long flushThresholdTime = DEFAULT_MAX_WAIT;
     private long lastFlush = new Date().getTime();
-    private Timer timer = new Timer();
+    private Timer timer;
 
 
     private final AtomicInteger batchesSent = new AtomicInteger(0);
@@ -134,6 +134,14 @@ public class ElasticsearchPersistWriter implements StreamsPersistWriter, DatumSt
 
     @Override
     public void write(StreamsDatum streamsDatum) {
+        startFlushTimer();
+        writeDatum(streamsDatum);
+    }
+
+    /**
+     * Adds the datum to the current bulk request.  Subclasses override this rather than the write methods.
+     */
+    protected void writeDatum(StreamsDatum streamsDatum) {
         if(streamsDatum == null || streamsDatum.getDocument() == null)
             return;
 
@@ -158,11 +166,30 @@ public class ElasticsearchPersistWriter implements StreamsPersistWriter, DatumSt
         }
     }
 
+    @Override
+    public void write(List<StreamsDatum> streamsDatums) {
+        for(StreamsDatum streamsDatum : streamsDatums)
+            writeDatum(streamsDatum);
+    }
+
+    @Override
+    public void flush() {
+        flushInternal();
+    }
+
     private String convertAndAppendMetadata(StreamsDatum streamsDatum) throws IOException {
         Object object = streamsDatum.getDocument();
 
+        if(object instanceof StreamsDocument) {
+            StreamsDocument document = (StreamsDocument) object;
+            if(!streamsDatum.hasMetadata())
+                return document.getString();
+            ObjectNode node = document.getObjectNode().deepCopy();
+            node.put("_metadata", OBJECT_MAPPER.readTree(OBJECT_MAPPER.writeValueAsBytes(streamsDatum.getMetadata())));
+            return OBJECT_MAPPER.writeValueAsString(node);
+        }
         String docAsJson = (object instanceof String) ? object.toString() : OBJECT_MAPPER.writeValueAsString(object);
-        if(streamsDatum.getMetadata() == null || streamsDatum.getMetadata().size() == 0)
+        if(!streamsDatum.hasMetadata())
             return docAsJson;
         else {
             ObjectNode node = (ObjectNode)OBJECT_MAPPER.readTree(docAsJson);
@@ -181,7 +208,10 @@ public class ElasticsearchPersistWriter implements StreamsPersistWriter, DatumSt
             refreshIndexes();
 
             LOGGER.debug("Closed ElasticSearch Writer: Ok[{}] Failed[{}] Orphaned[{}]", this.totalOk.get(), this.totalFailed.get(), this.getTotalOutstanding());
-            timer.cancel();
+            synchronized (this) {
+                if (timer != null)
+                    timer.cancel();
+            }
 
         } catch (Throwable e) {
             // this line of code should be logically unreachable.
@@ -335,7 +365,20 @@ public class ElasticsearchPersistWriter implements StreamsPersistWriter, DatumSt
             this.currentBatchBytes.addAndGet(request.source().length());
             this.currentBatchItems.incrementAndGet();
 
-            checkForFlush();
+            checkForFullBatch();
+        }
+    }
+
+    /**
+     * Sends the current bulk request once it has reached its size thresholds.  How long documents wait is up to
+     * flush() or the flush timer.
+     */
+    protected void checkForFullBatch() {
+        synchronized (this) {
+            if (this.currentBatchBytes.get() >= this.flushThresholdBytes ||
+                    this.currentBatchItems.get() >= this.flushThresholdsRecords) {
+                flushInternal();
+            }
         }
     }
 
@@ -424,13 +467,21 @@ public class ElasticsearchPersistWriter implements StreamsPersistWriter, DatumSt
         this.flushThresholdBytes = config.getBatchBytes() == null ?
                 DEFAULT_BULK_FLUSH_THRESHOLD :
                 config.getBatchBytes();
+    }
 
+    /**
+     * Runtimes that write one datum at a time never call flush(), so buffered documents are written once they are
+     * old enough.  Runtimes that call flush() only use write(List) and never start it.
+     */
+    private synchronized void startFlushTimer() {
+        if (timer != null)
+            return;
+        timer = new Timer();
         timer.scheduleAtFixedRate(new TimerTask() {
             public void run() {
                 checkForFlush();
             }
         }, this.flushThresholdTime, this.flushThresholdTime);
-
     }
 
     private void flush(final BulkRequestBuilder bulkRequest, final Long sent, final Long sizeInBytes) {
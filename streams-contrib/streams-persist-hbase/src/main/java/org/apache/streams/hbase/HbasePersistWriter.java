@@ -20,11 +20,12 @@ package org.apache.streams.hbase;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.streams.core.StreamsDatum;
-import org.apache.streams.core.StreamsPersistWriter;
+import org.apache.streams.core.StreamsBulkPersistWriter;
 import org.apache.streams.util.GuidUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,10 +33,11 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
-public class HbasePersistWriter implements StreamsPersistWriter, Flushable, Closeable
+public class HbasePersistWriter implements StreamsBulkPersistWriter, Flushable, Closeable
 {
     private final static Logger LOGGER = LoggerFactory.getLogger(HbasePersistWriter.class);
 
@@ -115,6 +117,36 @@ public class HbasePersistWriter implements StreamsPersistWriter, Flushable, Clos
     @Override
     public void write(StreamsDatum streamsDatum) {
 
+        Put put = preparePut(streamsDatum);
+        if( put == null )
+            return;
+        try {
+            table.put(put);
+        } catch (IOException e) {
+            e.printStackTrace();
+            LOGGER.warn("Failure executin put: {}", streamsDatum.getDocument().toString());
+            return;
+        }
+
+    }
+
+    @Override
+    public void write(List<StreamsDatum> streamsDatums) throws IOException {
+
+        List<Put> puts = Lists.newArrayListWithCapacity(streamsDatums.size());
+        for( StreamsDatum streamsDatum : streamsDatums ) {
+            Put put = preparePut(streamsDatum);
+            if( put != null )
+                puts.add(put);
+        }
+        if( puts.isEmpty() )
+            return;
+        table.put(puts);
+
+    }
+
+    protected Put preparePut(StreamsDatum streamsDatum) {
+
         ObjectNode node;
         Put put = new Put();
         if( streamsDatum.getDocument() instanceof String ) {
@@ -123,7 +155,7 @@ public class HbasePersistWriter implements StreamsPersistWriter, Flushable, Clos
             } catch (IOException e) {
                 e.printStackTrace();
                 LOGGER.warn("Invalid json: {}", streamsDatum.getDocument().toString());
-                return;
+                return null;
             }
             put.setId(GuidUtils.generateGuid(node.toString()));
             try {
@@ -132,7 +164,7 @@ public class HbasePersistWriter implements StreamsPersistWriter, Flushable, Clos
             } catch (IOException e) {
                 e.printStackTrace();
                 LOGGER.warn("Failure adding object: {}", streamsDatum.getDocument().toString());
-                return;
+                return null;
             }
         } else {
             try {
@@ -140,7 +172,7 @@ public class HbasePersistWriter implements StreamsPersistWriter, Flushable, Clos
             } catch (Exception e) {
                 e.printStackTrace();
                 LOGGER.warn("Invalid json: {}", streamsDatum.getDocument().toString());
-                return;
+                return null;
             }
             put.setId(GuidUtils.generateGuid(node.toString()));
             try {
@@ -149,19 +181,14 @@ public class HbasePersistWriter implements StreamsPersistWriter, Flushable, Clos
             } catch (IOException e) {
                 e.printStackTrace();
                 LOGGER.warn("Failure preparing put: {}", streamsDatum.getDocument().toString());
-                return;
+                return null;
             }
         }
-        try {
-            table.put(put);
-        } catch (IOException e) {
-            e.printStackTrace();
-            LOGGER.warn("Failure executin put: {}", streamsDatum.getDocument().toString());
-            return;
-        }
+        return put;
 
     }
 
+    @Override
     public void flush() throws IOException
     {
         table.flushCommits();
@@ -177,16 +204,6 @@ public class HbasePersistWriter implements StreamsPersistWriter, Flushable, Clos
 
         connectToHbase();
 
-        Thread task = new Thread(new HbasePersistWriterTask(this));
-        task.start();
-
-        try {
-            task.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            return;
-        }
-
     }
 
     @Override
@@ -195,7 +212,7 @@ public class HbasePersistWriter implements StreamsPersistWriter, Flushable, Clos
         try {
             flush();
         } catch (IOException e) {
-            e.printStackTrace();
+            LOGGER.warn("Failure flushing commits", e);
         }
         try {
             close();
@@ -43,7 +43,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Queue;
 
-public class WebHdfsPersistWriter implements StreamsPersistWriter, Flushable, Closeable, DatumStatusCountable {
+public class WebHdfsPersistWriter implements StreamsBulkPersistWriter, Flushable, Closeable, DatumStatusCountable {
     public final static String STREAMS_ID = "WebHdfsPersistWriter";
 
     private final static Logger LOGGER = LoggerFactory.getLogger(WebHdfsPersistWriter.class);
@@ -145,27 +145,40 @@ public class WebHdfsPersistWriter implements StreamsPersistWriter, Flushable, Cl
     public void write(StreamsDatum streamsDatum) {
 
         synchronized (this) {
-            // Check to see if we need to reset the file that we are currently working with
-            if (this.currentWriter == null || (this.fileLineCounter > this.linesPerFile))
-                resetFile();
+            writeDatum(streamsDatum);
+        }
+    }
 
-            String line = convertResultToString(streamsDatum);
-            writeInternal(line);
-            int bytesInLine = line.getBytes().length;
+    @Override
+    public void write(List<StreamsDatum> streamsDatums) {
 
-            totalRecordsWritten++;
-            totalByteCount += bytesInLine;
-            byteCount += bytesInLine;
+        synchronized (this) {
+            for (StreamsDatum streamsDatum : streamsDatums)
+                writeDatum(streamsDatum);
+        }
+    }
 
-            if (byteCount > BYTES_BEFORE_FLUSH)
-                try {
-                    flush();
-                } catch (IOException e) {
-                    LOGGER.warn("Error flushing to HDFS. Creating a new file and continuing execution.  WARNING: There could be data loss.", e);
-                }
+    private void writeDatum(StreamsDatum streamsDatum) {
+        // Check to see if we need to reset the file that we are currently working with
+        if (this.currentWriter == null || (this.fileLineCounter > this.linesPerFile))
+            resetFile();
 
-            this.fileLineCounter++;
-        }
+        String line = convertResultToString(streamsDatum);
+        writeInternal(line);
+        int bytesInLine = line.getBytes().length;
+
+        totalRecordsWritten++;
+        totalByteCount += bytesInLine;
+        byteCount += bytesInLine;
+
+        if (byteCount > BYTES_BEFORE_FLUSH)
+            try {
+                flushIfNecessary();
+            } catch (IOException e) {
+                LOGGER.warn("Error flushing to HDFS. Creating a new file and continuing execution.  WARNING: There could be data loss.", e);
+            }
+
+        this.fileLineCounter++;
     }
 
     private void writeInternal(String line) {
@@ -191,13 +204,21 @@ public class WebHdfsPersistWriter implements StreamsPersistWriter, Flushable, Cl
         }
     }
 
-    public void flush() throws IOException {
+    private void flushIfNecessary() throws IOException {
         if (this.currentWriter != null && byteCount > BYTES_BEFORE_FLUSH) {
             this.currentWriter.flush();
             byteCount = 0;
         }
     }
 
+    @Override
+    public synchronized void flush() throws IOException {
+        if (this.currentWriter != null && byteCount > 0) {
+            this.currentWriter.flush();
+            byteCount = 0;
+        }
+    }
+
     private synchronized void resetFile() {
         // this will keep it thread safe, so we don't create too many files
         if (this.fileLineCounter == 0 && this.currentWriter != null)
@@ -210,7 +231,7 @@ public class WebHdfsPersistWriter implements StreamsPersistWriter, Flushable, Cl
 
             // if there is a current writer, we must close it first.
             if (this.currentWriter != null) {
-                flush();
+                flushIfNecessary();
                 close();
             }
 
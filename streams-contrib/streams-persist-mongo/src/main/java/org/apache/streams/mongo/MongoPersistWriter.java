@@ -31,7 +31,7 @@ import com.mongodb.util.JSON;
 import com.typesafe.config.Config;
 import org.apache.streams.config.StreamsConfigurator;
 import org.apache.streams.core.StreamsDatum;
-import org.apache.streams.core.StreamsPersistWriter;
+import org.apache.streams.core.StreamsBulkPersistWriter;
 import org.apache.streams.jackson.StreamsJacksonMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,15 +47,17 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public class MongoPersistWriter implements StreamsPersistWriter, Runnable {
+public class MongoPersistWriter implements StreamsBulkPersistWriter, Runnable {
     private final static Logger LOGGER = LoggerFactory.getLogger(MongoPersistWriter.class);
     private final static long MAX_WRITE_LATENCY = 1000;
+    private final static int MAX_BATCH_SIZE = 100;
 
     protected volatile Queue<StreamsDatum> persistQueue;
 
     private ObjectMapper mapper = StreamsJacksonMapper.getInstance();
     private volatile AtomicLong lastWrite = new AtomicLong(System.currentTimeMillis());
     private ScheduledExecutorService backgroundFlushTask = Executors.newSingleThreadScheduledExecutor();
+    private boolean backgroundFlushStarted = false;
 
     private MongoConfiguration config;
 
@@ -90,6 +92,7 @@ public class MongoPersistWriter implements StreamsPersistWriter, Runnable {
     @Override
     public void write(StreamsDatum streamsDatum) {
 
+        startBackgroundFlush();
         DBObject dbObject = prepareObject(streamsDatum);
         if (dbObject != null) {
             addToBatch(dbObject);
@@ -97,10 +100,24 @@ public class MongoPersistWriter implements StreamsPersistWriter, Runnable {
         }
     }
 
-    public void flush() throws IOException {
+    @Override
+    public void write(List<StreamsDatum> streamsDatums) {
+
+        for (StreamsDatum streamsDatum : streamsDatums) {
+            DBObject dbObject = prepareObject(streamsDatum);
+            if (dbObject != null) {
+                addToBatch(dbObject);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
         try {
-            LOGGER.debug("Attempting to flush {} items to mongo", insertBatch.size());
             lock.writeLock().lock();
+            if (insertBatch.isEmpty())
+                return;
+            LOGGER.debug("Attempting to flush {} items to mongo", insertBatch.size());
             collection.insert(insertBatch);
             lastWrite.set(System.currentTimeMillis());
             insertBatch = Lists.newArrayList();
@@ -117,6 +134,16 @@ public class MongoPersistWriter implements StreamsPersistWriter, Runnable {
 
     public void start() {
         connectToMongo();
+    }
+
+    /**
+     * Started by the first write(StreamsDatum), so callers that never flush() still get their documents inserted
+     * after MAX_WRITE_LATENCY.
+     */
+    private synchronized void startBackgroundFlush() {
+        if (backgroundFlushStarted)
+            return;
+        backgroundFlushStarted = true;
         backgroundFlushTask.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
@@ -129,7 +156,7 @@ public class MongoPersistWriter implements StreamsPersistWriter, Runnable {
 
         try {
             flush();
-        } catch (IOException e) {
+        } catch (Exception e) {
             LOGGER.error("Error flushing", e);
         }
         try {
@@ -188,12 +215,12 @@ public class MongoPersistWriter implements StreamsPersistWriter, Runnable {
 
     protected void flushIfNecessary() {
         long lastLatency = System.currentTimeMillis() - lastWrite.get();
-        //Flush iff the size > 0 AND the size is divisible by 100 or the time between now and the last flush is greater
-        //than the maximum desired latency
-        if (insertBatch.size() > 0 && (insertBatch.size() % 100 == 0 || lastLatency > MAX_WRITE_LATENCY)) {
+        //Flush iff the size > 0 AND the size has reached the max batch size or the time between now and the last flush
+        //is greater than the maximum desired latency
+        if (insertBatch.size() > 0 && (insertBatch.size() >= MAX_BATCH_SIZE || lastLatency > MAX_WRITE_LATENCY)) {
             try {
                 flush();
-            } catch (IOException e) {
+            } catch (Exception e) {
                 LOGGER.error("Error writing to Mongo", e);
             }
         }
@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
  *
@@ -44,6 +45,7 @@ public class TwitterStreamProcessor extends StringDelimitedProcessor {
 
     private final TwitterStreamProvider provider;
     private final ExecutorService service;
+    private final Semaphore pushing;
 
     public TwitterStreamProcessor(TwitterStreamProvider provider) {
         this(provider, DEFAULT_POOL_SIZE);
@@ -53,6 +55,7 @@ public class TwitterStreamProcessor extends StringDelimitedProcessor {
         //We are only going to use the Hosebird processor to manage the extraction of the tweets from the Stream
         super(null);
         service = Executors.newFixedThreadPool(poolSize);
+        pushing = new Semaphore(TwitterStreamProvider.MAX_BATCH);
         this.provider = provider;
     }
 
@@ -68,6 +71,12 @@ public class TwitterStreamProcessor extends StringDelimitedProcessor {
         } while(msg == null);
 
         //Deserializing to an ObjectNode can take time.  Parallelize the task to improve throughput
+        if(provider.isPushing()) {
+            //Bound the messages waiting to be emitted, so a slow stream slows down reading from the socket
+            pushing.acquire();
+            service.submit(new StreamEmitter(msg));
+            return true;
+        }
         return provider.addDatum(service.submit(new StreamDeserializer(msg)));
     }
 
@@ -75,6 +84,29 @@ public class TwitterStreamProcessor extends StringDelimitedProcessor {
         ComponentUtils.shutdownExecutor(service, 1, 30);
     }
 
+    /**
+     * Deserializes a message and emits the tweets through the provider
+     */
+    protected class StreamEmitter implements Runnable {
+
+        protected String item;
+
+        public StreamEmitter(String item) {
+            this.item = item;
+        }
+
+        @Override
+        public void run() {
+            try {
+                provider.emitDatums(new StreamDeserializer(item).call());
+            } catch (Exception e) {
+                LOGGER.warn("Error deserializing tweet : {}", e.getMessage());
+            } finally {
+                pushing.release();
+            }
+        }
+    }
+
     protected static class StreamDeserializer implements Callable<List<StreamsDatum>> {
 
         protected static final ObjectMapper mapper = StreamsTwitterMapper.getInstance();
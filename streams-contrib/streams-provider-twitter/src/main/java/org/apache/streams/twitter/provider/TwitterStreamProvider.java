@@ -52,9 +52,11 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * TwitterStreamProvider wraps a hosebird client and passes recieved documents
- * to subscribing components.
+ * to subscribing components.  Runtimes that support {@link org.apache.streams.core.StreamsPushProvider}s are handed
+ * each tweet as soon as it has been deserialized, in the order the deserializing threads finish, instead of polling
+ * for batches of them.
  */
-public class TwitterStreamProvider implements StreamsProvider, Serializable, DatumStatusCountable {
+public class TwitterStreamProvider implements StreamsPushProvider, Serializable, DatumStatusCountable {
 
     public final static String STREAMS_ID = "TwitterStreamProvider";
 
@@ -72,6 +74,7 @@ public class TwitterStreamProvider implements StreamsProvider, Serializable, Dat
     }
 
     protected volatile Queue<Future<List<StreamsDatum>>> providerQueue;
+    protected volatile StreamsEmitter emitter;
 
     protected Hosts hosebirdHosts;
     protected Authentication auth;
@@ -103,6 +106,12 @@ public class TwitterStreamProvider implements StreamsProvider, Serializable, Dat
         running.set(true);
     }
 
+    @Override
+    public void startStream(StreamsEmitter emitter) {
+        this.emitter = emitter;
+        startStream();
+    }
+
     @Override
     public synchronized StreamsResultSet readCurrent() {
 
@@ -246,6 +255,33 @@ public class TwitterStreamProvider implements StreamsProvider, Serializable, Dat
         }
     }
 
+    /**
+     * @return true if the stream was started with a {@link org.apache.streams.core.StreamsEmitter}
+     */
+    protected boolean isPushing() {
+        return this.emitter != null;
+    }
+
+    /**
+     * Emits deserialized tweets straight downstream, blocking while the stream is not keeping up
+     * @param datums tweets deserialized from one message
+     * @return true if every tweet was emitted
+     */
+    protected boolean emitDatums(List<StreamsDatum> datums) {
+        try {
+            for(StreamsDatum datum : datums) {
+                this.emitter.emit(datum);
+            }
+            countersTotal.incrementStatus(DatumStatus.SUCCESS);
+            return true;
+        } catch (InterruptedException e) {
+            countersTotal.incrementStatus(DatumStatus.FAIL);
+            LOGGER.warn("Interrupted while emitting tweet.  Initiate shutdown.");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     protected void drainTo(Queue<StreamsDatum> drain) {
         int count = 0;
         while(!providerQueue.isEmpty() && count <= MAX_BATCH) {
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import org.joda.time.DateTime;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link org.apache.streams.core.StreamsDatum} for streams creating many datums.  The metadata map is only allocated
+ * when metadata is written, the timestamp is kept as epoch milliseconds and the sequence id as a long unless it does not
+ * fit in one.  {@link #getTimestamp()} and {@link #getSequenceid()} convert on first call and keep the result, and the
+ * {@link org.joda.time.DateTime} or {@link java.math.BigInteger} a datum was given is kept as is, so the getters return
+ * what was set.
+ *
+ * The public fields of {@link org.apache.streams.core.StreamsDatum} only hold what the getters converted, so compact
+ * datums must be read with the getters.  {@link #getMetadata()} allocates the metadata on first call, so code that
+ * only needs to know whether there is any should use {@link #hasMetadata()} instead.
+ */
+public class CompactStreamsDatum extends StreamsDatum {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte HAS_TIMESTAMP = 1;
+    private static final byte HAS_SEQUENCE_ID = 2;
+
+    private byte flags;
+
+    private long timestampMillis;
+
+    private long sequence;
+
+    public CompactStreamsDatum(Object document) {
+        this(document, null);
+    }
+
+    public CompactStreamsDatum(Object document, String id) {
+        super(document, id, null, null, null);
+    }
+
+    public CompactStreamsDatum(Object document, String id, long timestampMillis, long sequenceid) {
+        this(document, id);
+        setTimestampMillis(timestampMillis);
+        setSequenceid(sequenceid);
+    }
+
+    public CompactStreamsDatum(Object document, String id, DateTime timestamp, BigInteger sequenceid) {
+        this(document, id);
+        setTimestamp(timestamp);
+        setSequenceid(sequenceid);
+    }
+
+    @Override
+    public DateTime getTimestamp() {
+        if(this.timestamp == null && (this.flags & HAS_TIMESTAMP) != 0) {
+            this.timestamp = new DateTime(this.timestampMillis);
+        }
+        return this.timestamp;
+    }
+
+    @Override
+    public void setTimestamp(DateTime timestamp) {
+        this.timestamp = timestamp;
+        if(timestamp == null) {
+            this.flags &= ~HAS_TIMESTAMP;
+        } else {
+            this.timestampMillis = timestamp.getMillis();
+            this.flags |= HAS_TIMESTAMP;
+        }
+    }
+
+    @Override
+    public boolean hasTimestamp() {
+        return (this.flags & HAS_TIMESTAMP) != 0;
+    }
+
+    @Override
+    public long getTimestampMillis() {
+        return hasTimestamp() ? this.timestampMillis : Long.MIN_VALUE;
+    }
+
+    @Override
+    public void setTimestampMillis(long timestampMillis) {
+        this.timestamp = null;
+        this.timestampMillis = timestampMillis;
+        this.flags |= HAS_TIMESTAMP;
+    }
+
+    @Override
+    public BigInteger getSequenceid() {
+        if(this.sequenceid == null && (this.flags & HAS_SEQUENCE_ID) != 0) {
+            this.sequenceid = BigInteger.valueOf(this.sequence);
+        }
+        return this.sequenceid;
+    }
+
+    @Override
+    public void setSequenceid(BigInteger sequenceid) {
+        this.sequenceid = sequenceid;
+        if(sequenceid != null && sequenceid.bitLength() < Long.SIZE) {
+            this.sequence = sequenceid.longValue();
+            this.flags |= HAS_SEQUENCE_ID;
+        } else {
+            //no sequence id, or too large for a long and only the BigInteger is kept
+            this.flags &= ~HAS_SEQUENCE_ID;
+        }
+    }
+
+    @Override
+    public void setSequenceid(long sequenceid) {
+        this.sequenceid = null;
+        this.sequence = sequenceid;
+        this.flags |= HAS_SEQUENCE_ID;
+    }
+
+    @Override
+    public boolean hasSequenceid() {
+        return this.sequenceid != null || (this.flags & HAS_SEQUENCE_ID) != 0;
+    }
+
+    /**
+     * @return the metadata of the datum, allocated on first call if no metadata has been written
+     */
+    @Override
+    public Map<String, Object> getMetadata() {
+        if(this.metadata == null) {
+            this.metadata = new HashMap<String, Object>();
+        }
+        return this.metadata;
+    }
+
+    @Override
+    public CompactStreamsDatum withDocument(Object document) {
+        CompactStreamsDatum datum = new CompactStreamsDatum(document, this.id);
+        datum.flags = this.flags;
+        datum.timestampMillis = this.timestampMillis;
+        datum.timestamp = this.timestamp;
+        datum.sequence = this.sequence;
+        datum.sequenceid = this.sequenceid;
+        return datum;
+    }
+}
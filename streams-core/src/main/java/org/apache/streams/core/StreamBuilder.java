@@ -100,6 +100,18 @@ public interface StreamBuilder {
      */
     public StreamBuilder newReadRangeStream(String streamId, StreamsProvider provider, DateTime start, DateTime end);
 
+    /**
+     * Caps the rate at which a {@link org.apache.streams.core.StreamsProcessor} or
+     * {@link org.apache.streams.core.StreamsPersistWriter} receives data, for example to stay within the quota of a
+     * service it calls.  The operations upstream of it are slowed down to the rate, the capped operation is not.
+     * Optional method, may not be implemented in all cases.
+     * @param componentId id of the processor or writer
+     * @param datumsPerSecond maximum number of datums the operation receives per second
+     * @param burst number of datums the operation may receive at once after it has been idle
+     * @return this
+     */
+    public StreamBuilder setRateLimit(String componentId, double datumsPerSecond, int burst);
+
     /**
      * Builds the stream, and starts it or submits it based on implementation.
      */
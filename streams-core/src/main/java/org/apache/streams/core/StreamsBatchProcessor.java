@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import java.util.List;
+
+/**
+ * A {@link org.apache.streams.core.StreamsProcessor} that can amortize its work across several
+ * {@link org.apache.streams.core.StreamsDatum}s at once, for example by making one network call for a whole batch.
+ *
+ * Runtimes that support micro-batching detect this interface and hand the processor lists of datums.  Runtimes that
+ * do not will keep calling {@link #process(StreamsDatum)}, so implementations must support both methods.
+ */
+public interface StreamsBatchProcessor extends StreamsProcessor {
+
+    /**
+     * Process/Analyze a batch of {@link org.apache.streams.core.StreamsDatum}s and return the StreamsDatums that will
+     * passed to every down stream operation that reads from this processor.
+     * @param entries StreamsDatums to be processed, never null or empty
+     * @return resulting StreamDatums from process. Should never be null or contain null object.  Empty list OK.
+     */
+    public List<StreamsDatum> process( List<StreamsDatum> entries );
+
+}
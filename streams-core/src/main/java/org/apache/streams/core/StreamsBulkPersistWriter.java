@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A {@link org.apache.streams.core.StreamsPersistWriter} that persists batches of
+ * {@link org.apache.streams.core.StreamsDatum}s and leaves the timing of flushes to the runtime.
+ *
+ * Runtimes that support bulk writers only call {@link #write(List)} and call {@link #flush()} when no new
+ * data has arrived within their linger time and before {@link #cleanUp()}.  Implementations may buffer what they are
+ * given through those methods and may send a full buffer early, but must not flush it on a timer of their own.
+ *
+ * Runtimes that do not support bulk writers keep calling {@link #write(StreamsDatum)} and never call {@link #flush()},
+ * so implementations must support that method too.  Only on that path may they start their own timer to write
+ * buffered StreamsDatums once they are old enough.
+ */
+public interface StreamsBulkPersistWriter extends StreamsPersistWriter {
+
+    /**
+     * Persist the StreamsDatums to the corresponding data store.  The writer may buffer them until the next
+     * {@link #flush()}.
+     * @param entries to be stored, never null or empty
+     * @throws IOException if the entries could not be persisted
+     */
+    public void write( List<StreamsDatum> entries ) throws IOException;
+
+    /**
+     * Send any buffered StreamsDatums to the corresponding data store.  Runtimes treat everything written since the
+     * last flush as persisted once this returns, so failures must be thrown rather than swallowed.
+     * @throws IOException if buffered StreamsDatums could not be persisted
+     */
+    public void flush() throws IOException;
+
+}
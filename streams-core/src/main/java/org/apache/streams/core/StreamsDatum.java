@@ -28,9 +28,17 @@ import java.util.Map;
 
 /**
  * Created by sblackmon on 1/2/14.
+ *
+ * Streams creating many datums can use a {@link org.apache.streams.core.CompactStreamsDatum}, which does not allocate
+ * the metadata, timestamp and sequence id until they are used.  Code that should handle both reads them with the
+ * getters, {@link #hasMetadata()} and {@link #getTimestampMillis()}, and adds metadata with
+ * {@link #putMetadata(String, Object)}.
  */
 public class StreamsDatum implements Serializable {
 
+    //the default serialVersionUID of the class before it declared one, so previously serialized datums still read
+    private static final long serialVersionUID = -678774133692864732L;
+
     public StreamsDatum(Object document) {
         this(document, null, null, null);
     }
@@ -60,11 +68,19 @@ public class StreamsDatum implements Serializable {
     }
 
     public StreamsDatum(Object document, String id, DateTime timestamp, BigInteger sequenceid) {
+        this(document, id, timestamp, sequenceid, new HashMap<String, Object>());
+    }
+
+    /**
+     * For subclasses that keep the metadata, timestamp or sequence id some other way
+     * @param metadata metadata of the datum, may be null
+     */
+    protected StreamsDatum(Object document, String id, DateTime timestamp, BigInteger sequenceid, Map<String, Object> metadata) {
         this.document = document;
         this.id = id;
         this.timestamp = timestamp;
         this.sequenceid = sequenceid;
-        this.metadata = new HashMap<String, Object>();
+        this.metadata = metadata;
     }
 
     public DateTime timestamp;
@@ -75,7 +91,8 @@ public class StreamsDatum implements Serializable {
 
     public Object document;
 
-    private String id;
+    //package private for the datums extending it
+    String id;
 
     public DateTime getTimestamp() {
         return timestamp;
@@ -85,6 +102,21 @@ public class StreamsDatum implements Serializable {
         this.timestamp = timestamp;
     }
 
+    public boolean hasTimestamp() {
+        return this.timestamp != null;
+    }
+
+    /**
+     * @return the timestamp in epoch milliseconds, or Long.MIN_VALUE if the datum has no timestamp
+     */
+    public long getTimestampMillis() {
+        return this.timestamp == null ? Long.MIN_VALUE : this.timestamp.getMillis();
+    }
+
+    public void setTimestampMillis(long timestampMillis) {
+        this.timestamp = new DateTime(timestampMillis);
+    }
+
     public BigInteger getSequenceid() {
         return sequenceid;
     }
@@ -93,6 +125,14 @@ public class StreamsDatum implements Serializable {
         this.sequenceid = sequenceid;
     }
 
+    public void setSequenceid(long sequenceid) {
+        this.sequenceid = BigInteger.valueOf(sequenceid);
+    }
+
+    public boolean hasSequenceid() {
+        return this.sequenceid != null;
+    }
+
     public Map<String, Object> getMetadata() {
         return metadata;
     }
@@ -101,6 +141,24 @@ public class StreamsDatum implements Serializable {
         this.metadata = metadata;
     }
 
+    /**
+     * @return true if the datum has any metadata
+     */
+    public boolean hasMetadata() {
+        return this.metadata != null && !this.metadata.isEmpty();
+    }
+
+    /**
+     * Adds metadata to the datum, allocating the metadata if the datum has none
+     * @return the previous value of the key
+     */
+    public Object putMetadata(String key, Object value) {
+        if(this.metadata == null) {
+            this.metadata = new HashMap<String, Object>();
+        }
+        return this.metadata.put(key, value);
+    }
+
     public Object getDocument() {
         return document;
     }
@@ -121,13 +179,25 @@ public class StreamsDatum implements Serializable {
         this.id = id;
     }
 
+    /**
+     * A datum of the same kind as this one, carrying another document with the id, timestamp and sequence id of this
+     * datum.  The metadata is not copied.
+     * @param document document of the new datum
+     * @return new datum
+     */
+    public StreamsDatum withDocument(Object document) {
+        return new StreamsDatum(document, this.id, this.timestamp, this.sequenceid);
+    }
+
     @Override
     public boolean equals(Object o) {
         if(o instanceof StreamsDatum) {
             StreamsDatum that = (StreamsDatum) o;
             if(this.document != null && this.document.equals(that.document)) {
-                return (this.timestamp != null ? this.timestamp.equals(that.timestamp) : that.timestamp == null) &&
-                        (this.sequenceid != null ? this.sequenceid.equals(that.sequenceid) : that.sequenceid == null);
+                DateTime timestamp = this.getTimestamp();
+                BigInteger sequenceid = this.getSequenceid();
+                return (timestamp != null ? timestamp.equals(that.getTimestamp()) : that.getTimestamp() == null) &&
+                        (sequenceid != null ? sequenceid.equals(that.getSequenceid()) : that.getSequenceid() == null);
             }
             else {
                 return that.document == null && this.document == null;
@@ -140,7 +210,7 @@ public class StreamsDatum implements Serializable {
 
     @Override
     public String toString() {
-        return this.id+"\tDocument="+this.document+"\ttimestamp="+this.timestamp+"\tsequence="+this.sequenceid;
+        return this.id+"\tDocument="+this.document+"\ttimestamp="+this.getTimestamp()+"\tsequence="+this.getSequenceid();
     }
 
 }
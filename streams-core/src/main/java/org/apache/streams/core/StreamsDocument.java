@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+import org.apache.streams.data.util.JsonProjection;
+import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.pojo.json.Activity;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * A json document that keeps every form it has been read in, so that processors passing a document along do not parse
+ * and serialize it again for every step.  A document holds any of a json String, its UTF-8 bytes, an
+ * {@link com.fasterxml.jackson.databind.node.ObjectNode} and an {@link org.apache.streams.pojo.json.Activity}, and
+ * converts to the form asked for from the cheapest form it has, keeping the result.  Bytes and Strings are converted
+ * into each other without parsing, trees are parsed from bytes, and Activities are converted from a tree if there is one.
+ *
+ * The forms returned by the getters are shared and must not be modified.  A processor that modifies the document asks
+ * for it with {@link #editObjectNode()} or {@link #editActivity()}, which drop every other form, or replaces it with one
+ * of the setters.
+ *
+ * A document can be read from several threads at once, as the branches of a fan-out do.  The forms are converted
+ * without locking and published through volatile fields, so two threads may both convert a form but each sees a
+ * complete one.  Editing is not thread safe, a document read by other threads is copied with {@link #copy()} first.
+ */
+public class StreamsDocument implements Serializable {
+
+    private transient volatile String string;
+    private volatile byte[] bytes;
+    private transient volatile ObjectNode objectNode;
+    private transient volatile Activity activity;
+
+    public StreamsDocument(String json) {
+        setString(json);
+    }
+
+    public StreamsDocument(byte[] utf8) {
+        setBytes(utf8);
+    }
+
+    public StreamsDocument(ObjectNode objectNode) {
+        setObjectNode(objectNode);
+    }
+
+    public StreamsDocument(Activity activity) {
+        setActivity(activity);
+    }
+
+    /**
+     * Wraps a document in a StreamsDocument.  Documents that are not a json String, bytes, an ObjectNode or an Activity
+     * are converted to an ObjectNode.
+     * @param document document to wrap
+     * @return the document if it is a StreamsDocument, or a new StreamsDocument holding it
+     * @throws java.lang.IllegalArgumentException if the document can not be converted to json
+     */
+    public static StreamsDocument of(Object document) {
+        if(document instanceof StreamsDocument) {
+            return (StreamsDocument) document;
+        } else if(document instanceof String) {
+            return new StreamsDocument((String) document);
+        } else if(document instanceof byte[]) {
+            return new StreamsDocument((byte[]) document);
+        } else if(document instanceof ObjectNode) {
+            return new StreamsDocument((ObjectNode) document);
+        } else if(document instanceof Activity) {
+            return new StreamsDocument((Activity) document);
+        }
+        JsonNode tree = mapper().valueToTree(document);
+        if(!(tree instanceof ObjectNode)) {
+            throw new IllegalArgumentException("Document is not a json object : "+document);
+        }
+        return new StreamsDocument((ObjectNode) tree);
+    }
+
+    /**
+     * @return the document as a json String
+     * @throws java.lang.IllegalArgumentException if the document can not be serialized
+     */
+    public String getString() {
+        String string = this.string;
+        if(string == null) {
+            byte[] bytes = this.bytes;
+            if(bytes != null) {
+                string = new String(bytes, Charsets.UTF_8);
+            } else {
+                try {
+                    string = mapper().writeValueAsString(tree());
+                } catch (IOException ioe) {
+                    throw new IllegalArgumentException("Unable to serialize document", ioe);
+                }
+            }
+            this.string = string;
+        }
+        return string;
+    }
+
+    /**
+     * @return the document as json encoded in UTF-8
+     * @throws java.lang.IllegalArgumentException if the document can not be serialized
+     */
+    public byte[] getBytes() {
+        byte[] bytes = this.bytes;
+        if(bytes == null) {
+            String string = this.string;
+            if(string != null) {
+                bytes = string.getBytes(Charsets.UTF_8);
+            } else {
+                try {
+                    bytes = mapper().writeValueAsBytes(tree());
+                } catch (IOException ioe) {
+                    throw new IllegalArgumentException("Unable to serialize document", ioe);
+                }
+            }
+            this.bytes = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the document as a tree
+     * @throws java.lang.IllegalArgumentException if the document is not a json object
+     */
+    public ObjectNode getObjectNode() {
+        ObjectNode objectNode = this.objectNode;
+        if(objectNode == null) {
+            JsonNode tree;
+            Activity activity = this.activity;
+            if(activity != null) {
+                tree = mapper().valueToTree(activity);
+            } else {
+                byte[] bytes = this.bytes;
+                try {
+                    tree = bytes != null ? mapper().readTree(bytes) : mapper().readTree(this.string);
+                } catch (IOException ioe) {
+                    throw new IllegalArgumentException("Unable to parse document", ioe);
+                }
+            }
+            if(!(tree instanceof ObjectNode)) {
+                throw new IllegalArgumentException("Document is not a json object");
+            }
+            objectNode = (ObjectNode) tree;
+            this.objectNode = objectNode;
+        }
+        return objectNode;
+    }
+
+    /**
+     * @return the document as an Activity
+     * @throws java.lang.IllegalArgumentException if the document can not be converted to an Activity
+     */
+    public Activity getActivity() {
+        Activity activity = this.activity;
+        if(activity == null) {
+            ObjectNode objectNode = this.objectNode;
+            byte[] bytes = this.bytes;
+            try {
+                if(objectNode != null) {
+                    activity = mapper().treeToValue(objectNode, Activity.class);
+                } else if(bytes != null) {
+                    activity = mapper().readValue(bytes, Activity.class);
+                } else {
+                    activity = mapper().readValue(this.string, Activity.class);
+                }
+            } catch (IOException ioe) {
+                throw new IllegalArgumentException("Unable to convert document to an Activity", ioe);
+            }
+            this.activity = activity;
+        }
+        return activity;
+    }
+
+    /**
+     * The fields of the document named by a projection.  The projection is taken from the tree if the document holds
+     * one, and otherwise read from the serialized document without parsing the rest of it.  Only a document holding
+     * nothing but an Activity is converted to a tree.
+     * @param projection fields to extract
+     * @return the projected fields, sharing their values with the tree of the document if it holds one
+     * @throws java.lang.IllegalArgumentException if the document is not a json object
+     */
+    public ObjectNode project(JsonProjection projection) {
+        ObjectNode objectNode = this.objectNode;
+        if(objectNode != null) {
+            return projection.project(objectNode);
+        }
+        byte[] bytes = this.bytes;
+        if(bytes != null) {
+            return projection.project(bytes);
+        }
+        String string = this.string;
+        if(string != null) {
+            return projection.project(string);
+        }
+        return projection.project(getObjectNode());
+    }
+
+    /**
+     * The document as a tree to modify.  Every other form is dropped and converted again from the tree when asked for.
+     * @return the document as a tree
+     */
+    public ObjectNode editObjectNode() {
+        return setObjectNode(getObjectNode());
+    }
+
+    /**
+     * The document as an Activity to modify.  Every other form is dropped and converted again from the Activity when
+     * asked for.
+     * @return the document as an Activity
+     */
+    public Activity editActivity() {
+        return setActivity(getActivity());
+    }
+
+    public String setString(String json) {
+        if(json == null) {
+            throw new IllegalArgumentException("StreamsDocument requires a document");
+        }
+        clear();
+        this.string = json;
+        return json;
+    }
+
+    public byte[] setBytes(byte[] utf8) {
+        if(utf8 == null) {
+            throw new IllegalArgumentException("StreamsDocument requires a document");
+        }
+        clear();
+        this.bytes = utf8;
+        return utf8;
+    }
+
+    public ObjectNode setObjectNode(ObjectNode objectNode) {
+        if(objectNode == null) {
+            throw new IllegalArgumentException("StreamsDocument requires a document");
+        }
+        clear();
+        this.objectNode = objectNode;
+        return objectNode;
+    }
+
+    public Activity setActivity(Activity activity) {
+        if(activity == null) {
+            throw new IllegalArgumentException("StreamsDocument requires a document");
+        }
+        clear();
+        this.activity = activity;
+        return activity;
+    }
+
+    public boolean hasString() {
+        return this.string != null;
+    }
+
+    public boolean hasBytes() {
+        return this.bytes != null;
+    }
+
+    public boolean hasObjectNode() {
+        return this.objectNode != null;
+    }
+
+    public boolean hasActivity() {
+        return this.activity != null;
+    }
+
+    /**
+     * A copy that can be modified without changing this document.  The String and bytes are shared, since they are
+     * never modified.
+     * @return copy of the document
+     */
+    public StreamsDocument copy() {
+        String string = this.string;
+        byte[] bytes = this.bytes;
+        if(string != null || bytes != null) {
+            StreamsDocument copy = bytes != null ? new StreamsDocument(bytes) : new StreamsDocument(string);
+            copy.string = string;
+            return copy;
+        }
+        return new StreamsDocument(getBytes());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        } else if(!(o instanceof StreamsDocument)) {
+            return false;
+        }
+        StreamsDocument that = (StreamsDocument) o;
+        String string = this.string;
+        if(string != null && string.equals(that.string)) {
+            return true;
+        }
+        return getObjectNode().equals(that.getObjectNode());
+    }
+
+    @Override
+    public int hashCode() {
+        return getObjectNode().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getString();
+    }
+
+    private void clear() {
+        this.string = null;
+        this.bytes = null;
+        this.objectNode = null;
+        this.activity = null;
+    }
+
+    /**
+     * @return the tree or Activity held by a document holding neither a String nor bytes
+     */
+    private Object tree() {
+        ObjectNode objectNode = this.objectNode;
+        return objectNode != null ? objectNode : this.activity;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        //only the bytes are serialized
+        getBytes();
+        out.defaultWriteObject();
+    }
+
+    private static ObjectMapper mapper() {
+        return StreamsJacksonMapper.getInstance();
+    }
+}
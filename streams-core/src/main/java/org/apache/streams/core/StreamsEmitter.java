@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+/**
+ * Hands {@link org.apache.streams.core.StreamsDatum}s from a {@link org.apache.streams.core.StreamsPushProvider}
+ * to the operations downstream of it.  Emitters are supplied by the runtime and are safe to call from any thread.
+ */
+public interface StreamsEmitter {
+
+    /**
+     * Passes a datum to every down stream operation that reads from the provider.  Blocks while the down stream
+     * operations are not keeping up, so a provider that emits faster than the stream can process is slowed down
+     * instead of buffering.
+     * @param datum datum to emit, never null
+     * @throws InterruptedException if the calling thread is interrupted while blocked
+     */
+    public void emit( StreamsDatum datum ) throws InterruptedException;
+
+    /**
+     * Flag to indicate whether the runtime has stopped the stream.  Datums emitted once the stream has stopped are
+     * dropped, so providers should stop producing them.
+     * @return true if the stream has stopped.  False otherwise.
+     */
+    public boolean isStopped();
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+/**
+ * Extracts the key of a {@link org.apache.streams.core.StreamsDatum}, for example its id, the id of its actor or a
+ * metadata field.  Runtimes that partition a parallel operation by key route every datum with an equal key to the
+ * same task, so that the operation can keep per key state without synchronization.
+ *
+ * See {@link org.apache.streams.core.util.KeyExtractors} for common implementations.
+ */
+public interface StreamsKeyExtractor {
+
+    /**
+     * The key of a datum.  Keys are compared with {@link Object#equals(Object)} and routed by
+     * {@link Object#hashCode()}.
+     * @param datum datum to extract the key from
+     * @return the key of the datum, or null if the datum has no key and can be handled by any task
+     */
+    public Object getKey(StreamsDatum datum);
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.List;
+
+/**
+ * A {@link org.apache.streams.core.StreamsProcessor} that reads only a few fields of the documents it processes, like
+ * a filter on the language of an activity.  The processor names the fields it reads as dotted paths, and runtimes that
+ * know this interface extract just those fields with a {@link org.apache.streams.data.util.JsonProjection} and call
+ * {@link #process(StreamsDatum, com.fasterxml.jackson.databind.node.ObjectNode)}, so serialized documents are not parsed
+ * in full.  Runtimes that do not know this interface call {@link #process(StreamsDatum)}, so implementations should
+ * project the document themselves there.
+ */
+public interface StreamsProjectingProcessor extends StreamsProcessor {
+
+    /**
+     * The fields the processor reads.  Called once, after {@link #prepare(Object)}.
+     * @return dotted paths of the fields, like <code>verb</code> or <code>actor.id</code>
+     */
+    public List<String> getProjectedFields();
+
+    /**
+     * Process/Analyze the {@link org.apache.streams.core.StreamsDatum} given the projected fields of its document.  The
+     * document of the datum is left as it was received, so emitting the datum passes the whole document on.
+     * @param entry StreamsDatum to be processed
+     * @param projection the projected fields of the document, which must not be modified
+     * @return StreamsDatum[]. Should never be null or contain null object.  Empty list OK.
+     */
+    public List<StreamsDatum> process(StreamsDatum entry, ObjectNode projection);
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+/**
+ * A {@link org.apache.streams.core.StreamsProvider} that pushes {@link org.apache.streams.core.StreamsDatum}s
+ * downstream as they arrive instead of buffering them until the next {@link #readCurrent()}.
+ *
+ * Runtimes that support push providers detect this interface and call {@link #startStream(StreamsEmitter)} in place
+ * of {@link #startStream()} and {@link #readCurrent()}.  The provider emits from whichever threads produce the data
+ * until {@link #isRunning()} returns false.  Runtimes that do not will keep calling {@link #startStream()} and
+ * {@link #readCurrent()}, so implementations must support both.
+ */
+public interface StreamsPushProvider extends StreamsProvider {
+
+    /**
+     * Start the operation of the stream, emitting every datum read to the given emitter.  May return as soon as the
+     * stream has been started; the runtime keeps the stream running until {@link #isRunning()} returns false.
+     * @param emitter emitter backed by the stream's outbound queues, never null
+     */
+    void startStream(StreamsEmitter emitter);
+
+}
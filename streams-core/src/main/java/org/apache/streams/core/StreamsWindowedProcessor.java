@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import java.util.List;
+
+/**
+ * A {@link org.apache.streams.core.StreamsProcessor} that holds datums back in open windows, for example to aggregate
+ * them, and emits the windows as they close.
+ *
+ * Runtimes call {@link #flush()} once the processor has received its last datum, so the windows that are still open
+ * reach the downstream operations.  Runtimes that do not know this interface never flush, so the open windows are lost
+ * when the stream ends.
+ */
+public interface StreamsWindowedProcessor extends StreamsProcessor {
+
+    /**
+     * Closes every open window.  Called once, after the last call to {@link #process(StreamsDatum)}.
+     * @return StreamsDatums of the windows that were still open. Should never be null or contain null object.  Empty list OK.
+     */
+    public List<StreamsDatum> flush();
+
+}
@@ -22,7 +22,6 @@ package org.apache.streams.core.util;
 import com.google.common.collect.Maps;
 import org.apache.streams.core.StreamsDatum;
 import org.apache.streams.core.StreamsOperation;
-import org.joda.time.DateTime;
 
 import java.math.BigInteger;
 import java.util.HashMap;
@@ -44,18 +43,18 @@ public class DatumUtils {
     @SuppressWarnings("all")
     public static void addErrorToMetadata(StreamsDatum datum, Throwable e, Class<? extends StreamsOperation> operationClass) {
         if(!datum.getMetadata().containsKey("errors")) {
-            datum.getMetadata().put("errors", Maps.<String, Throwable>newHashMap());
+            datum.putMetadata("errors", Maps.<String, Throwable>newHashMap());
         }
         Map<String, Throwable> errors = (Map)datum.getMetadata().get("errors");
         errors.put(operationClass.getCanonicalName(), e);
     }
 
     public static StreamsDatum cloneDatum(StreamsDatum datum) {
-        StreamsDatum clone = new StreamsDatum(datum.getDocument());
-        clone.setId(datum.getId() == null ? null : new String(datum.getId()));
-        clone.setTimestamp(datum.getTimestamp() == null ? null : new DateTime(datum.getTimestamp()));
-        clone.setSequenceid(datum.getSequenceid() == null ? null : datum.getSequenceid());
-        clone.setMetadata(datum.getMetadata() == null ? null : new HashMap<>(datum.getMetadata()));
+        //the timestamp and sequence id are immutable and shared with the clone
+        StreamsDatum clone = datum.withDocument(datum.getDocument());
+        if(datum.hasMetadata()) {
+            clone.setMetadata(new HashMap<>(datum.getMetadata()));
+        }
         return clone;
     }
 }
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.streams.core.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsKeyExtractor;
+import org.apache.streams.pojo.json.Activity;
+
+/**
+ * Provides common {@link org.apache.streams.core.StreamsKeyExtractor}s
+ */
+public class KeyExtractors {
+
+    private KeyExtractors() {}
+
+    /**
+     * Keys datums by {@link org.apache.streams.core.StreamsDatum#getId()}
+     * @return key extractor returning the id of the datum
+     */
+    public static StreamsKeyExtractor datumId() {
+        return new StreamsKeyExtractor() {
+            @Override
+            public Object getKey(StreamsDatum datum) {
+                return datum.getId();
+            }
+        };
+    }
+
+    /**
+     * Keys datums by a field of their metadata
+     * @param field metadata field holding the key
+     * @return key extractor returning the value of the metadata field, or null if it is not set
+     */
+    public static StreamsKeyExtractor metadataField(final String field) {
+        return new StreamsKeyExtractor() {
+            @Override
+            public Object getKey(StreamsDatum datum) {
+                return datum.hasMetadata() ? datum.getMetadata().get(field) : null;
+            }
+        };
+    }
+
+    /**
+     * Keys datums by the id of the actor of their document.  Supports documents that are an
+     * {@link org.apache.streams.pojo.json.Activity} or a {@link com.fasterxml.jackson.databind.JsonNode}.  Other
+     * documents, including serialized json, have no key.
+     * @return key extractor returning the actor id of the document, or null if it has none
+     */
+    public static StreamsKeyExtractor actorId() {
+        return new StreamsKeyExtractor() {
+            @Override
+            public Object getKey(StreamsDatum datum) {
+                Object document = datum.getDocument();
+                if(document instanceof Activity) {
+                    Activity activity = (Activity) document;
+                    return activity.getActor() == null ? null : activity.getActor().getId();
+                } else if(document instanceof JsonNode) {
+                    JsonNode id = ((JsonNode) document).path("actor").path("id");
+                    return id.isTextual() ? id.asText() : null;
+                }
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import org.apache.streams.util.SerializationUtil;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link org.apache.streams.core.CompactStreamsDatum}
+ */
+public class CompactStreamsDatumTest {
+
+    @Test
+    public void convertsLazily() {
+        CompactStreamsDatum datum = new CompactStreamsDatum("document", "id", 1400000000000L, 42);
+
+        assertNull(datum.timestamp);
+        assertNull(datum.sequenceid);
+        assertTrue(datum.hasTimestamp());
+        assertTrue(datum.hasSequenceid());
+        assertEquals(1400000000000L, datum.getTimestampMillis());
+
+        DateTime timestamp = datum.getTimestamp();
+        assertEquals(1400000000000L, timestamp.getMillis());
+        assertSame(timestamp, datum.getTimestamp());
+        BigInteger sequenceid = datum.getSequenceid();
+        assertEquals(BigInteger.valueOf(42), sequenceid);
+        assertSame(sequenceid, datum.getSequenceid());
+
+        datum.setTimestampMillis(1500000000000L);
+        assertEquals(1500000000000L, datum.getTimestamp().getMillis());
+        datum.setSequenceid(43);
+        assertEquals(BigInteger.valueOf(43), datum.getSequenceid());
+    }
+
+    @Test
+    public void keepsWhatWasSet() {
+        DateTime timestamp = new DateTime(1400000000000L, DateTimeZone.forOffsetHours(2));
+        BigInteger sequenceid = BigInteger.valueOf(42);
+        CompactStreamsDatum datum = new CompactStreamsDatum("document", "id", timestamp, sequenceid);
+
+        assertSame(timestamp, datum.getTimestamp());
+        assertSame(sequenceid, datum.getSequenceid());
+        assertEquals(1400000000000L, datum.getTimestampMillis());
+
+        datum.setTimestamp(null);
+        datum.setSequenceid((BigInteger) null);
+        assertFalse(datum.hasTimestamp());
+        assertFalse(datum.hasSequenceid());
+        assertEquals(Long.MIN_VALUE, datum.getTimestampMillis());
+        assertNull(datum.getTimestamp());
+        assertNull(datum.getSequenceid());
+    }
+
+    @Test
+    public void keepsSequenceIdsTooLargeForLong() {
+        BigInteger large = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE);
+        CompactStreamsDatum datum = new CompactStreamsDatum("document");
+        datum.setSequenceid(large);
+        assertTrue(datum.hasSequenceid());
+        assertSame(large, datum.getSequenceid());
+
+        datum.setSequenceid(BigInteger.valueOf(Long.MAX_VALUE));
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE), datum.getSequenceid());
+        datum.setSequenceid(large.negate().subtract(BigInteger.ONE));
+        assertEquals(large.negate().subtract(BigInteger.ONE), datum.getSequenceid());
+    }
+
+    @Test
+    public void allocatesMetadataOnWrite() {
+        CompactStreamsDatum datum = new CompactStreamsDatum("document");
+        assertFalse(datum.hasMetadata());
+        assertNull(datum.metadata);
+
+        assertNull(datum.putMetadata("key", "value"));
+        assertTrue(datum.hasMetadata());
+        assertEquals("value", datum.getMetadata().get("key"));
+        datum.getMetadata().put("other", "value");
+        assertEquals(2, datum.getMetadata().size());
+    }
+
+    @Test
+    public void allocatesMetadataOnGet() {
+        CompactStreamsDatum datum = new CompactStreamsDatum("document");
+        Map<String, Object> metadata = datum.getMetadata();
+        assertTrue(metadata.isEmpty());
+        assertFalse(datum.hasMetadata());
+        //callers may add to the map they were given
+        metadata.put("key", "value");
+        assertTrue(datum.hasMetadata());
+        assertSame(metadata, datum.getMetadata());
+        assertEquals("value", datum.getMetadata().get("key"));
+    }
+
+    @Test
+    public void equalsPlainDatum() {
+        DateTime timestamp = new DateTime(1400000000000L);
+        StreamsDatum plain = new StreamsDatum("document", "id", timestamp, BigInteger.valueOf(42));
+        CompactStreamsDatum compact = new CompactStreamsDatum("document", "id", 1400000000000L, 42);
+        assertEquals(plain, compact);
+        assertEquals(compact, plain);
+        assertEquals(compact, new CompactStreamsDatum("document", "other", 1400000000000L, 42));
+
+        assertNotEquals(compact, new CompactStreamsDatum("document", "id", 1400000000001L, 42));
+        assertNotEquals(compact, new CompactStreamsDatum("document", "id", 1400000000000L, 43));
+        assertNotEquals(compact, new CompactStreamsDatum("other", "id", 1400000000000L, 42));
+        assertNotEquals(compact, new CompactStreamsDatum("document", "id"));
+        assertNotEquals(new CompactStreamsDatum("document", "id"), compact);
+    }
+
+    @Test
+    public void withDocumentKeepsKindAndFields() {
+        CompactStreamsDatum datum = new CompactStreamsDatum("document", "id", 1400000000000L, 42);
+        datum.putMetadata("key", "value");
+        StreamsDatum copy = datum.withDocument("copy");
+        assertTrue(copy instanceof CompactStreamsDatum);
+        assertEquals("copy", copy.getDocument());
+        assertEquals("id", copy.getId());
+        assertEquals(1400000000000L, copy.getTimestampMillis());
+        assertEquals(BigInteger.valueOf(42), copy.getSequenceid());
+        assertFalse(copy.hasMetadata());
+
+        StreamsDatum plain = new StreamsDatum("document", "id").withDocument("copy");
+        assertEquals(StreamsDatum.class, plain.getClass());
+        assertNotNull(plain.getMetadata());
+    }
+
+    @Test
+    public void serializes() {
+        CompactStreamsDatum datum = new CompactStreamsDatum("document", "id", 1400000000000L, 42);
+        datum.putMetadata("key", "value");
+        CompactStreamsDatum copy = (CompactStreamsDatum) SerializationUtil.cloneBySerialization(datum);
+        assertEquals(datum, copy);
+        assertEquals("id", copy.getId());
+        assertEquals(1400000000000L, copy.getTimestampMillis());
+        assertEquals("value", copy.getMetadata().get("key"));
+    }
+}
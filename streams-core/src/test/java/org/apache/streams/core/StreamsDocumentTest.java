@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.core;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.pojo.json.Activity;
+import org.apache.streams.util.SerializationUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link org.apache.streams.core.StreamsDocument}
+ */
+public class StreamsDocumentTest {
+
+    private static final String JSON = "{\"id\":\"id\",\"verb\":\"post\"}";
+
+    @Test
+    public void convertsStringAndBytesWithoutParsing() {
+        StreamsDocument document = new StreamsDocument(JSON);
+        byte[] bytes = document.getBytes();
+        assertArrayEquals(JSON.getBytes(Charsets.UTF_8), bytes);
+        assertSame(bytes, document.getBytes());
+        assertFalse(document.hasObjectNode());
+        assertFalse(document.hasActivity());
+
+        document = new StreamsDocument(JSON.getBytes(Charsets.UTF_8));
+        String string = document.getString();
+        assertEquals(JSON, string);
+        assertSame(string, document.getString());
+        assertFalse(document.hasObjectNode());
+    }
+
+    @Test
+    public void convertsToTreeAndActivity() {
+        StreamsDocument document = new StreamsDocument(JSON);
+        ObjectNode objectNode = document.getObjectNode();
+        assertEquals("post", objectNode.get("verb").asText());
+        assertSame(objectNode, document.getObjectNode());
+        Activity activity = document.getActivity();
+        assertEquals("id", activity.getId());
+        assertSame(activity, document.getActivity());
+        assertTrue(document.hasString());
+
+        document = new StreamsDocument(activity);
+        assertEquals("post", document.getObjectNode().get("verb").asText());
+        assertEquals(JSON, document.getString());
+        assertTrue(document.hasActivity());
+    }
+
+    @Test
+    public void wrapsDocuments() {
+        StreamsDocument document = new StreamsDocument(JSON);
+        assertSame(document, StreamsDocument.of(document));
+        assertEquals(document, StreamsDocument.of(JSON));
+        assertEquals(document, StreamsDocument.of(JSON.getBytes(Charsets.UTF_8)));
+        assertEquals(document, StreamsDocument.of(document.getActivity()));
+        try {
+            StreamsDocument.of(1);
+            fail("Expected a document that is not a json object to be rejected");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+        try {
+            new StreamsDocument("[1]").getObjectNode();
+            fail("Expected a document that is not a json object to be rejected");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+    }
+
+    @Test
+    public void editDropsOtherForms() {
+        StreamsDocument document = new StreamsDocument(JSON);
+        document.getActivity();
+        document.getBytes();
+        document.editObjectNode().put("verb", "share");
+        assertTrue(document.hasObjectNode());
+        assertFalse(document.hasString());
+        assertFalse(document.hasBytes());
+        assertFalse(document.hasActivity());
+        assertEquals("share", document.getActivity().getVerb());
+        assertTrue(document.getString().contains("share"));
+
+        document.editActivity().setVerb("like");
+        assertTrue(document.hasActivity());
+        assertFalse(document.hasObjectNode());
+        assertFalse(document.hasString());
+        assertEquals("like", document.getObjectNode().get("verb").asText());
+        assertTrue(new String(document.getBytes(), Charsets.UTF_8).contains("like"));
+    }
+
+    @Test
+    public void copiesAreIsolated() {
+        StreamsDocument document = new StreamsDocument(JSON);
+        ObjectNode objectNode = document.getObjectNode();
+        StreamsDocument copy = document.copy();
+        assertEquals(document, copy);
+        assertSame(document.getString(), copy.getString());
+
+        copy.editObjectNode().put("verb", "share");
+        assertNotSame(objectNode, copy.getObjectNode());
+        assertEquals("post", document.getObjectNode().get("verb").asText());
+        assertEquals(JSON, document.getString());
+        assertNotEquals(document, copy);
+
+        StreamsDocument tree = new StreamsDocument(StreamsJacksonMapper.getInstance().createObjectNode().put("verb", "post"));
+        StreamsDocument treeCopy = tree.copy();
+        treeCopy.editActivity().setVerb("like");
+        assertEquals("post", tree.getObjectNode().get("verb").asText());
+        assertEquals("like", treeCopy.getActivity().getVerb());
+    }
+
+    @Test
+    public void equalsMatchesHashCode() {
+        StreamsDocument document = new StreamsDocument(JSON);
+        StreamsDocument sameString = new StreamsDocument(JSON);
+        assertEquals(document, sameString);
+        assertFalse(sameString.hasObjectNode());
+        assertEquals(document.hashCode(), sameString.hashCode());
+
+        StreamsDocument reformatted = new StreamsDocument("{ \"verb\" : \"post\", \"id\" : \"id\" }");
+        assertEquals(document, reformatted);
+        assertEquals(reformatted, document);
+        assertEquals(document.hashCode(), reformatted.hashCode());
+
+        StreamsDocument activity = new StreamsDocument(document.getActivity());
+        assertEquals(document, activity);
+        assertEquals(activity, document);
+        assertEquals(document.hashCode(), activity.hashCode());
+
+        assertNotEquals(document, new StreamsDocument("{\"id\":\"id\",\"verb\":\"share\"}"));
+        assertNotEquals(document, JSON);
+    }
+
+    @Test
+    public void serializesBytes() {
+        StreamsDocument document = new StreamsDocument(JSON);
+        document.editObjectNode().put("verb", "share");
+        StreamsDocument copy = (StreamsDocument) SerializationUtil.cloneBySerialization(document);
+        assertTrue(copy.hasBytes());
+        assertFalse(copy.hasString());
+        assertFalse(copy.hasObjectNode());
+        assertFalse(copy.hasActivity());
+        assertEquals(document, copy);
+        assertEquals("share", copy.getActivity().getVerb());
+    }
+}
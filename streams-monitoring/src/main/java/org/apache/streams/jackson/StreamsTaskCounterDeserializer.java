@@ -73,6 +73,18 @@ public class StreamsTaskCounterDeserializer extends JsonDeserializer<StreamsTask
                         case "MaxTime":
                             streamsTaskCounterBroadcast.setMaxTime((long) server.getAttribute(name, attribute.getName()));
                             break;
+                        case "P50Time":
+                            streamsTaskCounterBroadcast.setP50Time((double) server.getAttribute(name, attribute.getName()));
+                            break;
+                        case "P90Time":
+                            streamsTaskCounterBroadcast.setP90Time((double) server.getAttribute(name, attribute.getName()));
+                            break;
+                        case "P99Time":
+                            streamsTaskCounterBroadcast.setP99Time((double) server.getAttribute(name, attribute.getName()));
+                            break;
+                        case "P999Time":
+                            streamsTaskCounterBroadcast.setP999Time((double) server.getAttribute(name, attribute.getName()));
+                            break;
                     }
                 } catch (Exception e) {
                     LOGGER.error("Exception while trying to deserialize StreamsTaskCounterBroadcast object: {}", e);
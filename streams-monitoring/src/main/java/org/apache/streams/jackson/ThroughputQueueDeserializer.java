@@ -73,6 +73,18 @@ public class ThroughputQueueDeserializer extends JsonDeserializer<ThroughputQueu
                         case "Throughput":
                             throughputQueueBroadcast.setThroughput((double) server.getAttribute(name, attribute.getName()));
                             break;
+                        case "P50Wait":
+                            throughputQueueBroadcast.setP50Wait((double) server.getAttribute(name, attribute.getName()));
+                            break;
+                        case "P90Wait":
+                            throughputQueueBroadcast.setP90Wait((double) server.getAttribute(name, attribute.getName()));
+                            break;
+                        case "P99Wait":
+                            throughputQueueBroadcast.setP99Wait((double) server.getAttribute(name, attribute.getName()));
+                            break;
+                        case "P999Wait":
+                            throughputQueueBroadcast.setP999Wait((double) server.getAttribute(name, attribute.getName()));
+                            break;
                     }
                 } catch (Exception e) {
                     LOGGER.error("Exception while trying to deserialize ThroughputQueueBroadcast object: {}", e);
@@ -49,6 +49,7 @@ public class BroadcastMonitorThread extends NotificationBroadcasterSupport imple
     private String broadcastURI = null;
     private MessagePersister messagePersister;
     private volatile boolean keepRunning;
+    private final Object shutdownLock = new Object();
 
     public BroadcastMonitorThread(Map<String, Object> streamConfig) {
         keepRunning = true;
@@ -120,7 +121,12 @@ public class BroadcastMonitorThread extends NotificationBroadcasterSupport imple
                 }
 
                 messagePersister.persistMessages(messages);
-                Thread.sleep(waitTime);
+                //wait for the next broadcast, waking up early on shutdown
+                synchronized (this.shutdownLock) {
+                    if(this.keepRunning) {
+                        this.shutdownLock.wait(waitTime);
+                    }
+                }
             } catch (InterruptedException e) {
                 LOGGER.error("Interrupted!: {}", e);
                 Thread.currentThread().interrupt();
@@ -169,7 +175,10 @@ public class BroadcastMonitorThread extends NotificationBroadcasterSupport imple
     }
 
     public void shutdown() {
-        this.keepRunning = false;
+        synchronized (this.shutdownLock) {
+            this.keepRunning = false;
+            this.shutdownLock.notifyAll();
+        }
         LOGGER.debug("Shutting down BroadcastMonitor Thread");
     }
 
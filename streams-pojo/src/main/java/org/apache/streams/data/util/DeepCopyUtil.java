@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.data.util;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.joda.time.ReadWritableInstant;
+import org.joda.time.ReadWritablePeriod;
+import org.joda.time.ReadableInstant;
+import org.joda.time.ReadablePeriod;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Structural deep copies of StreamsDatum documents without a JSON or java serialization round trip.
+ *
+ * Supports Jackson {@link com.fasterxml.jackson.databind.JsonNode} trees, the jsonschema2pojo generated classes, such
+ * as {@link org.apache.streams.pojo.json.Activity} and {@link org.apache.streams.pojo.json.ActivityObject}, lists,
+ * sets, maps, arrays and immutable values.  Generated classes are recognised by their {@link com.fasterxml.jackson.annotation.JsonPropertyOrder}
+ * annotation and copied field by field.  The constructor and fields of each class are looked up reflectively once and
+ * cached.  Object graphs are expected to be trees, shared references are copied once per reference.
+ */
+public class DeepCopyUtil {
+
+    private DeepCopyUtil() {}
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class, Class.class));
+
+    private static final Map<Class<?>, BeanCopier> BEAN_COPIERS = new ConcurrentHashMap<Class<?>, BeanCopier>();
+
+    /**
+     * Tests if {@link #copy(Object)} can copy instances of the class.  Only the class itself is tested, a supported
+     * object may still contain values that cannot be copied.
+     * @param clazz class to test
+     * @return true if instances of the class can be copied
+     */
+    public static boolean isCopyable(Class<?> clazz) {
+        return isImmutable(clazz) ||
+                JsonNode.class.isAssignableFrom(clazz) ||
+                List.class.isAssignableFrom(clazz) ||
+                Set.class.isAssignableFrom(clazz) ||
+                Map.class.isAssignableFrom(clazz) ||
+                Date.class.isAssignableFrom(clazz) ||
+                clazz.isArray() ||
+                isGeneratedBean(clazz);
+    }
+
+    /**
+     * Makes a deep copy of the object
+     * @param object object to copy, may be null
+     * @return a deep copy of the object, immutable values are returned as is
+     * @throws java.lang.IllegalArgumentException if the object contains a value that cannot be copied
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T copy(T object) {
+        if(object == null) {
+            return null;
+        }
+        Class<?> clazz = object.getClass();
+        if(isImmutable(clazz)) {
+            return object;
+        }
+        if(object instanceof JsonNode) {
+            return (T) ((JsonNode) object).deepCopy();
+        }
+        if(object instanceof List) {
+            return (T) copyList((List<?>) object);
+        }
+        if(object instanceof Set) {
+            return (T) copySet((Set<?>) object);
+        }
+        if(object instanceof Map) {
+            return (T) copyMap((Map<?, ?>) object);
+        }
+        if(object instanceof Date) {
+            return (T) ((Date) object).clone();
+        }
+        if(clazz.isArray()) {
+            return (T) copyArray(object);
+        }
+        if(isGeneratedBean(clazz)) {
+            return (T) getBeanCopier(clazz).copy(object);
+        }
+        throw new IllegalArgumentException("Unable to deep copy instance of "+clazz.getName());
+    }
+
+    private static boolean isImmutable(Class<?> clazz) {
+        return IMMUTABLE_TYPES.contains(clazz) ||
+                clazz.isEnum() ||
+                (clazz.isAnonymousClass() && clazz.getSuperclass() != null && clazz.getSuperclass().isEnum()) ||
+                //joda DateTime, Instant and Period are immutable, the mutable variants are not
+                (ReadableInstant.class.isAssignableFrom(clazz) && !ReadWritableInstant.class.isAssignableFrom(clazz)) ||
+                (ReadablePeriod.class.isAssignableFrom(clazz) && !ReadWritablePeriod.class.isAssignableFrom(clazz));
+    }
+
+    private static boolean isGeneratedBean(Class<?> clazz) {
+        return clazz.isAnnotationPresent(JsonPropertyOrder.class) && !clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers());
+    }
+
+    private static List<Object> copyList(List<?> list) {
+        List<Object> copy = list instanceof LinkedList ? new LinkedList<Object>() : new ArrayList<Object>(list.size());
+        for(Object value : list) {
+            copy.add(copy(value));
+        }
+        return copy;
+    }
+
+    private static Set<Object> copySet(Set<?> set) {
+        Set<Object> copy;
+        if(set instanceof SortedSet) {
+            @SuppressWarnings("unchecked")
+            Comparator<? super Object> comparator = (Comparator<? super Object>) ((SortedSet<?>) set).comparator();
+            copy = new TreeSet<Object>(comparator);
+        } else {
+            copy = new LinkedHashSet<Object>(set.size() * 2);
+        }
+        for(Object value : set) {
+            copy.add(copy(value));
+        }
+        return copy;
+    }
+
+    private static Map<Object, Object> copyMap(Map<?, ?> map) {
+        Map<Object, Object> copy;
+        if(map instanceof SortedMap) {
+            @SuppressWarnings("unchecked")
+            Comparator<? super Object> comparator = (Comparator<? super Object>) ((SortedMap<?, ?>) map).comparator();
+            copy = new TreeMap<Object, Object>(comparator);
+        } else if(map instanceof LinkedHashMap) {
+            copy = new LinkedHashMap<Object, Object>(map.size() * 2);
+        } else {
+            copy = new HashMap<Object, Object>(map.size() * 2);
+        }
+        for(Map.Entry<?, ?> entry : map.entrySet()) {
+            copy.put(copy(entry.getKey()), copy(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static Object copyArray(Object array) {
+        Class<?> componentType = array.getClass().getComponentType();
+        int length = Array.getLength(array);
+        if(componentType.isPrimitive()) {
+            Object copy = Array.newInstance(componentType, length);
+            System.arraycopy(array, 0, copy, 0, length);
+            return copy;
+        }
+        Object[] source = (Object[]) array;
+        Object[] copy = (Object[]) Array.newInstance(componentType, length);
+        for(int i=0; i < length; ++i) {
+            copy[i] = copy(source[i]);
+        }
+        return copy;
+    }
+
+    private static BeanCopier getBeanCopier(Class<?> clazz) {
+        BeanCopier copier = BEAN_COPIERS.get(clazz);
+        if(copier == null) {
+            copier = new BeanCopier(clazz);
+            BEAN_COPIERS.put(clazz, copier);
+        }
+        return copier;
+    }
+
+    /**
+     * Copies a generated bean field by field, including the fields of its super classes.
+     */
+    private static class BeanCopier {
+
+        private final Constructor<?> constructor;
+        private final Field[] fields;
+
+        private BeanCopier(Class<?> clazz) {
+            try {
+                this.constructor = clazz.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("Unable to deep copy "+clazz.getName()+", no default constructor", e);
+            }
+            List<Field> fields = new ArrayList<Field>();
+            for(Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+                for(Field field : current.getDeclaredFields()) {
+                    if(!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+            this.fields = fields.toArray(new Field[fields.size()]);
+        }
+
+        private Object copy(Object bean) {
+            try {
+                Object copy = this.constructor.newInstance();
+                for(Field field : this.fields) {
+                    field.set(copy, DeepCopyUtil.copy(field.get(bean)));
+                }
+                return copy;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Unable to deep copy instance of "+bean.getClass().getName(), e);
+            }
+        }
+    }
+}
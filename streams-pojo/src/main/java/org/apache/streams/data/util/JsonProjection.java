@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.data.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.streams.jackson.StreamsJacksonMapper;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts a few fields from json documents without building the whole document.  A projection is made of dotted paths,
+ * like <code>content</code> or <code>actor.id</code>, and {@link #project(Object)} returns an
+ * {@link com.fasterxml.jackson.databind.node.ObjectNode} holding only the values at those paths, in their place in the
+ * document.  Serialized json is read with a streaming parser that skips every value outside the projection without
+ * building it, and stops reading as soon as every path has been found.  Paths name object fields only; a path that
+ * runs into an array or a value projects nothing below it, while the array or value itself can be projected whole.
+ *
+ * The values of a projection taken from a tree are shared with the tree and must not be modified.
+ */
+public class JsonProjection implements Serializable {
+
+    private final List<String> paths;
+    private final PathNode root;
+    private final int leaves;
+
+    /**
+     *
+     * @param paths dotted paths of the fields to extract
+     */
+    public JsonProjection(String... paths) {
+        this(java.util.Arrays.asList(paths));
+    }
+
+    /**
+     *
+     * @param paths dotted paths of the fields to extract
+     */
+    public JsonProjection(Collection<String> paths) {
+        if(paths == null || paths.isEmpty()) {
+            throw new IllegalArgumentException("JsonProjection requires at least one path");
+        }
+        this.paths = Collections.unmodifiableList(new ArrayList<>(paths));
+        this.root = new PathNode();
+        for(String path : paths) {
+            if(path == null || path.isEmpty()) {
+                throw new IllegalArgumentException("JsonProjection paths can not be empty");
+            }
+            PathNode node = this.root;
+            for(String name : path.split("\\.")) {
+                if(node.whole) {
+                    break;
+                }
+                PathNode child = node.children.get(name);
+                if(child == null) {
+                    child = new PathNode();
+                    node.children.put(name, child);
+                }
+                node = child;
+            }
+            //a path covers every longer path below it
+            node.whole = true;
+            node.children.clear();
+        }
+        this.leaves = this.root.countLeaves();
+    }
+
+    public List<String> getPaths() {
+        return this.paths;
+    }
+
+    /**
+     * Projects a document.  Strings and byte arrays are parsed as json, trees are walked, and other documents, like
+     * {@link org.apache.streams.pojo.json.Activity}s, are converted to a tree first.
+     * @param document document to project
+     * @return the projected fields of the document, or null if the document is null
+     * @throws java.lang.IllegalArgumentException if the document is not a json object
+     */
+    public ObjectNode project(Object document) {
+        if(document == null) {
+            return null;
+        } else if(document instanceof String) {
+            return project((String) document);
+        } else if(document instanceof byte[]) {
+            return project((byte[]) document);
+        } else if(document instanceof JsonNode) {
+            return project((JsonNode) document);
+        }
+        return project((JsonNode) mapper().valueToTree(document));
+    }
+
+    /**
+     * @param json json object
+     * @return the projected fields of the json
+     * @throws java.lang.IllegalArgumentException if the json is not a json object
+     */
+    public ObjectNode project(String json) {
+        try {
+            return project(factory().createParser(json));
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("Unable to parse document", ioe);
+        }
+    }
+
+    /**
+     * @param utf8 json object encoded in UTF-8
+     * @return the projected fields of the json
+     * @throws java.lang.IllegalArgumentException if the json is not a json object
+     */
+    public ObjectNode project(byte[] utf8) {
+        try {
+            return project(factory().createParser(utf8));
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("Unable to parse document", ioe);
+        }
+    }
+
+    /**
+     * @param tree json object
+     * @return the projected fields of the tree, sharing their values with the tree
+     * @throws java.lang.IllegalArgumentException if the tree is not a json object
+     */
+    public ObjectNode project(JsonNode tree) {
+        if(!tree.isObject()) {
+            throw new IllegalArgumentException("Document is not a json object");
+        }
+        ObjectNode projection = JsonNodeFactory.instance.objectNode();
+        project(tree, this.root, projection);
+        return projection;
+    }
+
+    private ObjectNode project(JsonParser parser) throws IOException {
+        try {
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Document is not a json object");
+            }
+            ObjectNode projection = JsonNodeFactory.instance.objectNode();
+            readObject(parser, this.root, projection, new int[] {this.leaves});
+            return projection;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Reads the fields of an object from the parser, positioned on its start, into the projection.
+     * @param remaining number of projected paths not found yet
+     * @return false once every path has been found and the rest of the document need not be read
+     */
+    private boolean readObject(JsonParser parser, PathNode node, ObjectNode projection, int[] remaining) throws IOException {
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            PathNode child = node.children.get(name);
+            if(child == null || projection.has(name)) {
+                parser.skipChildren();
+            } else if(child.whole) {
+                JsonNode tree = mapper().readTree(parser);
+                projection.set(name, tree == null ? JsonNodeFactory.instance.nullNode() : tree);
+                if(--remaining[0] == 0) {
+                    return false;
+                }
+            } else if(value == JsonToken.START_OBJECT) {
+                ObjectNode nested = JsonNodeFactory.instance.objectNode();
+                boolean more = readObject(parser, child, nested, remaining);
+                if(nested.size() > 0) {
+                    projection.set(name, nested);
+                }
+                if(!more) {
+                    return false;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return true;
+    }
+
+    private void project(JsonNode tree, PathNode node, ObjectNode projection) {
+        for(Map.Entry<String, PathNode> entry : node.children.entrySet()) {
+            JsonNode value = tree.get(entry.getKey());
+            if(value == null) {
+                continue;
+            }
+            if(entry.getValue().whole) {
+                projection.set(entry.getKey(), value);
+            } else if(value.isObject()) {
+                ObjectNode nested = JsonNodeFactory.instance.objectNode();
+                project(value, entry.getValue(), nested);
+                if(nested.size() > 0) {
+                    projection.set(entry.getKey(), nested);
+                }
+            }
+        }
+    }
+
+    private static ObjectMapper mapper() {
+        return StreamsJacksonMapper.getInstance();
+    }
+
+    private static JsonFactory factory() {
+        return mapper().getFactory();
+    }
+
+    private static class PathNode implements Serializable {
+
+        private final Map<String, PathNode> children = new HashMap<>();
+        private boolean whole;
+
+        private int countLeaves() {
+            if(this.whole) {
+                return 1;
+            }
+            int count = 0;
+            for(PathNode child : this.children.values()) {
+                count += child.countLeaves();
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.streams.data.data.util;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.streams.data.util.DeepCopyUtil;
+import org.apache.streams.pojo.json.Activity;
+import org.apache.streams.pojo.json.ActivityObject;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link org.apache.streams.data.util.DeepCopyUtil}
+ */
+public class DeepCopyUtilTest {
+
+    @Test
+    public void copyActivity() {
+        Activity activity = createActivity();
+        Activity copy = DeepCopyUtil.copy(activity);
+
+        assertNotSame(activity, copy);
+        assertEquals(activity, copy);
+        assertNotSame(activity.getObject(), copy.getObject());
+        assertNotSame(activity.getLinks(), copy.getLinks());
+        assertNotSame(activity.getAdditionalProperties(), copy.getAdditionalProperties());
+        assertNotSame(activity.getAdditionalProperties().get("extensions"), copy.getAdditionalProperties().get("extensions"));
+        assertSame(activity.getPublished(), copy.getPublished());
+
+        copy.getObject().setDisplayName("changed");
+        copy.getLinks().add("http://example.com/changed");
+        assertEquals("object", activity.getObject().getDisplayName());
+        assertEquals(1, activity.getLinks().size());
+    }
+
+    @Test
+    public void copyJsonNode() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("id", "1");
+        node.putObject("object").put("displayName", "object");
+        ObjectNode copy = DeepCopyUtil.copy(node);
+
+        assertNotSame(node, copy);
+        assertEquals(node, copy);
+        ((ObjectNode) copy.get("object")).put("displayName", "changed");
+        assertEquals("object", node.get("object").get("displayName").asText());
+    }
+
+    @Test
+    public void copyCollectionsAndValues() {
+        Map<String, Object> map = Maps.newLinkedHashMap();
+        map.put("string", "value");
+        map.put("long", 1l);
+        map.put("list", Lists.newArrayList(1, 2, 3));
+        map.put("array", new int[] {1, 2, 3});
+        Map<String, Object> copy = DeepCopyUtil.copy(map);
+
+        assertNotSame(map, copy);
+        assertSame(map.get("string"), copy.get("string"));
+        assertEquals(map.get("list"), copy.get("list"));
+        assertNotSame(map.get("list"), copy.get("list"));
+        assertTrue(Arrays.equals((int[]) map.get("array"), (int[]) copy.get("array")));
+        assertNotSame(map.get("array"), copy.get("array"));
+        assertNull(DeepCopyUtil.copy(null));
+    }
+
+    @Test
+    public void rejectUnknownTypes() {
+        assertTrue(DeepCopyUtil.isCopyable(Activity.class));
+        assertTrue(DeepCopyUtil.isCopyable(ObjectNode.class));
+        assertFalse(DeepCopyUtil.isCopyable(StringBuilder.class));
+        try {
+            DeepCopyUtil.copy(new StringBuilder("mutable"));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+        //only lists and sets are copied, other collections are rejected
+        assertFalse(DeepCopyUtil.isCopyable(ArrayDeque.class));
+        try {
+            DeepCopyUtil.copy(new ArrayDeque<String>(Arrays.asList("value")));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+    }
+
+    @Test
+    public void copySortedCollections() {
+        TreeMap<String, Object> map = new TreeMap<String, Object>(Collections.reverseOrder());
+        map.put("a", Lists.newArrayList(1));
+        map.put("b", new TreeSet<String>(Arrays.asList("y", "x")));
+        TreeMap<String, Object> copy = DeepCopyUtil.copy(map);
+
+        assertNotSame(map, copy);
+        assertEquals(map, copy);
+        assertEquals(map.comparator(), copy.comparator());
+        assertEquals("b", copy.firstKey());
+        assertNotSame(map.get("b"), copy.get("b"));
+        assertEquals("x", ((TreeSet<?>) copy.get("b")).first());
+    }
+
+    static Activity createActivity() {
+        ActivityObject object = new ActivityObject();
+        object.setId("object");
+        object.setDisplayName("object");
+        object.setObjectType("note");
+        object.setContent("Some content for the object");
+
+        Activity activity = new Activity();
+        activity.setId("id:activity");
+        activity.setVerb("post");
+        activity.setContent("Some content for the activity");
+        activity.setPublished(new DateTime());
+        activity.setObject(object);
+        List<String> links = Lists.newArrayList("http://example.com");
+        activity.setLinks(links);
+        Map<String, Object> extensions = Maps.newHashMap();
+        extensions.put("likes", 5);
+        extensions.put("hashtags", Lists.newArrayList("one", "two"));
+        activity.setAdditionalProperty("extensions", extensions);
+        return activity;
+    }
+}
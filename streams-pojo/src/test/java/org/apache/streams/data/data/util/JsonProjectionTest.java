@@ -0,0 +1,104 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.streams.data.data.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+import org.apache.streams.data.util.JsonProjection;
+import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.pojo.json.Activity;
+import org.apache.streams.pojo.json.Actor;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing {@link org.apache.streams.data.util.JsonProjection}
+ */
+public class JsonProjectionTest {
+
+    private static final String JSON = "{\"id\":\"1\",\"verb\":\"post\",\"content\":\"text\",\"tags\":[{\"a\":1},\"b\"]," +
+            "\"actor\":{\"id\":\"actor:1\",\"displayName\":\"name\",\"image\":{\"url\":\"http://example.com\"}}," +
+            "\"object\":{\"objectType\":\"note\"},\"extensions\":{\"language\":\"en\"}}";
+
+    @Test
+    public void projectString() throws Exception {
+        JsonProjection projection = new JsonProjection("verb", "actor.id", "extensions.language", "missing", "object.missing");
+        ObjectNode projected = projection.project(JSON);
+        assertEquals(StreamsJacksonMapper.getInstance().readTree("{\"verb\":\"post\",\"actor\":{\"id\":\"actor:1\"},\"extensions\":{\"language\":\"en\"}}"), projected);
+    }
+
+    @Test
+    public void projectBytesAndTreeAlike() throws Exception {
+        JsonProjection projection = new JsonProjection("tags", "actor.image", "content");
+        JsonNode tree = StreamsJacksonMapper.getInstance().readTree(JSON);
+        ObjectNode fromBytes = projection.project(JSON.getBytes(Charsets.UTF_8));
+        ObjectNode fromTree = projection.project(tree);
+        assertEquals(fromTree, fromBytes);
+        assertEquals(3, fromBytes.size());
+        assertEquals(tree.get("tags"), fromBytes.get("tags"));
+        assertEquals("http://example.com", fromBytes.get("actor").get("image").get("url").asText());
+        //a projected tree shares its values with the tree
+        assertSame(tree.get("tags"), fromTree.get("tags"));
+    }
+
+    @Test
+    public void shorterPathCoversLongerPath() throws Exception {
+        JsonProjection projection = new JsonProjection("actor.image.url", "actor");
+        ObjectNode projected = projection.project(JSON);
+        assertEquals(3, projected.get("actor").size());
+    }
+
+    @Test
+    public void pathsDoNotEnterArraysOrValues() throws Exception {
+        JsonProjection projection = new JsonProjection("tags.a", "verb.length");
+        assertEquals(0, projection.project(JSON).size());
+        assertEquals(0, projection.project(StreamsJacksonMapper.getInstance().readTree(JSON)).size());
+    }
+
+    @Test
+    public void projectActivity() throws Exception {
+        Activity activity = new Activity();
+        activity.setVerb("share");
+        Actor actor = new Actor();
+        actor.setId("actor:2");
+        activity.setActor(actor);
+        ObjectNode projected = new JsonProjection("verb", "actor.id").project((Object) activity);
+        assertEquals("share", projected.get("verb").asText());
+        assertEquals("actor:2", projected.get("actor").get("id").asText());
+    }
+
+    @Test
+    public void projectNullValue() throws Exception {
+        ObjectNode projected = new JsonProjection("verb").project("{\"verb\":null,\"id\":\"1\"}");
+        assertTrue(projected.has("verb"));
+        assertTrue(projected.get("verb").isNull());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void projectArray() throws Exception {
+        new JsonProjection("verb").project("[{\"verb\":\"post\"}]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void projectMalformed() throws Exception {
+        new JsonProjection("content").project("{\"verb\":\"post\",\"content\":");
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.builders;
+
+import org.apache.streams.local.counters.StreamsTaskCounter;
+import org.apache.streams.local.queues.ThroughputQueueMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the number of tasks of the autoscaled components of a {@link LocalStreamBuilder} stream between their minimum
+ * and maximum.  Run periodically, each run compares the depth of a component's inbound queue, the average time datums
+ * waited in it since the last run, and how busy the component's tasks were since the last run.  A task is added when
+ * the queue is backed up and the tasks are busy, and retired when the queue is close to empty and the remaining tasks
+ * could take over the work of the retired one while staying below the busy threshold.  Either decision has to be
+ * reached on a number of consecutive runs before it is acted on, and both are reset after a task has been added or
+ * retired, so that a component does not flap between task counts.
+ */
+public class AutoScaler implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AutoScaler.class);
+
+    /**
+     * Fraction of the time the tasks of a component have to be busy for a task to be added
+     */
+    public static final double BUSY_THRESHOLD = 0.75;
+
+    public static final int DEFAULT_STABILIZATION_INTERVALS = 3;
+    public static final double DEFAULT_QUEUE_HIGH_WATERMARK = 0.5;
+    public static final long DEFAULT_WAIT_HIGH_MS = 500;
+
+    private final LocalStreamBuilder builder;
+    private final List<ScaledComponent> components;
+    private final int stabilizationIntervals;
+    private final double queueHighWatermark;
+    private final long waitHighMs;
+    private boolean stopped;
+
+    /**
+     *
+     * @param builder builder running the stream
+     * @param stabilizationIntervals number of consecutive runs a decision has to be reached on before it is acted on
+     * @param queueHighWatermark fraction of the capacity of an inbound queue above which the queue is backed up
+     * @param waitHighMs average wait in an inbound queue in milliseconds above which the queue is backed up
+     */
+    public AutoScaler(LocalStreamBuilder builder, int stabilizationIntervals, double queueHighWatermark, long waitHighMs) {
+        this.builder = builder;
+        this.components = new ArrayList<>();
+        this.stabilizationIntervals = Math.max(1, stabilizationIntervals);
+        this.queueHighWatermark = queueHighWatermark;
+        this.waitHighMs = waitHighMs;
+    }
+
+    /**
+     * Adds a component to scale.
+     * @param comp component to scale
+     * @param queue throughput of the inbound queue of the component
+     * @param capacity capacity of the inbound queue, or less than 1 if the queue is unbounded
+     * @param counter counter shared by the tasks of the component
+     * @param minTasks minimum number of tasks
+     * @param maxTasks maximum number of tasks
+     */
+    public void addComponent(StreamComponent comp, ThroughputQueueMXBean queue, int capacity, StreamsTaskCounter counter, int minTasks, int maxTasks) {
+        this.components.add(new ScaledComponent(comp, queue, capacity, counter, minTasks, maxTasks));
+    }
+
+    @Override
+    public synchronized void run() {
+        if(this.stopped) {
+            return;
+        }
+        for(ScaledComponent scaled : this.components) {
+            try {
+                scale(scaled);
+            } catch (Throwable t) {
+                LOGGER.warn("Failed to scale component {} : {}", scaled.comp.getId(), t);
+            }
+        }
+    }
+
+    /**
+     * Stops scaling, waiting for a run in progress to finish so that no task is added afterwards.
+     */
+    public synchronized void stop() {
+        this.stopped = true;
+    }
+
+    private void scale(ScaledComponent scaled) {
+        if(scaled.comp.hasEnded()) {
+            return;
+        }
+        int tasks = scaled.comp.getActiveTasks().size();
+        int decision = scaled.observe(tasks, System.nanoTime());
+        if(decision > 0 && tasks < scaled.maxTasks) {
+            if(this.builder.addComponentTask(scaled.comp)) {
+                LOGGER.info("Scaled component {} up to {} tasks", scaled.comp.getId(), tasks + 1);
+            }
+            scaled.reset();
+        } else if(decision < 0 && tasks > scaled.minTasks) {
+            if(this.builder.retireComponentTask(scaled.comp)) {
+                LOGGER.info("Scaled component {} down to {} tasks", scaled.comp.getId(), tasks - 1);
+            }
+            scaled.reset();
+        }
+    }
+
+    /**
+     * Scaling state of a component, holding the readings of the previous run.
+     */
+    private class ScaledComponent {
+
+        private final StreamComponent comp;
+        private final ThroughputQueueMXBean queue;
+        private final int capacity;
+        private final StreamsTaskCounter counter;
+        private final int minTasks;
+        private final int maxTasks;
+
+        private long lastNanos = -1;
+        private long lastRemoved;
+        private double lastWaitTotal;
+        private long lastBusyTime;
+        private int upCount;
+        private int downCount;
+
+        private ScaledComponent(StreamComponent comp, ThroughputQueueMXBean queue, int capacity, StreamsTaskCounter counter, int minTasks, int maxTasks) {
+            this.comp = comp;
+            this.queue = queue;
+            this.capacity = capacity;
+            this.counter = counter;
+            this.minTasks = minTasks;
+            this.maxTasks = maxTasks;
+        }
+
+        /**
+         * Reads the queue and counter of the component and updates the consecutive decisions.
+         * @param tasks number of active tasks
+         * @param nanos current time
+         * @return 1 to add a task, -1 to retire a task, 0 otherwise
+         */
+        private int observe(int tasks, long nanos) {
+            long removed = this.queue.getRemoved();
+            double waitTotal = this.queue.getAvgWait() * removed;
+            long busyTime = this.counter.getTotalTime();
+            long depth = this.queue.getCurrentSize();
+            if(this.lastNanos < 0 || tasks < 1) {
+                record(nanos, removed, waitTotal, busyTime);
+                return 0;
+            }
+            double elapsedMs = (double) TimeUnit.NANOSECONDS.toMillis(nanos - this.lastNanos);
+            double recentWait = removed > this.lastRemoved ? (waitTotal - this.lastWaitTotal) / (removed - this.lastRemoved) : 0.0;
+            double busy = elapsedMs > 0 ? (busyTime - this.lastBusyTime) / (elapsedMs * tasks) : 0.0;
+            record(nanos, removed, waitTotal, busyTime);
+
+            boolean backedUp = (this.capacity > 0 && depth >= this.capacity * queueHighWatermark) || recentWait >= waitHighMs;
+            boolean drained = depth <= (this.capacity > 0 ? this.capacity * queueHighWatermark / 4 : 0) && recentWait < waitHighMs / 4;
+            if(backedUp && busy >= BUSY_THRESHOLD) {
+                ++this.upCount;
+                this.downCount = 0;
+            } else if(drained && tasks > 1 && busy * tasks / (tasks - 1) < BUSY_THRESHOLD / 2) {
+                ++this.downCount;
+                this.upCount = 0;
+            } else {
+                this.upCount = 0;
+                this.downCount = 0;
+            }
+            if(this.upCount >= stabilizationIntervals) {
+                return 1;
+            } else if(this.downCount >= stabilizationIntervals) {
+                return -1;
+            }
+            return 0;
+        }
+
+        private void record(long nanos, long removed, double waitTotal, long busyTime) {
+            this.lastNanos = nanos;
+            this.lastRemoved = removed;
+            this.lastWaitTotal = waitTotal;
+            this.lastBusyTime = busyTime;
+        }
+
+        private void reset() {
+            this.upCount = 0;
+            this.downCount = 0;
+        }
+    }
+}
@@ -19,25 +19,78 @@
 package org.apache.streams.local.builders;
 
 import org.apache.streams.core.*;
+import org.apache.streams.local.counters.DatumLatencyCounter;
 import org.apache.streams.local.counters.StreamsTaskCounter;
 import org.apache.streams.local.executors.ShutdownStreamOnUnhandleThrowableThreadPoolExecutor;
+import org.apache.streams.local.executors.WorkStealingTaskScheduler;
+import org.apache.streams.local.memory.HeapAdmissionController;
+import org.apache.streams.local.queues.DurableQueue;
+import org.apache.streams.local.queues.PartitionedQueue;
+import org.apache.streams.local.queues.SignallingQueue;
+import org.apache.streams.local.queues.RingBufferThroughputQueue;
+import org.apache.streams.local.queues.SpillingThroughputQueue;
+import org.apache.streams.local.queues.ThrottledQueue;
 import org.apache.streams.local.queues.ThroughputQueue;
+import org.apache.streams.local.queues.ThroughputQueueMXBean;
 import org.apache.streams.local.tasks.*;
+import org.apache.streams.local.wal.WriteAheadLog;
+import org.apache.streams.local.wal.WriteAheadLogManager;
+import org.apache.streams.local.windows.WindowedAggregation;
+import org.apache.streams.local.windows.WindowedAggregationProcessor;
 import org.apache.streams.monitoring.tasks.BroadcastMonitorThread;
+import org.apache.streams.util.ComponentUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * {@link org.apache.streams.local.builders.LocalStreamBuilder} implementation to run a data processing stream in a single
  * JVM across many threads.  Depending on your data stream, the JVM heap may need to be set to a high value. Default
- * implementation uses unbound {@link java.util.concurrent.ConcurrentLinkedQueue} to connect stream components.
+ * implementation uses {@link org.apache.streams.local.queues.ThroughputQueue} to connect stream components.  Setting
+ * {@link #QUEUE_TYPE_KEY} to {@link #RING_BUFFER_QUEUE_TYPE} in the stream config connects components with bounded,
+ * lock-free {@link org.apache.streams.local.queues.RingBufferThroughputQueue}s instead, and setting it to
+ * {@link #SPILLING_QUEUE_TYPE} lets the queues read from providers spill overflow to segment files in
+ * {@link #SPILL_DIRECTORY_KEY} through {@link org.apache.streams.local.queues.SpillingThroughputQueue}s, so that bursts
+ * do not block providers.  Setting {@link #FAN_OUT_MODE_KEY}
+ * to {@link #COPY_ON_WRITE_FAN_OUT_MODE} lets the branches of a fan-out share one read-only datum instead of cloning it per
+ * branch, in which case writers must not modify the documents they are handed.
+ * Setting {@link #FUSE_PROCESSORS_KEY} to true fuses linear chains of processors into single tasks when the stream starts.
+ * By default every task owns a thread.  Setting {@link #EXECUTION_MODE_KEY} to {@link #WORK_STEALING_EXECUTION_MODE} runs
+ * processor and writer tasks on a {@link org.apache.streams.local.executors.WorkStealingTaskScheduler} with
+ * {@link #PARALLELISM_KEY} threads, defaulting to the number of available processors.  Processors added with a
+ * {@link org.apache.streams.core.StreamsKeyExtractor} route every datum with the same key to the same task.
+ * Setting {@link #WRITE_AHEAD_LOG_DIRECTORY_KEY} logs the datums added to the inbound queue of every processor and
+ * writer in {@link org.apache.streams.local.wal.WriteAheadLog}s, synced together every
+ * {@link #WRITE_AHEAD_LOG_SYNC_INTERVAL_MS_KEY} milliseconds.  Datums are acknowledged once they have been emitted by
+ * the next processor or written by the writer, and the datums a previous run left unacknowledged are replayed when the
+ * stream starts.  Setting {@link #LATENCY_SAMPLE_INTERVAL_KEY} to n traces every n-th datum read by each provider, and
+ * the time it takes the traced datums to reach a writer is reported per path of components by a
+ * {@link org.apache.streams.local.counters.DatumLatencyCounter}.  The rate at which a processor or writer receives data
+ * is capped by {@link #setRateLimit(String, double, int)}, or for every processor and writer by {@link #RATE_LIMIT_KEY}
+ * and {@link #RATE_LIMIT_BURST_KEY}; upstream tasks block on a {@link org.apache.streams.local.queues.ThrottledQueue}
+ * in front of the inbound queue.  Rate limited processors are not fused.  The number of tasks of a processor or writer
+ * is adjusted between bounds while the stream runs by {@link #setAutoscale(String, int, int)}.  An {@link AutoScaler}
+ * checks the depth of and wait in the inbound queue of every autoscaled component every {@link #AUTOSCALE_INTERVAL_MS_KEY}
+ * milliseconds, and adds a task when the queue backs up while the tasks are busy, or retires one when the queue has
+ * drained.  Autoscaled processors are not fused and cannot be partitioned or windowed.  Tumbling and sliding windowed
+ * aggregations keyed by a document field are added by {@link #addWindowedAggregation(String, WindowedAggregation, int, String...)}.
+ * Setting {@link #HEAP_ADMISSION_CONTROL_KEY} to true slows down and then pauses the reads of perpetual providers while
+ * the old generation is close to full or the JVM spends much of its time collecting garbage, see
+ * {@link org.apache.streams.local.memory.HeapAdmissionController}.  Streams built with a
+ * {@link SharedStreamRuntime} share its worker threads, weighted by {@link #SCHEDULING_WEIGHT_KEY}, and its monitoring
+ * thread with the other streams of the runtime.
  */
 public class LocalStreamBuilder implements StreamBuilder {
 
@@ -50,12 +103,49 @@ public class LocalStreamBuilder implements StreamBuilder {
     public static final String BROADCAST_INTERVAL_KEY = "monitoring_broadcast_interval_ms";
     public static final String DEFAULT_STREAM_IDENTIFIER = "Unknown_Stream";
     public static final String DEFAULT_STARTED_AT_KEY = "startedAt";
+    public static final String QUEUE_TYPE_KEY = "queueType";
+    public static final String LINKED_QUEUE_TYPE = "linked";
+    public static final String RING_BUFFER_QUEUE_TYPE = "ringBuffer";
+    public static final String SPILLING_QUEUE_TYPE = "spilling";
+    public static final String SPILL_DIRECTORY_KEY = "spillDirectory";
+    public static final String SPILL_SEGMENT_BYTES_KEY = "spillSegmentBytes";
+    public static final String MAX_SPILL_BYTES_KEY = "maxSpillBytes";
+    public static final String BATCH_SIZE_KEY = "batchSize";
+    public static final String BATCH_LINGER_MS_KEY = "batchLingerMs";
+    public static final String FLUSH_INTERVAL_MS_KEY = "flushIntervalMs";
+    public static final String FAN_OUT_MODE_KEY = "fanOutMode";
+    public static final String CLONE_FAN_OUT_MODE = "clone";
+    public static final String COPY_ON_WRITE_FAN_OUT_MODE = "copyOnWrite";
+    public static final String FUSE_PROCESSORS_KEY = "fuseProcessors";
+    public static final String EXECUTION_MODE_KEY = "executionMode";
+    public static final String THREAD_PER_TASK_EXECUTION_MODE = "threadPerTask";
+    public static final String WORK_STEALING_EXECUTION_MODE = "workStealing";
+    public static final String PARALLELISM_KEY = "parallelism";
+    public static final String WRITE_AHEAD_LOG_DIRECTORY_KEY = "writeAheadLogDirectory";
+    public static final String WRITE_AHEAD_LOG_SYNC_INTERVAL_MS_KEY = "writeAheadLogSyncIntervalMs";
+    public static final String WRITE_AHEAD_LOG_SEGMENT_BYTES_KEY = "writeAheadLogSegmentBytes";
+    public static final String LATENCY_SAMPLE_INTERVAL_KEY = "latencySampleInterval";
+    public static final String RATE_LIMIT_KEY = "rateLimit";
+    public static final String RATE_LIMIT_BURST_KEY = "rateLimitBurst";
+    public static final String AUTOSCALE_INTERVAL_MS_KEY = "autoscaleIntervalMs";
+    public static final String AUTOSCALE_STABILIZATION_INTERVALS_KEY = "autoscaleStabilizationIntervals";
+    public static final String AUTOSCALE_QUEUE_HIGH_WATERMARK_KEY = "autoscaleQueueHighWatermark";
+    public static final String AUTOSCALE_WAIT_HIGH_MS_KEY = "autoscaleWaitHighMs";
+    public static final long DEFAULT_AUTOSCALE_INTERVAL_MS = 1000;
+    public static final String SCHEDULING_WEIGHT_KEY = "schedulingWeight";
+    public static final String HEAP_ADMISSION_CONTROL_KEY = "heapAdmissionControl";
+    public static final String ADMISSION_OLD_GEN_SLOW_THRESHOLD_KEY = "admissionOldGenSlowThreshold";
+    public static final String ADMISSION_OLD_GEN_PAUSE_THRESHOLD_KEY = "admissionOldGenPauseThreshold";
+    public static final String ADMISSION_GC_SLOW_THRESHOLD_KEY = "admissionGcSlowThreshold";
+    public static final String ADMISSION_GC_PAUSE_THRESHOLD_KEY = "admissionGcPauseThreshold";
+    public static final String ADMISSION_MAX_DELAY_MS_KEY = "admissionMaxDelayMs";
 
     private Map<String, StreamComponent> providers;
     private Map<String, StreamComponent> components;
     private Map<String, Object> streamConfig;
     private Map<StreamsTask, Future> futures;
     private ExecutorService executor;
+    private WorkStealingTaskScheduler scheduler;
     private ExecutorService monitor;
     private int totalTasks;
     private int monitorTasks;
@@ -67,6 +157,19 @@ public class LocalStreamBuilder implements StreamBuilder {
     private String streamIdentifier = DEFAULT_STREAM_IDENTIFIER;
     private DateTime startedAt = new DateTime();
     private boolean useDeprecatedMonitors;
+    private List<SpillingThroughputQueue> spillingQueues;
+    private Map<String, List<RingBufferThroughputQueue<StreamsDatum>>> singleProducerQueues;
+    private WriteAheadLogManager writeAheadLogManager;
+    private DatumLatencyCounter latencyCounter;
+    private Map<String, RateLimit> rateLimits;
+    private Map<String, TaskBounds> taskBounds;
+    private Map<String, ThroughputQueueMXBean> queueMonitors;
+    private Map<String, List<StreamsTaskCounter>> componentCounters;
+    private AutoScaler autoScaler;
+    private ScheduledExecutorService autoScalerExecutor;
+    private ScheduledFuture<?> autoScalerFuture;
+    private SharedStreamRuntime sharedRuntime;
+    private HeapAdmissionController admissionController;
 
     /**
      * Creates a local stream builder with no config object and default maximum internal queue size of 500
@@ -99,6 +202,20 @@ public class LocalStreamBuilder implements StreamBuilder {
      * @param streamConfig
      */
     public LocalStreamBuilder(int maxQueueCapacity, Map<String, Object> streamConfig) {
+        this(maxQueueCapacity, streamConfig, null);
+    }
+
+    /**
+     * Creates a local stream builder that runs its processors and writers on the worker threads of a runtime shared
+     * with other streams, see {@link SharedStreamRuntime}.  The tasks of the stream run as in
+     * {@link #WORK_STEALING_EXECUTION_MODE}, and the stream receives a share of the worker time proportional to its
+     * {@link #SCHEDULING_WEIGHT_KEY}.  If maxQueueCapacity is less than 1 the queue is unbounded.
+     * @param maxQueueCapacity
+     * @param streamConfig
+     * @param sharedRuntime runtime shared with other streams, or null to run the stream on its own threads
+     */
+    public LocalStreamBuilder(int maxQueueCapacity, Map<String, Object> streamConfig, SharedStreamRuntime sharedRuntime) {
+        this.sharedRuntime = sharedRuntime;
         this.providers = new HashMap<String, StreamComponent>();
         this.components = new HashMap<String, StreamComponent>();
         this.streamConfig = streamConfig;
@@ -122,6 +239,12 @@ public class LocalStreamBuilder implements StreamBuilder {
         this.broadcastMonitor = new BroadcastMonitorThread(this.streamConfig);
 
         this.futures = new HashMap<>();
+        this.spillingQueues = new ArrayList<>();
+        this.singleProducerQueues = new HashMap<>();
+        this.rateLimits = new HashMap<>();
+        this.taskBounds = new HashMap<>();
+        this.queueMonitors = new HashMap<>();
+        this.componentCounters = new HashMap<>();
     }
 
     public void setUseDeprecatedMonitors(boolean useDeprecatedMonitors) {
@@ -171,7 +294,30 @@ public class LocalStreamBuilder implements StreamBuilder {
     @Override
     public StreamBuilder addStreamsProcessor(String id, StreamsProcessor processor, int numTasks, String... inBoundIds) {
         validateId(id);
-        StreamComponent comp = new StreamComponent(id, processor, new ThroughputQueue<StreamsDatum>(this.maxQueueCapacity, id, streamIdentifier, startedAt.getMillis()), numTasks, streamConfig);
+        StreamComponent comp = new StreamComponent(id, processor, makeDurable(id, createInBoundQueue(id, numTasks, inBoundIds)), numTasks, streamConfig);
+        this.components.put(id, comp);
+        connectToOtherComponents(inBoundIds, comp);
+        this.totalTasks += numTasks;
+        if(this.useDeprecatedMonitors && processor instanceof DatumStatusCountable )
+            ++this.monitorTasks;
+        return this;
+    }
+
+    /**
+     * Adds a processor whose tasks each read their own partition of the inbound queue.  Datums are routed to the
+     * partitions by the hash of their key, so that every datum with the same key is processed by the same task and in
+     * the order it was emitted by its upstream task.  Each partition is bounded by the max queue capacity of this
+     * builder.
+     * @param id unique id of the processor
+     * @param processor processor to run
+     * @param numTasks number of tasks, and partitions, to run the processor with
+     * @param keyExtractor extracts the key datums are routed by
+     * @param inBoundIds ids of the components to read from
+     * @return this builder
+     */
+    public StreamBuilder addStreamsProcessor(String id, StreamsProcessor processor, int numTasks, StreamsKeyExtractor keyExtractor, String... inBoundIds) {
+        validateId(id);
+        StreamComponent comp = new StreamComponent(id, processor, makeDurable(id, createPartitionedInBoundQueue(id, numTasks, keyExtractor, inBoundIds)), numTasks, streamConfig);
         this.components.put(id, comp);
         connectToOtherComponents(inBoundIds, comp);
         this.totalTasks += numTasks;
@@ -180,10 +326,29 @@ public class LocalStreamBuilder implements StreamBuilder {
         return this;
     }
 
+    /**
+     * Adds a windowed aggregation, run by a {@link WindowedAggregationProcessor}.  The aggregates of every window are
+     * emitted once event time has passed the end of the window by the allowed lateness, and the windows still open are
+     * emitted when the stream ends, so downstream components receive one datum per key and window instead of every
+     * datum.  An aggregation run with several tasks is partitioned by its key.
+     * @param id unique id of the aggregation
+     * @param aggregation windows and fields to aggregate
+     * @param numTasks number of tasks to run the aggregation with
+     * @param inBoundIds ids of the components to read from
+     * @return this builder
+     */
+    public StreamBuilder addWindowedAggregation(String id, WindowedAggregation aggregation, int numTasks, String... inBoundIds) {
+        WindowedAggregationProcessor processor = new WindowedAggregationProcessor(aggregation);
+        if(numTasks > 1) {
+            return addStreamsProcessor(id, processor, numTasks, aggregation.getKeyExtractor(), inBoundIds);
+        }
+        return addStreamsProcessor(id, processor, numTasks, inBoundIds);
+    }
+
     @Override
     public StreamBuilder addStreamsPersistWriter(String id, StreamsPersistWriter writer, int numTasks, String... inBoundIds) {
         validateId(id);
-        StreamComponent comp = new StreamComponent(id, writer, new ThroughputQueue<StreamsDatum>(this.maxQueueCapacity, id, streamIdentifier, startedAt.getMillis()), numTasks, streamConfig);
+        StreamComponent comp = new StreamComponent(id, writer, makeDurable(id, createInBoundQueue(id, numTasks, inBoundIds)), numTasks, streamConfig);
         this.components.put(id, comp);
         connectToOtherComponents(inBoundIds, comp);
         this.totalTasks += numTasks;
@@ -192,15 +357,63 @@ public class LocalStreamBuilder implements StreamBuilder {
         return this;
     }
 
+    /**
+     * Caps the rate at which a processor or writer receives data, overriding {@link #RATE_LIMIT_KEY} for it.  May be
+     * called before or after the component is added.
+     * @param id id of the processor or writer
+     * @param datumsPerSecond maximum number of datums the component receives per second
+     * @param burst number of datums the component may receive at once after it has been idle
+     * @return this builder
+     */
+    @Override
+    public StreamBuilder setRateLimit(String id, double datumsPerSecond, int burst) {
+        if(datumsPerSecond <= 0 || burst < 1) {
+            throw new InvalidStreamException("Rate limit of "+id+" must be positive with a burst of at least 1");
+        }
+        this.rateLimits.put(id, new RateLimit(datumsPerSecond, burst));
+        return this;
+    }
+
+    /**
+     * Lets the number of tasks of a processor or writer change while the stream runs, see {@link AutoScaler}.  The
+     * component starts with the number of tasks it was added with, which has to be within the bounds.  May be called
+     * before or after the component is added.
+     * @param id id of the processor or writer
+     * @param minTasks minimum number of tasks
+     * @param maxTasks maximum number of tasks
+     * @return this builder
+     */
+    public StreamBuilder setAutoscale(String id, int minTasks, int maxTasks) {
+        if(minTasks < 1 || maxTasks < minTasks) {
+            throw new InvalidStreamException("Autoscaled component "+id+" must run at least 1 task and no more than its maximum");
+        }
+        this.taskBounds.put(id, new TaskBounds(minTasks, maxTasks));
+        return this;
+    }
+
     /**
      * Runs the data stream in the this JVM and blocks till completion.
      */
     @Override
     public void start() {
         attachShutdownHandler();
-        boolean isRunning = true;
-        this.executor = new ShutdownStreamOnUnhandleThrowableThreadPoolExecutor(this.totalTasks, this);
+        if(this.sharedRuntime != null) {
+            //only providers own a thread, the other tasks share the threads of the runtime with other streams
+            this.executor = new ShutdownStreamOnUnhandleThrowableThreadPoolExecutor(Math.max(1, this.providers.size()), this);
+            this.scheduler = new WorkStealingTaskScheduler(this.sharedRuntime.attach(streamIdentifier, startedAt.getMillis(),
+                    getIntConfig(SCHEDULING_WEIGHT_KEY, 1)), this.sharedRuntime.getParallelism(), this);
+        } else if(isWorkStealing()) {
+            //only providers own a thread, the other tasks share the scheduler's threads
+            this.executor = new ShutdownStreamOnUnhandleThrowableThreadPoolExecutor(Math.max(1, this.providers.size()), this);
+            this.scheduler = new WorkStealingTaskScheduler(getParallelism(), this);
+        } else {
+            //leave room for the tasks added to autoscaled components
+            this.executor = new ShutdownStreamOnUnhandleThrowableThreadPoolExecutor(this.totalTasks + getAutoscaleHeadroom(), this);
+        }
         this.monitor = Executors.newCachedThreadPool();
+        if(this.writeAheadLogManager != null) {
+            this.writeAheadLogManager.start();
+        }
         Map<String, StreamsProviderTask> provTasks = new HashMap<String, StreamsProviderTask>();
         tasks = new HashMap<String, List<StreamsTask>>();
         boolean forcedShutDown = false;
@@ -210,28 +423,19 @@ public class LocalStreamBuilder implements StreamBuilder {
                 monitorThread = new LocalStreamProcessMonitorThread(executor, 10);
                 this.monitor.submit(monitorThread);
             }
+            if(isFuseProcessors()) {
+                fuseProcessorChains();
+            }
+            throttleComponents();
+            autoscaleComponents();
             setupComponentTasks(tasks);
+            replayWriteAheadLogs();
             setupProviderTasks(provTasks);
+            startAutoScaler();
             LOGGER.info("Started stream with {} components", tasks.size());
-            while(isRunning) {
-                isRunning = false;
-                for(StreamsProviderTask task : provTasks.values()) {
-                    isRunning = isRunning || task.isRunning();
-                }
-                for(StreamComponent task: components.values()) {
-                    boolean tasksRunning = false;
-                    for(StreamsTask t : task.getStreamsTasks()) {
-                        if(t instanceof BaseStreamsTask) {
-                            tasksRunning = tasksRunning || ((BaseStreamsTask) t).isRunning();
-                        }
-                    }
-                    isRunning = isRunning || (tasksRunning && task.getInBoundQueue().size() > 0);
-                }
-                if(isRunning) {
-                    Thread.sleep(3000);
-                } else {
-                    LOGGER.info("Stream has completed successfully, shutting down @ {}", System.currentTimeMillis());
-                }
+            //tasks complete once every upstream task has sent its end of stream marker
+            if(awaitCompletion(provTasks.values()) && awaitComponentCompletion()) {
+                LOGGER.info("Stream has completed successfully, shutting down @ {}", System.currentTimeMillis());
             }
             LOGGER.debug("Components are no longer running or timed out");
         } catch (InterruptedException e){
@@ -243,6 +447,50 @@ public class LocalStreamBuilder implements StreamBuilder {
 
     }
 
+    /**
+     * Waits for tasks to complete.  Stops waiting if the stream is stopped before the tasks could run.
+     * @param streamsTasks tasks to wait for
+     * @return true if all of the tasks completed
+     * @throws InterruptedException
+     */
+    private boolean awaitCompletion(Collection<? extends StreamsTask> streamsTasks) throws InterruptedException {
+        for(StreamsTask task : streamsTasks) {
+            if(task instanceof BaseStreamsTask) {
+                while(!((BaseStreamsTask) task).awaitCompletion(1, TimeUnit.SECONDS)) {
+                    if(this.executor.isTerminated()) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the tasks of every component to complete, including the tasks added by the {@link AutoScaler} while
+     * waiting.
+     * @return true if all of the tasks completed
+     * @throws InterruptedException
+     */
+    private boolean awaitComponentCompletion() throws InterruptedException {
+        List<StreamsTask> awaited;
+        do {
+            awaited = getComponentTasks();
+            if(!awaitCompletion(awaited)) {
+                return false;
+            }
+        } while(getComponentTasks().size() != awaited.size());
+        return true;
+    }
+
+    private List<StreamsTask> getComponentTasks() {
+        List<StreamsTask> componentTasks = new ArrayList<>();
+        for(StreamComponent comp : this.components.values()) {
+            componentTasks.addAll(comp.getStreamsTasks());
+        }
+        return componentTasks;
+    }
+
     private void attachShutdownHandler() {
         LOGGER.debug("Attaching shutdown handler");
         Runtime.getRuntime().addShutdownHook(shutdownHook);
@@ -255,16 +503,31 @@ public class LocalStreamBuilder implements StreamBuilder {
 
     protected void forceShutdown(Map<String, List<StreamsTask>> streamsTasks) {
         LOGGER.debug("Shutdown failed.  Forcing shutdown");
+        if(this.autoScaler != null) {
+            this.autoScaler.stop();
+            this.autoScalerFuture.cancel(true);
+        }
+        if(this.autoScalerExecutor != null) {
+            this.autoScalerExecutor.shutdownNow();
+        }
         for(List<StreamsTask> tasks : streamsTasks.values()) {
             for(StreamsTask task : tasks) {
                 task.stopTask();
-                if(task.isWaiting()) {
-                    this.futures.get(task).cancel(true);
+                Future future = this.futures.get(task);
+                if(future != null && task.isWaiting()) {
+                    future.cancel(true);
                 }
             }
         }
+        if(this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
         this.executor.shutdown();
         this.monitor.shutdown();
+        if(this.writeAheadLogManager != null) {
+            //unacknowledged datums are replayed on restart
+            this.writeAheadLogManager.shutdown();
+        }
         try {
             if(!this.executor.awaitTermination(3, TimeUnit.SECONDS)){
                 this.executor.shutdownNow();
@@ -276,11 +539,16 @@ public class LocalStreamBuilder implements StreamBuilder {
             this.executor.shutdownNow();
             this.monitor.shutdownNow();
             throw new RuntimeException(ie);
+        } finally {
+            if(this.sharedRuntime != null) {
+                this.sharedRuntime.detach(streamIdentifier, startedAt.getMillis());
+            }
         }
     }
 
     protected void shutdown(Map<String, List<StreamsTask>> streamsTasks) throws InterruptedException {
         LOGGER.info("Attempting to shutdown tasks");
+        stopAutoScaler();
         if (this.monitorThread != null) {
             this.monitorThread.shutdown();
         }
@@ -294,18 +562,46 @@ public class LocalStreamBuilder implements StreamBuilder {
             this.executor.shutdownNow();
             this.executor.awaitTermination(10, TimeUnit.SECONDS);
         }
+        if(this.scheduler != null) {
+            this.scheduler.shutdown();
+            if(!this.scheduler.awaitTermination(10, TimeUnit.SECONDS)) { // all tasks should have finished already.
+                this.scheduler.shutdownNow();
+                this.scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+        for(SpillingThroughputQueue queue : this.spillingQueues) {
+            queue.close();
+        }
+        if(this.writeAheadLogManager != null) {
+            this.writeAheadLogManager.shutdown();
+        }
+        this.broadcastMonitor.shutdown();
+        this.monitor.shutdown();
         if(!this.monitor.awaitTermination(5, TimeUnit.SECONDS)) { // all threads should have terminated already.
             this.monitor.shutdownNow();
             this.monitor.awaitTermination(5, TimeUnit.SECONDS);
         }
+        if(this.sharedRuntime != null) {
+            this.sharedRuntime.detach(streamIdentifier, startedAt.getMillis());
+        }
     }
 
     protected void setupProviderTasks(Map<String, StreamsProviderTask> provTasks) {
+        if(isHeapAdmissionControl() && this.admissionController == null) {
+            this.admissionController = new HeapAdmissionController(
+                    getDoubleConfig(ADMISSION_OLD_GEN_SLOW_THRESHOLD_KEY, HeapAdmissionController.DEFAULT_OLD_GEN_SLOW_THRESHOLD),
+                    getDoubleConfig(ADMISSION_OLD_GEN_PAUSE_THRESHOLD_KEY, HeapAdmissionController.DEFAULT_OLD_GEN_PAUSE_THRESHOLD),
+                    getDoubleConfig(ADMISSION_GC_SLOW_THRESHOLD_KEY, HeapAdmissionController.DEFAULT_GC_SLOW_THRESHOLD),
+                    getDoubleConfig(ADMISSION_GC_PAUSE_THRESHOLD_KEY, HeapAdmissionController.DEFAULT_GC_PAUSE_THRESHOLD),
+                    getLongConfig(ADMISSION_MAX_DELAY_MS_KEY, HeapAdmissionController.DEFAULT_MAX_DELAY_MS),
+                    streamIdentifier, startedAt.getMillis());
+        }
         for(StreamComponent prov : this.providers.values()) {
             StreamsTask task = prov.createConnectedTask(getTimeout());
             task.setStreamConfig(this.streamConfig);
             StreamsTaskCounter counter = new StreamsTaskCounter(prov.getId(), streamIdentifier, startedAt.getMillis());
             task.setStreamsTaskCounter(counter);
+            ((StreamsProviderTask) task).setAdmissionController(this.admissionController);
             this.executor.submit(task);
             provTasks.put(prov.getId(), (StreamsProviderTask) task);
             if(this.useDeprecatedMonitors && prov.isOperationCountable() ) {
@@ -318,24 +614,287 @@ public class LocalStreamBuilder implements StreamBuilder {
     protected void setupComponentTasks(Map<String, List<StreamsTask>> streamsTasks) {
         for(StreamComponent comp : this.components.values()) {
             int tasks = comp.getNumTasks();
-            List<StreamsTask> compTasks = new LinkedList<StreamsTask>();
-            StreamsTaskCounter counter = new StreamsTaskCounter(comp.getId(), streamIdentifier, startedAt.getMillis());
+            List<StreamsTask> compTasks = new CopyOnWriteArrayList<StreamsTask>();
+            List<StreamsTaskCounter> counters = new ArrayList<StreamsTaskCounter>();
+            for(String id : comp.getFusedIds()) {
+                counters.add(new StreamsTaskCounter(id, streamIdentifier, startedAt.getMillis()));
+            }
+            this.componentCounters.put(comp.getId(), counters);
             for(int i=0; i < tasks; ++i) {
                 StreamsTask task = comp.createConnectedTask(getTimeout());
-                task.setStreamsTaskCounter(counter);
-                task.setStreamConfig(this.streamConfig);
-                this.futures.put(task, this.executor.submit(task));
+                startComponentTask(comp, task, counters, comp.getInBoundQueue(i));
                 compTasks.add(task);
                 if(this.useDeprecatedMonitors &&  comp.isOperationCountable() ) {
                     this.monitor.submit(new StatusCounterMonitorThread((DatumStatusCountable) comp.getOperation(), 10));
                     this.monitor.submit(new StatusCounterMonitorThread((DatumStatusCountable) task, 10));
                 }
-                this.monitor.submit(broadcastMonitor);
+                if(this.sharedRuntime == null) {
+                    //the runtime broadcasts the metrics of all of its streams
+                    this.monitor.submit(broadcastMonitor);
+                }
             }
             streamsTasks.put(comp.getId(), compTasks);
         }
     }
 
+    /**
+     * Connects a task of a processor or writer to its counters and submits it to the scheduler or the executor.
+     * @param comp component the task belongs to
+     * @param task task to start
+     * @param counters counters of the processors run by the task
+     * @param inQueue inbound queue read by the task
+     */
+    private void startComponentTask(StreamComponent comp, StreamsTask task, List<StreamsTaskCounter> counters, BlockingQueue<StreamsDatum> inQueue) {
+        if(counters.size() > 1) {
+            ((StreamsProcessorTask) task).setStreamsTaskCounters(counters);
+        } else {
+            task.setStreamsTaskCounter(counters.get(0));
+        }
+        task.setStreamConfig(this.streamConfig);
+        if(task instanceof StreamsPersistWriterTask && getIntConfig(LATENCY_SAMPLE_INTERVAL_KEY, 0) > 0) {
+            ((StreamsPersistWriterTask) task).setDatumLatencyCounter(getDatumLatencyCounter());
+        }
+        if(this.scheduler != null && task instanceof CooperativeStreamsTask && inQueue instanceof SignallingQueue) {
+            this.scheduler.submit((CooperativeStreamsTask) task, (SignallingQueue<StreamsDatum>) inQueue);
+        } else {
+            this.futures.put(task, this.executor.submit(task));
+        }
+    }
+
+    /**
+     * Adds a task to a running autoscaled component.
+     * @param comp autoscaled component
+     * @return true if a task was added, false if the inbound queue of the component has already ended
+     */
+    boolean addComponentTask(StreamComponent comp) {
+        StreamsTask task = comp.addConnectedTask(getTimeout());
+        if(task == null) {
+            return false;
+        }
+        startComponentTask(comp, task, this.componentCounters.get(comp.getId()), comp.getInBoundQueue(0));
+        this.tasks.get(comp.getId()).add(task);
+        return true;
+    }
+
+    /**
+     * Retires the most recently added active task of a running autoscaled component.  The task finishes its current
+     * batch before it stops.
+     * @param comp autoscaled component
+     * @return true if a task was retired
+     */
+    boolean retireComponentTask(StreamComponent comp) {
+        List<StreamsTask> active = comp.getActiveTasks();
+        if(active.size() < 2) {
+            return false;
+        }
+        StreamsTask task = active.get(active.size() - 1);
+        if(!comp.retireTask(task)) {
+            return false;
+        }
+        if(this.scheduler != null) {
+            this.scheduler.stopTask(task);
+        } else {
+            task.stopTask();
+        }
+        return true;
+    }
+
+    /**
+     * The end to end latency counter shared by the writers of the stream, registered the first time it is needed.
+     * @return latency counter of the stream
+     */
+    private DatumLatencyCounter getDatumLatencyCounter() {
+        if(this.latencyCounter == null) {
+            this.latencyCounter = new DatumLatencyCounter(streamIdentifier, startedAt.getMillis());
+        }
+        return this.latencyCounter;
+    }
+
+    /**
+     * Puts the datums left unacknowledged in the write ahead logs by a previous run back on the inbound queues.  Runs
+     * once the component tasks are consuming and before the providers start, so replayed datums precede new data.
+     * Upstream durable components may already be replaying into the same queues, so durable queues are always created
+     * with several producers.
+     * @throws InterruptedException if interrupted while waiting for space on an inbound queue
+     */
+    protected void replayWriteAheadLogs() throws InterruptedException {
+        for(StreamComponent comp : this.components.values()) {
+            if(comp.isDurable()) {
+                ((DurableQueue) comp.getInBoundQueue()).replay();
+            }
+        }
+    }
+
+    /**
+     * Fuses chains of processors connected one to one and running the same number of tasks, so that each chain is run
+     * by a single set of tasks that call the processors back to back.  The inbound queues of the fused processors are
+     * no longer used and are unregistered.  Each fused processor keeps reporting to its own
+     * {@link org.apache.streams.local.counters.StreamsTaskCounter}.
+     */
+    protected void fuseProcessorChains() {
+        boolean fused = true;
+        while(fused) {
+            fused = false;
+            for(StreamComponent comp : this.components.values()) {
+                if(comp.getUpStreamComponents().size() != 1) {
+                    continue;
+                }
+                StreamComponent parent = comp.getUpStreamComponents().iterator().next();
+                if(this.components.containsKey(parent.getId()) && parent.canFuse(comp) && getRateLimit(comp.getId()) == null &&
+                        !this.taskBounds.containsKey(comp.getId()) && !this.taskBounds.containsKey(parent.getId())) {
+                    LOGGER.info("Fusing processor {} into {}", comp.getId(), parent.getId());
+                    parent.fuse(comp);
+                    this.components.remove(comp.getId());
+                    this.totalTasks -= comp.getNumTasks();
+                    ComponentUtils.removeLocalMBean(String.format(ThroughputQueue.NAME_TEMPLATE, comp.getId(), streamIdentifier, startedAt.getMillis()));
+                    fused = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts a {@link org.apache.streams.local.queues.ThrottledQueue} in front of the inbound queue of every rate limited
+     * component.
+     */
+    protected void throttleComponents() {
+        for(String id : this.rateLimits.keySet()) {
+            if(this.providers.containsKey(id)) {
+                throw new InvalidStreamException("Cannot rate limit provider "+id+", only processors and writers can be rate limited");
+            } else if(!this.components.containsKey(id)) {
+                throw new InvalidStreamException("Cannot rate limit id, "+id+", because id does not exist.");
+            }
+        }
+        for(StreamComponent comp : this.components.values()) {
+            RateLimit limit = getRateLimit(comp.getId());
+            if(limit != null) {
+                comp.throttleInBoundQueue(new ThrottledQueue(comp.getInBoundQueue(), limit.datumsPerSecond, limit.burst,
+                        comp.getId(), streamIdentifier, startedAt.getMillis()));
+            }
+        }
+    }
+
+    /**
+     * Validates the autoscaled components and flags them as autoscaled, so that their tasks run clones of their
+     * processor or writer.
+     */
+    protected void autoscaleComponents() {
+        for(Map.Entry<String, TaskBounds> entry : this.taskBounds.entrySet()) {
+            String id = entry.getKey();
+            StreamComponent comp = this.components.get(id);
+            if(this.providers.containsKey(id)) {
+                throw new InvalidStreamException("Cannot autoscale provider "+id+", only processors and writers can be autoscaled");
+            } else if(comp == null) {
+                throw new InvalidStreamException("Cannot autoscale id, "+id+", because id does not exist.");
+            } else if(comp.isPartitioned()) {
+                throw new InvalidStreamException("Cannot autoscale partitioned component "+id);
+            } else if(comp.getOperation() instanceof StreamsWindowedProcessor) {
+                throw new InvalidStreamException("Cannot autoscale windowed component "+id);
+            } else if(comp.getNumTasks() < entry.getValue().minTasks || comp.getNumTasks() > entry.getValue().maxTasks) {
+                throw new InvalidStreamException("Component "+id+" is added with "+comp.getNumTasks()+" tasks, outside of its autoscale bounds");
+            }
+            comp.setAutoscaled(true);
+            //the tasks added to the component write to its downstream queues, and its tasks put end of stream markers
+            //back on its inbound queue for each other
+            useMultipleProducers(id);
+            for(StreamComponent downStream : comp.getDownStreamComponents()) {
+                useMultipleProducers(downStream.getId());
+            }
+        }
+    }
+
+    /**
+     * Turns the single producer ring buffer inbound queues of a component into multi producer queues.
+     * @param id id of the component
+     */
+    private void useMultipleProducers(String id) {
+        List<RingBufferThroughputQueue<StreamsDatum>> queues = this.singleProducerQueues.remove(id);
+        if(queues != null) {
+            for(RingBufferThroughputQueue<StreamsDatum> queue : queues) {
+                queue.useMultipleProducers();
+            }
+        }
+    }
+
+    /**
+     * Starts the {@link AutoScaler} of the autoscaled components, if there are any.
+     */
+    private void startAutoScaler() {
+        if(this.taskBounds.isEmpty()) {
+            return;
+        }
+        this.autoScaler = new AutoScaler(this,
+                getIntConfig(AUTOSCALE_STABILIZATION_INTERVALS_KEY, AutoScaler.DEFAULT_STABILIZATION_INTERVALS),
+                getDoubleConfig(AUTOSCALE_QUEUE_HIGH_WATERMARK_KEY, AutoScaler.DEFAULT_QUEUE_HIGH_WATERMARK),
+                getLongConfig(AUTOSCALE_WAIT_HIGH_MS_KEY, AutoScaler.DEFAULT_WAIT_HIGH_MS));
+        for(Map.Entry<String, TaskBounds> entry : this.taskBounds.entrySet()) {
+            StreamComponent comp = this.components.get(entry.getKey());
+            ThroughputQueueMXBean queue = this.queueMonitors.get(comp.getId());
+            if(queue == null) {
+                LOGGER.warn("Inbound queue of component {} does not report its throughput, not autoscaling it", comp.getId());
+                continue;
+            }
+            BlockingQueue<StreamsDatum> inQueue = comp.getInBoundQueue(0);
+            int capacity = inQueue.remainingCapacity() == Integer.MAX_VALUE ? -1 : inQueue.remainingCapacity() + inQueue.size();
+            this.autoScaler.addComponent(comp, queue, capacity, this.componentCounters.get(comp.getId()).get(0),
+                    entry.getValue().minTasks, entry.getValue().maxTasks);
+        }
+        long interval = getLongConfig(AUTOSCALE_INTERVAL_MS_KEY, DEFAULT_AUTOSCALE_INTERVAL_MS);
+        ScheduledExecutorService scheduledExecutor;
+        if(this.sharedRuntime != null) {
+            scheduledExecutor = this.sharedRuntime.getScheduledExecutor();
+        } else {
+            this.autoScalerExecutor = Executors.newSingleThreadScheduledExecutor();
+            scheduledExecutor = this.autoScalerExecutor;
+        }
+        this.autoScalerFuture = scheduledExecutor.scheduleWithFixedDelay(this.autoScaler, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the {@link AutoScaler}, waiting for a run in progress so that no task is added once the stream shuts down.
+     * @throws InterruptedException
+     */
+    private void stopAutoScaler() throws InterruptedException {
+        if(this.autoScaler == null) {
+            return;
+        }
+        this.autoScaler.stop();
+        this.autoScalerFuture.cancel(false);
+        if(this.autoScalerExecutor != null) {
+            this.autoScalerExecutor.shutdown();
+            this.autoScalerExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * The number of threads to reserve for the tasks added to autoscaled components
+     * @return number of tasks autoscaled components may run beyond the tasks they were added with
+     */
+    private int getAutoscaleHeadroom() {
+        int headroom = 0;
+        for(Map.Entry<String, TaskBounds> entry : this.taskBounds.entrySet()) {
+            StreamComponent comp = this.components.get(entry.getKey());
+            if(comp != null) {
+                headroom += Math.max(0, entry.getValue().maxTasks - comp.getNumTasks());
+            }
+        }
+        return headroom;
+    }
+
+    /**
+     * The rate limit of a component, set by {@link #setRateLimit(String, double, int)} or {@link #RATE_LIMIT_KEY}
+     * @param id id of the component
+     * @return rate limit of the component, or null if it is not rate limited
+     */
+    private RateLimit getRateLimit(String id) {
+        RateLimit limit = this.rateLimits.get(id);
+        if(limit == null && getDoubleConfig(RATE_LIMIT_KEY, 0) > 0) {
+            limit = new RateLimit(getDoubleConfig(RATE_LIMIT_KEY, 0), Math.max(1, getIntConfig(RATE_LIMIT_BURST_KEY, 1)));
+        }
+        return limit;
+    }
+
     /**
      * Shutsdown the running tasks in sudo depth first search kind of way. Checks that the upstream components have
      * finished running before shutting down. Waits till inbound queue is empty to shutdown.
@@ -358,16 +917,24 @@ public class LocalStreamBuilder implements StreamBuilder {
             }
             if(parentsShutDown) {
                 for(StreamsTask task : tasks) {
-                    task.stopTask();
-                    if(task.isWaiting()) {
-                        this.futures.get(task).cancel(true); // no data to process, interrupt block queue
+                    if(this.scheduler != null) {
+                        this.scheduler.stopTask(task);
+                    } else {
+                        task.stopTask();
+                        if(task.isWaiting()) {
+                            this.futures.get(task).cancel(true); // no data to process, interrupt block queue
+                        }
                     }
                 }
                 for(StreamsTask task : tasks) {
-                    int count = 0;
-                    while(count < 20 && task.isRunning()) {
-                        Thread.sleep(500);
-                        count++;
+                    if(task instanceof BaseStreamsTask) {
+                        ((BaseStreamsTask) task).awaitCompletion(10, TimeUnit.SECONDS);
+                    } else {
+                        int count = 0;
+                        while(count < 20 && task.isRunning()) {
+                            Thread.sleep(500);
+                            count++;
+                        }
                     }
                     if(task.isRunning()) {
                         LOGGER.warn("Task {} failed to terminate in allotted timeframe", task.toString());
@@ -423,6 +990,212 @@ public class LocalStreamBuilder implements StreamBuilder {
         }
     }
 
+    /**
+     * Creates the inbound queue of a component based on the {@link #QUEUE_TYPE_KEY} of the stream config. Ring buffer
+     * queues use the single producer variant when exactly one upstream task will write to them and only one task reads
+     * from them, since tasks reading the same queue put end of stream markers back on it for each other, see
+     * {@link #isSingleProducer(String...)}.  The queues of autoscaled components, and the queues they write to, are
+     * turned into multi producer queues when the stream starts.
+     * @param id id of the component the queue belongs to
+     * @param numTasks number of tasks that will read from the queue
+     * @param inBoundIds ids of the components that will write to the queue
+     * @return inbound queue for the component
+     */
+    private BlockingQueue<StreamsDatum> createInBoundQueue(String id, int numTasks, String... inBoundIds) {
+        return createQueue(id, id, isSingleProducer(inBoundIds) && numTasks == 1, readsFromProvider(inBoundIds));
+    }
+
+    /**
+     * Creates a {@link org.apache.streams.local.queues.PartitionedQueue} with a partition per task as the inbound queue
+     * of a component.  Partitions are registered under the component id suffixed with the partition index.  Since
+     * each partition has a single consumer, ring buffer partitions are single producer when exactly one upstream task
+     * writes to them, see {@link #isSingleProducer(String...)}.  Components with a single task get a regular inbound queue.
+     * @param id id of the component the queue belongs to
+     * @param numTasks number of tasks that will read from the queue
+     * @param keyExtractor extracts the key datums are routed by
+     * @param inBoundIds ids of the components that will write to the queue
+     * @return inbound queue for the component
+     */
+    private BlockingQueue<StreamsDatum> createPartitionedInBoundQueue(String id, int numTasks, StreamsKeyExtractor keyExtractor, String... inBoundIds) {
+        if(numTasks < 2 || keyExtractor == null) {
+            return createInBoundQueue(id, numTasks, inBoundIds);
+        }
+        boolean singleProducer = isSingleProducer(inBoundIds);
+        List<BlockingQueue<StreamsDatum>> partitions = new ArrayList<>(numTasks);
+        for(int i=0; i < numTasks; ++i) {
+            partitions.add(createQueue(id, id + "-" + i, singleProducer, readsFromProvider(inBoundIds)));
+        }
+        return new PartitionedQueue(partitions, keyExtractor);
+    }
+
+    /**
+     * Creates a queue of the configured {@link #QUEUE_TYPE_KEY}.  Spilling queues are only created for queues read from
+     * providers, the other queues of a spilling stream are linked queues so that the stream pushes back on its spilling
+     * queues instead of serializing every datum at every step.
+     * @param componentId id of the component the queue belongs to
+     * @param id id the queue is registered with
+     * @param singleProducer true if exactly one task writes to the queue
+     * @param fromProvider true if a provider writes to the queue
+     * @return queue
+     */
+    private BlockingQueue<StreamsDatum> createQueue(String componentId, String id, boolean singleProducer, boolean fromProvider) {
+        BlockingQueue<StreamsDatum> queue;
+        if(RING_BUFFER_QUEUE_TYPE.equals(getQueueType())) {
+            int capacity = this.maxQueueCapacity < 1 ? DEFAULT_QUEUE_SIZE : this.maxQueueCapacity;
+            RingBufferThroughputQueue<StreamsDatum> ringBuffer = new RingBufferThroughputQueue<>(capacity, singleProducer, id, streamIdentifier, startedAt.getMillis());
+            if(singleProducer) {
+                List<RingBufferThroughputQueue<StreamsDatum>> queues = this.singleProducerQueues.get(componentId);
+                if(queues == null) {
+                    queues = new ArrayList<>();
+                    this.singleProducerQueues.put(componentId, queues);
+                }
+                queues.add(ringBuffer);
+            }
+            queue = ringBuffer;
+        } else if(SPILLING_QUEUE_TYPE.equals(getQueueType()) && fromProvider) {
+            int capacity = this.maxQueueCapacity < 1 ? DEFAULT_QUEUE_SIZE : this.maxQueueCapacity;
+            SpillingThroughputQueue spillingQueue = new SpillingThroughputQueue(capacity, getSpillDirectory(),
+                    getIntConfig(SPILL_SEGMENT_BYTES_KEY, SpillingThroughputQueue.DEFAULT_SEGMENT_BYTES),
+                    getLongConfig(MAX_SPILL_BYTES_KEY, -1), id, streamIdentifier, startedAt.getMillis());
+            this.spillingQueues.add(spillingQueue);
+            queue = spillingQueue;
+        } else {
+            queue = new ThroughputQueue<StreamsDatum>(this.maxQueueCapacity, id, streamIdentifier, startedAt.getMillis());
+        }
+        if(queue instanceof ThroughputQueueMXBean) {
+            this.queueMonitors.put(id, (ThroughputQueueMXBean) queue);
+        }
+        if(isWorkStealing()) {
+            //consumers are scheduled when data is added to their queue
+            queue = new SignallingQueue<>(queue);
+        }
+        return queue;
+    }
+
+    /**
+     * Wraps the inbound queue of a component in a {@link org.apache.streams.local.queues.DurableQueue} logging to
+     * its own directory under {@link #WRITE_AHEAD_LOG_DIRECTORY_KEY}, if a write ahead log directory is configured.
+     * @param id id of the component the queue belongs to
+     * @param queue inbound queue of the component
+     * @return the logged queue, or the queue itself if write ahead logging is not configured
+     */
+    private BlockingQueue<StreamsDatum> makeDurable(String id, BlockingQueue<StreamsDatum> queue) {
+        if(!isDurable()) {
+            return queue;
+        }
+        if(this.writeAheadLogManager == null) {
+            this.writeAheadLogManager = new WriteAheadLogManager(new File(streamConfig.get(WRITE_AHEAD_LOG_DIRECTORY_KEY).toString()),
+                    getIntConfig(WRITE_AHEAD_LOG_SEGMENT_BYTES_KEY, WriteAheadLog.DEFAULT_SEGMENT_BYTES),
+                    getLongConfig(WRITE_AHEAD_LOG_SYNC_INTERVAL_MS_KEY, WriteAheadLogManager.DEFAULT_SYNC_INTERVAL_MS));
+        }
+        try {
+            return new DurableQueue(queue, this.writeAheadLogManager.open(id), this.writeAheadLogManager);
+        } catch (IOException ioe) {
+            throw new InvalidStreamException("Unable to open write ahead log for component "+id, ioe);
+        }
+    }
+
+    private boolean readsFromProvider(String... inBoundIds) {
+        for(String id : inBoundIds) {
+            if(this.providers.containsKey(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A queue has a single producer if exactly one upstream task writes to it from a single thread.  Push providers
+     * emit from any number of threads, and the write ahead log of a durable queue is replayed from the builder's
+     * thread while the upstream tasks are already running, so their queues always have several producers.
+     * @param inBoundIds ids of the components that will write to the queue
+     * @return true if a single thread will write to the queue
+     */
+    private boolean isSingleProducer(String... inBoundIds) {
+        if(countUpStreamTasks(inBoundIds) != 1 || isDurable()) {
+            return false;
+        }
+        for(String id : inBoundIds) {
+            if(this.providers.containsKey(id) && this.providers.get(id).getOperation() instanceof StreamsPushProvider) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isDurable() {
+        return streamConfig != null && streamConfig.get(WRITE_AHEAD_LOG_DIRECTORY_KEY) != null;
+    }
+
+    private int countUpStreamTasks(String... inBoundIds) {
+        int count = 0;
+        for(String id : inBoundIds) {
+            if(this.providers.containsKey(id)) {
+                ++count;
+            } else if(this.components.containsKey(id)) {
+                count += this.components.get(id).getNumTasks();
+            }
+        }
+        return count;
+    }
+
+    private boolean isWorkStealing() {
+        return this.sharedRuntime != null || streamConfig != null && streamConfig.get(EXECUTION_MODE_KEY) != null &&
+                WORK_STEALING_EXECUTION_MODE.equals(streamConfig.get(EXECUTION_MODE_KEY).toString());
+    }
+
+    private int getParallelism() {
+        if(streamConfig != null && streamConfig.get(PARALLELISM_KEY) instanceof Number) {
+            return ((Number) streamConfig.get(PARALLELISM_KEY)).intValue();
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private boolean isHeapAdmissionControl() {
+        return streamConfig != null && streamConfig.get(HEAP_ADMISSION_CONTROL_KEY) != null &&
+                Boolean.parseBoolean(streamConfig.get(HEAP_ADMISSION_CONTROL_KEY).toString());
+    }
+
+    private boolean isFuseProcessors() {
+        return streamConfig != null && streamConfig.get(FUSE_PROCESSORS_KEY) != null &&
+                Boolean.parseBoolean(streamConfig.get(FUSE_PROCESSORS_KEY).toString());
+    }
+
+    private File getSpillDirectory() {
+        if(streamConfig != null && streamConfig.get(SPILL_DIRECTORY_KEY) != null) {
+            return new File(streamConfig.get(SPILL_DIRECTORY_KEY).toString());
+        }
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    private int getIntConfig(String key, int defaultValue) {
+        if(streamConfig != null && streamConfig.get(key) instanceof Number) {
+            return ((Number) streamConfig.get(key)).intValue();
+        }
+        return defaultValue;
+    }
+
+    private long getLongConfig(String key, long defaultValue) {
+        if(streamConfig != null && streamConfig.get(key) instanceof Number) {
+            return ((Number) streamConfig.get(key)).longValue();
+        }
+        return defaultValue;
+    }
+
+    private double getDoubleConfig(String key, double defaultValue) {
+        if(streamConfig != null && streamConfig.get(key) instanceof Number) {
+            return ((Number) streamConfig.get(key)).doubleValue();
+        }
+        return defaultValue;
+    }
+
+    private String getQueueType() {
+        if(streamConfig != null && streamConfig.get(QUEUE_TYPE_KEY) != null) {
+            return streamConfig.get(QUEUE_TYPE_KEY).toString();
+        }
+        return LINKED_QUEUE_TYPE;
+    }
+
     private void validateId(String id) {
         if(this.providers.containsKey(id) || this.components.containsKey(id)) {
             throw new InvalidStreamException("Duplicate id. "+id+" is already assigned to another component");
@@ -447,4 +1220,25 @@ public class LocalStreamBuilder implements StreamBuilder {
         }
     }
 
-}
\ No newline at end of file
+    private static class RateLimit {
+
+        private final double datumsPerSecond;
+        private final int burst;
+
+        private RateLimit(double datumsPerSecond, int burst) {
+            this.datumsPerSecond = datumsPerSecond;
+            this.burst = burst;
+        }
+    }
+
+    private static class TaskBounds {
+
+        private final int minTasks;
+        private final int maxTasks;
+
+        private TaskBounds(int minTasks, int maxTasks) {
+            this.minTasks = minTasks;
+            this.maxTasks = maxTasks;
+        }
+    }
+}
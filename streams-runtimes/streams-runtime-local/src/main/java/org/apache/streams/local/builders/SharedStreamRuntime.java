@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.builders;
+
+import org.apache.streams.local.executors.WeightedFairExecutor;
+import org.apache.streams.monitoring.tasks.BroadcastMonitorThread;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads and monitoring shared by several {@link LocalStreamBuilder} streams running in the same JVM.  Streams built
+ * with a shared runtime run their processors and writers on one bounded {@link WeightedFairExecutor}, each stream
+ * through its own lane weighted by the {@link LocalStreamBuilder#SCHEDULING_WEIGHT_KEY} of its config, and only their
+ * providers own a thread.  One {@link org.apache.streams.monitoring.tasks.BroadcastMonitorThread} broadcasts the metrics
+ * of every attached stream.  The MBeans of a stream are told apart by the identifier and start time of the stream, and
+ * are unregistered when the stream detaches, so that finished streams do not accumulate in the MBean server.
+ */
+public class SharedStreamRuntime {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedStreamRuntime.class);
+
+    public static final String MBEAN_DOMAIN = "org.apache.streams.local";
+
+    private final WeightedFairExecutor workers;
+    private final Map<String, Object> config;
+    private final Map<String, WeightedFairExecutor.Lane> streams;
+    private ExecutorService monitor;
+    private BroadcastMonitorThread broadcastMonitor;
+    private ScheduledExecutorService scheduledExecutor;
+    private boolean isShutdown;
+
+    /**
+     * Creates a runtime with one worker thread per available processor
+     * @param config config of the shared monitoring thread
+     */
+    public SharedStreamRuntime(Map<String, Object> config) {
+        this(Runtime.getRuntime().availableProcessors(), config);
+    }
+
+    /**
+     *
+     * @param parallelism number of worker threads shared by the streams
+     * @param config config of the shared monitoring thread
+     */
+    public SharedStreamRuntime(int parallelism, Map<String, Object> config) {
+        this.workers = new WeightedFairExecutor(parallelism, "streams-shared-worker");
+        this.config = config;
+        this.streams = new HashMap<>();
+    }
+
+    /**
+     * Attaches a starting stream to the runtime.
+     * @param streamIdentifier identifier of the stream
+     * @param startedAt start time of the stream
+     * @param weight share of the worker time of the stream relative to the other busy streams
+     * @return lane to run the processors and writers of the stream on
+     */
+    protected synchronized WeightedFairExecutor.Lane attach(String streamIdentifier, long startedAt, int weight) {
+        if(this.isShutdown) {
+            throw new InvalidStreamException("Cannot attach stream "+streamIdentifier+" to a runtime that has shut down");
+        }
+        String key = getKey(streamIdentifier, startedAt);
+        if(this.streams.containsKey(key)) {
+            throw new InvalidStreamException("Stream "+streamIdentifier+" started at "+startedAt+" is already attached");
+        }
+        if(this.monitor == null) {
+            this.monitor = Executors.newSingleThreadExecutor();
+            this.broadcastMonitor = new BroadcastMonitorThread(this.config);
+            this.monitor.submit(this.broadcastMonitor);
+        }
+        WeightedFairExecutor.Lane lane = this.workers.newLane(key, Math.max(1, weight));
+        this.streams.put(key, lane);
+        LOGGER.info("Attached stream {} with weight {}, {} streams attached", streamIdentifier, weight, this.streams.size());
+        return lane;
+    }
+
+    /**
+     * Detaches a stream that has shut down and unregisters its MBeans.
+     * @param streamIdentifier identifier of the stream
+     * @param startedAt start time of the stream
+     */
+    protected synchronized void detach(String streamIdentifier, long startedAt) {
+        WeightedFairExecutor.Lane lane = this.streams.remove(getKey(streamIdentifier, startedAt));
+        if(lane == null) {
+            return;
+        }
+        lane.shutdownNow();
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        for(ObjectName name : getStreamMBeans(streamIdentifier, startedAt)) {
+            try {
+                mbs.unregisterMBean(name);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to unregister MXBean {} : {}", name, e);
+            }
+        }
+        LOGGER.info("Detached stream {}, {} streams attached", streamIdentifier, this.streams.size());
+    }
+
+    /**
+     * The names of the MBeans registered by a stream
+     * @param streamIdentifier identifier of the stream
+     * @param startedAt start time of the stream
+     * @return names of the MBeans of the stream
+     */
+    public Set<ObjectName> getStreamMBeans(String streamIdentifier, long startedAt) {
+        try {
+            ObjectName pattern = new ObjectName(MBEAN_DOMAIN+":identifier="+streamIdentifier+",startedAt="+startedAt+",*");
+            return ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null);
+        } catch (MalformedObjectNameException mone) {
+            throw new IllegalArgumentException("Invalid stream identifier "+streamIdentifier, mone);
+        }
+    }
+
+    /**
+     * A scheduled executor shared by the streams for periodic work, like autoscaling.
+     * @return scheduled executor of the runtime
+     */
+    protected synchronized ScheduledExecutorService getScheduledExecutor() {
+        if(this.scheduledExecutor == null) {
+            this.scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        }
+        return this.scheduledExecutor;
+    }
+
+    public int getParallelism() {
+        return this.workers.getParallelism();
+    }
+
+    /**
+     * The number of streams attached to the runtime
+     * @return number of attached streams
+     */
+    public synchronized int getAttachedStreams() {
+        return this.streams.size();
+    }
+
+    /**
+     * Stops the worker and monitoring threads.  Streams still attached are no longer run, so the runtime should only
+     * be shut down once its streams have stopped.
+     * @throws InterruptedException
+     */
+    public void shutdown() throws InterruptedException {
+        synchronized (this) {
+            if(this.isShutdown) {
+                return;
+            }
+            this.isShutdown = true;
+            if(!this.streams.isEmpty()) {
+                LOGGER.warn("Shutting down runtime with {} streams attached", this.streams.size());
+            }
+        }
+        this.workers.shutdown();
+        if(!this.workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            this.workers.shutdownNow();
+        }
+        if(this.scheduledExecutor != null) {
+            this.scheduledExecutor.shutdownNow();
+        }
+        if(this.monitor != null) {
+            this.broadcastMonitor.shutdown();
+            this.monitor.shutdown();
+            if(!this.monitor.awaitTermination(5, TimeUnit.SECONDS)) {
+                this.monitor.shutdownNow();
+            }
+        }
+    }
+
+    private String getKey(String streamIdentifier, long startedAt) {
+        return streamIdentifier + "@" + startedAt;
+    }
+}
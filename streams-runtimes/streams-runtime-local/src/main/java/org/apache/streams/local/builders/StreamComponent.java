@@ -20,6 +20,11 @@ package org.apache.streams.local.builders;
 
 import com.google.common.collect.Lists;
 import org.apache.streams.core.*;
+import org.apache.streams.local.queues.DurableQueue;
+import org.apache.streams.local.queues.PartitionedQueue;
+import org.apache.streams.local.queues.ThrottledQueue;
+import org.apache.streams.local.tasks.BaseStreamsTask;
+import org.apache.streams.local.tasks.EndOfStream;
 import org.apache.streams.local.tasks.StreamsPersistWriterTask;
 import org.apache.streams.local.tasks.StreamsProcessorTask;
 import org.apache.streams.local.tasks.StreamsProviderTask;
@@ -30,6 +35,7 @@ import org.joda.time.DateTime;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Stores the implementations of {@link org.apache.streams.core.StreamsOperation}, the StreamsOperations it is connected
@@ -46,13 +52,16 @@ public class StreamComponent {
     private BlockingQueue<StreamsDatum> inQueue;
     private StreamsProvider provider;
     private StreamsProcessor processor;
+    private List<StreamComponent> fused;
     private StreamsPersistWriter writer;
     private DateTime[] dateRange;
     private BigInteger sequence;
     private int numTasks = 1;
     private boolean perpetual;
+    private boolean autoscaled;
 
     private List<StreamsTask> tasks;
+    private EndOfStream endOfStream;
 
     private Map<String, Object> streamConfig;
 
@@ -135,7 +144,8 @@ public class StreamComponent {
     private void initializePrivateVariables() {
         this.inBound = new HashSet<StreamComponent>();
         this.outBound = new HashMap<StreamComponent, BlockingQueue<StreamsDatum>>();
-        this.tasks = Lists.newArrayList();
+        this.tasks = new CopyOnWriteArrayList<>();
+        this.fused = Lists.newArrayList();
     }
 
     /**
@@ -147,6 +157,64 @@ public class StreamComponent {
         this.outBound.put(component, queue);
     }
 
+    /**
+     * Replaces this component's inbound queue in the outbound queues of its upstream components with a
+     * {@link org.apache.streams.local.queues.ThrottledQueue} wrapping it, so the upstream tasks are held to the rate
+     * limit while this component's tasks keep reading the inbound queue directly.  Must be called before the tasks of
+     * the upstream components are created.
+     * @param throttled throttled queue wrapping the inbound queue of this component
+     */
+    public void throttleInBoundQueue(ThrottledQueue throttled) {
+        for(StreamComponent upStream : this.inBound) {
+            upStream.outBound.put(this, throttled);
+        }
+    }
+
+    /**
+     * Fuses a downstream processor into this component, so that a single task calls both processors back to back
+     * instead of passing datums through the downstream component's inbound queue.  This component takes over the
+     * outbound queues of the downstream component, and the components downstream of it are reconnected to this one.
+     * Only valid when this component is a processor whose only child is the downstream processor, the downstream
+     * processor's only parent is this component, and both run the same number of tasks.  Processors reading a
+     * partitioned or write ahead logged queue are never fused, since the queue would be bypassed.
+     * @param downStream processor component to fuse into this component
+     */
+    protected void fuse(StreamComponent downStream) {
+        this.fused.add(downStream);
+        this.fused.addAll(downStream.fused);
+        this.outBound.clear();
+        for(Map.Entry<StreamComponent, BlockingQueue<StreamsDatum>> entry : downStream.outBound.entrySet()) {
+            this.outBound.put(entry.getKey(), entry.getValue());
+            entry.getKey().inBound.remove(downStream);
+            entry.getKey().inBound.add(this);
+        }
+    }
+
+    /**
+     * Whether a downstream component can be fused into this component, see {@link #fuse(StreamComponent)}
+     * @param downStream component immediately downstream of this component
+     * @return true if the downstream component can be fused into this component
+     */
+    protected boolean canFuse(StreamComponent downStream) {
+        return this.processor != null && downStream.processor != null &&
+                this.numTasks == downStream.numTasks && !downStream.isPartitioned() && !downStream.isDurable() &&
+                this.outBound.size() == 1 && this.outBound.containsKey(downStream) &&
+                downStream.inBound.size() == 1 && downStream.inBound.contains(this);
+    }
+
+    /**
+     * The ids of the processors run by the tasks of this component, in the order they are called.  Contains more than
+     * this component's id when downstream processors have been fused into it.
+     * @return ids of the processors run by this component
+     */
+    public List<String> getFusedIds() {
+        List<String> ids = Lists.newArrayList(this.id);
+        for(StreamComponent comp : this.fused) {
+            ids.add(comp.id);
+        }
+        return ids;
+    }
+
     /**
      * Add a component that supplies data through the inbound queue.
      * @param component that supplies data through the inbound queue
@@ -179,6 +247,40 @@ public class StreamComponent {
         return this.inQueue;
     }
 
+    /**
+     * The inbound queue read by one of the tasks of this component.  When the inbound queue is a
+     * {@link org.apache.streams.local.queues.PartitionedQueue} every task reads its own partition, otherwise the tasks
+     * share the inbound queue.
+     * @param task index of the task
+     * @return inbound queue of the task
+     */
+    public BlockingQueue<StreamsDatum> getInBoundQueue(int task) {
+        BlockingQueue<StreamsDatum> queue = isDurable() ? ((DurableQueue) this.inQueue).getDelegate() : this.inQueue;
+        if(queue instanceof PartitionedQueue) {
+            return ((PartitionedQueue) queue).getPartition(task);
+        }
+        return queue;
+    }
+
+    /**
+     * Whether the inbound queue of this component routes datums to its tasks by key
+     * @return true if the inbound queue is a {@link org.apache.streams.local.queues.PartitionedQueue}
+     */
+    public boolean isPartitioned() {
+        if(isDurable()) {
+            return ((DurableQueue) this.inQueue).getDelegate() instanceof PartitionedQueue;
+        }
+        return this.inQueue instanceof PartitionedQueue;
+    }
+
+    /**
+     * Whether the datums added to the inbound queue of this component are written to a write ahead log
+     * @return true if the inbound queue is a {@link org.apache.streams.local.queues.DurableQueue}
+     */
+    public boolean isDurable() {
+        return this.inQueue instanceof DurableQueue;
+    }
+
     /**
      * The number of tasks this to run this component
      * @return
@@ -197,27 +299,28 @@ public class StreamComponent {
     public StreamsTask createConnectedTask(int timeout) {
         StreamsTask task;
         if(this.processor != null) {
-            if(this.numTasks > 1) {
-                task =  new StreamsProcessorTask((StreamsProcessor)SerializationUtil.cloneBySerialization(this.processor), streamConfig);
-                task.addInputQueue(this.inQueue);
-                for(BlockingQueue<StreamsDatum> q : this.outBound.values()) {
-                    task.addOutputQueue(q);
-                }
-            } else {
-                task = new StreamsProcessorTask(this.processor, streamConfig);
-                task.addInputQueue(this.inQueue);
-                for(BlockingQueue<StreamsDatum> q : this.outBound.values()) {
-                    task.addOutputQueue(q);
+            List<StreamsProcessor> processors = Lists.newArrayList(this.processor);
+            for(StreamComponent comp : this.fused) {
+                processors.add(comp.processor);
+            }
+            if(this.numTasks > 1 || this.autoscaled) {
+                for(int i=0; i < processors.size(); ++i) {
+                    processors.set(i, (StreamsProcessor)SerializationUtil.cloneBySerialization(processors.get(i)));
                 }
             }
+            task = new StreamsProcessorTask(processors, streamConfig);
+            task.addInputQueue(getInBoundQueue(this.tasks.size()));
+            for(BlockingQueue<StreamsDatum> q : this.outBound.values()) {
+                task.addOutputQueue(q);
+            }
         }
         else if(this.writer != null) {
-            if(this.numTasks > 1) {
+            if(this.numTasks > 1 || this.autoscaled) {
                 task = new StreamsPersistWriterTask((StreamsPersistWriter) SerializationUtil.cloneBySerialization(this.writer), streamConfig);
-                task.addInputQueue(this.inQueue);
+                task.addInputQueue(getInBoundQueue(this.tasks.size()));
             } else {
                 task = new StreamsPersistWriterTask(this.writer, streamConfig);
-                task.addInputQueue(this.inQueue);
+                task.addInputQueue(getInBoundQueue(this.tasks.size()));
             }
         }
         else if(this.provider != null) {
@@ -246,12 +349,143 @@ public class StreamComponent {
         }
 
         if(task != null) {
+            if(task instanceof BaseStreamsTask) {
+                ((BaseStreamsTask) task).setComponentIds(getFusedIds());
+                ((BaseStreamsTask) task).setEmitEndOfStream(true);
+                if(this.inQueue != null) {
+                    ((BaseStreamsTask) task).setEndOfStream(getEndOfStream());
+                }
+                if(isDurable()) {
+                    ((BaseStreamsTask) task).setDurableInQueue((DurableQueue) this.inQueue);
+                }
+            }
             tasks.add(task);
         }
 
         return task;
     }
 
+    /**
+     * The {@link org.apache.streams.local.tasks.EndOfStream} of a task of this component, which expects one end of
+     * stream marker from every task of the upstream components.  Tasks sharing the inbound queue share the
+     * EndOfStream, while tasks reading their own partition each have their own.
+     * @return end of stream of the next task of this component
+     */
+    private synchronized EndOfStream getEndOfStream() {
+        int producers = 0;
+        for(StreamComponent upStream : this.inBound) {
+            producers += upStream.getNumTasks();
+        }
+        if(isPartitioned()) {
+            return new EndOfStream(producers, 1);
+        }
+        if(this.endOfStream == null) {
+            this.endOfStream = new EndOfStream(producers, this.numTasks);
+        }
+        return this.endOfStream;
+    }
+
+    /**
+     * Whether the number of tasks of this component is adjusted while the stream runs.  The tasks of an autoscaled
+     * component always run clones of its processor or writer, since tasks can be added after the first one has started.
+     * @param autoscaled true if tasks are added and retired while the stream runs
+     */
+    protected void setAutoscaled(boolean autoscaled) {
+        this.autoscaled = autoscaled;
+    }
+
+    public boolean isAutoscaled() {
+        return this.autoscaled;
+    }
+
+    /**
+     * Creates a connected task while the stream is running, see {@link #createConnectedTask(int)}.  The end of stream
+     * of this component counts the task as a consumer, and the end of streams of the downstream components expect a
+     * marker from it.  Fails once the inbound queue of this component has ended, in which case the downstream components
+     * are handed the marker of the task that was never created.
+     * @param timeout The timeout to use in milliseconds for any tasks that support configurable timeout
+     * @return StreamsTask for this component, or null if the inbound queue of this component has ended
+     */
+    protected synchronized StreamsTask addConnectedTask(int timeout) {
+        if(isPartitioned() || this.inQueue == null) {
+            throw new InvalidStreamException("Cannot add tasks to component "+this.id+" while the stream is running");
+        }
+        if(!getEndOfStream().addConsumer()) {
+            return null;
+        }
+        boolean added = true;
+        for(StreamComponent downStream : this.outBound.keySet()) {
+            for(EndOfStream downStreamEnd : downStream.getEndOfStreams()) {
+                added = downStreamEnd.addProducer() && added;
+            }
+        }
+        if(!added) {
+            this.endOfStream.removeConsumer();
+            for(BlockingQueue<StreamsDatum> queue : this.outBound.values()) {
+                try {
+                    queue.put(EndOfStream.MARKER);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return null;
+        }
+        return createConnectedTask(timeout);
+    }
+
+    /**
+     * Retires a running task of this component.  The task is flagged as retired and no longer counted as a consumer of
+     * the inbound queue, then stopped.  It finishes its current batch and puts its end of stream marker on the outbound
+     * queues, like any task that has finished.
+     * @param task running task of this component
+     * @return true if the task was retired, false if it is not a running task of this component
+     */
+    protected synchronized boolean retireTask(StreamsTask task) {
+        if(!(task instanceof BaseStreamsTask) || !this.tasks.contains(task) || ((BaseStreamsTask) task).isRetired() || !task.isRunning()) {
+            return false;
+        }
+        ((BaseStreamsTask) task).retire();
+        getEndOfStream().removeConsumer();
+        return true;
+    }
+
+    /**
+     * The tasks of this component that are running and have not been retired
+     * @return active tasks of this component
+     */
+    public List<StreamsTask> getActiveTasks() {
+        List<StreamsTask> active = Lists.newArrayList();
+        for(StreamsTask task : this.tasks) {
+            if(task.isRunning() && !(task instanceof BaseStreamsTask && ((BaseStreamsTask) task).isRetired())) {
+                active.add(task);
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Whether every upstream task of the tasks sharing the inbound queue of this component has sent its end of stream
+     * marker
+     * @return true once the inbound queue of this component has ended
+     */
+    public synchronized boolean hasEnded() {
+        return this.endOfStream != null && this.endOfStream.hasEnded();
+    }
+
+    /**
+     * The distinct end of streams of the tasks of this component.  Tasks sharing the inbound queue share one.
+     * @return end of streams of the tasks of this component
+     */
+    private Set<EndOfStream> getEndOfStreams() {
+        Set<EndOfStream> ends = Collections.newSetFromMap(new IdentityHashMap<EndOfStream, Boolean>());
+        for(StreamsTask task : this.tasks) {
+            if(task instanceof BaseStreamsTask && ((BaseStreamsTask) task).getEndOfStream() != null) {
+                ends.add(((BaseStreamsTask) task).getEndOfStream());
+            }
+        }
+        return ends;
+    }
+
     public List<StreamsTask> getStreamsTasks() {
         return this.tasks;
     }
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.streams.local.tasks.DatumTrace;
+import org.apache.streams.util.ComponentUtils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * End to end latency of the sampled datums of a stream, from being read by a provider to being written by a writer.
+ * Keeps one {@link org.apache.streams.local.counters.LatencyHistogram} for the whole stream and one per path of
+ * components, so the pipelines that miss their freshness target stand out.  See
+ * {@link org.apache.streams.local.tasks.DatumTrace}.
+ */
+@ThreadSafe
+public class DatumLatencyCounter implements DatumLatencyCounterMXBean {
+
+    public static final String NAME_TEMPLATE = "org.apache.streams.local:type=DatumLatencyCounter,identifier=%s,startedAt=%s";
+
+    private final LatencyHistogram latencies;
+    private final ConcurrentMap<String, LatencyHistogram> pathLatencies;
+
+    /**
+     * Creates an unregistered counter
+     */
+    public DatumLatencyCounter() {
+        this.latencies = new LatencyHistogram();
+        this.pathLatencies = new ConcurrentHashMap<>();
+    }
+
+    /**
+     *
+     * @param streamId
+     * @param startedAt
+     */
+    public DatumLatencyCounter(String streamId, long startedAt) {
+        this();
+        ComponentUtils.registerLocalMBean(String.format(NAME_TEMPLATE, streamId, startedAt), this);
+    }
+
+    /**
+     * Records the latency of a sampled datum that has been written
+     * @param trace trace of the datum, including the writer in its path
+     */
+    public void record(DatumTrace trace) {
+        record(trace.getPath(), trace.getLatencyNanos());
+    }
+
+    /**
+     * Records the latency of a sampled datum that has been written
+     * @param path components the datum passed through
+     * @param latencyNanos time since the datum was read by the provider in nanoseconds
+     */
+    public void record(String path, long latencyNanos) {
+        this.latencies.record(latencyNanos);
+        LatencyHistogram histogram = this.pathLatencies.get(path);
+        if(histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = this.pathLatencies.putIfAbsent(path, created);
+            if(histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(latencyNanos);
+    }
+
+    @Override
+    public long getNumSampled() {
+        return this.latencies.getCount();
+    }
+
+    @Override
+    public double getP50Latency() {
+        return this.latencies.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP90Latency() {
+        return this.latencies.getPercentileMillis(90);
+    }
+
+    @Override
+    public double getP99Latency() {
+        return this.latencies.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getP999Latency() {
+        return this.latencies.getPercentileMillis(99.9);
+    }
+
+    @Override
+    public Map<String, Long> getPathNumSampled() {
+        Map<String, Long> counts = new TreeMap<>();
+        for(Map.Entry<String, LatencyHistogram> path : this.pathLatencies.entrySet()) {
+            counts.put(path.getKey(), path.getValue().getCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getPathP50Latency() {
+        return getPathPercentiles(50);
+    }
+
+    @Override
+    public Map<String, Double> getPathP90Latency() {
+        return getPathPercentiles(90);
+    }
+
+    @Override
+    public Map<String, Double> getPathP99Latency() {
+        return getPathPercentiles(99);
+    }
+
+    @Override
+    public Map<String, Double> getPathP999Latency() {
+        return getPathPercentiles(99.9);
+    }
+
+    private Map<String, Double> getPathPercentiles(double percentile) {
+        Map<String, Double> percentiles = new TreeMap<>();
+        for(Map.Entry<String, LatencyHistogram> path : this.pathLatencies.entrySet()) {
+            percentiles.put(path.getKey(), path.getValue().getPercentileMillis(percentile));
+        }
+        return percentiles;
+    }
+}
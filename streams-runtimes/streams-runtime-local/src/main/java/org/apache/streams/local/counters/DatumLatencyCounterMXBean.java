@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+import java.util.Map;
+
+/**
+ *
+ */
+public interface DatumLatencyCounterMXBean {
+
+    /**
+     * Get the number of sampled {@link org.apache.streams.core.StreamsDatum}s written
+     * @return number of sampled datums written
+     */
+    public long getNumSampled();
+
+    /**
+     * Returns the median time in milliseconds from a datum being read by a provider to it being written.
+     * @return
+     */
+    public double getP50Latency();
+
+    /**
+     * Returns the 90th percentile of the time in milliseconds from a datum being read by a provider to it being written.
+     * @return
+     */
+    public double getP90Latency();
+
+    /**
+     * Returns the 99th percentile of the time in milliseconds from a datum being read by a provider to it being written.
+     * @return
+     */
+    public double getP99Latency();
+
+    /**
+     * Returns the 99.9th percentile of the time in milliseconds from a datum being read by a provider to it being written.
+     * @return
+     */
+    public double getP999Latency();
+
+    /**
+     * Get the number of sampled datums written, by the path of components they passed through
+     * @return number of sampled datums per path
+     */
+    public Map<String, Long> getPathNumSampled();
+
+    /**
+     * Returns the median latency in milliseconds by path
+     * @return
+     */
+    public Map<String, Double> getPathP50Latency();
+
+    /**
+     * Returns the 90th percentile of the latency in milliseconds by path
+     * @return
+     */
+    public Map<String, Double> getPathP90Latency();
+
+    /**
+     * Returns the 99th percentile of the latency in milliseconds by path
+     * @return
+     */
+    public Map<String, Double> getPathP99Latency();
+
+    /**
+     * Returns the 99.9th percentile of the latency in milliseconds by path
+     * @return
+     */
+    public Map<String, Double> getPathP999Latency();
+
+}
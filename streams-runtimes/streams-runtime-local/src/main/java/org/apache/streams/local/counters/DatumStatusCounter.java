@@ -25,10 +25,10 @@ import org.slf4j.LoggerFactory;
 
 import javax.management.*;
 import java.lang.management.ManagementFactory;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Counts are kept in {@link org.apache.streams.local.counters.StripedCounter}s, so the tasks of a stream update them
+ * without contending on a single value.
  */
 @ThreadSafe
 public class DatumStatusCounter implements DatumStatusCounterMXBean{
@@ -36,16 +36,16 @@ public class DatumStatusCounter implements DatumStatusCounterMXBean{
     public static final String NAME_TEMPLATE = "org.apache.streams.local:type=DatumCounter,name=%s,identifier=%s,startedAt=%s";
     private static final Logger LOGGER = LoggerFactory.getLogger(DatumStatusCounter.class);
 
-    private AtomicLong failed;
-    private AtomicLong passed;
+    private StripedCounter failed;
+    private StripedCounter passed;
 
     public DatumStatusCounter(String id) {
         this(id, LocalStreamBuilder.DEFAULT_STREAM_IDENTIFIER, -1);
     }
 
     public DatumStatusCounter(String id, String streamIdentifier, long startedAt) {
-        this.failed = new AtomicLong(0);
-        this.passed = new AtomicLong(0);
+        this.failed = new StripedCounter();
+        this.passed = new StripedCounter();
         ComponentUtils.registerLocalMBean(String.format(NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
     }
 
@@ -54,7 +54,7 @@ public class DatumStatusCounter implements DatumStatusCounterMXBean{
     }
 
     public void incrementFailedCount(long delta) {
-        this.failed.addAndGet(delta);
+        this.failed.add(delta);
     }
 
     public void incrementPassedCount() {
@@ -62,14 +62,14 @@ public class DatumStatusCounter implements DatumStatusCounterMXBean{
     }
 
     public void incrementPassedCount(long delta) {
-        this.passed.addAndGet(delta);
+        this.passed.add(delta);
     }
 
 
     @Override
     public double getFailRate() {
-        double failed = this.failed.get();
-        double passed = this.passed.get();
+        double failed = this.failed.sum();
+        double passed = this.passed.sum();
         if(failed == 0.0 && passed == 0) {
             return 0.0;
         }
@@ -78,11 +78,11 @@ public class DatumStatusCounter implements DatumStatusCounterMXBean{
 
     @Override
     public long getNumFailed() {
-        return this.failed.get();
+        return this.failed.sum();
     }
 
     @Override
     public long getNumPassed() {
-        return this.passed.get();
+        return this.passed.sum();
     }
 }
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size histogram of latencies in nanoseconds.  Values below 128ns are counted exactly, larger values are counted
+ * in buckets that split every power of two into 64 sub buckets, so a recorded value is reported with a relative error
+ * below 1.6%.  Values above {@link #MAX_TRACKABLE_NANOS} are counted in the highest bucket.
+ * <p/>
+ * Recording a value is an atomic increment of its bucket and of a {@link org.apache.streams.local.counters.StripedCounter}
+ * and never allocates, so the histogram can be updated for every datum by any number of threads.  Percentiles are read from a snapshot of the counts that is not atomic with concurrent
+ * updates, which only skews them by the values recorded while the snapshot is taken.
+ */
+@ThreadSafe
+public class LatencyHistogram {
+
+    public static final long MAX_TRACKABLE_NANOS = TimeUnit.SECONDS.toNanos(1000);
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS << 1;
+    private static final int MAX_EXPONENT = 63 - Long.numberOfLeadingZeros(MAX_TRACKABLE_NANOS);
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final StripedCounter total;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.total = new StripedCounter();
+    }
+
+    /**
+     * Records a latency
+     * @param nanos latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        record(nanos, 1);
+    }
+
+    /**
+     * Records the same latency several times, for example the average latency of every datum in a batch
+     * @param nanos latency in nanoseconds, negative values are recorded as 0
+     * @param count number of times to record the latency
+     */
+    public void record(long nanos, long count) {
+        if(count <= 0) {
+            return;
+        }
+        this.counts.addAndGet(indexOf(nanos), count);
+        this.total.add(count);
+    }
+
+    /**
+     * Number of latencies recorded
+     * @return number of latencies recorded
+     */
+    public long getCount() {
+        return this.total.sum();
+    }
+
+    /**
+     * The latency at or below which the given share of the recorded latencies fall, reported as the highest value of
+     * the bucket it was counted in.
+     * @param percentile percentile between 0 and 100
+     * @return latency in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long recorded = 0;
+        for(int i=0; i < BUCKETS; ++i) {
+            snapshot[i] = this.counts.get(i);
+            recorded += snapshot[i];
+        }
+        if(recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * recorded));
+        long seen = 0;
+        for(int i=0; i < BUCKETS; ++i) {
+            seen += snapshot[i];
+            if(seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    /**
+     * See {@link #getPercentile(double)}
+     * @param percentile percentile between 0 and 100
+     * @return latency in milliseconds
+     */
+    public double getPercentileMillis(double percentile) {
+        return getPercentile(percentile) / 1000000.0;
+    }
+
+    static int indexOf(long nanos) {
+        if(nanos < LINEAR_BUCKETS) {
+            return nanos < 0 ? 0 : (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if(exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (nanos >>> shift) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if(index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
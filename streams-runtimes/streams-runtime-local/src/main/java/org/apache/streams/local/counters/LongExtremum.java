@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The highest or lowest value seen, updated with compare and set instead of a lock.  Once the extremum has settled
+ * almost every update is a single volatile read, as only values that replace the extremum are written.
+ */
+@ThreadSafe
+public class LongExtremum {
+
+    private final AtomicLong value;
+    private final boolean max;
+
+    private LongExtremum(long initialValue, boolean max) {
+        this.value = new AtomicLong(initialValue);
+        this.max = max;
+    }
+
+    /**
+     * @param initialValue value reported until a higher value is seen
+     * @return a new extremum that keeps the highest value
+     */
+    public static LongExtremum max(long initialValue) {
+        return new LongExtremum(initialValue, true);
+    }
+
+    /**
+     * @param initialValue value reported until a lower value is seen
+     * @return a new extremum that keeps the lowest value
+     */
+    public static LongExtremum min(long initialValue) {
+        return new LongExtremum(initialValue, false);
+    }
+
+    /**
+     * Replaces the extremum if the value is beyond it
+     * @param candidate value seen
+     * @return true if the value replaced the extremum
+     */
+    public boolean update(long candidate) {
+        long current = this.value.get();
+        while(isBeyond(candidate, current)) {
+            if(this.value.compareAndSet(current, candidate)) {
+                return true;
+            }
+            current = this.value.get();
+        }
+        return false;
+    }
+
+    public long get() {
+        return this.value.get();
+    }
+
+    private boolean isBeyond(long candidate, long current) {
+        return this.max ? candidate > current : candidate < current;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
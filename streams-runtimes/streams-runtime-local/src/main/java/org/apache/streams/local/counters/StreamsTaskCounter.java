@@ -17,7 +17,6 @@
  */
 package org.apache.streams.local.counters;
 
-import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 import org.apache.streams.local.builders.LocalStreamBuilder;
 import org.apache.streams.util.ComponentUtils;
@@ -27,10 +26,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.management.*;
 import java.lang.management.ManagementFactory;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Counts are kept in {@link org.apache.streams.local.counters.StripedCounter}s and the max time in a
+ * {@link org.apache.streams.local.counters.LongExtremum}, so the tasks of a component update it without contending
+ * on a lock or a single value.
  */
 @ThreadSafe
 public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
@@ -38,12 +38,12 @@ public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
     public static final String NAME_TEMPLATE = "org.apache.streams.local:type=StreamsTaskCounter,name=%s,identifier=%s,startedAt=%s";
     private static final Logger LOGGER = LoggerFactory.getLogger(StreamsTaskCounter.class);
 
-    private AtomicLong emitted;
-    private AtomicLong received;
-    private AtomicLong errors;
-    private AtomicLong totalTime;
-    @GuardedBy("this")
-    private volatile long maxTime;
+    private StripedCounter emitted;
+    private StripedCounter received;
+    private StripedCounter errors;
+    private StripedCounter totalTime;
+    private LongExtremum maxTime;
+    private LatencyHistogram times;
 
     /**
      *
@@ -58,11 +58,12 @@ public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
      * @param id
      */
     public StreamsTaskCounter(String id, String streamId, long startedAt) {
-        this.emitted = new AtomicLong(0);
-        this.received = new AtomicLong(0);
-        this.errors = new AtomicLong(0);
-        this.totalTime = new AtomicLong(0);
-        this.maxTime = -1;
+        this.emitted = new StripedCounter();
+        this.received = new StripedCounter();
+        this.errors = new StripedCounter();
+        this.totalTime = new StripedCounter();
+        this.maxTime = LongExtremum.max(-1);
+        this.times = new LatencyHistogram();
         ComponentUtils.registerLocalMBean(String.format(NAME_TEMPLATE, id, streamId, startedAt), this);
     }
 
@@ -78,7 +79,7 @@ public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
      * @param delta
      */
     public void incrementEmittedCount(long delta) {
-        this.emitted.addAndGet(delta);
+        this.emitted.add(delta);
     }
 
     /**
@@ -93,7 +94,7 @@ public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
      * @param delta
      */
     public void incrementErrorCount(long delta) {
-        this.errors.addAndGet(delta);
+        this.errors.add(delta);
     }
 
     /**
@@ -108,7 +109,7 @@ public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
      * @param delta
      */
     public void incrementReceivedCount(long delta) {
-        this.received.addAndGet(delta);
+        this.received.add(delta);
     }
 
     /**
@@ -116,52 +117,106 @@ public class StreamsTaskCounter implements StreamsTaskCounterMXBean {
      * @param processTime
      */
     public void addTime(long processTime) {
-        synchronized (this) {
-            if(processTime > this.maxTime) {
-                this.maxTime = processTime;
-            }
-        }
-        this.totalTime.addAndGet(processTime);
+        this.maxTime.update(processTime);
+        this.totalTime.add(processTime);
+    }
+
+    /**
+     * Add the time it takes to process a batch of datums in milliseconds
+     * @param batchTime total time to process the batch
+     * @param maxTime longest time taken by a single datum in the batch
+     */
+    public void addBatchTime(long batchTime, long maxTime) {
+        this.maxTime.update(maxTime);
+        this.totalTime.add(batchTime);
+    }
+
+    /**
+     * Record the time it takes to process a single datum in nanoseconds.  Only feeds the percentiles, the total and max
+     * time are updated by {@link #addTime(long)} and {@link #addBatchTime(long, long)}.
+     * @param processNanos
+     */
+    public void addNanoTime(long processNanos) {
+        this.times.record(processNanos);
+    }
+
+    /**
+     * Record the same processing time in nanoseconds for several datums, for example the average time of the datums
+     * of a batch processed in a single call.
+     * @param processNanos time to process one datum
+     * @param count number of datums
+     */
+    public void addNanoTime(long processNanos, long count) {
+        this.times.record(processNanos, count);
+    }
+
+    /**
+     * The total time spent processing datums in milliseconds, summed over every task reporting to this counter
+     * @return total processing time in milliseconds
+     */
+    public long getTotalTime() {
+        return this.totalTime.sum();
     }
 
     @Override
     public double getErrorRate() {
-        if(this.received.get() == 0) {
+        long rec = this.received.sum();
+        if(rec == 0) {
             return 0.0;
         }
-        return (double) this.errors.get() / (double) this.received.get();
+        return (double) this.errors.sum() / (double) rec;
     }
 
     @Override
     public long getNumEmitted() {
-        return this.emitted.get();
+        return this.emitted.sum();
     }
 
     @Override
     public long getNumReceived() {
-        return this.received.get();
+        return this.received.sum();
     }
 
     @Override
     public long getNumUnhandledErrors() {
-        return this.errors.get();
+        return this.errors.sum();
     }
 
     @Override
     public double getAvgTime() {
-        long rec = this.received.get();
-        long emit = this.emitted.get();
+        long rec = this.received.sum();
+        long emit = this.emitted.sum();
         if(rec == 0 && emit == 0 ) {
             return 0.0;
         } else if( rec == 0) { //provider instance
-            return this.totalTime.get() / (double) emit;
+            return this.totalTime.sum() / (double) emit;
         } else {
-            return this.totalTime.get() / ((double) this.received.get() - this.errors.get());
+            return this.totalTime.sum() / ((double) rec - this.errors.sum());
         }
     }
 
     @Override
     public long getMaxTime() {
-        return this.maxTime;
+        return this.maxTime.get();
+    }
+
+    @Override
+    public double getP50Time() {
+        return this.times.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP90Time() {
+        return this.times.getPercentileMillis(90);
+    }
+
+    @Override
+    public double getP99Time() {
+        return this.times.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getP999Time() {
+        return this.times.getPercentileMillis(99.9);
     }
 }
@@ -60,4 +60,28 @@ public interface StreamsTaskCounterMXBean {
      */
     public long getMaxTime();
 
+    /**
+     * Returns the median time in milliseconds, with nanosecond resolution, it takes the task to process a datum.
+     * @return
+     */
+    public double getP50Time();
+
+    /**
+     * Returns the 90th percentile of the time in milliseconds it takes the task to process a datum.
+     * @return
+     */
+    public double getP90Time();
+
+    /**
+     * Returns the 99th percentile of the time in milliseconds it takes the task to process a datum.
+     * @return
+     */
+    public double getP99Time();
+
+    /**
+     * Returns the 99.9th percentile of the time in milliseconds it takes the task to process a datum.
+     * @return
+     */
+    public double getP999Time();
+
 }
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads its updates over several cells, each on its own cache line, so threads updating it at the
+ * same time do not contend on a single value.  A thread always updates the cell picked by its thread id, and the
+ * number of cells is twice the number of processors, so threads running at the same time rarely share a cell.
+ * <p/>
+ * Reads sum the cells and are not atomic with concurrent updates, which only skews them by the updates made while the
+ * cells are summed.  Updates are cheap and reads are comparatively expensive, which suits counters that are updated
+ * for every datum and read by JMX.
+ */
+@ThreadSafe
+public class StripedCounter {
+
+    private static final int CELLS = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+    private static final int CELL_MASK = CELLS - 1;
+    private static final int LONGS_PER_CELL = 8; //64 byte cache line
+
+    private final AtomicLongArray cells;
+
+    public StripedCounter() {
+        this.cells = new AtomicLongArray(CELLS * LONGS_PER_CELL);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds to the counter
+     * @param delta value to add, may be negative
+     */
+    public void add(long delta) {
+        this.cells.getAndAdd(cellOf(Thread.currentThread()), delta);
+    }
+
+    /**
+     * The current value of the counter, see the class comment on concurrent updates
+     * @return sum of every update
+     */
+    public long sum() {
+        long sum = 0;
+        for(int i=0; i < CELLS; ++i) {
+            sum += this.cells.get(i * LONGS_PER_CELL);
+        }
+        return sum;
+    }
+
+    private static int cellOf(Thread thread) {
+        return ((int) thread.getId() & CELL_MASK) * LONGS_PER_CELL;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.dedup;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsKeyExtractor;
+import org.apache.streams.core.StreamsProcessor;
+import org.apache.streams.local.windows.DocumentField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Drops datums whose key has been seen before, in bounded memory.  Datums are keyed by their id, or by a document field
+ * set with {@link #withKeyField(String)}, and the keys seen are kept in two Bloom filters, each sized for the expected
+ * number of keys per generation at the configured false positive rate.  New keys go in the current generation, and the
+ * current generation becomes the previous one, replacing it, once it is older than the rotation interval or holds the
+ * expected number of keys.  A key is a duplicate if either generation might contain it, so a key is remembered for at
+ * least one generation and at most two, and a key seen again in the previous generation is carried over to the current
+ * one.  Memory is fixed by the expected keys and the false positive rate, and about that fraction of the unique datums
+ * is dropped by mistake.  Datums without a key are passed on.
+ *
+ * Setting a state file with {@link #withStateFile(File)} saves the filters when the processor is cleaned up and loads
+ * them when it is prepared, so that a restarted stream keeps dropping the datums a previous run has seen.  Run with
+ * several tasks, the processor should be partitioned by {@link #getKeyExtractor()}, since every task keeps its own
+ * filters, and should not be given a state file, since the tasks would overwrite each other's state.
+ */
+public class DeduplicationProcessor implements StreamsProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeduplicationProcessor.class);
+
+    private static final int STATE_VERSION = 1;
+    private static final Funnel<CharSequence> FUNNEL = Funnels.stringFunnel(Charsets.UTF_8);
+
+    public static final long DEFAULT_EXPECTED_KEYS = 1000000;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+    public static final long DEFAULT_ROTATION_INTERVAL_MS = 24 * 60 * 60 * 1000L;
+
+    private final long expectedKeys;
+    private final double falsePositiveRate;
+    private final long rotationIntervalMs;
+    private DocumentField keyField;
+    private File stateFile;
+
+    private transient BloomFilter<CharSequence> current;
+    private transient BloomFilter<CharSequence> previous;
+    private transient long generationStart;
+    private transient long generationKeys;
+    private transient long duplicates;
+    private transient long unkeyed;
+
+    public DeduplicationProcessor() {
+        this(DEFAULT_EXPECTED_KEYS, DEFAULT_FALSE_POSITIVE_RATE, DEFAULT_ROTATION_INTERVAL_MS);
+    }
+
+    /**
+     *
+     * @param expectedKeys number of keys a generation is sized for, and rotated at
+     * @param falsePositiveRate fraction of unique keys that may be taken for duplicates
+     * @param rotationIntervalMs age in milliseconds at which a generation is rotated
+     */
+    public DeduplicationProcessor(long expectedKeys, double falsePositiveRate, long rotationIntervalMs) {
+        if(expectedKeys < 1) {
+            throw new IllegalArgumentException("DeduplicationProcessor requires at least 1 expected key");
+        } else if(falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        } else if(rotationIntervalMs < 1) {
+            throw new IllegalArgumentException("Rotation interval must be at least 1ms");
+        }
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rotationIntervalMs = rotationIntervalMs;
+    }
+
+    /**
+     * Keys datums by a document field instead of their id
+     * @param keyField dotted path of the document field
+     * @return this processor
+     */
+    public DeduplicationProcessor withKeyField(String keyField) {
+        this.keyField = new DocumentField(keyField);
+        return this;
+    }
+
+    /**
+     * Saves the filters to a file on clean up and loads them from it on prepare
+     * @param stateFile file to keep the filters in
+     * @return this processor
+     */
+    public DeduplicationProcessor withStateFile(File stateFile) {
+        this.stateFile = stateFile;
+        return this;
+    }
+
+    /**
+     * Keys datums like this processor, so that a runtime partitioning the processor routes every datum with the same
+     * key to the same task
+     * @return key extractor returning the key of a datum
+     */
+    public StreamsKeyExtractor getKeyExtractor() {
+        final DocumentField field = this.keyField;
+        return new StreamsKeyExtractor() {
+            @Override
+            public Object getKey(StreamsDatum datum) {
+                return keyOf(field, datum);
+            }
+        };
+    }
+
+    @Override
+    public List<StreamsDatum> process(StreamsDatum entry) {
+        String key = keyOf(this.keyField, entry);
+        if(key == null) {
+            ++this.unkeyed;
+        } else {
+            long now = currentTimeMillis();
+            if(now - this.generationStart >= this.rotationIntervalMs || this.generationKeys >= this.expectedKeys) {
+                rotate(now);
+            }
+            //put only reports no change when every bit of the key was already set
+            boolean seen = !this.current.put(key);
+            if(!seen) {
+                ++this.generationKeys;
+                seen = this.previous != null && this.previous.mightContain(key);
+            }
+            if(seen) {
+                ++this.duplicates;
+                return Collections.emptyList();
+            }
+        }
+        List<StreamsDatum> result = new ArrayList<>(1);
+        result.add(entry);
+        return result;
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+        this.current = null;
+        this.previous = null;
+        if(this.stateFile != null && this.stateFile.exists()) {
+            try {
+                loadState();
+                LOGGER.info("Loaded deduplication state from {}", this.stateFile);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Failed to load deduplication state from {}, starting empty : {}", this.stateFile, e);
+                this.current = null;
+                this.previous = null;
+            }
+        }
+        if(this.current == null) {
+            this.current = newFilter();
+            this.generationStart = currentTimeMillis();
+            this.generationKeys = 0;
+        }
+    }
+
+    @Override
+    public void cleanUp() {
+        if(this.stateFile != null && this.current != null) {
+            try {
+                saveState();
+            } catch (IOException ioe) {
+                LOGGER.warn("Failed to save deduplication state to {} : {}", this.stateFile, ioe);
+            }
+        }
+    }
+
+    /**
+     * The number of datums dropped as duplicates
+     * @return number of duplicates
+     */
+    public long getDuplicates() {
+        return this.duplicates;
+    }
+
+    /**
+     * The number of datums passed on because they have no key
+     * @return number of datums without a key
+     */
+    public long getUnkeyed() {
+        return this.unkeyed;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void rotate(long now) {
+        this.previous = this.current;
+        this.current = newFilter();
+        this.generationStart = now;
+        this.generationKeys = 0;
+    }
+
+    private BloomFilter<CharSequence> newFilter() {
+        return BloomFilter.create(FUNNEL, (int) Math.min(Integer.MAX_VALUE, this.expectedKeys), this.falsePositiveRate);
+    }
+
+    /**
+     * Reads the generations saved by a previous run.  The previous generation of the saved state is dropped if the
+     * saved current generation has to be rotated, and both are dropped if it is older than two rotation intervals.
+     * @throws IOException if the file can not be read
+     */
+    private void loadState() throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(this.stateFile)))) {
+            int version = in.readInt();
+            if(version != STATE_VERSION) {
+                throw new IOException("Unknown deduplication state version "+version);
+            }
+            long start = in.readLong();
+            long keys = in.readLong();
+            BloomFilter<CharSequence> savedCurrent = readFilter(in);
+            BloomFilter<CharSequence> savedPrevious = in.readBoolean() ? readFilter(in) : null;
+            long now = currentTimeMillis();
+            if(now - start >= 2 * this.rotationIntervalMs) {
+                return;
+            }
+            this.current = savedCurrent;
+            this.previous = savedPrevious;
+            this.generationStart = start;
+            this.generationKeys = keys;
+            if(now - start >= this.rotationIntervalMs || keys >= this.expectedKeys) {
+                rotate(now);
+            }
+        }
+    }
+
+    /**
+     * Writes the generations to a temporary file that replaces the state file, so that a failed save leaves the
+     * previous state intact.
+     * @throws IOException if the file can not be written
+     */
+    private void saveState() throws IOException {
+        File parent = this.stateFile.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory "+parent);
+        }
+        File temp = new File(parent, this.stateFile.getName() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(STATE_VERSION);
+            out.writeLong(this.generationStart);
+            out.writeLong(this.generationKeys);
+            out.writeObject(this.current);
+            out.writeBoolean(this.previous != null);
+            if(this.previous != null) {
+                out.writeObject(this.previous);
+            }
+        }
+        Files.move(temp.toPath(), this.stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BloomFilter<CharSequence> readFilter(ObjectInputStream in) throws IOException {
+        try {
+            return (BloomFilter<CharSequence>) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid deduplication state", e);
+        }
+    }
+
+    private static String keyOf(DocumentField field, StreamsDatum datum) {
+        if(field == null) {
+            return datum.getId();
+        }
+        return field.getText(datum.getDocument());
+    }
+}
@@ -0,0 +1,489 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of worker threads shared by several streams.  Each stream submits its work through its own
+ * {@link Lane}, and the workers share their time between the lanes with queued work in proportion to the lanes'
+ * weights.  Every lane keeps a virtual pass that grows by the time its runs took divided by its weight, and the
+ * workers always take the next run from the lane with the smallest pass.  A lane that becomes busy again starts at the
+ * smallest pass of the busy lanes, so time spent idle is not saved up to starve the other lanes later.  Runs should be
+ * short, like the bounded runs of a {@link org.apache.streams.local.executors.WorkStealingTaskScheduler}, since a run
+ * is never preempted.  A run that blocks through {@link #managedBlock(java.util.concurrent.ForkJoinPool.ManagedBlocker)},
+ * like a producer waiting on a full {@link org.apache.streams.local.queues.SignallingQueue}, is compensated with a
+ * spare worker, as in a {@link java.util.concurrent.ForkJoinPool}, so that the consumers it waits on still get to run.
+ * Spare workers exit once the blocked runs resume.
+ */
+public class WeightedFairExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WeightedFairExecutor.class);
+
+    private static final ThreadLocal<WeightedFairExecutor> CURRENT = new ThreadLocal<>();
+
+    private final ReentrantLock lock;
+    private final Condition workAvailable;
+    private final Condition laneIdle;
+    private final Condition workerExited;
+    private final List<Lane> lanes;
+    private final List<Thread> workers;
+    private final List<Thread> exiting;
+    private final int parallelism;
+    private final String name;
+    private int spawned;
+    private int blocked;
+    private long virtualTime;
+    private boolean isShutdown;
+
+    /**
+     *
+     * @param parallelism number of worker threads
+     * @param name prefix of the names of the worker threads
+     */
+    public WeightedFairExecutor(int parallelism, String name) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("WeightedFairExecutor requires at least one thread");
+        }
+        this.lock = new ReentrantLock();
+        this.workAvailable = this.lock.newCondition();
+        this.laneIdle = this.lock.newCondition();
+        this.workerExited = this.lock.newCondition();
+        this.lanes = new ArrayList<>();
+        this.workers = new ArrayList<>();
+        this.exiting = new ArrayList<>();
+        this.parallelism = parallelism;
+        this.name = name;
+        this.lock.lock();
+        try {
+            for(int i=0; i < parallelism; ++i) {
+                startWorker();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks the current thread until the blocker is releasable.  If the thread is a worker of a WeightedFairExecutor,
+     * a spare worker takes its place while it is blocked.  Any other thread blocks as in
+     * {@link java.util.concurrent.ForkJoinPool#managedBlock(java.util.concurrent.ForkJoinPool.ManagedBlocker)}.
+     * @param blocker blocker to wait on
+     * @throws InterruptedException if the thread is interrupted while blocked
+     */
+    public static void managedBlock(ForkJoinPool.ManagedBlocker blocker) throws InterruptedException {
+        WeightedFairExecutor executor = CURRENT.get();
+        if(executor == null) {
+            ForkJoinPool.managedBlock(blocker);
+            return;
+        }
+        if(blocker.isReleasable()) {
+            return;
+        }
+        executor.compensate();
+        try {
+            while(!blocker.isReleasable() && !blocker.block()) {
+                //block until released
+            }
+        } finally {
+            executor.resume();
+        }
+    }
+
+    /**
+     * Creates a lane to submit work through.
+     * @param name name of the lane
+     * @param weight share of the worker time the lane receives relative to the other busy lanes
+     * @return new lane
+     */
+    public Lane newLane(String name, int weight) {
+        if(weight < 1) {
+            throw new IllegalArgumentException("Weight of lane "+name+" must be at least 1");
+        }
+        this.lock.lock();
+        try {
+            if(this.isShutdown) {
+                throw new RejectedExecutionException("Executor has shut down");
+            }
+            Lane lane = new Lane(name, weight);
+            this.lanes.add(lane);
+            return lane;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * The number of worker threads, including the spare workers of blocked runs
+     * @return number of worker threads
+     */
+    public int getWorkerCount() {
+        this.lock.lock();
+        try {
+            return this.workers.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * The number of lanes that have not terminated
+     * @return number of open lanes
+     */
+    public int getLaneCount() {
+        this.lock.lock();
+        try {
+            return this.lanes.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the workers once the queued work of every lane has run.  No lane can be created or accept work afterwards.
+     */
+    public void shutdown() {
+        this.lock.lock();
+        try {
+            this.isShutdown = true;
+            this.workAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the workers, dropping the queued work of every lane and interrupting the runs in progress.
+     */
+    public void shutdownNow() {
+        this.lock.lock();
+        try {
+            this.isShutdown = true;
+            for(Lane lane : this.lanes) {
+                lane.queue.clear();
+            }
+            this.workAvailable.signalAll();
+            for(Thread worker : this.workers) {
+                worker.interrupt();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<Thread> exited;
+        this.lock.lock();
+        try {
+            long nanos = deadline - System.nanoTime();
+            while(!this.workers.isEmpty()) {
+                if(nanos <= 0) {
+                    return false;
+                }
+                nanos = this.workerExited.awaitNanos(nanos);
+            }
+            exited = new ArrayList<>(this.exiting);
+        } finally {
+            this.lock.unlock();
+        }
+        //workers leave the list just before their threads end
+        for(Thread worker : exited) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            worker.join(Math.max(1, remaining));
+            if(worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    private void startWorker() {
+        Thread worker = new Thread(new Worker(), this.name + "-" + this.spawned++);
+        worker.setDaemon(true);
+        this.workers.add(worker);
+        worker.start();
+    }
+
+    /**
+     * Starts a spare worker for a run that is about to block, unless enough workers are left running.
+     */
+    private void compensate() {
+        this.lock.lock();
+        try {
+            ++this.blocked;
+            if(!this.isShutdown && this.workers.size() - this.blocked < this.parallelism) {
+                startWorker();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void resume() {
+        this.lock.lock();
+        try {
+            --this.blocked;
+            //surplus workers exit once they are idle
+            this.workAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the current worker if more workers than the parallelism are running.  Must be called holding the lock.
+     * @return true if the worker should exit
+     */
+    private boolean retireIfSurplus() {
+        if(this.workers.size() - this.blocked > this.parallelism) {
+            exitWorker();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    private void exitWorker() {
+        Iterator<Thread> exited = this.exiting.iterator();
+        while(exited.hasNext()) {
+            if(!exited.next().isAlive()) {
+                exited.remove();
+            }
+        }
+        this.workers.remove(Thread.currentThread());
+        this.exiting.add(Thread.currentThread());
+        this.workerExited.signalAll();
+    }
+
+    /**
+     * The busy lane with the smallest pass.  Must be called holding the lock.
+     * @return next lane to run, or null if no lane has queued work
+     */
+    private Lane nextLane() {
+        Lane next = null;
+        for(Lane lane : this.lanes) {
+            if(!lane.queue.isEmpty() && (next == null || lane.pass < next.pass)) {
+                next = lane;
+            }
+        }
+        if(next != null) {
+            this.virtualTime = Math.max(this.virtualTime, next.pass);
+        }
+        return next;
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            CURRENT.set(WeightedFairExecutor.this);
+            while(true) {
+                Lane lane;
+                Runnable run;
+                lock.lock();
+                try {
+                    if(retireIfSurplus()) {
+                        return;
+                    }
+                    lane = nextLane();
+                    while(lane == null) {
+                        if(isShutdown) {
+                            exitWorker();
+                            return;
+                        }
+                        workAvailable.await();
+                        if(retireIfSurplus()) {
+                            return;
+                        }
+                        lane = nextLane();
+                    }
+                    run = lane.queue.poll();
+                    ++lane.running;
+                } catch (InterruptedException ie) {
+                    if(isShutdown) {
+                        exitWorker();
+                        return;
+                    }
+                    continue;
+                } finally {
+                    lock.unlock();
+                }
+                long start = System.nanoTime();
+                try {
+                    run.run();
+                } catch (Throwable t) {
+                    LOGGER.error("Run of lane {} exited with an unhandled throwable : {}", lane.name, t);
+                } finally {
+                    long elapsed = Math.max(1, System.nanoTime() - start);
+                    lock.lock();
+                    try {
+                        lane.pass += elapsed / lane.weight;
+                        --lane.running;
+                        lane.terminateIfDone();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                //an interrupt meant for the run must not reach the next run, shutdownNow leaves no work to take
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * The work of one stream.  Shutting down a lane only stops the lane, the workers keep running the other lanes.
+     */
+    public class Lane extends AbstractExecutorService {
+
+        private final String name;
+        private final int weight;
+        private final ArrayDeque<Runnable> queue;
+        private int running;
+        private long pass;
+        private boolean laneShutdown;
+        private boolean terminated;
+
+        private Lane(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+            this.queue = new ArrayDeque<>();
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public int getWeight() {
+            return this.weight;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            lock.lock();
+            try {
+                if(this.laneShutdown || isShutdown) {
+                    throw new RejectedExecutionException("Lane "+this.name+" has shut down");
+                }
+                if(this.queue.isEmpty() && this.running == 0) {
+                    //idle time is not saved up
+                    this.pass = Math.max(this.pass, virtualTime);
+                }
+                this.queue.add(command);
+                workAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            lock.lock();
+            try {
+                this.laneShutdown = true;
+                terminateIfDone();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            lock.lock();
+            try {
+                this.laneShutdown = true;
+                List<Runnable> dropped = new ArrayList<>(this.queue);
+                this.queue.clear();
+                terminateIfDone();
+                return dropped;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            lock.lock();
+            try {
+                return this.laneShutdown || isShutdown;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            lock.lock();
+            try {
+                return this.terminated;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lock();
+            try {
+                while(!this.terminated) {
+                    if(nanos <= 0) {
+                        return false;
+                    }
+                    nanos = laneIdle.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Terminates the lane once it has been shut down and its last run has finished.  Must be called holding the lock.
+         */
+        private void terminateIfDone() {
+            if(this.laneShutdown && !this.terminated && this.queue.isEmpty() && this.running == 0) {
+                this.terminated = true;
+                lanes.remove(this);
+                laneIdle.signalAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.executors;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.local.builders.LocalStreamBuilder;
+import org.apache.streams.local.queues.SignallingQueue;
+import org.apache.streams.local.tasks.CooperativeStreamsTask;
+import org.apache.streams.local.tasks.StreamsTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link org.apache.streams.local.tasks.CooperativeStreamsTask}s on a work-stealing {@link java.util.concurrent.ForkJoinPool}.
+ * A task is only scheduled when data is added to its inbound {@link org.apache.streams.local.queues.SignallingQueue},
+ * and each run processes a bounded number of batches before yielding the thread to other tasks, so the threads of the
+ * pool move to whichever components have data to process.  Like {@link org.apache.streams.local.executors.ShutdownStreamOnUnhandleThrowableThreadPoolExecutor},
+ * the stream is shut down if a task exits with an unhandled throwable.  The runs can also be submitted to a
+ * {@link org.apache.streams.local.executors.WeightedFairExecutor.Lane} of a pool shared with other streams, in which
+ * case shutting down the scheduler only shuts down the lane.
+ */
+public class WorkStealingTaskScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WorkStealingTaskScheduler.class);
+
+    public static final int DEFAULT_MAX_BATCHES_PER_RUN = 16;
+
+    private final ExecutorService pool;
+    private final int parallelism;
+    private final LocalStreamBuilder streamBuilder;
+    private final Map<StreamsTask, TaskRunner> runners;
+    private final int maxBatchesPerRun;
+    private volatile boolean isStopped;
+
+    /**
+     * Creates a scheduler with one thread per available processor.
+     * @param streamBuilder streambuilder to call {@link org.apache.streams.core.StreamBuilder#stop()} on upon receiving an unhandled throwable
+     */
+    public WorkStealingTaskScheduler(LocalStreamBuilder streamBuilder) {
+        this(Runtime.getRuntime().availableProcessors(), streamBuilder);
+    }
+
+    /**
+     *
+     * @param parallelism number of threads that run tasks
+     * @param streamBuilder streambuilder to call {@link org.apache.streams.core.StreamBuilder#stop()} on upon receiving an unhandled throwable
+     */
+    public WorkStealingTaskScheduler(int parallelism, LocalStreamBuilder streamBuilder) {
+        this(new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), parallelism, streamBuilder);
+    }
+
+    /**
+     * Creates a scheduler that submits its runs to a lane of a pool shared with other streams.
+     * @param lane lane of the shared pool
+     * @param parallelism number of threads of the shared pool
+     * @param streamBuilder streambuilder to call {@link org.apache.streams.core.StreamBuilder#stop()} on upon receiving an unhandled throwable
+     */
+    public WorkStealingTaskScheduler(WeightedFairExecutor.Lane lane, int parallelism, LocalStreamBuilder streamBuilder) {
+        this((ExecutorService) lane, parallelism, streamBuilder);
+    }
+
+    private WorkStealingTaskScheduler(ExecutorService pool, int parallelism, LocalStreamBuilder streamBuilder) {
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.streamBuilder = streamBuilder;
+        this.runners = new ConcurrentHashMap<>();
+        this.maxBatchesPerRun = DEFAULT_MAX_BATCHES_PER_RUN;
+        this.isStopped = false;
+    }
+
+    /**
+     * Starts running a task.  The task is prepared right away and then run whenever data is added to its inbound queue.
+     * @param task task to run
+     * @param inQueue inbound queue of the task
+     */
+    public void submit(CooperativeStreamsTask task, SignallingQueue<StreamsDatum> inQueue) {
+        TaskRunner runner = new TaskRunner(task, inQueue);
+        this.runners.put(task, runner);
+        inQueue.addConsumer(runner);
+        runner.signal();
+    }
+
+    /**
+     * Stops a task.  The task runs one last time to clean up.
+     * @param task task to stop
+     */
+    public void stopTask(StreamsTask task) {
+        task.stopTask();
+        TaskRunner runner = this.runners.get(task);
+        if(runner != null) {
+            runner.signal();
+        }
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    public void shutdownNow() {
+        this.pool.shutdownNow();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.pool.awaitTermination(timeout, unit);
+    }
+
+    private void execute(TaskRunner runner) {
+        try {
+            this.pool.execute(runner);
+        } catch (RejectedExecutionException ree) {
+            LOGGER.debug("Scheduler has shut down, not running task {}", runner.task);
+        }
+    }
+
+    private void handleThrowable(StreamsTask task, Throwable t) {
+        LOGGER.error("Task, {}, exited with an unhandled throwable! : {}", task.getClass(), t);
+        LOGGER.error("Attempting to shut down stream.");
+        synchronized (this) {
+            if (!this.isStopped) {
+                this.isStopped = true;
+                //stop from a separate thread, shutting down waits on the threads of the pool
+                Thread stopper = new Thread() {
+                    @Override
+                    public void run() {
+                        streamBuilder.stop();
+                    }
+                };
+                stopper.setDaemon(true);
+                stopper.start();
+            }
+        }
+    }
+
+    /**
+     * Runs a task on the pool.  Signals received while the task is scheduled or running are counted, so that a signal
+     * that arrives during a run causes another run instead of being lost.
+     */
+    private class TaskRunner implements Runnable, SignallingQueue.Consumer {
+
+        private final CooperativeStreamsTask task;
+        private final SignallingQueue<StreamsDatum> inQueue;
+        private final AtomicInteger signals;
+        private boolean prepared;
+        private volatile boolean finished;
+
+        private TaskRunner(CooperativeStreamsTask task, SignallingQueue<StreamsDatum> inQueue) {
+            this.task = task;
+            this.inQueue = inQueue;
+            this.signals = new AtomicInteger(0);
+            this.prepared = false;
+            this.finished = false;
+        }
+
+        @Override
+        public boolean signalIfIdle() {
+            if(!this.finished && this.signals.compareAndSet(0, 1)) {
+                execute(this);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void signal() {
+            if(!this.finished && this.signals.getAndIncrement() == 0) {
+                execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int seen = this.signals.get();
+            try {
+                if(!this.prepared) {
+                    this.task.prepareTask();
+                    this.prepared = true;
+                }
+                if(!this.task.runAvailable(maxBatchesPerRun)) {
+                    this.finished = true;
+                    return;
+                }
+            } catch (Throwable t) {
+                this.finished = true;
+                handleThrowable(this.task, t);
+                return;
+            }
+            //run again if signalled during this run, or if the run stopped with data left on the queue
+            if(this.signals.addAndGet(-seen) != 0 || (!this.inQueue.isEmpty() && this.signals.compareAndSet(0, 1))) {
+                execute(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.memory;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.streams.local.counters.StripedCounter;
+import org.apache.streams.util.ComponentUtils;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds back the reads of providers while the heap is under pressure, so that providers buffering data internally do
+ * not fill the heap while the rest of the stream falls behind.  The heap is sampled at most every
+ * {@link #SAMPLE_INTERVAL_MS} milliseconds.  The occupancy of the old generation is read from its memory pool, using the
+ * usage after the last collection of the pool once there has been one, since that is what is still live, and from the
+ * {@link java.lang.management.MemoryMXBean} heap usage if no old generation pool is found.  The fraction of time spent in
+ * garbage collection is read from the {@link java.lang.management.GarbageCollectorMXBean}s and averaged over about
+ * {@link #GC_WINDOW_MS} milliseconds.  The pressure of each reading rises from 0 at its slow threshold to 1 at its pause
+ * threshold, and the heap pressure is the higher of the two.  Reads are delayed in proportion to the heap pressure, up
+ * to the max delay, and paused while it is 1.
+ */
+@ThreadSafe
+public class HeapAdmissionController implements HeapAdmissionControllerMXBean {
+
+    public static final String NAME_TEMPLATE = "org.apache.streams.local:type=HeapAdmissionController,identifier=%s,startedAt=%s";
+
+    public static final long SAMPLE_INTERVAL_MS = 100;
+    public static final long GC_WINDOW_MS = 1000;
+
+    public static final double DEFAULT_OLD_GEN_SLOW_THRESHOLD = 0.7;
+    public static final double DEFAULT_OLD_GEN_PAUSE_THRESHOLD = 0.9;
+    public static final double DEFAULT_GC_SLOW_THRESHOLD = 0.1;
+    public static final double DEFAULT_GC_PAUSE_THRESHOLD = 0.3;
+    public static final long DEFAULT_MAX_DELAY_MS = 1000;
+
+    private final double oldGenSlowThreshold;
+    private final double oldGenPauseThreshold;
+    private final double gcSlowThreshold;
+    private final double gcPauseThreshold;
+    private final long maxDelayMs;
+    private final MemoryMXBean memory;
+    private final List<MemoryPoolMXBean> oldGenPools;
+    private final List<GarbageCollectorMXBean> collectors;
+    private final StripedCounter heldBack;
+    private final StripedCounter heldBackTime;
+
+    private long lastSampleNanos;
+    private long lastGcTimeMs;
+    private volatile double oldGenOccupancy;
+    private volatile double gcTimeFraction;
+    private volatile double pressure;
+
+    /**
+     * Creates an unregistered controller with the default thresholds
+     */
+    public HeapAdmissionController() {
+        this(DEFAULT_OLD_GEN_SLOW_THRESHOLD, DEFAULT_OLD_GEN_PAUSE_THRESHOLD, DEFAULT_GC_SLOW_THRESHOLD, DEFAULT_GC_PAUSE_THRESHOLD,
+                DEFAULT_MAX_DELAY_MS, null, -1);
+    }
+
+    /**
+     *
+     * @param oldGenSlowThreshold old generation occupancy above which reads are slowed down
+     * @param oldGenPauseThreshold old generation occupancy at which reads are paused
+     * @param gcSlowThreshold gc time fraction above which reads are slowed down
+     * @param gcPauseThreshold gc time fraction at which reads are paused
+     * @param maxDelayMs longest a read is delayed before reads are paused
+     * @param streamIdentifier identifier of the stream to register with. if streamIdentifier == NULL then not registered
+     * @param startedAt
+     */
+    public HeapAdmissionController(double oldGenSlowThreshold, double oldGenPauseThreshold, double gcSlowThreshold, double gcPauseThreshold,
+                                   long maxDelayMs, String streamIdentifier, long startedAt) {
+        if(oldGenSlowThreshold >= oldGenPauseThreshold || gcSlowThreshold >= gcPauseThreshold) {
+            throw new IllegalArgumentException("Slow thresholds must be below pause thresholds");
+        }
+        this.oldGenSlowThreshold = oldGenSlowThreshold;
+        this.oldGenPauseThreshold = oldGenPauseThreshold;
+        this.gcSlowThreshold = gcSlowThreshold;
+        this.gcPauseThreshold = gcPauseThreshold;
+        this.maxDelayMs = Math.max(0, maxDelayMs);
+        this.memory = ManagementFactory.getMemoryMXBean();
+        this.oldGenPools = new ArrayList<>();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            String name = pool.getName();
+            if(pool.getType() == MemoryType.HEAP && (name.contains("Old") || name.contains("Tenured"))) {
+                this.oldGenPools.add(pool);
+            }
+        }
+        this.collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        this.heldBack = new StripedCounter();
+        this.heldBackTime = new StripedCounter();
+        this.lastSampleNanos = -1;
+        if(streamIdentifier != null) {
+            ComponentUtils.registerLocalMBean(String.format(NAME_TEMPLATE, streamIdentifier, startedAt), this);
+        }
+    }
+
+    /**
+     * Holds back a read according to the heap pressure.  Delays the caller in proportion to the pressure, or for one
+     * sample interval if reads are paused.
+     * @return true if the read may go ahead, false if reads are paused and the caller should ask again
+     * @throws InterruptedException if interrupted while held back
+     */
+    public boolean admit() throws InterruptedException {
+        double current = sample();
+        long delay;
+        if(current >= 1.0) {
+            delay = SAMPLE_INTERVAL_MS;
+        } else {
+            delay = (long) (current * this.maxDelayMs);
+        }
+        if(delay > 0) {
+            this.heldBack.increment();
+            long start = System.nanoTime();
+            try {
+                Thread.sleep(delay);
+            } finally {
+                this.heldBackTime.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+        return current < 1.0;
+    }
+
+    /**
+     * Samples the heap if the last sample is older than the sample interval
+     * @return current heap pressure
+     */
+    protected synchronized double sample() {
+        long now = System.nanoTime();
+        if(this.lastSampleNanos >= 0 && now - this.lastSampleNanos < TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MS)) {
+            return this.pressure;
+        }
+        long gcTimeMs = readGcTimeMs();
+        if(this.lastSampleNanos >= 0) {
+            double elapsedMs = (double) (now - this.lastSampleNanos) / TimeUnit.MILLISECONDS.toNanos(1);
+            double recent = Math.min(1.0, Math.max(0.0, (gcTimeMs - this.lastGcTimeMs) / elapsedMs));
+            double weight = Math.min(1.0, elapsedMs / GC_WINDOW_MS);
+            this.gcTimeFraction += weight * (recent - this.gcTimeFraction);
+        }
+        this.lastSampleNanos = now;
+        this.lastGcTimeMs = gcTimeMs;
+        this.oldGenOccupancy = readOldGenOccupancy();
+        this.pressure = Math.max(scale(this.oldGenOccupancy, this.oldGenSlowThreshold, this.oldGenPauseThreshold),
+                scale(this.gcTimeFraction, this.gcSlowThreshold, this.gcPauseThreshold));
+        return this.pressure;
+    }
+
+    /**
+     * Reads the fraction of the old generation in use
+     * @return old generation occupancy between 0 and 1
+     */
+    protected double readOldGenOccupancy() {
+        double occupancy = 0.0;
+        for(MemoryPoolMXBean pool : this.oldGenPools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if(usage == null || usage.getUsed() == 0) {
+                usage = pool.getUsage();
+            }
+            occupancy = Math.max(occupancy, fraction(usage));
+        }
+        if(this.oldGenPools.isEmpty()) {
+            occupancy = fraction(this.memory.getHeapMemoryUsage());
+        }
+        return occupancy;
+    }
+
+    /**
+     * Reads the total time spent in garbage collection since the JVM started
+     * @return gc time in milliseconds
+     */
+    protected long readGcTimeMs() {
+        long total = 0;
+        for(GarbageCollectorMXBean collector : this.collectors) {
+            long time = collector.getCollectionTime();
+            if(time > 0) {
+                total += time;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public double getOldGenOccupancy() {
+        return this.oldGenOccupancy;
+    }
+
+    @Override
+    public double getGcTimeFraction() {
+        return this.gcTimeFraction;
+    }
+
+    @Override
+    public double getPressure() {
+        return this.pressure;
+    }
+
+    @Override
+    public boolean isPaused() {
+        return this.pressure >= 1.0;
+    }
+
+    @Override
+    public long getNumHeldBack() {
+        return this.heldBack.sum();
+    }
+
+    @Override
+    public long getHeldBackTime() {
+        return this.heldBackTime.sum();
+    }
+
+    @Override
+    public double getOldGenSlowThreshold() {
+        return this.oldGenSlowThreshold;
+    }
+
+    @Override
+    public double getOldGenPauseThreshold() {
+        return this.oldGenPauseThreshold;
+    }
+
+    @Override
+    public double getGcSlowThreshold() {
+        return this.gcSlowThreshold;
+    }
+
+    @Override
+    public double getGcPauseThreshold() {
+        return this.gcPauseThreshold;
+    }
+
+    private static double fraction(MemoryUsage usage) {
+        long max = usage.getMax() > 0 ? usage.getMax() : usage.getCommitted();
+        return max > 0 ? (double) usage.getUsed() / max : 0.0;
+    }
+
+    private static double scale(double value, double slow, double pause) {
+        return Math.min(1.0, Math.max(0.0, (value - slow) / (pause - slow)));
+    }
+}
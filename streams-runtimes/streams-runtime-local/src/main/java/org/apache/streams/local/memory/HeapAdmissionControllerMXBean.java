@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.memory;
+
+/**
+ * MXBean capable controller that holds back providers while the heap is under pressure.
+ */
+public interface HeapAdmissionControllerMXBean {
+
+    /**
+     * Get the fraction of the old generation in use at the last sample
+     * @return old generation occupancy between 0 and 1
+     */
+    public double getOldGenOccupancy();
+
+    /**
+     * Get the fraction of recent time spent in garbage collection
+     * @return gc time fraction between 0 and 1
+     */
+    public double getGcTimeFraction();
+
+    /**
+     * Get the heap pressure at the last sample.  Reads are slowed down above 0 and paused at 1.
+     * @return heap pressure between 0 and 1
+     */
+    public double getPressure();
+
+    /**
+     * Get whether reads are paused
+     * @return true if reads are paused
+     */
+    public boolean isPaused();
+
+    /**
+     * Get the number of reads that were slowed down or paused
+     * @return number of held back reads
+     */
+    public long getNumHeldBack();
+
+    /**
+     * Get the total time reads have been held back in milliseconds
+     * @return held back time in milliseconds
+     */
+    public long getHeldBackTime();
+
+    /**
+     * Get the old generation occupancy above which reads are slowed down
+     * @return occupancy threshold
+     */
+    public double getOldGenSlowThreshold();
+
+    /**
+     * Get the old generation occupancy at which reads are paused
+     * @return occupancy threshold
+     */
+    public double getOldGenPauseThreshold();
+
+    /**
+     * Get the gc time fraction above which reads are slowed down
+     * @return gc time threshold
+     */
+    public double getGcSlowThreshold();
+
+    /**
+     * Get the gc time fraction at which reads are paused
+     * @return gc time threshold
+     */
+    public double getGcPauseThreshold();
+
+}
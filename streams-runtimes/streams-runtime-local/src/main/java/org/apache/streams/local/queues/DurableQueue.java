@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.ForwardingBlockingQueue;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.local.tasks.EndOfStream;
+import org.apache.streams.local.wal.WriteAheadLog;
+import org.apache.streams.local.wal.WriteAheadLogManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link java.util.concurrent.BlockingQueue} decorator that appends every datum added to it to a
+ * {@link org.apache.streams.local.wal.WriteAheadLog} before handing it to the wrapped queue.  The tasks reading the
+ * wrapped queue take the sequence ids of the datums they removed with {@link #removeSequences(java.util.List)} and
+ * acknowledge them with {@link #acknowledge(long[])} once the datums have been emitted to the next queue or written.
+ * Datums that were never acknowledged are put back on the queue by {@link #replay()} when the stream is restarted, so
+ * delivery is at least once.
+ * <p/>
+ * End of stream markers and datums that can not be encoded are not logged.
+ */
+public class DurableQueue extends ForwardingBlockingQueue<StreamsDatum> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DurableQueue.class);
+
+    private final BlockingQueue<StreamsDatum> delegate;
+    private final WriteAheadLog log;
+    private final WriteAheadLogManager manager;
+    private final ConcurrentMap<StreamsDatum, Long> sequences;
+
+    /**
+     * @param delegate queue that holds the data
+     * @param log log to append the datums to
+     * @param manager manager committing the log
+     */
+    public DurableQueue(BlockingQueue<StreamsDatum> delegate, WriteAheadLog log, WriteAheadLogManager manager) {
+        this.delegate = delegate;
+        this.log = log;
+        this.manager = manager;
+        //identity keys, and entries of datums dropped without being acknowledged do not leak
+        this.sequences = new MapMaker().weakKeys().makeMap();
+    }
+
+    @Override
+    protected BlockingQueue<StreamsDatum> delegate() {
+        return this.delegate;
+    }
+
+    /**
+     * The wrapped queue
+     * @return queue that holds the data
+     */
+    public BlockingQueue<StreamsDatum> getDelegate() {
+        return this.delegate;
+    }
+
+    @Override
+    public boolean add(StreamsDatum datum) {
+        long sequence = append(datum);
+        try {
+            return this.delegate.add(datum);
+        } catch (RuntimeException re) {
+            rollback(datum, sequence);
+            throw re;
+        }
+    }
+
+    @Override
+    public boolean offer(StreamsDatum datum) {
+        long sequence = append(datum);
+        if(!this.delegate.offer(datum)) {
+            rollback(datum, sequence);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(StreamsDatum datum, long timeout, TimeUnit unit) throws InterruptedException {
+        long sequence = append(datum);
+        boolean added = false;
+        try {
+            added = this.delegate.offer(datum, timeout, unit);
+        } finally {
+            if(!added) {
+                rollback(datum, sequence);
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public void put(StreamsDatum datum) throws InterruptedException {
+        long sequence = append(datum);
+        boolean added = false;
+        try {
+            this.delegate.put(datum);
+            added = true;
+        } finally {
+            if(!added) {
+                rollback(datum, sequence);
+            }
+        }
+    }
+
+    /**
+     * Removes the sequence ids of datums taken from the wrapped queue.  Must be called before the datums are replaced
+     * or handed on, since datums are tracked by identity.
+     * @param batch datums removed from the wrapped queue
+     * @return sequence ids of the datums, -1 for datums that were not logged
+     */
+    public long[] removeSequences(List<StreamsDatum> batch) {
+        long[] removed = new long[batch.size()];
+        for(int i=0; i < removed.length; ++i) {
+            Long sequence = this.sequences.remove(batch.get(i));
+            removed[i] = sequence == null ? -1 : sequence;
+        }
+        return removed;
+    }
+
+    /**
+     * Acknowledges datums, which are removed from the log after the next commit.
+     * @param sequences sequence ids returned by {@link #removeSequences(java.util.List)}
+     */
+    public void acknowledge(long[] sequences) {
+        this.manager.acknowledge(this.log, sequences);
+    }
+
+    /**
+     * Puts the datums recovered from the log back on the wrapped queue.  Blocks while the wrapped queue is full, so
+     * the tasks reading the queue must already be running.
+     * @return number of datums replayed
+     * @throws InterruptedException if interrupted while waiting for space on the wrapped queue
+     */
+    public int replay() throws InterruptedException {
+        int replayed = 0;
+        for(WriteAheadLog.Entry entry : this.log.takeRecovered()) {
+            StreamsDatum datum;
+            try {
+                datum = StreamsDatumCodec.decode(entry.getPayload());
+            } catch (RuntimeException re) {
+                LOGGER.error("Unable to decode datum {} of write ahead log {}, dropping it : {}", entry.getSequence(), this.log.getDirectory(), re);
+                this.manager.acknowledge(this.log, new long[] {entry.getSequence()});
+                continue;
+            }
+            this.sequences.put(datum, entry.getSequence());
+            this.delegate.put(datum);
+            ++replayed;
+        }
+        if(replayed > 0) {
+            LOGGER.info("Replayed {} datums from write ahead log {}", replayed, this.log.getDirectory());
+        }
+        return replayed;
+    }
+
+    private long append(StreamsDatum datum) {
+        if(datum == null || EndOfStream.isMarker(datum)) {
+            return -1;
+        }
+        byte[] payload;
+        try {
+            payload = StreamsDatumCodec.encode(datum);
+        } catch (RuntimeException re) {
+            LOGGER.warn("Unable to encode datum for the write ahead log, it will not be replayed : {}", re.getMessage());
+            return -1;
+        }
+        long sequence;
+        try {
+            sequence = this.log.append(payload);
+        } catch (IOException ioe) {
+            throw new RuntimeException("Failed to append to write ahead log "+this.log.getDirectory(), ioe);
+        }
+        Long previous = this.sequences.put(datum, sequence);
+        if(previous != null) {
+            //the same instance was added again before being removed, only the latest entry is acknowledged by a task
+            this.manager.acknowledge(this.log, new long[] {previous});
+        }
+        return sequence;
+    }
+
+    /**
+     * Acknowledges a datum that was logged but could not be added to the wrapped queue, so it is not replayed.
+     */
+    private void rollback(StreamsDatum datum, long sequence) {
+        if(sequence >= 0) {
+            this.sequences.remove(datum);
+            this.manager.acknowledge(this.log, new long[] {sequence});
+        }
+    }
+}
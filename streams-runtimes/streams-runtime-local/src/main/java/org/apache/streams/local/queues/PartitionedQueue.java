@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.queues;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsKeyExtractor;
+import org.apache.streams.local.tasks.EndOfStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link java.util.concurrent.BlockingQueue} that routes every {@link org.apache.streams.core.StreamsDatum} added to it
+ * to one of several partition queues by hashing the key returned by a {@link org.apache.streams.core.StreamsKeyExtractor}.
+ * Datums with equal keys always land in the same partition, in the order they were added.  Datums without a key are
+ * spread across the partitions round robin.  End of stream markers are put on every partition.
+ *
+ * Producers write to this queue, while each consumer reads from its own partition, see {@link #getPartition(int)}.
+ * Consuming from this queue directly is only supported through the non-blocking methods.
+ */
+public class PartitionedQueue extends AbstractQueue<StreamsDatum> implements BlockingQueue<StreamsDatum> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedQueue.class);
+
+    private final List<BlockingQueue<StreamsDatum>> partitions;
+    private final StreamsKeyExtractor keyExtractor;
+    private final AtomicInteger nextPartition;
+
+    /**
+     *
+     * @param partitions queues to route datums to, one per consumer
+     * @param keyExtractor extracts the key datums are routed by
+     */
+    public PartitionedQueue(List<? extends BlockingQueue<StreamsDatum>> partitions, StreamsKeyExtractor keyExtractor) {
+        if(partitions.isEmpty()) {
+            throw new IllegalArgumentException("PartitionedQueue requires at least one partition");
+        }
+        this.partitions = Lists.newArrayList(partitions);
+        this.keyExtractor = keyExtractor;
+        this.nextPartition = new AtomicInteger(0);
+    }
+
+    /**
+     * The partition queue read by a consumer
+     * @param partition index of the partition
+     * @return partition queue
+     */
+    public BlockingQueue<StreamsDatum> getPartition(int partition) {
+        return this.partitions.get(partition);
+    }
+
+    public int getNumPartitions() {
+        return this.partitions.size();
+    }
+
+    /**
+     * The index of the partition a datum is routed to
+     * @param datum datum to route
+     * @return index of the partition
+     */
+    public int partitionFor(StreamsDatum datum) {
+        Object key = null;
+        try {
+            key = this.keyExtractor.getKey(datum);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to extract key from datum {}, routing it to any partition : {}", datum.getId(), e);
+        }
+        if(key == null) {
+            return (this.nextPartition.getAndIncrement() & Integer.MAX_VALUE) % this.partitions.size();
+        }
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % this.partitions.size();
+    }
+
+    @Override
+    public void put(StreamsDatum datum) throws InterruptedException {
+        if(EndOfStream.isMarker(datum)) {
+            for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+                partition.put(datum);
+            }
+        } else {
+            this.partitions.get(partitionFor(datum)).put(datum);
+        }
+    }
+
+    /**
+     * Offers a datum to its partition.  End of stream markers are put on every partition, blocking if necessary.
+     */
+    @Override
+    public boolean offer(StreamsDatum datum) {
+        if(EndOfStream.isMarker(datum)) {
+            try {
+                put(datum);
+                return true;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return this.partitions.get(partitionFor(datum)).offer(datum);
+    }
+
+    /**
+     * Offers a datum to its partition.  End of stream markers are put on every partition, blocking if necessary.
+     */
+    @Override
+    public boolean offer(StreamsDatum datum, long timeout, TimeUnit unit) throws InterruptedException {
+        if(EndOfStream.isMarker(datum)) {
+            put(datum);
+            return true;
+        }
+        return this.partitions.get(partitionFor(datum)).offer(datum, timeout, unit);
+    }
+
+    /**
+     * Not supported, consumers take from their partition
+     */
+    @Override
+    public StreamsDatum take() throws InterruptedException {
+        throw new UnsupportedOperationException("Take from a partition of the PartitionedQueue");
+    }
+
+    /**
+     * Not supported, consumers poll their partition
+     */
+    @Override
+    public StreamsDatum poll(long timeout, TimeUnit unit) throws InterruptedException {
+        throw new UnsupportedOperationException("Poll a partition of the PartitionedQueue");
+    }
+
+    /**
+     * Polls the partitions in turn, starting from a different partition on every call.
+     */
+    @Override
+    public StreamsDatum poll() {
+        int start = this.nextPartition.getAndIncrement() & Integer.MAX_VALUE;
+        for(int i=0; i < this.partitions.size(); ++i) {
+            StreamsDatum datum = this.partitions.get((start + i) % this.partitions.size()).poll();
+            if(datum != null) {
+                return datum;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public StreamsDatum peek() {
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            StreamsDatum datum = partition.peek();
+            if(datum != null) {
+                return datum;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The least remaining capacity of any partition, which is the capacity guaranteed to a producer
+     */
+    @Override
+    public int remainingCapacity() {
+        int remaining = Integer.MAX_VALUE;
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            remaining = Math.min(remaining, partition.remainingCapacity());
+        }
+        return remaining;
+    }
+
+    @Override
+    public int drainTo(Collection<? super StreamsDatum> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super StreamsDatum> collection, int maxElements) {
+        int drained = 0;
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            if(drained >= maxElements) {
+                break;
+            }
+            drained += partition.drainTo(collection, maxElements - drained);
+        }
+        return drained;
+    }
+
+    @Override
+    public Iterator<StreamsDatum> iterator() {
+        List<Iterator<StreamsDatum>> iterators = Lists.newArrayList();
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            iterators.add(partition.iterator());
+        }
+        return Iterators.concat(iterators.iterator());
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for(BlockingQueue<StreamsDatum> partition : this.partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+}
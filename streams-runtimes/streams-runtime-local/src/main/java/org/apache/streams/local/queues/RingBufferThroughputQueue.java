@@ -0,0 +1,549 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import org.apache.streams.local.builders.LocalStreamBuilder;
+import org.apache.streams.local.counters.LatencyHistogram;
+import org.apache.streams.local.counters.LongExtremum;
+import org.apache.streams.local.counters.StripedCounter;
+import org.apache.streams.util.ComponentUtils;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free {@link java.util.concurrent.BlockingQueue} backed by a pre-allocated ring buffer. Reports the
+ * same flow statistics as {@link org.apache.streams.local.queues.ThroughputQueue} through
+ * {@link org.apache.streams.local.queues.ThroughputQueueMXBean}, but does not allocate a wrapper for every element and
+ * does not take any locks when elements are added or removed.  Registration of the bean happens whenever a
+ * constructor receives a non-null id.
+ * <p/>
+ * Every slot of the ring carries a sequence number that tells producers and consumers whether the slot is free or
+ * filled, so any number of threads may remove from the queue concurrently.  The single producer variant skips the
+ * compare-and-set when claiming a slot and must only ever be written to by one thread.
+ * <p/>
+ * Blocking methods spin, yield and then park with a growing back off while the queue is full or empty.
+ * <p/>
+ * !!! Warning !!!
+ * Only the necessary methods for the local streams runtime are implemented.  All other methods throw a
+ * {@link java.lang.UnsupportedOperationException}.
+ */
+public class RingBufferThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBean {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int capacity;
+    private final int mask;
+    private boolean singleProducer;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final long[] queuedNanos;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final AtomicLong startTime;
+    private final StripedCounter totalQueueNanos;
+    private final LongExtremum maxQueuedNanos;
+    private final LatencyHistogram waits;
+
+    /**
+     * Creates a bounded, unregistered, multi producer {@code RingBufferThroughputQueue}
+     *
+     * @param capacity minimum capacity of the queue, rounded up to the next power of two
+     */
+    public RingBufferThroughputQueue(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * Creates a bounded, unregistered {@code RingBufferThroughputQueue}
+     *
+     * @param capacity minimum capacity of the queue, rounded up to the next power of two
+     * @param singleProducer true if only one thread will ever add elements to the queue
+     */
+    public RingBufferThroughputQueue(int capacity, boolean singleProducer) {
+        this(capacity, singleProducer, null, LocalStreamBuilder.DEFAULT_STREAM_IDENTIFIER, -1);
+    }
+
+    /**
+     * Creates a bounded, registered {@code RingBufferThroughputQueue}
+     *
+     * @param capacity minimum capacity of the queue, rounded up to the next power of two
+     * @param singleProducer true if only one thread will ever add elements to the queue
+     * @param id unique id for this queue to be registered with. if id == NULL then not registered
+     * @param streamIdentifier
+     * @param startedAt
+     */
+    public RingBufferThroughputQueue(int capacity, boolean singleProducer, String id, String streamIdentifier, long startedAt) {
+        if(capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30 : "+capacity);
+        }
+        this.capacity = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.mask = this.capacity - 1;
+        this.singleProducer = singleProducer;
+        this.buffer = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for(int i=0; i < this.capacity; ++i) {
+            this.sequences.set(i, i);
+        }
+        this.queuedNanos = new long[this.capacity];
+        this.head = new PaddedAtomicLong(0);
+        this.tail = new PaddedAtomicLong(0);
+        this.startTime = new AtomicLong(-1);
+        this.totalQueueNanos = new StripedCounter();
+        this.maxQueuedNanos = LongExtremum.max(0);
+        this.waits = new LatencyHistogram();
+        if(id != null) {
+            ComponentUtils.registerLocalMBean(String.format(ThroughputQueue.NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
+        }
+    }
+
+    /**
+     * The actual capacity of the ring
+     * @return capacity of the ring
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns true if this queue only supports a single producing thread
+     * @return true if single producer
+     */
+    public boolean isSingleProducer() {
+        return this.singleProducer;
+    }
+
+    /**
+     * Lets any number of threads add elements to a single producer queue.  Must be called before the queue is shared
+     * between threads, like when the component writing to it turns out to run more tasks than it was added with.
+     */
+    public void useMultipleProducers() {
+        this.singleProducer = false;
+    }
+
+    @Override
+    public boolean add(E e) {
+        if(offer(e)) {
+            return true;
+        }
+        throw new IllegalStateException("Queue full");
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if(e == null) {
+            throw new NullPointerException();
+        }
+        long pos;
+        int index;
+        if(this.singleProducer) {
+            pos = this.tail.get();
+            index = (int) pos & this.mask;
+            if(this.sequences.get(index) != pos) {
+                return false;
+            }
+            this.tail.lazySet(pos + 1);
+        } else {
+            while(true) {
+                pos = this.tail.get();
+                index = (int) pos & this.mask;
+                long diff = this.sequences.get(index) - pos;
+                if(diff == 0) {
+                    if(this.tail.compareAndSet(pos, pos + 1)) {
+                        break;
+                    }
+                } else if(diff < 0) {
+                    return false;
+                }
+            }
+        }
+        this.queuedNanos[index] = System.nanoTime();
+        this.buffer.lazySet(index, e);
+        this.sequences.lazySet(index, pos + 1);
+        if(this.startTime.get() < 0) {
+            this.startTime.compareAndSet(-1, System.currentTimeMillis());
+        }
+        return true;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        int attempts = 0;
+        while(!offer(e)) {
+            attempts = backOff(attempts);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempts = 0;
+        while(!offer(e)) {
+            if(System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            attempts = backOff(attempts);
+        }
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        long pos = claimHead();
+        if(pos < 0) {
+            return null;
+        }
+        int index = (int) pos & this.mask;
+        long waitedNanos = System.nanoTime() - this.queuedNanos[index];
+        this.waits.record(waitedNanos);
+        E e = releaseSlot(index, pos);
+        internalRemoveElements(1, waitedNanos, waitedNanos);
+        return e;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        int attempts = 0;
+        E e;
+        while((e = poll()) == null) {
+            attempts = backOff(attempts);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempts = 0;
+        E e;
+        while((e = poll()) == null) {
+            if(System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            attempts = backOff(attempts);
+        }
+        return e;
+    }
+
+    @Override
+    public E remove() {
+        E e = poll();
+        if(e == null) {
+            throw new NoSuchElementException();
+        }
+        return e;
+    }
+
+    @Override
+    public E element() {
+        E e = peek();
+        if(e == null) {
+            throw new NoSuchElementException();
+        }
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        long pos = this.head.get();
+        int index = (int) pos & this.mask;
+        if(this.sequences.get(index) == pos + 1) {
+            return this.buffer.get(index);
+        }
+        return null;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes up to maxElements from the queue and adds them to the given collection. The queue statistics are updated
+     * once for all of the removed elements.
+     */
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if(c == null) {
+            throw new NullPointerException();
+        }
+        if(c == this) {
+            throw new IllegalArgumentException();
+        }
+        long now = System.nanoTime();
+        long totalNanos = 0;
+        long maxNanos = 0;
+        int drained = 0;
+        long pos;
+        while(drained < maxElements && (pos = claimHead()) >= 0) {
+            int index = (int) pos & this.mask;
+            long waitedNanos = now - this.queuedNanos[index];
+            this.waits.record(waitedNanos);
+            totalNanos += waitedNanos;
+            maxNanos = Math.max(maxNanos, waitedNanos);
+            c.add(releaseSlot(index, pos));
+            ++drained;
+        }
+        internalRemoveElements(drained, totalNanos, maxNanos);
+        return drained;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return this.capacity - size();
+    }
+
+    @Override
+    public int size() {
+        long removed = this.head.get();
+        long size = this.tail.get() - removed;
+        if(size < 0) {
+            return 0;
+        }
+        return size > this.capacity ? this.capacity : (int) size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        while(poll() != null);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object[] toArray() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getCurrentSize() {
+        return size();
+    }
+
+    /**
+     * If elements have been removed from the queue or no elements have been added, it returns the average wait time
+     * in milliseconds. If elements have been added, but none have been removed, it returns the time waited by the first
+     * element in the queue.
+     *
+     * @return the average wait time in milliseconds
+     */
+    @Override
+    public double getAvgWait() {
+        long removed = this.head.get();
+        if(removed == 0) {
+            return Math.max(0, getHeadWait());
+        }
+        return (double) this.totalQueueNanos.sum() / (double) removed / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public long getMaxWait() {
+        return Math.max(getHeadWait(), TimeUnit.NANOSECONDS.toMillis(this.maxQueuedNanos.get()));
+    }
+
+    @Override
+    public long getRemoved() {
+        return this.head.get();
+    }
+
+    @Override
+    public long getAdded() {
+        return this.tail.get();
+    }
+
+    @Override
+    public double getThroughput() {
+        long started = this.startTime.get();
+        if(started >= 0) {
+            return this.head.get() / ((System.currentTimeMillis() - started) / 1000.0);
+        }
+        return 0.0;
+    }
+
+    @Override
+    public double getP50Wait() {
+        return this.waits.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP90Wait() {
+        return this.waits.getPercentileMillis(90);
+    }
+
+    @Override
+    public double getP99Wait() {
+        return this.waits.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getP999Wait() {
+        return this.waits.getPercentileMillis(99.9);
+    }
+
+    /**
+     * Time the element at the head of the queue has been waiting in milliseconds, or -1 if the queue is empty.
+     * @return time waited by the head of the queue
+     */
+    private long getHeadWait() {
+        long pos = this.head.get();
+        int index = (int) pos & this.mask;
+        if(this.sequences.get(index) == pos + 1) {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.queuedNanos[index]);
+        }
+        return -1;
+    }
+
+    /**
+     * Claims the slot at the head of the queue for the calling consumer.
+     * @return the position of the claimed slot, or -1 if the queue is empty
+     */
+    private long claimHead() {
+        while(true) {
+            long pos = this.head.get();
+            long diff = this.sequences.get((int) pos & this.mask) - (pos + 1);
+            if(diff == 0) {
+                if(this.head.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+            } else if(diff < 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Takes the element out of a claimed slot and hands the slot back to producers.
+     * @param index index of the slot in the ring
+     * @param pos position the slot was claimed at
+     * @return the element that was in the slot
+     */
+    private E releaseSlot(int index, long pos) {
+        E e = this.buffer.get(index);
+        this.buffer.lazySet(index, null);
+        this.sequences.lazySet(index, pos + this.capacity);
+        return e;
+    }
+
+    /**
+     * Handle updating the stats whenever one or more elements are removed from the queue
+     * @param count number of elements removed
+     * @param queueNanos total time the removed elements waited on the queue in nanoseconds
+     * @param maxNanos longest time a removed element waited on the queue in nanoseconds
+     */
+    private void internalRemoveElements(long count, long queueNanos, long maxNanos) {
+        if(count > 0) {
+            this.totalQueueNanos.add(queueNanos);
+            this.maxQueuedNanos.update(maxNanos);
+        }
+    }
+
+    /**
+     * Busy spins, then yields, then parks for a growing amount of time, depending on how many attempts have already
+     * been made.
+     * @param attempts number of times the caller has already backed off
+     * @return the next attempt count
+     * @throws InterruptedException if the calling thread has been interrupted
+     */
+    private static int backOff(int attempts) throws InterruptedException {
+        if(Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if(attempts < SPIN_TRIES) {
+            return attempts + 1;
+        } else if(attempts < YIELD_TRIES) {
+            Thread.yield();
+            return attempts + 1;
+        }
+        LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, MIN_PARK_NANOS * (attempts - YIELD_TRIES + 1)));
+        return attempts < Integer.MAX_VALUE ? attempts + 1 : attempts;
+    }
+
+    /**
+     * {@link java.util.concurrent.atomic.AtomicLong} padded to its own cache line so the head and tail counters are
+     * not invalidated by writes to each other.
+     */
+    private static class PaddedAtomicLong extends AtomicLong {
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+
+        protected PaddedAtomicLong(long initialValue) {
+            super(initialValue);
+        }
+
+        /**
+         * Keeps the padding from being reported as unused
+         * @return sum of the padding fields
+         */
+        protected long sumPadding() {
+            return p1 + p2 + p3 + p4 + p5 + p6 + p7;
+        }
+    }
+}
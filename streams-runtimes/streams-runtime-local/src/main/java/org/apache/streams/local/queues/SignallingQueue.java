@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.queues;
+
+import com.google.common.util.concurrent.ForwardingBlockingQueue;
+import org.apache.streams.local.executors.WeightedFairExecutor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link java.util.concurrent.BlockingQueue} decorator that signals the consumers of the queue every time data is added
+ * to it, so that consumers only need to be scheduled when there is data to process.  Producers that block on a full
+ * queue do so through {@link org.apache.streams.local.executors.WeightedFairExecutor#managedBlock(java.util.concurrent.ForkJoinPool.ManagedBlocker)}
+ * so that a {@link java.util.concurrent.ForkJoinPool} or {@link org.apache.streams.local.executors.WeightedFairExecutor}
+ * running the producer can compensate with another thread and keep running the consumers.
+ * @param <E>
+ */
+public class SignallingQueue<E> extends ForwardingBlockingQueue<E> {
+
+    /**
+     * Consumer of a {@link org.apache.streams.local.queues.SignallingQueue}
+     */
+    public interface Consumer {
+
+        /**
+         * Schedules the consumer if it is neither running nor already scheduled.
+         * @return true if the consumer was scheduled
+         */
+        public boolean signalIfIdle();
+
+        /**
+         * Schedules the consumer, or makes it run again after its current run if it is already running.
+         */
+        public void signal();
+    }
+
+    private final BlockingQueue<E> delegate;
+    private final List<Consumer> consumers;
+
+    /**
+     *
+     * @param delegate queue that holds the data
+     */
+    public SignallingQueue(BlockingQueue<E> delegate) {
+        this.delegate = delegate;
+        this.consumers = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    protected BlockingQueue<E> delegate() {
+        return this.delegate;
+    }
+
+    /**
+     * Add a consumer to signal when data is added to the queue.
+     * @param consumer consumer of the queue
+     */
+    public void addConsumer(Consumer consumer) {
+        this.consumers.add(consumer);
+    }
+
+    @Override
+    public boolean add(E e) {
+        boolean added = this.delegate.add(e);
+        signalConsumers();
+        return added;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        boolean added = this.delegate.addAll(c);
+        signalConsumers();
+        return added;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if(this.delegate.offer(e)) {
+            signalConsumers();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if(!this.delegate.offer(e)) {
+            OfferBlocker<E> blocker = new OfferBlocker<>(this.delegate, e, System.nanoTime() + unit.toNanos(timeout));
+            WeightedFairExecutor.managedBlock(blocker);
+            if(!blocker.done) {
+                return false;
+            }
+        }
+        signalConsumers();
+        return true;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        if(!this.delegate.offer(e)) {
+            WeightedFairExecutor.managedBlock(new PutBlocker<>(this.delegate, e));
+        }
+        signalConsumers();
+    }
+
+    /**
+     * Schedules one idle consumer.  If every consumer is busy, the first consumer is asked to run again so the data is
+     * not missed.
+     */
+    private void signalConsumers() {
+        for(Consumer consumer : this.consumers) {
+            if(consumer.signalIfIdle()) {
+                return;
+            }
+        }
+        if(!this.consumers.isEmpty()) {
+            this.consumers.get(0).signal();
+        }
+    }
+
+    private static class PutBlocker<E> implements ForkJoinPool.ManagedBlocker {
+
+        private final BlockingQueue<E> queue;
+        private final E element;
+        private boolean done;
+
+        private PutBlocker(BlockingQueue<E> queue, E element) {
+            this.queue = queue;
+            this.element = element;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if(!this.done) {
+                this.queue.put(this.element);
+                this.done = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return this.done || (this.done = this.queue.offer(this.element));
+        }
+    }
+
+    private static class OfferBlocker<E> implements ForkJoinPool.ManagedBlocker {
+
+        private final BlockingQueue<E> queue;
+        private final E element;
+        private final long deadline;
+        private boolean done;
+
+        private OfferBlocker(BlockingQueue<E> queue, E element, long deadline) {
+            this.queue = queue;
+            this.element = element;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            long remaining = this.deadline - System.nanoTime();
+            if(!this.done && remaining > 0) {
+                this.done = this.queue.offer(this.element, remaining, TimeUnit.NANOSECONDS);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return this.done || (this.done = this.queue.offer(this.element)) || System.nanoTime() >= this.deadline;
+        }
+    }
+}
@@ -0,0 +1,730 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.queues;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.local.builders.LocalStreamBuilder;
+import org.apache.streams.local.counters.LatencyHistogram;
+import org.apache.streams.local.counters.LongExtremum;
+import org.apache.streams.local.counters.StripedCounter;
+import org.apache.streams.local.tasks.EndOfStream;
+import org.apache.streams.util.ComponentUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link java.util.concurrent.BlockingQueue} of {@link org.apache.streams.core.StreamsDatum}s that holds a bounded
+ * number of datums in memory and spills the overflow to memory mapped, append only segment files on local disk, so
+ * that producers are not blocked by bursts and the heap does not grow with them.  Datums are removed in the order they
+ * were added: once anything has been spilled, new datums are spilled as well until consumers have drained the spill.
+ * Spilled datums are encoded by {@link org.apache.streams.local.queues.StreamsDatumCodec} and come back as plain
+ * {@link org.apache.streams.core.StreamsDatum}s.  Datums that cannot be encoded, and datums added once the spill has
+ * reached its maximum size, wait for room in memory.  Implements
+ * {@link org.apache.streams.local.queues.SpillingThroughputQueueMXBean} and registers whenever the constructor receives
+ * a non-null id.
+ * <p/>
+ * Drained segments are deleted, except for the last one which is reused.  {@link #close()} deletes the remaining
+ * segments.
+ * <p/>
+ * !!! Warning !!!
+ * Only the necessary methods for the local streams runtime are implemented.  All other methods throw a
+ * {@link java.lang.UnsupportedOperationException}.
+ */
+public class SpillingThroughputQueue implements BlockingQueue<StreamsDatum>, SpillingThroughputQueueMXBean, Closeable {
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillingThroughputQueue.class);
+
+    private static final byte DATUM_RECORD = 0;
+    private static final byte MARKER_RECORD = 1;
+    private static final int RECORD_HEADER_BYTES = 4 + 1 + 8;
+
+    private final int capacity;
+    private final File spillDirectory;
+    private final int segmentBytes;
+    private final long maxSpillBytes;
+    private final String id;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private final ArrayDeque<QueuedDatum> memory;
+    private final LinkedList<SpillSegment> segments;
+    private final StripedCounter added;
+    private final StripedCounter removed;
+    private final StripedCounter totalSpilled;
+    private final AtomicLong startTime;
+    private final StripedCounter totalQueueNanos;
+    private final LongExtremum maxQueuedNanos;
+    private final LatencyHistogram waits;
+    private volatile int spilledCount;
+    private volatile long spilledBytes;
+    private volatile boolean closed;
+
+    /**
+     * Creates an unregistered {@code SpillingThroughputQueue} with an unbounded spill in the temp directory
+     *
+     * @param capacity maximum number of datums held in memory
+     */
+    public SpillingThroughputQueue(int capacity) {
+        this(capacity, new File(System.getProperty("java.io.tmpdir")), DEFAULT_SEGMENT_BYTES, -1, null, LocalStreamBuilder.DEFAULT_STREAM_IDENTIFIER, -1);
+    }
+
+    /**
+     * Creates a {@code SpillingThroughputQueue}
+     *
+     * @param capacity maximum number of datums held in memory
+     * @param spillDirectory directory to create the segment files in
+     * @param segmentBytes size of each segment file, larger datums get a segment of their own
+     * @param maxSpillBytes maximum number of bytes of spilled datums, if maxSpillBytes < 0 then unbounded
+     * @param id unique id for this queue to be registered with. if id == NULL then not registered
+     * @param streamIdentifier
+     * @param startedAt
+     */
+    public SpillingThroughputQueue(int capacity, File spillDirectory, int segmentBytes, long maxSpillBytes, String id, String streamIdentifier, long startedAt) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1 : "+capacity);
+        }
+        if(segmentBytes <= RECORD_HEADER_BYTES) {
+            throw new IllegalArgumentException("Segment size must be larger than "+RECORD_HEADER_BYTES+" : "+segmentBytes);
+        }
+        if(!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Spill directory does not exist and could not be created : "+spillDirectory);
+        }
+        this.capacity = capacity;
+        this.spillDirectory = spillDirectory;
+        this.segmentBytes = segmentBytes;
+        this.maxSpillBytes = maxSpillBytes;
+        this.id = id == null ? "queue" : id;
+        this.lock = new ReentrantLock();
+        this.notEmpty = this.lock.newCondition();
+        this.notFull = this.lock.newCondition();
+        this.memory = new ArrayDeque<>(Math.min(capacity, 1024));
+        this.segments = new LinkedList<>();
+        this.added = new StripedCounter();
+        this.removed = new StripedCounter();
+        this.totalSpilled = new StripedCounter();
+        this.startTime = new AtomicLong(-1);
+        this.totalQueueNanos = new StripedCounter();
+        this.maxQueuedNanos = LongExtremum.max(0);
+        this.waits = new LatencyHistogram();
+        if(id != null) {
+            ComponentUtils.registerLocalMBean(String.format(ThroughputQueue.NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
+        }
+    }
+
+    @Override
+    public boolean add(StreamsDatum datum) {
+        if(offer(datum)) {
+            return true;
+        }
+        throw new IllegalStateException("Queue full");
+    }
+
+    @Override
+    public boolean offer(StreamsDatum datum) {
+        try {
+            return enqueue(datum, false, 0);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void put(StreamsDatum datum) throws InterruptedException {
+        enqueue(datum, false, -1);
+    }
+
+    @Override
+    public boolean offer(StreamsDatum datum, long timeout, TimeUnit unit) throws InterruptedException {
+        return enqueue(datum, true, unit.toNanos(timeout));
+    }
+
+    @Override
+    public StreamsDatum take() throws InterruptedException {
+        StreamsDatum datum = null;
+        while(datum == null) {
+            QueuedDatum queued;
+            this.lock.lockInterruptibly();
+            try {
+                while(hasNoElements()) {
+                    this.notEmpty.await();
+                }
+                queued = dequeue();
+            } finally {
+                this.lock.unlock();
+            }
+            datum = toDatum(queued);
+        }
+        return datum;
+    }
+
+    @Override
+    public StreamsDatum poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        QueuedDatum queued;
+        this.lock.lockInterruptibly();
+        try {
+            while(hasNoElements()) {
+                if(nanos <= 0) {
+                    return null;
+                }
+                nanos = this.notEmpty.awaitNanos(nanos);
+            }
+            queued = dequeue();
+        } finally {
+            this.lock.unlock();
+        }
+        return toDatum(queued);
+    }
+
+    @Override
+    public StreamsDatum poll() {
+        QueuedDatum queued;
+        this.lock.lock();
+        try {
+            if(hasNoElements()) {
+                return null;
+            }
+            queued = dequeue();
+        } finally {
+            this.lock.unlock();
+        }
+        return toDatum(queued);
+    }
+
+    @Override
+    public StreamsDatum remove() {
+        StreamsDatum datum = poll();
+        if(datum == null) {
+            throw new NoSuchElementException();
+        }
+        return datum;
+    }
+
+    @Override
+    public StreamsDatum peek() {
+        QueuedDatum queued;
+        this.lock.lock();
+        try {
+            if(!this.memory.isEmpty()) {
+                return this.memory.peekFirst().datum;
+            } else if(this.spilledCount == 0) {
+                return null;
+            }
+            queued = this.segments.peekFirst().read(false);
+        } finally {
+            this.lock.unlock();
+        }
+        return deserialize(queued);
+    }
+
+    @Override
+    public StreamsDatum element() {
+        StreamsDatum datum = peek();
+        if(datum == null) {
+            throw new NoSuchElementException();
+        }
+        return datum;
+    }
+
+    @Override
+    public int drainTo(Collection<? super StreamsDatum> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super StreamsDatum> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        List<QueuedDatum> drained = new ArrayList<>();
+        this.lock.lock();
+        try {
+            while(drained.size() < maxElements && !hasNoElements()) {
+                drained.add(dequeue());
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        int count = 0;
+        for(QueuedDatum queued : drained) {
+            StreamsDatum datum = toDatum(queued);
+            if(datum != null) {
+                c.add(datum);
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The remaining capacity in memory, or {@link Integer#MAX_VALUE} when the spill is unbounded
+     */
+    @Override
+    public int remainingCapacity() {
+        if(this.maxSpillBytes < 0) {
+            return Integer.MAX_VALUE;
+        }
+        this.lock.lock();
+        try {
+            return this.spilledCount == 0 ? this.capacity - this.memory.size() : 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.memory.size() + this.spilledCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        while(poll() != null);
+    }
+
+    /**
+     * Deletes the segment files.  Spilled datums that have not been removed are lost.
+     */
+    @Override
+    public void close() {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            for(SpillSegment segment : this.segments) {
+                segment.release();
+            }
+            this.segments.clear();
+            this.spilledCount = 0;
+            this.spilledBytes = 0;
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<StreamsDatum> iterator() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object[] toArray() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends StreamsDatum> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getCurrentSize() {
+        return size();
+    }
+
+    /**
+     * If elements have been removed from the queue or no elements have been added, it returns the average wait time
+     * in milliseconds. If elements have been added, but none have been removed, it returns the time waited by the first
+     * element in the queue.
+     *
+     * @return the average wait time in milliseconds
+     */
+    @Override
+    public double getAvgWait() {
+        long removed = this.removed.sum();
+        if(removed == 0) {
+            return Math.max(0, getHeadWait());
+        }
+        return (double) this.totalQueueNanos.sum() / (double) removed / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public long getMaxWait() {
+        return Math.max(getHeadWait(), TimeUnit.NANOSECONDS.toMillis(this.maxQueuedNanos.get()));
+    }
+
+    @Override
+    public long getRemoved() {
+        return this.removed.sum();
+    }
+
+    @Override
+    public long getAdded() {
+        return this.added.sum();
+    }
+
+    @Override
+    public double getThroughput() {
+        long started = this.startTime.get();
+        if(started >= 0) {
+            return this.removed.sum() / ((System.currentTimeMillis() - started) / 1000.0);
+        }
+        return 0.0;
+    }
+
+    @Override
+    public double getP50Wait() {
+        return this.waits.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP90Wait() {
+        return this.waits.getPercentileMillis(90);
+    }
+
+    @Override
+    public double getP99Wait() {
+        return this.waits.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getP999Wait() {
+        return this.waits.getPercentileMillis(99.9);
+    }
+
+    @Override
+    public long getSpilledSize() {
+        return this.spilledCount;
+    }
+
+    @Override
+    public long getSpilledBytes() {
+        return this.spilledBytes;
+    }
+
+    @Override
+    public long getTotalSpilled() {
+        return this.totalSpilled.sum();
+    }
+
+    /**
+     * Adds a datum to memory if nothing has been spilled and there is room, otherwise spills it.  Serializes the datum
+     * outside of the lock, and only once it has to be spilled.
+     * @param datum datum to add
+     * @param timed true if the call should wait at most nanos
+     * @param nanos time to wait, or a negative number to wait indefinitely when not timed
+     * @return true if the datum was added
+     * @throws InterruptedException
+     */
+    private boolean enqueue(StreamsDatum datum, boolean timed, long nanos) throws InterruptedException {
+        if(datum == null) {
+            throw new NullPointerException();
+        }
+        boolean marker = EndOfStream.isMarker(datum);
+        boolean spillable = true;
+        byte[] serialized = null;
+        long queuedTime = System.nanoTime();
+        this.lock.lockInterruptibly();
+        try {
+            while(true) {
+                if(this.spilledCount == 0 && this.memory.size() < this.capacity) {
+                    this.memory.addLast(new QueuedDatum(datum, null, queuedTime));
+                    break;
+                }
+                if(!marker && spillable && serialized == null && !this.closed) {
+                    this.lock.unlock();
+                    try {
+                        serialized = StreamsDatumCodec.encode(datum);
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Datum {} can not be encoded and has to wait for room in memory : {}", datum.getId(), e.getMessage());
+                        spillable = false;
+                    } finally {
+                        this.lock.lock();
+                    }
+                    continue;
+                }
+                if(spillable && !this.closed && spill(marker ? MARKER_RECORD : DATUM_RECORD, serialized, queuedTime)) {
+                    break;
+                }
+                if(!timed && nanos == 0) {
+                    return false;
+                } else if(timed) {
+                    if(nanos <= 0) {
+                        return false;
+                    }
+                    nanos = this.notFull.awaitNanos(nanos);
+                } else {
+                    this.notFull.await();
+                }
+            }
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+        this.added.increment();
+        if(this.startTime.get() < 0) {
+            this.startTime.compareAndSet(-1, System.currentTimeMillis());
+        }
+        return true;
+    }
+
+    /**
+     * Appends a record to the last segment, mapping a new segment if it does not fit.  Must hold the lock.
+     * @return true if the record was spilled
+     */
+    private boolean spill(byte type, byte[] serialized, long queuedTime) {
+        int recordBytes = RECORD_HEADER_BYTES + (serialized == null ? 0 : serialized.length);
+        if(this.maxSpillBytes >= 0 && this.spilledBytes + recordBytes > this.maxSpillBytes) {
+            return false;
+        }
+        SpillSegment segment = this.segments.peekLast();
+        if(segment == null || !segment.hasRoom(recordBytes)) {
+            try {
+                segment = new SpillSegment(File.createTempFile("streams-spill-"+this.id+"-", ".seg", this.spillDirectory), Math.max(this.segmentBytes, recordBytes));
+            } catch (IOException ioe) {
+                LOGGER.error("Failed to create spill segment in {} : {}", this.spillDirectory, ioe);
+                return false;
+            }
+            this.segments.addLast(segment);
+        }
+        segment.write(type, serialized, queuedTime);
+        ++this.spilledCount;
+        this.spilledBytes += recordBytes;
+        this.totalSpilled.increment();
+        return true;
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private boolean hasNoElements() {
+        return this.memory.isEmpty() && this.spilledCount == 0;
+    }
+
+    /**
+     * Removes the oldest datum, from memory if there is any, otherwise from the spill.  Must hold the lock and the queue
+     * must not be empty.
+     */
+    private QueuedDatum dequeue() {
+        QueuedDatum queued = this.memory.pollFirst();
+        if(queued == null) {
+            SpillSegment segment = this.segments.peekFirst();
+            queued = segment.read(true);
+            --this.spilledCount;
+            this.spilledBytes -= RECORD_HEADER_BYTES + (queued.serialized == null ? 0 : queued.serialized.length);
+            if(!segment.hasUnread()) {
+                if(this.segments.size() > 1) {
+                    this.segments.removeFirst().release();
+                } else {
+                    segment.reset();
+                }
+            }
+        }
+        this.notFull.signalAll();
+        return queued;
+    }
+
+    /**
+     * Deserializes a removed datum if it was spilled and records how long it waited.
+     * @return the datum, or null if it could not be deserialized
+     */
+    private StreamsDatum toDatum(QueuedDatum queued) {
+        long waitedNanos = System.nanoTime() - queued.queuedTime;
+        this.waits.record(waitedNanos);
+        this.removed.increment();
+        this.totalQueueNanos.add(waitedNanos);
+        this.maxQueuedNanos.update(waitedNanos);
+        return deserialize(queued);
+    }
+
+    private StreamsDatum deserialize(QueuedDatum queued) {
+        if(queued.datum != null) {
+            return queued.datum;
+        }
+        try {
+            return StreamsDatumCodec.decode(queued.serialized);
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to deserialize spilled datum, datum is lost : {}", e);
+            return null;
+        }
+    }
+
+    /**
+     * Time the element at the head of the queue has been waiting in milliseconds, or -1 if the queue is empty.
+     * @return time waited by the head of the queue
+     */
+    private long getHeadWait() {
+        this.lock.lock();
+        try {
+            if(!this.memory.isEmpty()) {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.memory.peekFirst().queuedTime);
+            } else if(this.spilledCount > 0) {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.segments.peekFirst().read(false).queuedTime);
+            }
+            return -1;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * A datum held in memory, or the serialized form of a datum read from the spill
+     */
+    private static class QueuedDatum {
+
+        private final StreamsDatum datum;
+        private final byte[] serialized;
+        private final long queuedTime; //System.nanoTime() when the datum was added
+
+        private QueuedDatum(StreamsDatum datum, byte[] serialized, long queuedTime) {
+            this.datum = datum;
+            this.serialized = serialized;
+            this.queuedTime = queuedTime;
+        }
+    }
+
+    /**
+     * Memory mapped segment file holding records of a payload length, a record type, the time queued and the payload.
+     */
+    private static class SpillSegment {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+
+        private SpillSegment(File file, int size) throws IOException {
+            this.file = file;
+            this.file.deleteOnExit();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException ioe) {
+                this.file.delete();
+                throw ioe;
+            }
+        }
+
+        private boolean hasRoom(int recordBytes) {
+            return this.buffer.capacity() - this.writePosition >= recordBytes;
+        }
+
+        private boolean hasUnread() {
+            return this.readPosition < this.writePosition;
+        }
+
+        private void write(byte type, byte[] serialized, long queuedTime) {
+            ByteBuffer out = this.buffer.duplicate();
+            out.position(this.writePosition);
+            out.putInt(serialized == null ? 0 : serialized.length);
+            out.put(type);
+            out.putLong(queuedTime);
+            if(serialized != null) {
+                out.put(serialized);
+            }
+            this.writePosition = out.position();
+        }
+
+        private QueuedDatum read(boolean advance) {
+            ByteBuffer in = this.buffer.duplicate();
+            in.position(this.readPosition);
+            int length = in.getInt();
+            byte type = in.get();
+            long queuedTime = in.getLong();
+            QueuedDatum queued;
+            if(type == MARKER_RECORD) {
+                queued = new QueuedDatum(EndOfStream.MARKER, null, queuedTime);
+            } else {
+                byte[] serialized = new byte[length];
+                in.get(serialized);
+                queued = new QueuedDatum(null, serialized, queuedTime);
+            }
+            if(advance) {
+                this.readPosition = in.position();
+            }
+            return queued;
+        }
+
+        private void reset() {
+            this.readPosition = 0;
+            this.writePosition = 0;
+        }
+
+        private void release() {
+            if(!this.file.delete()) {
+                LOGGER.debug("Spill segment {} will be deleted on exit", this.file);
+            }
+        }
+    }
+}
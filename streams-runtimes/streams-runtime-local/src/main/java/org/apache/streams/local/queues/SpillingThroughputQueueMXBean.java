@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.queues;
+
+/**
+ * {@link org.apache.streams.local.queues.ThroughputQueueMXBean} of a queue that spills to disk
+ */
+public interface SpillingThroughputQueueMXBean extends ThroughputQueueMXBean {
+
+    /**
+     * Get the number of items currently spilled to disk
+     * @return number of items on disk
+     */
+    public long getSpilledSize();
+
+    /**
+     * Get the number of bytes of spill segment currently holding items
+     * @return number of bytes on disk
+     */
+    public long getSpilledBytes();
+
+    /**
+     * Get the number of items that have been spilled to disk since the queue was created
+     * @return number of items spilled to disk
+     */
+    public long getTotalSpilled();
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.queues;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.streams.core.CompactStreamsDatum;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsDocument;
+import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.util.SerializationUtil;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes {@link org.apache.streams.core.StreamsDatum}s written to disk by {@link org.apache.streams.local.queues.SpillingThroughputQueue}
+ * and {@link org.apache.streams.local.queues.DurableQueue}.
+ * String and {@link com.fasterxml.jackson.databind.JsonNode} documents are written as UTF-8 and json, which is both
+ * faster than java serialization and supports json nodes, which are not serializable.
+ * {@link org.apache.streams.core.StreamsDocument}s are written as their UTF-8 bytes and decoded without parsing.  Other documents and non-empty
+ * metadata use java serialization.  Decoded datums are plain {@link org.apache.streams.core.StreamsDatum}s, or
+ * {@link org.apache.streams.core.CompactStreamsDatum}s if that is what was encoded.
+ */
+class StreamsDatumCodec {
+
+    private static final byte NULL_DOCUMENT = 0;
+    private static final byte STRING_DOCUMENT = 1;
+    private static final byte JSON_DOCUMENT = 2;
+    private static final byte SERIALIZED_DOCUMENT = 3;
+    private static final byte STREAMS_DOCUMENT = 4;
+
+    private static final int HAS_ID = 1;
+    private static final int HAS_TIMESTAMP = 2;
+    private static final int HAS_SEQUENCE_ID = 4;
+    private static final int HAS_METADATA = 8;
+    private static final int COMPACT = 16;
+
+    private static final StreamsJacksonMapper MAPPER = StreamsJacksonMapper.getInstance();
+
+    private StreamsDatumCodec() {}
+
+    /**
+     * @param datum datum to encode
+     * @return encoded datum
+     * @throws RuntimeException if the document or metadata can not be encoded
+     */
+    static byte[] encode(StreamsDatum datum) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            String id = datum.getId();
+            DateTime timestamp = datum.getTimestamp();
+            BigInteger sequenceId = datum.getSequenceid();
+            Map<String, Object> metadata = datum.hasMetadata() ? datum.getMetadata() : null;
+            int flags = (id == null ? 0 : HAS_ID) |
+                    (timestamp == null ? 0 : HAS_TIMESTAMP) |
+                    (sequenceId == null ? 0 : HAS_SEQUENCE_ID) |
+                    (metadata == null ? 0 : HAS_METADATA) |
+                    (datum instanceof CompactStreamsDatum ? COMPACT : 0);
+            out.writeByte(flags);
+            if(id != null) {
+                out.writeUTF(id);
+            }
+            if(timestamp != null) {
+                out.writeLong(timestamp.getMillis());
+                out.writeUTF(timestamp.getZone().getID());
+            }
+            if(sequenceId != null) {
+                writeBytes(out, sequenceId.toByteArray());
+            }
+            if((flags & HAS_METADATA) != 0) {
+                writeBytes(out, SerializationUtil.serialize(new HashMap<>(metadata)));
+            }
+            Object document = datum.getDocument();
+            if(document == null) {
+                out.writeByte(NULL_DOCUMENT);
+            } else if(document instanceof String) {
+                out.writeByte(STRING_DOCUMENT);
+                writeBytes(out, ((String) document).getBytes("UTF-8"));
+            } else if(document instanceof StreamsDocument) {
+                out.writeByte(STREAMS_DOCUMENT);
+                writeBytes(out, ((StreamsDocument) document).getBytes());
+            } else if(document instanceof JsonNode) {
+                out.writeByte(JSON_DOCUMENT);
+                writeBytes(out, MAPPER.writeValueAsBytes(document));
+            } else {
+                out.writeByte(SERIALIZED_DOCUMENT);
+                writeBytes(out, SerializationUtil.serialize(document));
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    /**
+     * @param encoded datum encoded by {@link #encode(org.apache.streams.core.StreamsDatum)}
+     * @return decoded datum
+     * @throws RuntimeException if the datum can not be decoded
+     */
+    @SuppressWarnings("unchecked")
+    static StreamsDatum decode(byte[] encoded) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+            int flags = in.readByte();
+            String id = (flags & HAS_ID) != 0 ? in.readUTF() : null;
+            DateTime timestamp = null;
+            if((flags & HAS_TIMESTAMP) != 0) {
+                long millis = in.readLong();
+                timestamp = new DateTime(millis, DateTimeZone.forID(in.readUTF()));
+            }
+            BigInteger sequenceId = (flags & HAS_SEQUENCE_ID) != 0 ? new BigInteger(readBytes(in)) : null;
+            Map<String, Object> metadata = (flags & HAS_METADATA) != 0 ? (Map<String, Object>) SerializationUtil.deserialize(readBytes(in)) : null;
+            Object document;
+            byte type = in.readByte();
+            switch(type) {
+                case NULL_DOCUMENT:
+                    document = null;
+                    break;
+                case STRING_DOCUMENT:
+                    document = new String(readBytes(in), "UTF-8");
+                    break;
+                case JSON_DOCUMENT:
+                    document = MAPPER.readTree(readBytes(in));
+                    break;
+                case SERIALIZED_DOCUMENT:
+                    document = SerializationUtil.deserialize(readBytes(in));
+                    break;
+                case STREAMS_DOCUMENT:
+                    document = new StreamsDocument(readBytes(in));
+                    break;
+                default:
+                    throw new IOException("Unknown document type : "+type);
+            }
+            StreamsDatum datum = (flags & COMPACT) != 0 ?
+                    new CompactStreamsDatum(document, id, timestamp, sequenceId) :
+                    new StreamsDatum(document, id, timestamp, sequenceId);
+            if(metadata != null) {
+                datum.setMetadata(metadata);
+            }
+            return datum;
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import com.google.common.util.concurrent.ForwardingBlockingQueue;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.local.counters.StripedCounter;
+import org.apache.streams.local.tasks.EndOfStream;
+import org.apache.streams.util.ComponentUtils;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link java.util.concurrent.BlockingQueue} decorator that limits the rate at which datums are added to the wrapped
+ * queue with a {@link org.apache.streams.local.queues.TokenBucket}.  Producers that are over the rate block in
+ * {@link #put(org.apache.streams.core.StreamsDatum)} as they would on a full queue, so the rate limit pushes back on
+ * the upstream components while the consumers of the wrapped queue keep reading it directly.  Producers block through
+ * {@link java.util.concurrent.ForkJoinPool#managedBlock(java.util.concurrent.ForkJoinPool.ManagedBlocker)} so a
+ * {@link java.util.concurrent.ForkJoinPool} running them can compensate with another thread.
+ * <p/>
+ * End of stream markers are never throttled.
+ */
+public class ThrottledQueue extends ForwardingBlockingQueue<StreamsDatum> implements ThrottledQueueMXBean {
+
+    public static final String NAME_TEMPLATE = "org.apache.streams.local:type=ThrottledQueue,name=%s,identifier=%s,startedAt=%s";
+
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final BlockingQueue<StreamsDatum> delegate;
+    private final TokenBucket bucket;
+    private final StripedCounter throttled;
+    private final StripedCounter throttledNanos;
+    private final AtomicLong windowStart;
+    private final AtomicLong windowCount;
+    private volatile double lastRate;
+
+    /**
+     * Creates an unregistered queue
+     * @param delegate queue that holds the data
+     * @param datumsPerSecond maximum number of datums added per second
+     * @param burst number of datums that can be added at once after the queue has not been added to for a while
+     */
+    public ThrottledQueue(BlockingQueue<StreamsDatum> delegate, double datumsPerSecond, int burst) {
+        this(delegate, datumsPerSecond, burst, null, null, -1);
+    }
+
+    /**
+     *
+     * @param delegate queue that holds the data
+     * @param datumsPerSecond maximum number of datums added per second
+     * @param burst number of datums that can be added at once after the queue has not been added to for a while
+     * @param id unique id for this queue to be registered with. if id == NULL then not registered
+     * @param streamIdentifier
+     * @param startedAt
+     */
+    public ThrottledQueue(BlockingQueue<StreamsDatum> delegate, double datumsPerSecond, int burst, String id, String streamIdentifier, long startedAt) {
+        this.delegate = delegate;
+        this.bucket = new TokenBucket(datumsPerSecond, burst);
+        this.throttled = new StripedCounter();
+        this.throttledNanos = new StripedCounter();
+        this.windowStart = new AtomicLong(System.nanoTime());
+        this.windowCount = new AtomicLong(0);
+        this.lastRate = 0.0;
+        if(id != null) {
+            ComponentUtils.registerLocalMBean(String.format(NAME_TEMPLATE, id, streamIdentifier, startedAt), this);
+        }
+    }
+
+    @Override
+    protected BlockingQueue<StreamsDatum> delegate() {
+        return this.delegate;
+    }
+
+    /**
+     * The wrapped queue
+     * @return queue that holds the data
+     */
+    public BlockingQueue<StreamsDatum> getDelegate() {
+        return this.delegate;
+    }
+
+    @Override
+    public boolean add(StreamsDatum datum) {
+        if(!tryAdmit(datum)) {
+            throw new IllegalStateException("Rate limit exceeded");
+        }
+        return this.delegate.add(datum);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends StreamsDatum> collection) {
+        return standardAddAll(collection);
+    }
+
+    @Override
+    public boolean offer(StreamsDatum datum) {
+        return tryAdmit(datum) && this.delegate.offer(datum);
+    }
+
+    @Override
+    public boolean offer(StreamsDatum datum, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if(!admit(datum, unit.toNanos(timeout))) {
+            return false;
+        }
+        return this.delegate.offer(datum, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void put(StreamsDatum datum) throws InterruptedException {
+        admit(datum, Long.MAX_VALUE);
+        this.delegate.put(datum);
+    }
+
+    @Override
+    public double getRateLimit() {
+        return this.bucket.getTokensPerSecond();
+    }
+
+    @Override
+    public int getBurst() {
+        return this.bucket.getBurst();
+    }
+
+    /**
+     * Reports the rate of the last full window, or the rate of the current window once it has run for two windows
+     * without anything being added.
+     */
+    @Override
+    public double getCurrentRate() {
+        long elapsed = System.nanoTime() - this.windowStart.get();
+        if(elapsed >= 2 * RATE_WINDOW_NANOS) {
+            return this.windowCount.get() * (double) RATE_WINDOW_NANOS / elapsed;
+        }
+        return this.lastRate;
+    }
+
+    @Override
+    public long getNumThrottled() {
+        return this.throttled.sum();
+    }
+
+    @Override
+    public long getThrottledTime() {
+        return TimeUnit.NANOSECONDS.toMillis(this.throttledNanos.sum());
+    }
+
+    private boolean tryAdmit(StreamsDatum datum) {
+        if(EndOfStream.isMarker(datum)) {
+            return true;
+        }
+        if(this.bucket.reserve(0) < 0) {
+            return false;
+        }
+        recordAdmitted();
+        return true;
+    }
+
+    /**
+     * Waits for a token to add a datum
+     * @param datum datum to add
+     * @param maxWaitNanos longest time to wait
+     * @return true if the datum may be added, false if no token was free in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean admit(StreamsDatum datum, long maxWaitNanos) throws InterruptedException {
+        if(EndOfStream.isMarker(datum)) {
+            return true;
+        }
+        long wait = this.bucket.reserve(maxWaitNanos);
+        if(wait < 0) {
+            return false;
+        }
+        if(wait > 0) {
+            this.throttled.increment();
+            this.throttledNanos.add(wait);
+            ForkJoinPool.managedBlock(new TokenBlocker(System.nanoTime() + wait));
+        }
+        recordAdmitted();
+        return true;
+    }
+
+    private void recordAdmitted() {
+        long now = System.nanoTime();
+        long start = this.windowStart.get();
+        if(now - start >= RATE_WINDOW_NANOS && this.windowStart.compareAndSet(start, now)) {
+            this.lastRate = this.windowCount.getAndSet(0) * (double) RATE_WINDOW_NANOS / (now - start);
+        }
+        this.windowCount.incrementAndGet();
+    }
+
+    private static class TokenBlocker implements ForkJoinPool.ManagedBlocker {
+
+        private final long deadline;
+
+        private TokenBlocker(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            long remaining = this.deadline - System.nanoTime();
+            if(remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            return isReleasable();
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return System.nanoTime() >= this.deadline;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+/**
+ * MXBean capable queue that throttles the rate at which data is added to it.
+ */
+public interface ThrottledQueueMXBean {
+
+    /**
+     * Get the maximum number of datums added per second
+     * @return rate limit
+     */
+    public double getRateLimit();
+
+    /**
+     * Get the number of datums that can be added at once after the queue has not been added to for a while
+     * @return burst capacity
+     */
+    public int getBurst();
+
+    /**
+     * Get the number of datums added per second, measured over roughly the last second
+     * @return current rate
+     */
+    public double getCurrentRate();
+
+    /**
+     * Get the number of datums whose producer had to wait before adding them
+     * @return number of throttled datums
+     */
+    public long getNumThrottled();
+
+    /**
+     * Get the total time producers have waited to add datums in milliseconds
+     * @return throttled time in milliseconds
+     */
+    public long getThrottledTime();
+
+}
@@ -18,25 +18,30 @@
 package org.apache.streams.local.queues;
 
 import org.apache.streams.local.builders.LocalStreamBuilder;
+import org.apache.streams.local.counters.LatencyHistogram;
+import org.apache.streams.local.counters.LongExtremum;
+import org.apache.streams.local.counters.StripedCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import javax.management.*;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A {@link java.util.concurrent.BlockingQueue} implementation that allows the measure measurement of how
  * data flows through the queue.  Is also a {@code MBean} so the flow statistics can be viewed through
- * JMX. Registration of the bean happens whenever a constructor receives a non-null id.
+ * JMX. Registration of the bean happens whenever a constructor receives a non-null id.  The statistics are kept in
+ * {@link org.apache.streams.local.counters.StripedCounter}s and a {@link org.apache.streams.local.counters.LongExtremum},
+ * so producers and consumers do not take any lock other than the underlying queue's to update them.
  * <p/>
  * !!! Warning !!!
  * Only the necessary methods for the local streams runtime are implemented.  All other methods throw a
@@ -49,13 +54,13 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
     private static final Logger LOGGER = LoggerFactory.getLogger(ThroughputQueue.class);
 
     private BlockingQueue<ThroughputElement<E>> underlyingQueue;
-    private AtomicLong elementsAdded;
-    private AtomicLong elementsRemoved;
+    private StripedCounter elementsAdded;
+    private StripedCounter elementsRemoved;
     private AtomicLong startTime;
-    private AtomicLong totalQueueTime;
-    private long maxQueuedTime;
+    private StripedCounter totalQueueNanos;
+    private LongExtremum maxQueuedNanos;
     private volatile boolean active;
-    private ReadWriteLock maxQueueTimeLock;
+    private LatencyHistogram waits;
 
     /**
      * Creates an unbounded, unregistered {@code ThroughputQueue}
@@ -133,13 +138,13 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
         } else {
             this.underlyingQueue = new LinkedBlockingQueue<>(maxSize);
         }
-        this.elementsAdded = new AtomicLong(0);
-        this.elementsRemoved = new AtomicLong(0);
+        this.elementsAdded = new StripedCounter();
+        this.elementsRemoved = new StripedCounter();
         this.startTime = new AtomicLong(-1);
         this.active = false;
-        this.maxQueuedTime = 0;
-        this.maxQueueTimeLock = new ReentrantReadWriteLock();
-        this.totalQueueTime = new AtomicLong(0);
+        this.maxQueuedNanos = LongExtremum.max(0);
+        this.totalQueueNanos = new StripedCounter();
+        this.waits = new LatencyHistogram();
         if (id != null) {
             try {
                 ObjectName name = new ObjectName(String.format(NAME_TEMPLATE, id, streamIdentifier, startedAt));
@@ -227,12 +232,37 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
 
     @Override
     public int drainTo(Collection<? super E> c) {
-        throw new NotImplementedException();
+        return drainTo(c, Integer.MAX_VALUE);
     }
 
+    /**
+     * Removes up to maxElements from the queue and adds them to the given collection. The queue statistics are updated
+     * once for all of the removed elements.
+     */
     @Override
     public int drainTo(Collection<? super E> c, int maxElements) {
-        throw new NotImplementedException();
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        List<ThroughputElement<E>> drained = new ArrayList<>(Math.min(maxElements, Math.max(this.underlyingQueue.size(), 1)));
+        int count = this.underlyingQueue.drainTo(drained, maxElements);
+        if (count > 0) {
+            long now = System.nanoTime();
+            long totalNanos = 0;
+            long maxNanos = 0;
+            for (ThroughputElement<E> e : drained) {
+                long waitedNanos = e.getWaitedNanos(now);
+                this.waits.record(waitedNanos);
+                totalNanos += waitedNanos;
+                maxNanos = Math.max(maxNanos, waitedNanos);
+                c.add(e.getElement());
+            }
+            internalRemoveElements(count, totalNanos, maxNanos);
+        }
+        return count;
     }
 
     @Override
@@ -321,7 +351,8 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
 
     @Override
     public long getCurrentSize() {
-        return this.elementsAdded.get() - this.elementsRemoved.get();
+        long removed = this.elementsRemoved.sum();
+        return this.elementsAdded.sum() - removed;
     }
 
     /**
@@ -333,62 +364,74 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
      */
     @Override
     public double getAvgWait() {
-        if (this.elementsRemoved.get() == 0) {
-            if (this.getCurrentSize() > 0) {
-                return this.underlyingQueue.peek().getWaited();
+        long removed = this.elementsRemoved.sum();
+        if (removed == 0) {
+            ThroughputElement<E> e = this.underlyingQueue.peek();
+            if (e != null) {
+                return e.getWaited();
             } else {
                 return 0.0;
             }
         } else {
-            return (double) this.totalQueueTime.get() / (double) this.elementsRemoved.get();
+            return (double) this.totalQueueNanos.sum() / (double) removed / TimeUnit.MILLISECONDS.toNanos(1);
         }
     }
 
     @Override
     public long getMaxWait() {
         ThroughputElement<E> e = this.underlyingQueue.peek();
-        long max = -1;
-        try {
-            this.maxQueueTimeLock.readLock().lock();
-            if (e != null && e.getWaited() > this.maxQueuedTime) {
-                max = e.getWaited();
-            } else {
-                max = this.maxQueuedTime;
-            }
-        } finally {
-            this.maxQueueTimeLock.readLock().unlock();
+        long max = TimeUnit.NANOSECONDS.toMillis(this.maxQueuedNanos.get());
+        if (e != null) {
+            max = Math.max(max, e.getWaited());
         }
         return max;
     }
 
     @Override
     public long getRemoved() {
-        return this.elementsRemoved.get();
+        return this.elementsRemoved.sum();
     }
 
     @Override
     public long getAdded() {
-        return this.elementsAdded.get();
+        return this.elementsAdded.sum();
     }
 
     @Override
     public double getThroughput() {
         if (active) {
-            return this.elementsRemoved.get() / ((System.currentTimeMillis() - this.startTime.get()) / 1000.0);
+            return this.elementsRemoved.sum() / ((System.currentTimeMillis() - this.startTime.get()) / 1000.0);
         }
         return 0.0;
     }
 
+    @Override
+    public double getP50Wait() {
+        return this.waits.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP90Wait() {
+        return this.waits.getPercentileMillis(90);
+    }
+
+    @Override
+    public double getP99Wait() {
+        return this.waits.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getP999Wait() {
+        return this.waits.getPercentileMillis(99.9);
+    }
+
     /**
      * Handles updating the stats whenever elements are added to the queue
      */
     private void internalAddElement() {
-        this.elementsAdded.incrementAndGet();
-        synchronized (this) {
-            if (!this.active) {
-                this.startTime.set(System.currentTimeMillis());
-                this.active = true;
-            }
+        this.elementsAdded.increment();
+        if (!this.active && this.startTime.compareAndSet(-1, System.currentTimeMillis())) {
+            this.active = true;
         }
     }
 
@@ -398,26 +441,23 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
      */
     private void internalRemoveElement(ThroughputElement<E> e) {
         if(e != null) {
-            this.elementsRemoved.incrementAndGet();
-            Long queueTime = e.getWaited();
-            this.totalQueueTime.addAndGet(queueTime);
-            boolean unlocked = false;
-            try {
-                this.maxQueueTimeLock.readLock().lock();
-                if (this.maxQueuedTime < queueTime) {
-                    this.maxQueueTimeLock.readLock().unlock();
-                    unlocked = true;
-                    try {
-                        this.maxQueueTimeLock.writeLock().lock();
-                        this.maxQueuedTime = queueTime;
-                    } finally {
-                        this.maxQueueTimeLock.writeLock().unlock();
-                    }
-                }
-            } finally {
-                if (!unlocked)
-                    this.maxQueueTimeLock.readLock().unlock();
-            }
+            long waitedNanos = e.getWaitedNanos(System.nanoTime());
+            this.waits.record(waitedNanos);
+            internalRemoveElements(1, waitedNanos, waitedNanos);
+        }
+    }
+
+    /**
+     * Handle updating the stats whenever one or more elements are removed from the queue
+     * @param count number of elements removed
+     * @param queueNanos total time the removed elements waited on the queue in nanoseconds
+     * @param maxNanos longest time a removed element waited on the queue in nanoseconds
+     */
+    private void internalRemoveElements(long count, long queueNanos, long maxNanos) {
+        if(count > 0) {
+            this.elementsRemoved.add(count);
+            this.totalQueueNanos.add(queueNanos);
+            this.maxQueuedNanos.update(maxNanos);
         }
     }
 
@@ -429,12 +469,12 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
      */
     private class ThroughputElement<E> {
 
-        private long queuedTime;
+        private long queuedNanos;
         private E element;
 
         protected ThroughputElement(E element) {
             this.element = element;
-            this.queuedTime = System.currentTimeMillis();
+            this.queuedNanos = System.nanoTime();
         }
 
         /**
@@ -444,7 +484,17 @@ public class ThroughputQueue<E> implements BlockingQueue<E>, ThroughputQueueMXBe
          * @return time this element has been waiting on the queue in milliseconds
          */
         public long getWaited() {
-            return System.currentTimeMillis() - this.queuedTime;
+            return TimeUnit.NANOSECONDS.toMillis(getWaitedNanos(System.nanoTime()));
+        }
+
+        /**
+         * Get the time this element had been waiting on the queue at the given time.
+         *
+         * @param now value of {@link System#nanoTime()} to measure against
+         * @return time this element has been waiting on the queue in nanoseconds
+         */
+        public long getWaitedNanos(long now) {
+            return now - this.queuedNanos;
         }
 
         /**
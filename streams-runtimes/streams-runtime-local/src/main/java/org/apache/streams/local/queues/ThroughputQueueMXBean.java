@@ -62,5 +62,29 @@ public interface ThroughputQueueMXBean {
      */
     public double getThroughput();
 
+    /**
+     * Get the median time in milliseconds, with nanosecond resolution, an item spent on the queue before being removed
+     * @return median wait in milliseconds
+     */
+    public double getP50Wait();
+
+    /**
+     * Get the 90th percentile of the time in milliseconds an item spent on the queue before being removed
+     * @return 90th percentile wait in milliseconds
+     */
+    public double getP90Wait();
+
+    /**
+     * Get the 99th percentile of the time in milliseconds an item spent on the queue before being removed
+     * @return 99th percentile wait in milliseconds
+     */
+    public double getP99Wait();
+
+    /**
+     * Get the 99.9th percentile of the time in milliseconds an item spent on the queue before being removed
+     * @return 99.9th percentile wait in milliseconds
+     */
+    public double getP999Wait();
+
 
 }
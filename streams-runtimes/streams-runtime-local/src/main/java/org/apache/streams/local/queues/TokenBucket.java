@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that refills at a fixed rate and holds up to a burst of tokens, starting full.  Instead of counting
+ * tokens it keeps the time at which the next token would be free if every token taken so far had been spaced out at
+ * the rate, so taking a token is a single compare and set and needs no thread to refill the bucket.
+ * <p/>
+ * Callers reserve a token and are told how long to wait before using it, which lets them wait however suits them.
+ */
+@ThreadSafe
+public class TokenBucket {
+
+    private final double tokensPerSecond;
+    private final int burst;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong nextFree;
+
+    /**
+     * @param tokensPerSecond rate the bucket refills at, greater than 0
+     * @param burst number of tokens the bucket holds, at least 1
+     */
+    public TokenBucket(double tokensPerSecond, int burst) {
+        if(tokensPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Token buckets need a positive rate and a burst of at least 1");
+        }
+        this.tokensPerSecond = tokensPerSecond;
+        this.burst = burst;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / tokensPerSecond));
+        this.toleranceNanos = (burst - 1) * this.intervalNanos;
+        this.nextFree = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Reserves a token if it can be used within the given time
+     * @param maxWaitNanos longest the caller is willing to wait for the token
+     * @return nanoseconds to wait before using the token, 0 if it can be used right away, or -1 if no token was
+     * reserved because it would not be free in time
+     */
+    public long reserve(long maxWaitNanos) {
+        while(true) {
+            long now = System.nanoTime();
+            long next = this.nextFree.get();
+            long wait = Math.max(0, next - this.toleranceNanos - now);
+            if(wait > maxWaitNanos) {
+                return -1;
+            }
+            if(this.nextFree.compareAndSet(next, Math.max(next, now) + this.intervalNanos)) {
+                return wait;
+            }
+        }
+    }
+
+    public double getTokensPerSecond() {
+        return this.tokensPerSecond;
+    }
+
+    public int getBurst() {
+        return this.burst;
+    }
+}
@@ -22,8 +22,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.Lists;
 import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsDocument;
+import org.apache.streams.data.util.DeepCopyUtil;
 import org.apache.streams.jackson.StreamsJacksonMapper;
 import org.apache.streams.local.builders.LocalStreamBuilder;
+import org.apache.streams.local.queues.DurableQueue;
 import org.apache.streams.pojo.json.Activity;
 import org.apache.streams.util.ComponentUtils;
 import org.apache.streams.util.SerializationUtil;
@@ -33,6 +36,7 @@ import org.slf4j.LoggerFactory;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -50,6 +54,16 @@ public abstract class BaseStreamsTask implements StreamsTask {
 
     private long startedAt;
     private String streamIdentifier;
+    private int batchSize;
+    private long batchLingerMs;
+    private boolean copyOnWrite;
+    private EndOfStream endOfStream;
+    private boolean emitEndOfStream;
+    private DurableQueue durableInQueue;
+    private List<String> componentIds = Collections.emptyList();
+    private int latencySampleInterval;
+    private volatile boolean retired;
+    private final CountDownLatch completed = new CountDownLatch(1);
 
     public BaseStreamsTask(Map<String, Object> config) {
         this.mapper = new StreamsJacksonMapper();
@@ -58,6 +72,10 @@ public abstract class BaseStreamsTask implements StreamsTask {
 
         setStreamIdentifier();
         setStartedAt();
+        setBatchSize();
+        setBatchLingerMs();
+        setCopyOnWrite();
+        setLatencySampleInterval();
     }
 
 
@@ -99,8 +117,55 @@ public abstract class BaseStreamsTask implements StreamsTask {
     }
 
     /**
-     * Adds a StreamDatum to the outgoing queues.  If there are multiple queues, it uses serialization to create
-     * clones of the datum and adds a new clone to each queue.
+     * Removes the next batch of datums from the queue.  Waits up to the timeout for the first datum, then drains up to
+     * the configured batch size, waiting at most the configured linger time for the batch to fill.  When batching is not
+     * configured, the batch contains at most one datum.
+     * @param queue queue to remove datums from
+     * @param batch list to add the removed datums to
+     * @param timeout time to wait for the first datum
+     * @param unit unit of the timeout
+     * @return number of datums added to the batch
+     * @throws InterruptedException if interrupted while waiting for the first datum
+     */
+    protected int pollBatch(BlockingQueue<StreamsDatum> queue, List<StreamsDatum> batch, long timeout, TimeUnit unit) throws InterruptedException {
+        StreamsDatum datum = queue.poll(timeout, unit);
+        if(datum == null) {
+            return 0;
+        }
+        batch.add(datum);
+        int count = 1;
+        if(this.batchSize > 1) {
+            count += queue.drainTo(batch, this.batchSize - count);
+            long deadline = System.currentTimeMillis() + this.batchLingerMs;
+            long remaining = this.batchLingerMs;
+            while(count < this.batchSize && remaining > 0) {
+                try {
+                    datum = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ie) {
+                    //return what has already been removed from the queue, interrupt will be seen on the next poll
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if(datum == null) {
+                    break;
+                }
+                batch.add(datum);
+                ++count;
+                count += queue.drainTo(batch, this.batchSize - count);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds a StreamDatum to the outgoing queues.  If there are multiple queues, each queue receives its own copy of the
+     * datum.  By default the copies are clones made with serialization.  A datum that cannot be cloned is dropped from
+     * that branch.  In copy-on-write mode queues receive a read-only {@link org.apache.streams.local.tasks.SharedStreamsDatum}
+     * that shares the document, and copies are only made by downstream processors, see
+     * {@link #ensureWritable(org.apache.streams.core.StreamsDatum)}.  If the document is never modified in place, like a
+     * String or a {@link org.apache.streams.core.StreamsDocument}, the last queue receives the datum itself, with its own
+     * metadata map and a copy of the StreamsDocument.
      * @param datum
      */
     protected void addToOutgoingQueue(StreamsDatum datum) throws InterruptedException{
@@ -109,19 +174,243 @@ public abstract class BaseStreamsTask implements StreamsTask {
         }
         else {
             List<BlockingQueue<StreamsDatum>> toOutput = Lists.newLinkedList(this.outQueues);
+            List<StreamsDatum> branchDatums = Lists.newLinkedList();
+            if(this.copyOnWrite) {
+                Map<String, Object> metadata = datum.hasMetadata() ? datum.getMetadata() : null;
+                boolean shareDatum = !(datum instanceof SharedStreamsDatum) && isCopiedOnEdit(datum.getDocument());
+                for(int i=shareDatum ? 1 : 0; i < toOutput.size(); ++i) {
+                    branchDatums.add(new SharedStreamsDatum(datum, metadata));
+                }
+                if(shareDatum) {
+                    if(metadata != null) {
+                        datum.setMetadata(new HashMap<>(metadata));
+                    }
+                    if(datum.getDocument() instanceof StreamsDocument) {
+                        datum.setDocument(((StreamsDocument) datum.getDocument()).copy());
+                    }
+                    branchDatums.add(datum);
+                }
+            } else {
+                for(int i=0; i < toOutput.size(); ++i) {
+                    branchDatums.add(cloneStreamsDatum(datum));
+                }
+            }
             while(!toOutput.isEmpty()) {
-                for (BlockingQueue<StreamsDatum> queue : toOutput) {
-                    StreamsDatum newDatum = cloneStreamsDatum(datum);
-                    if (newDatum != null) {
-                        if (queue.offer(newDatum, 500, TimeUnit.MILLISECONDS)) {
-                            toOutput.remove(queue);
-                        }
+                Iterator<BlockingQueue<StreamsDatum>> queues = toOutput.iterator();
+                Iterator<StreamsDatum> datums = branchDatums.iterator();
+                while(queues.hasNext()) {
+                    BlockingQueue<StreamsDatum> queue = queues.next();
+                    StreamsDatum newDatum = datums.next();
+                    if(newDatum == null || queue.offer(newDatum, 500, TimeUnit.MILLISECONDS)) {
+                        queues.remove();
+                        datums.remove();
                     }
                 }
             }
         }
     }
 
+    /**
+     * Removes the end of stream markers from a batch removed from the inbound queue.  Without an
+     * {@link org.apache.streams.local.tasks.EndOfStream} the markers are ignored and the task runs until it is stopped.
+     * Markers removed after the task has reached the end of its stream belong to other tasks reading the same queue and
+     * are put back on the queue.
+     * @param queue queue the batch was removed from
+     * @param batch datums removed from the queue
+     * @return true if the task has reached the end of its stream
+     * @throws InterruptedException if interrupted while putting markers back on the queue
+     */
+    protected boolean removeEndOfStreamMarkers(BlockingQueue<StreamsDatum> queue, List<StreamsDatum> batch) throws InterruptedException {
+        boolean ended = false;
+        Iterator<StreamsDatum> datums = batch.iterator();
+        while(datums.hasNext()) {
+            if(EndOfStream.isMarker(datums.next())) {
+                datums.remove();
+                if(this.endOfStream == null) {
+                    continue;
+                }
+                if(ended) {
+                    queue.put(EndOfStream.MARKER);
+                } else {
+                    ended = this.endOfStream.markerReceived(queue, this.retired);
+                }
+            }
+        }
+        return ended;
+    }
+
+    /**
+     * Puts an end of stream marker on every outbound queue if the task has been configured to emit them.  Called once
+     * the task has emitted its last datum.
+     */
+    protected void emitEndOfStream() {
+        if(!this.emitEndOfStream) {
+            return;
+        }
+        try {
+            for(BlockingQueue<StreamsDatum> queue : this.outQueues) {
+                queue.put(EndOfStream.MARKER);
+            }
+        } catch (InterruptedException ie) {
+            LOGGER.debug("Interrupted while emitting end of stream markers");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Marks the task as completed, releasing threads waiting in {@link #awaitCompletion(long, java.util.concurrent.TimeUnit)}
+     */
+    protected void markCompleted() {
+        this.completed.countDown();
+    }
+
+    /**
+     * Waits for the task to complete.
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if the task completed, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.completed.await(timeout, unit);
+    }
+
+    public boolean isCompleted() {
+        return this.completed.getCount() == 0;
+    }
+
+    public EndOfStream getEndOfStream() {
+        return endOfStream;
+    }
+
+    public void setEndOfStream(EndOfStream endOfStream) {
+        this.endOfStream = endOfStream;
+    }
+
+    /**
+     * Flags the task as retired before it is stopped to scale down its component.  A retired task finishes like a
+     * stopped task, but passes the final end of stream marker of its inbound queue on to the remaining tasks.
+     */
+    public void retire() {
+        this.retired = true;
+    }
+
+    public boolean isRetired() {
+        return this.retired;
+    }
+
+    public boolean isEmitEndOfStream() {
+        return emitEndOfStream;
+    }
+
+    public void setEmitEndOfStream(boolean emitEndOfStream) {
+        this.emitEndOfStream = emitEndOfStream;
+    }
+
+    public DurableQueue getDurableInQueue() {
+        return durableInQueue;
+    }
+
+    /**
+     * Sets the write ahead logged queue wrapping the inbound queue of this task, whose datums the task acknowledges
+     * once they have been handled.
+     * @param durableInQueue logged queue the inbound queue belongs to
+     */
+    public void setDurableInQueue(DurableQueue durableInQueue) {
+        this.durableInQueue = durableInQueue;
+    }
+
+    /**
+     * Sets the ids of the stream components run by this task, used to name the path of traced datums.  Holds one id
+     * per processor of a fused chain, in the order the processors are called.
+     * @param componentIds ids of the components run by this task
+     */
+    public void setComponentIds(List<String> componentIds) {
+        this.componentIds = new ArrayList<>(componentIds);
+    }
+
+    /**
+     * The id of a component run by this task
+     * @param index position of the component in a fused chain, 0 for any other task
+     * @param operation the provider, processor or writer, named by its class if the task has no component ids
+     * @return id of the component
+     */
+    protected String getComponentId(int index, Object operation) {
+        if(index < this.componentIds.size()) {
+            return this.componentIds.get(index);
+        }
+        return operation.getClass().getSimpleName();
+    }
+
+    /**
+     * Removes the write ahead log sequence ids of a batch removed from the inbound queue, see
+     * {@link org.apache.streams.local.queues.DurableQueue#removeSequences(java.util.List)}
+     * @param batch datums removed from the inbound queue
+     * @return sequence ids of the datums, or null if the inbound queue is not logged
+     */
+    protected long[] removeLogSequences(List<StreamsDatum> batch) {
+        if(this.durableInQueue == null) {
+            return null;
+        }
+        return this.durableInQueue.removeSequences(batch);
+    }
+
+    /**
+     * Acknowledges datums of the inbound queue once they have been handled, so they are not replayed on restart.
+     * @param sequences sequence ids returned by {@link #removeLogSequences(java.util.List)}, may be null
+     */
+    protected void acknowledge(long[] sequences) {
+        if(this.durableInQueue != null && sequences != null) {
+            this.durableInQueue.acknowledge(sequences);
+        }
+    }
+
+    /**
+     * Returns a datum that the task may safely mutate.  A {@link org.apache.streams.local.tasks.SharedStreamsDatum}
+     * received from a copy-on-write fan-out is replaced with a private datum, any other datum is returned as is.  A
+     * String document is shared with the private datum, and a {@link org.apache.streams.core.StreamsDocument} is
+     * copied without parsing it, so it is only parsed again if the task edits it.  Other documents may be modified in
+     * place without the runtime knowing, and are cloned.
+     * @param datum datum removed from an inbound queue
+     * @return datum owned by the calling task
+     */
+    protected StreamsDatum ensureWritable(StreamsDatum datum) {
+        if(!(datum instanceof SharedStreamsDatum)) {
+            return datum;
+        }
+        Object document = datum.getDocument();
+        if(isCopiedOnEdit(document)) {
+            return copyMetaData(datum, datum.withDocument(document instanceof StreamsDocument ? ((StreamsDocument) document).copy() : document));
+        }
+        StreamsDatum shared = ((SharedStreamsDatum) datum).unshare();
+        StreamsDatum copy = cloneStreamsDatum(shared);
+        if(copy == null) {
+            LOGGER.warn("Unable to make a private copy of a shared StreamsDatum, processing the shared instance");
+            return shared;
+        }
+        if(copy.getId() == null) {
+            copy.setId(shared.getId());
+        }
+        return copy;
+    }
+
+    /**
+     * Replaces every shared datum in the batch with a private copy, see {@link #ensureWritable(org.apache.streams.core.StreamsDatum)}
+     * @param batch datums removed from an inbound queue
+     */
+    protected void ensureWritable(List<StreamsDatum> batch) {
+        if(!this.copyOnWrite) {
+            return;
+        }
+        ListIterator<StreamsDatum> datums = batch.listIterator();
+        while(datums.hasNext()) {
+            StreamsDatum datum = datums.next();
+            if(datum instanceof SharedStreamsDatum) {
+                datums.set(ensureWritable(datum));
+            }
+        }
+    }
+
     @Override
     public boolean isWaiting() {
         if(this.inQueues == null || this.inQueues.size() == 0) {
@@ -144,24 +433,34 @@ public abstract class BaseStreamsTask implements StreamsTask {
      * This was seen as unacceptable for local mode.  So until we come up with a solution to enforce serialization and be
      * compatiable across multiple frame works, this hack is in place.
      *
-     * If datum.document is Serializable, we use serialization to clone a new copy.  If it is not Serializable we attempt
-     * different methods using an com.fasterxml.jackson.databind.ObjectMapper to copy/clone the StreamsDatum. If the object
-     * is not clonable by these methods, an error is reported to the logging and a NULL object is returned.
+     * If datum.document can be copied by {@link org.apache.streams.data.util.DeepCopyUtil}, which covers JsonNodes and the
+     * generated pojo classes, it is copied structurally.  Otherwise, if datum.document is Serializable, we use serialization
+     * to clone a new copy.  If it is not Serializable we attempt different methods using an
+     * com.fasterxml.jackson.databind.ObjectMapper to copy/clone the StreamsDatum. If the object is not clonable by these
+     * methods, an error is reported to the logging and a NULL object is returned.
      *
      * @param datum
      * @return
      */
     protected StreamsDatum cloneStreamsDatum(StreamsDatum datum) {
         try {
+            if(datum.document != null && DeepCopyUtil.isCopyable(datum.document.getClass())) {
+                try {
+                    return copyMetaData(datum, datum.withDocument(DeepCopyUtil.copy(datum.document)));
+                } catch (IllegalArgumentException iae) {
+                    LOGGER.debug("Unable to deep copy document, falling back to serialization : {}", iae.getMessage());
+                }
+            }
 
+            if(datum.document instanceof StreamsDocument) {
+                return copyMetaData(datum, datum.withDocument(((StreamsDocument) datum.document).copy()));
+            }
             if(datum.document instanceof ObjectNode) {
-                return copyMetaData(datum, new StreamsDatum(((ObjectNode) datum.document).deepCopy(), datum.timestamp, datum.sequenceid));
+                return copyMetaData(datum, datum.withDocument(((ObjectNode) datum.document).deepCopy()));
             }
             else if(datum.document instanceof Activity) {
 
-                return copyMetaData(datum, new StreamsDatum(this.mapper.readValue(this.mapper.writeValueAsString(datum.document), Activity.class),
-                                        datum.timestamp,
-                                        datum.sequenceid));
+                return copyMetaData(datum, datum.withDocument(this.mapper.readValue(this.mapper.writeValueAsString(datum.document), Activity.class)));
             }
 //            else if(this.mapper.canSerialize(datum.document.getClass())){
 //                return new StreamsDatum(this.mapper.readValue(this.mapper.writeValueAsString(datum.document), datum.document.getClass()),
@@ -179,6 +478,15 @@ public abstract class BaseStreamsTask implements StreamsTask {
         return null;
     }
 
+    /**
+     * @param document document of a datum
+     * @return true if the document is not modified in place, or makes a copy when it is edited
+     */
+    private static boolean isCopiedOnEdit(Object document) {
+        return document == null || document instanceof String || document instanceof StreamsDocument ||
+                document instanceof Number || document instanceof Boolean;
+    }
+
     private int getNextInputQueueIndex() {
         ++this.inIndex;
         if(this.inIndex >= this.inQueues.size()) {
@@ -188,14 +496,24 @@ public abstract class BaseStreamsTask implements StreamsTask {
     }
 
     private StreamsDatum copyMetaData(StreamsDatum copyFrom, StreamsDatum copyTo) {
+        if(!copyFrom.hasMetadata()) {
+            return copyTo;
+        }
         Map<String, Object> fromMeta = copyFrom.getMetadata();
-        Map<String, Object> toMeta = copyTo.getMetadata();
         for(String key : fromMeta.keySet()) {
             Object value = fromMeta.get(key);
+            if(value != null && DeepCopyUtil.isCopyable(value.getClass())) {
+                try {
+                    copyTo.putMetadata(key, DeepCopyUtil.copy(value));
+                    continue;
+                } catch (IllegalArgumentException iae) {
+                    //contains a value that can not be deep copied, fall back to serialization
+                }
+            }
             if(value instanceof Serializable)
-                toMeta.put(key, SerializationUtil.cloneBySerialization(value));
+                copyTo.putMetadata(key, SerializationUtil.cloneBySerialization(value));
             else //hope for the best - should be serializable
-                toMeta.put(key, value);
+                copyTo.putMetadata(key, value);
         }
         return copyTo;
     }
@@ -215,6 +533,78 @@ public abstract class BaseStreamsTask implements StreamsTask {
         }
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setBatchSize() {
+        if(streamConfig != null &&
+                streamConfig.get(LocalStreamBuilder.BATCH_SIZE_KEY) != null &&
+                streamConfig.get(LocalStreamBuilder.BATCH_SIZE_KEY) instanceof Number) {
+            this.batchSize = ((Number) streamConfig.get(LocalStreamBuilder.BATCH_SIZE_KEY)).intValue();
+        } else {
+            this.batchSize = 1;
+        }
+    }
+
+    public long getBatchLingerMs() {
+        return batchLingerMs;
+    }
+
+    public void setBatchLingerMs(long batchLingerMs) {
+        this.batchLingerMs = batchLingerMs;
+    }
+
+    public void setBatchLingerMs() {
+        if(streamConfig != null &&
+                streamConfig.get(LocalStreamBuilder.BATCH_LINGER_MS_KEY) != null &&
+                streamConfig.get(LocalStreamBuilder.BATCH_LINGER_MS_KEY) instanceof Number) {
+            this.batchLingerMs = ((Number) streamConfig.get(LocalStreamBuilder.BATCH_LINGER_MS_KEY)).longValue();
+        } else {
+            this.batchLingerMs = 0;
+        }
+    }
+
+    public boolean isCopyOnWrite() {
+        return copyOnWrite;
+    }
+
+    public void setCopyOnWrite(boolean copyOnWrite) {
+        this.copyOnWrite = copyOnWrite;
+    }
+
+    public void setCopyOnWrite() {
+        this.copyOnWrite = streamConfig != null &&
+                streamConfig.get(LocalStreamBuilder.FAN_OUT_MODE_KEY) != null &&
+                LocalStreamBuilder.COPY_ON_WRITE_FAN_OUT_MODE.equals(streamConfig.get(LocalStreamBuilder.FAN_OUT_MODE_KEY).toString());
+    }
+
+    /**
+     * @return every how many datums a provider starts a {@link org.apache.streams.local.tasks.DatumTrace}, 0 if
+     * latency tracing is disabled
+     */
+    public int getLatencySampleInterval() {
+        return latencySampleInterval;
+    }
+
+    public void setLatencySampleInterval(int latencySampleInterval) {
+        this.latencySampleInterval = latencySampleInterval;
+    }
+
+    public void setLatencySampleInterval() {
+        if(streamConfig != null &&
+                streamConfig.get(LocalStreamBuilder.LATENCY_SAMPLE_INTERVAL_KEY) != null &&
+                streamConfig.get(LocalStreamBuilder.LATENCY_SAMPLE_INTERVAL_KEY) instanceof Number) {
+            this.latencySampleInterval = Math.max(0, ((Number) streamConfig.get(LocalStreamBuilder.LATENCY_SAMPLE_INTERVAL_KEY)).intValue());
+        } else {
+            this.latencySampleInterval = 0;
+        }
+    }
+
     public String getStreamIdentifier() {
         return streamIdentifier;
     }
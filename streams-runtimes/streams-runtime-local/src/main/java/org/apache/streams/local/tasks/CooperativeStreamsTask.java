@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.tasks;
+
+/**
+ * A {@link org.apache.streams.local.tasks.StreamsTask} that can be run cooperatively on a shared pool of threads instead
+ * of owning a thread for its whole life.  The scheduler prepares the task once and then runs it only when its inbound
+ * queue has data, each run processing what is available without blocking on the inbound queue.
+ */
+public interface CooperativeStreamsTask extends StreamsTask {
+
+    /**
+     * Prepares the operation run by the task.  Called once before the first call to {@link #runAvailable(int)}.
+     */
+    public void prepareTask();
+
+    /**
+     * Processes up to maxBatches batches that are already on the inbound queue and returns without waiting for more
+     * data.  Once the task has been stopped, the task cleans up its operation and returns false.
+     * @param maxBatches maximum number of batches to process before returning
+     * @return true if the task should be run again, false once the task has finished
+     */
+    public boolean runAvailable(int maxBatches);
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.tasks;
+
+import org.apache.streams.core.StreamsDatum;
+
+import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest time and path of a sampled {@link org.apache.streams.core.StreamsDatum}, carried in the datum's metadata
+ * under {@link #METADATA_KEY}.  A provider task starts the trace, every processor the datum passes through appends its
+ * id to the path, and the writer task records the time since ingest in a
+ * {@link org.apache.streams.local.counters.DatumLatencyCounter}.
+ * <p/>
+ * Latencies are measured with {@link System#nanoTime()} while the trace stays in the JVM that started it.  A trace
+ * read back from a write ahead log written by a previous run falls back to the wall clock, at millisecond resolution.
+ * Traces are immutable so every fan-out branch may share one.
+ */
+public final class DatumTrace implements Serializable {
+
+    public static final String METADATA_KEY = "streamsLocalTrace";
+    public static final String PATH_SEPARATOR = ">";
+
+    private static final long RUN_ID = UUID.randomUUID().getMostSignificantBits();
+
+    private final long runId;
+    private final long ingestNanos;
+    private final long ingestMillis;
+    private final String path;
+
+    private DatumTrace(long runId, long ingestNanos, long ingestMillis, String path) {
+        this.runId = runId;
+        this.ingestNanos = ingestNanos;
+        this.ingestMillis = ingestMillis;
+        this.path = path;
+    }
+
+    /**
+     * Stamps the ingest time on a datum read by a provider
+     * @param datum datum to trace
+     * @param providerId id of the provider that read the datum
+     */
+    public static void start(StreamsDatum datum, String providerId) {
+        put(datum, new DatumTrace(RUN_ID, System.nanoTime(), System.currentTimeMillis(), providerId));
+    }
+
+    /**
+     * Appends a component to the path of an emitted datum.  The datum keeps its own trace if it carries one, otherwise
+     * it inherits the trace of the datum it was emitted for.  A trace that already ends with the component, such as one
+     * shared by several emitted datums through the same metadata map, is left as is.
+     * @param datum datum emitted by the component
+     * @param upstream trace of the datum the component received, may be null
+     * @param componentId id of the component
+     */
+    public static void extend(StreamsDatum datum, DatumTrace upstream, String componentId) {
+        DatumTrace trace = get(datum);
+        if(trace == null) {
+            trace = upstream;
+        }
+        if(trace != null && !trace.path.endsWith(PATH_SEPARATOR + componentId)) {
+            put(datum, trace.through(componentId));
+        }
+    }
+
+    /**
+     * @param datum
+     * @return the trace of the datum, or null if the datum was not sampled
+     */
+    public static DatumTrace get(StreamsDatum datum) {
+        if(!datum.hasMetadata()) {
+            return null;
+        }
+        Object trace = datum.getMetadata().get(METADATA_KEY);
+        return trace instanceof DatumTrace ? (DatumTrace) trace : null;
+    }
+
+    /**
+     * Removes the trace from a datum before it is handed to a writer
+     * @param datum
+     * @return the removed trace, or null if the datum was not sampled
+     */
+    public static DatumTrace remove(StreamsDatum datum) {
+        DatumTrace trace = get(datum);
+        if(trace != null) {
+            datum.getMetadata().remove(METADATA_KEY);
+        }
+        return trace;
+    }
+
+    private static void put(StreamsDatum datum, DatumTrace trace) {
+        datum.putMetadata(METADATA_KEY, trace);
+    }
+
+    /**
+     * @param componentId
+     * @return a copy of this trace with the component appended to the path
+     */
+    public DatumTrace through(String componentId) {
+        return new DatumTrace(this.runId, this.ingestNanos, this.ingestMillis, this.path + PATH_SEPARATOR + componentId);
+    }
+
+    /**
+     * @return ids of the components the datum passed through, starting with the provider
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * @return time since the datum was ingested in nanoseconds
+     */
+    public long getLatencyNanos() {
+        if(this.runId == RUN_ID) {
+            return System.nanoTime() - this.ingestNanos;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - this.ingestMillis);
+    }
+
+    @Override
+    public String toString() {
+        return this.path + "@" + this.ingestMillis;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.tasks;
+
+import org.apache.streams.core.StreamsDatum;
+import org.joda.time.DateTime;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the end of stream markers received on an inbound queue.  A task puts a {@link #MARKER} on each of its outbound
+ * queues once it has finished, after every datum it emitted.  The tasks of a component share one instance, which counts
+ * the markers of the upstream tasks so that the component's tasks finish as soon as every upstream task has finished.
+ * The numbers of upstream and consuming tasks can change while the stream runs, as long as the stream has not ended.
+ */
+public class EndOfStream {
+
+    /**
+     * Marker put on a queue by a task that has finished.  Compared by identity.  The marker is shared by every stream
+     * in the JVM and is immutable, its setters throw {@link java.lang.UnsupportedOperationException}.
+     */
+    public static final StreamsDatum MARKER = new Marker();
+
+    private final AtomicInteger remainingProducers;
+    private int consumers;
+    private boolean ended;
+
+    /**
+     *
+     * @param producers number of upstream tasks that write to the inbound queue
+     * @param consumers number of tasks that read from the inbound queue
+     */
+    public EndOfStream(int producers, int consumers) {
+        this.remainingProducers = new AtomicInteger(producers);
+        this.consumers = consumers;
+    }
+
+    public static boolean isMarker(StreamsDatum datum) {
+        return datum == MARKER;
+    }
+
+    /**
+     * Records a marker removed from the inbound queue by one of the consuming tasks.  When the marker of the last upstream
+     * task is received, a marker is put back on the queue for each of the other consuming tasks.
+     * @param queue inbound queue the marker was removed from
+     * @return true if the consuming task has reached the end of its stream
+     * @throws InterruptedException if interrupted while putting markers back on the queue
+     */
+    public boolean markerReceived(BlockingQueue<StreamsDatum> queue) throws InterruptedException {
+        return markerReceived(queue, false);
+    }
+
+    /**
+     * Records a marker removed from the inbound queue by one of the consuming tasks.  When the marker of the last upstream
+     * task is received, a marker is put back on the queue for each of the consuming tasks other than the receiving one.
+     * A task that has been retired with {@link #removeConsumer()} no longer counts as a consuming task, so a marker is
+     * put back for every consuming task.
+     * @param queue inbound queue the marker was removed from
+     * @param retired true if the receiving task has been retired
+     * @return true if the consuming task has reached the end of its stream
+     * @throws InterruptedException if interrupted while putting markers back on the queue
+     */
+    public boolean markerReceived(BlockingQueue<StreamsDatum> queue, boolean retired) throws InterruptedException {
+        int remaining = this.remainingProducers.decrementAndGet();
+        if(remaining > 0) {
+            return false;
+        }
+        if(remaining == 0) {
+            int others;
+            synchronized (this) {
+                this.ended = true;
+                others = retired ? this.consumers : this.consumers - 1;
+            }
+            for(int i=0; i < others; ++i) {
+                queue.put(MARKER);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Expects the marker of one more upstream task.
+     * @return true if the producer was added, false if the stream has already ended
+     */
+    public boolean addProducer() {
+        int remaining;
+        do {
+            remaining = this.remainingProducers.get();
+            if(remaining <= 0) {
+                return false;
+            }
+        } while(!this.remainingProducers.compareAndSet(remaining, remaining + 1));
+        return true;
+    }
+
+    /**
+     * Counts one more task reading from the inbound queue, which will be handed a marker once the stream ends.
+     * @return true if the consumer was added, false if the stream has already ended
+     */
+    public synchronized boolean addConsumer() {
+        if(this.ended || this.remainingProducers.get() <= 0) {
+            return false;
+        }
+        ++this.consumers;
+        return true;
+    }
+
+    /**
+     * Stops counting a task that is being retired as reading from the inbound queue.  The task must be flagged as
+     * retired before it is removed, so that a marker it receives is passed on to the remaining tasks.
+     */
+    public synchronized void removeConsumer() {
+        if(!this.ended && this.consumers > 0) {
+            --this.consumers;
+        }
+    }
+
+    /**
+     * The number of tasks reading from the inbound queue
+     * @return number of consuming tasks
+     */
+    public synchronized int getConsumers() {
+        return this.consumers;
+    }
+
+    /**
+     * Returns true once every upstream task has finished
+     * @return true once every upstream task has finished
+     */
+    public boolean hasEnded() {
+        return this.remainingProducers.get() <= 0;
+    }
+
+    /**
+     * The immutable datum of {@link #MARKER}
+     */
+    private static final class Marker extends StreamsDatum {
+
+        private static final long serialVersionUID = 1L;
+
+        private Marker() {
+            super(null, "END_OF_STREAM", null, null, null);
+        }
+
+        @Override
+        public Map<String, Object> getMetadata() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void setMetadata(Map<String, Object> metadata) {
+            throw immutable();
+        }
+
+        @Override
+        public Object putMetadata(String key, Object value) {
+            throw immutable();
+        }
+
+        @Override
+        public void setDocument(Object document) {
+            throw immutable();
+        }
+
+        @Override
+        public void setId(String id) {
+            throw immutable();
+        }
+
+        @Override
+        public void setTimestamp(DateTime timestamp) {
+            throw immutable();
+        }
+
+        @Override
+        public void setTimestampMillis(long timestampMillis) {
+            throw immutable();
+        }
+
+        @Override
+        public void setSequenceid(BigInteger sequenceid) {
+            throw immutable();
+        }
+
+        @Override
+        public void setSequenceid(long sequenceid) {
+            throw immutable();
+        }
+
+        //keeps the marker unique, so it is still recognized after being serialized
+        private Object readResolve() {
+            return MARKER;
+        }
+
+        private static UnsupportedOperationException immutable() {
+            return new UnsupportedOperationException("The end of stream marker is immutable");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.tasks;
+
+import org.apache.streams.core.StreamsDatum;
+import org.joda.time.DateTime;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A read-only {@link org.apache.streams.core.StreamsDatum} handed to the branches of a fan-out when the stream runs in
+ * {@link org.apache.streams.local.builders.LocalStreamBuilder#COPY_ON_WRITE_FAN_OUT_MODE}.  Every branch shares the
+ * document and metadata of the emitted datum.  The metadata of a shared datum can not be modified and its setters throw
+ * {@link java.lang.UnsupportedOperationException}.  Processor tasks replace it with a private datum before using it,
+ * see {@link BaseStreamsTask#ensureWritable(org.apache.streams.core.StreamsDatum)}.  Writers get the shared datum and
+ * must not modify its document.
+ */
+final class SharedStreamsDatum extends StreamsDatum {
+
+    /**
+     * @param datum datum to share
+     * @param metadata metadata shared by the branches, null if the datum has none
+     */
+    SharedStreamsDatum(StreamsDatum datum, Map<String, Object> metadata) {
+        super(datum.getDocument(), datum.getId(), datum.getTimestamp(), datum.getSequenceid(),
+                metadata == null ? null : Collections.unmodifiableMap(metadata));
+    }
+
+    /**
+     * @return a plain {@link org.apache.streams.core.StreamsDatum} that shares the document and metadata values
+     */
+    StreamsDatum unshare() {
+        StreamsDatum datum = withDocument(getDocument());
+        if(hasMetadata()) {
+            datum.setMetadata(new HashMap<>(getMetadata()));
+        }
+        return datum;
+    }
+
+    /**
+     * @param key metadata to leave out
+     * @return a shared datum without the metadata
+     */
+    SharedStreamsDatum withoutMetadata(String key) {
+        Map<String, Object> metadata = new HashMap<>(getMetadata());
+        metadata.remove(key);
+        return new SharedStreamsDatum(this, metadata);
+    }
+
+    @Override
+    public Map<String, Object> getMetadata() {
+        return this.metadata == null ? Collections.<String, Object>emptyMap() : this.metadata;
+    }
+
+    @Override
+    public void setMetadata(Map<String, Object> metadata) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object putMetadata(String key, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setDocument(Object document) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setId(String id) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setTimestamp(DateTime timestamp) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setTimestampMillis(long timestampMillis) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setSequenceid(BigInteger sequenceid) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setSequenceid(long sequenceid) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("A datum shared by the branches of a fan-out is read-only");
+    }
+}
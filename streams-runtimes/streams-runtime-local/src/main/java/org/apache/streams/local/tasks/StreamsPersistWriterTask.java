@@ -20,6 +20,8 @@ package org.apache.streams.local.tasks;
 
 import org.apache.streams.core.*;
 import org.apache.streams.core.util.DatumUtils;
+import org.apache.streams.local.builders.LocalStreamBuilder;
+import org.apache.streams.local.counters.DatumLatencyCounter;
 import org.apache.streams.local.counters.StreamsTaskCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,11 +34,15 @@ import java.util.concurrent.atomic.AtomicBoolean;
 /**
  *
  */
-public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumStatusCountable {
+public class StreamsPersistWriterTask extends BaseStreamsTask implements CooperativeStreamsTask, DatumStatusCountable {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(StreamsPersistWriterTask.class);
 
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
     private StreamsPersistWriter writer;
+    private StreamsBulkPersistWriter bulkWriter;
+    private long flushIntervalMs;
     private long sleepTime;
     private AtomicBoolean keepRunning;
     private Map<String, Object> streamConfig;
@@ -44,6 +50,11 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
     private AtomicBoolean isRunning;
     private AtomicBoolean blocked;
     private StreamsTaskCounter counter;
+    private long unflushedSince = -1;
+    private int unflushedCount = 0;
+    private List<long[]> unflushedSequences = new ArrayList<>();
+    private DatumLatencyCounter latencyCounter;
+    private List<DatumTrace> unflushedTraces = new ArrayList<>();
 
     private DatumStatusCounter statusCounter = new DatumStatusCounter();
 
@@ -73,7 +84,11 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
     public StreamsPersistWriterTask(StreamsPersistWriter writer, long sleepTime, Map<String, Object> streamConfig) {
         super(streamConfig);
         this.writer = writer;
+        if(writer instanceof StreamsBulkPersistWriter) {
+            this.bulkWriter = (StreamsBulkPersistWriter) writer;
+        }
         this.sleepTime = sleepTime;
+        setFlushIntervalMs(streamConfig);
         this.keepRunning = new AtomicBoolean(true);
         this.isRunning = new AtomicBoolean(true);
         this.blocked = new AtomicBoolean(false);
@@ -102,15 +117,19 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
     @Override
     public void run() {
         try {
-            this.writer.prepare(this.streamConfig);
-            if(this.counter == null) {
-                this.counter = new StreamsTaskCounter(this.writer.getClass().getName()+ UUID.randomUUID().toString(), getStreamIdentifier(), getStartedAt());
-            }
+            prepareTask();
+            List<StreamsDatum> batch = new ArrayList<>(Math.max(1, getBatchSize()));
             while(this.keepRunning.get()) {
-                StreamsDatum datum = null;
+                batch.clear();
+                boolean ended = false;
+                long timeout = DEFAULT_SLEEP_TIME_MS;
+                if(this.unflushedSince >= 0) {
+                    timeout = Math.max(0, Math.min(timeout, this.unflushedSince + this.flushIntervalMs - System.currentTimeMillis()));
+                }
                 try {
                     this.blocked.set(true);
-                    datum = this.inQueue.poll(5, TimeUnit.SECONDS);
+                    pollBatch(this.inQueue, batch, timeout, TimeUnit.MILLISECONDS);
+                    ended = removeEndOfStreamMarkers(this.inQueue, batch);
                 } catch (InterruptedException ie) {
                     LOGGER.debug("Received InterruptedException. Shutting down and re-applying interrupt status.");
                     this.keepRunning.set(false);
@@ -121,30 +140,286 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
                 } finally {
                     this.blocked.set(false);
                 }
-                if(datum != null) {
-                    this.counter.incrementReceivedCount();
-                    try {
-                        long startTime = System.currentTimeMillis();
-                        this.writer.write(datum);
-                        this.counter.addTime(System.currentTimeMillis() - startTime);
-                        statusCounter.incrementStatus(DatumStatus.SUCCESS);
-                    } catch (Exception e) {
-                        LOGGER.error("Error writing to persist writer {}", this.writer.getClass().getSimpleName(), e);
-                        this.keepRunning.set(false); // why do we shutdown on a failed write ?
-                        statusCounter.incrementStatus(DatumStatus.FAIL);
-                        DatumUtils.addErrorToMetadata(datum, e, this.writer.getClass());
-                        this.counter.incrementErrorCount();
+                if(!batch.isEmpty()) {
+                    writeBatch(batch);
+                    if(this.bulkWriter != null && this.unflushedSince < 0) {
+                        this.unflushedSince = System.currentTimeMillis();
                     }
                 } else { //datums should never be null
                     LOGGER.debug("Received null StreamsDatum @ writer : {}", this.writer.getClass().getName());
                 }
+                //flush once the inbound queue has gone idle or the oldest unflushed datum has waited the flush interval
+                if(this.unflushedSince >= 0 && (batch.isEmpty() || System.currentTimeMillis() - this.unflushedSince >= this.flushIntervalMs)) {
+                    flush();
+                }
+                if(ended) {
+                    LOGGER.debug("Received end of stream at writer : {}", this.writer.getClass().getName());
+                    this.keepRunning.set(false);
+                }
             }
 
         } catch(Exception e) {
             LOGGER.error("Failed to execute Persist Writer {}",this.writer.getClass().getSimpleName(), e);
         } finally {
+            finishTask();
+        }
+    }
+
+    @Override
+    public void prepareTask() {
+        this.writer.prepare(this.streamConfig);
+        if(this.counter == null) {
+            this.counter = new StreamsTaskCounter(this.writer.getClass().getName()+ UUID.randomUUID().toString(), getStreamIdentifier(), getStartedAt());
+        }
+    }
+
+    /**
+     * Writes the batches available on the inbound queue.  A {@link org.apache.streams.core.StreamsBulkPersistWriter}
+     * is flushed once the oldest unflushed datum has waited the flush interval, and whenever the run leaves the inbound
+     * queue empty, since the task will not run again until more data arrives.
+     * @param maxBatches maximum number of batches to process before returning
+     * @return true if the task should be run again, false once the task has finished
+     */
+    @Override
+    public boolean runAvailable(int maxBatches) {
+        List<StreamsDatum> batch = new ArrayList<>(Math.max(1, getBatchSize()));
+        for(int i=0; i < maxBatches && this.keepRunning.get(); ++i) {
+            batch.clear();
+            if(this.inQueue.drainTo(batch, Math.max(1, getBatchSize())) == 0) {
+                break;
+            }
+            try {
+                if(removeEndOfStreamMarkers(this.inQueue, batch)) {
+                    this.keepRunning.set(false);
+                }
+            } catch (InterruptedException ie) {
+                this.keepRunning.set(false);
+                Thread.currentThread().interrupt();
+            }
+            if(batch.isEmpty()) {
+                continue;
+            }
+            writeBatch(batch);
+            if(this.bulkWriter != null && this.unflushedSince < 0) {
+                this.unflushedSince = System.currentTimeMillis();
+            }
+            if(this.unflushedSince >= 0 && System.currentTimeMillis() - this.unflushedSince >= this.flushIntervalMs) {
+                flush();
+            }
+        }
+        if(this.unflushedSince >= 0 && this.inQueue.isEmpty()) {
+            flush();
+        }
+        if(!this.keepRunning.get()) {
+            finishTask();
+            return false;
+        }
+        return true;
+    }
+
+    private void finishTask() {
+        try {
+            flush();
             this.writer.cleanUp();
             this.isRunning.set(false);
+        } finally {
+            markCompleted();
+        }
+    }
+
+    /**
+     * Writes a batch of datums removed from the inbound queue. The {@link org.apache.streams.local.counters.StreamsTaskCounter}
+     * is updated once for the whole batch.  A {@link org.apache.streams.core.StreamsBulkPersistWriter} is handed the
+     * whole batch in a single call, every other writer is called once per datum.  Datums read from a write ahead logged
+     * queue are acknowledged once they have been written, or for a bulk writer once it has been flushed.  The end to end
+     * latency of traced datums is recorded at the same point.
+     *
+     * A failed write stops the task.  A writer called once per datum is not handed the rest of the batch, those
+     * datums are not counted as received, like datums left on the inbound queue, and are replayed on restart from a
+     * write ahead logged queue.
+     * @param batch datums to write
+     */
+    private void writeBatch(List<StreamsDatum> batch) {
+        long[] sequences = removeLogSequences(batch);
+        DatumTrace[] traces = removeTraces(batch);
+        if(this.bulkWriter != null) {
+            this.counter.incrementReceivedCount(batch.size());
+            if(writeBulk(batch)) {
+                this.unflushedCount += batch.size();
+                if(sequences != null) {
+                    this.unflushedSequences.add(sequences);
+                }
+                if(traces != null) {
+                    Collections.addAll(this.unflushedTraces, traces);
+                }
+            }
+            return;
+        }
+        long batchTime = 0;
+        long maxTime = 0;
+        int written = 0;
+        int errors = 0;
+        int i = 0;
+        for(; i < batch.size() && errors == 0; ++i) {
+            StreamsDatum datum = batch.get(i);
+            try {
+                long startTime = System.nanoTime();
+                this.writer.write(datum);
+                long writeTime = System.nanoTime() - startTime;
+                this.counter.addNanoTime(writeTime);
+                batchTime += writeTime;
+                maxTime = Math.max(maxTime, writeTime);
+                ++written;
+                if(traces != null) {
+                    recordLatency(traces[i]);
+                }
+            } catch (Exception e) {
+                LOGGER.error("Error writing to persist writer {}", this.writer.getClass().getSimpleName(), e);
+                this.keepRunning.set(false); // why do we shutdown on a failed write ?
+                addErrorToMetadata(datum, e);
+                ++errors;
+                if(sequences != null) {
+                    sequences[i] = -1; //replay on restart
+                }
+            }
+        }
+        this.counter.incrementReceivedCount(i);
+        if(i < batch.size()) {
+            LOGGER.error("Skipped writing {} datums after a failed write to persist writer {}", batch.size() - i, this.writer.getClass().getSimpleName());
+            if(sequences != null) {
+                Arrays.fill(sequences, i, sequences.length, -1); //replay on restart
+            }
+        }
+        updateCounters(batchTime, maxTime, written, errors);
+        acknowledge(sequences);
+    }
+
+    /**
+     * Hands the whole batch to the {@link org.apache.streams.core.StreamsBulkPersistWriter}.  If the writer throws,
+     * every datum in the batch is counted as an error.  Written datums are only counted as successes once the writer
+     * has been flushed.
+     * @param batch datums to write
+     * @return true if the batch was written
+     */
+    private boolean writeBulk(List<StreamsDatum> batch) {
+        long batchTime = 0;
+        int errors = 0;
+        try {
+            long startTime = System.nanoTime();
+            this.bulkWriter.write(batch);
+            batchTime = System.nanoTime() - startTime;
+            this.counter.addNanoTime(batchTime / batch.size(), batch.size());
+        } catch (Exception e) {
+            LOGGER.error("Error writing to persist writer {}", this.writer.getClass().getSimpleName(), e);
+            this.keepRunning.set(false);
+            for(StreamsDatum datum : batch) {
+                addErrorToMetadata(datum, e);
+            }
+            errors = batch.size();
+        }
+        updateCounters(batchTime, batchTime, 0, errors);
+        return errors == 0;
+    }
+
+    /**
+     * Flushes a {@link org.apache.streams.core.StreamsBulkPersistWriter} and acknowledges the logged datums written
+     * since the last flush.  A failed flush stops the task, like a failed write, and counts every datum written since
+     * the last flush as an error.  Those datums are left in the write ahead log and replayed on restart.  No op for
+     * other writers.
+     */
+    private void flush() {
+        if(this.bulkWriter == null) {
+            return;
+        }
+        try {
+            this.bulkWriter.flush();
+            for(long[] sequences : this.unflushedSequences) {
+                acknowledge(sequences);
+            }
+            for(DatumTrace trace : this.unflushedTraces) {
+                recordLatency(trace);
+            }
+            updateCounters(0, 0, this.unflushedCount, 0);
+        } catch (Exception e) {
+            LOGGER.error("Error flushing persist writer {}", this.writer.getClass().getSimpleName(), e);
+            this.keepRunning.set(false);
+            updateCounters(0, 0, 0, this.unflushedCount);
+        } finally {
+            this.unflushedSince = -1;
+            this.unflushedCount = 0;
+            this.unflushedSequences.clear();
+            this.unflushedTraces.clear();
+        }
+    }
+
+    /**
+     * Removes the traces from a batch, so writers never persist them.
+     * @param batch datums removed from the inbound queue
+     * @return the trace of every datum of the batch, null for datums that were not sampled, or null if there is no
+     * latency counter to record to
+     */
+    private DatumTrace[] removeTraces(List<StreamsDatum> batch) {
+        if(this.latencyCounter == null) {
+            return null;
+        }
+        DatumTrace[] traces = new DatumTrace[batch.size()];
+        for(int i=0; i < traces.length; ++i) {
+            StreamsDatum datum = batch.get(i);
+            if(datum instanceof SharedStreamsDatum) {
+                //shared datums are read-only, the writer gets one without the trace instead
+                traces[i] = DatumTrace.get(datum);
+                if(traces[i] != null) {
+                    batch.set(i, ((SharedStreamsDatum) datum).withoutMetadata(DatumTrace.METADATA_KEY));
+                }
+            } else {
+                traces[i] = DatumTrace.remove(datum);
+            }
+        }
+        return traces;
+    }
+
+    /**
+     * Records a write error in the metadata of the datum.  Shared datums are read-only and are left as they are, the
+     * error is logged.
+     */
+    private void addErrorToMetadata(StreamsDatum datum, Exception e) {
+        if(!(datum instanceof SharedStreamsDatum)) {
+            DatumUtils.addErrorToMetadata(datum, e, this.writer.getClass());
+        }
+    }
+
+    private void recordLatency(DatumTrace trace) {
+        if(trace != null) {
+            this.latencyCounter.record(trace.through(getComponentId(0, this.writer)));
+        }
+    }
+
+    /**
+     * @param batchTime time spent writing the batch in nanoseconds
+     * @param maxTime longest time spent writing a single datum of the batch in nanoseconds
+     */
+    private void updateCounters(long batchTime, long maxTime, int written, int errors) {
+        this.counter.addBatchTime(TimeUnit.NANOSECONDS.toMillis(batchTime), TimeUnit.NANOSECONDS.toMillis(maxTime));
+        this.counter.incrementErrorCount(errors);
+        statusCounter.incrementStatus(DatumStatus.SUCCESS, written);
+        statusCounter.incrementStatus(DatumStatus.FAIL, errors);
+    }
+
+    public long getFlushIntervalMs() {
+        return this.flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    private void setFlushIntervalMs(Map<String, Object> streamConfig) {
+        if(streamConfig != null &&
+                streamConfig.get(LocalStreamBuilder.FLUSH_INTERVAL_MS_KEY) != null &&
+                streamConfig.get(LocalStreamBuilder.FLUSH_INTERVAL_MS_KEY) instanceof Number) {
+            this.flushIntervalMs = ((Number) streamConfig.get(LocalStreamBuilder.FLUSH_INTERVAL_MS_KEY)).longValue();
+        } else {
+            this.flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
         }
     }
 
@@ -170,4 +445,13 @@ public class StreamsPersistWriterTask extends BaseStreamsTask implements DatumSt
     public void setStreamsTaskCounter(StreamsTaskCounter counter) {
         this.counter = counter;
     }
+
+    /**
+     * Sets the counter the end to end latency of traced datums is recorded to, see
+     * {@link org.apache.streams.local.tasks.DatumTrace}.  Traces are left on the datums if no counter is set.
+     * @param latencyCounter latency counter of the stream
+     */
+    public void setDatumLatencyCounter(DatumLatencyCounter latencyCounter) {
+        this.latencyCounter = latencyCounter;
+    }
 }
@@ -18,9 +18,12 @@
 
 package org.apache.streams.local.tasks;
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.Maps;
 import org.apache.streams.core.*;
 import org.apache.streams.core.util.DatumUtils;
+import org.apache.streams.data.util.JsonProjection;
 import org.apache.streams.local.counters.StreamsTaskCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,21 +34,30 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- *
+ * Runs a {@link org.apache.streams.core.StreamsProcessor}, or a fused chain of processors that are called back to back
+ * within the task.  When the task runs a chain, the output of each processor is the input of the next one and only the
+ * output of the last processor is put on the outbound queues.  Every processor in the chain reports to its own
+ * {@link org.apache.streams.local.counters.StreamsTaskCounter}.  Once the task reaches the end of its stream, every
+ * {@link org.apache.streams.core.StreamsWindowedProcessor} in the chain is flushed, in chain order, and the datums of
+ * its open windows pass through the rest of the chain.  A {@link org.apache.streams.core.StreamsProjectingProcessor} is
+ * handed the fields it reads, extracted from each document with a {@link org.apache.streams.data.util.JsonProjection}.
  */
-public class StreamsProcessorTask extends BaseStreamsTask implements DatumStatusCountable {
+public class StreamsProcessorTask extends BaseStreamsTask implements CooperativeStreamsTask, DatumStatusCountable {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(StreamsProcessorTask.class);
 
 
     private StreamsProcessor processor;
+    private List<StreamsProcessor> processors;
     private long sleepTime;
     private AtomicBoolean keepRunning;
     private Map<String, Object> streamConfig;
     private BlockingQueue<StreamsDatum> inQueue;
     private AtomicBoolean isRunning;
     private AtomicBoolean blocked;
-    private StreamsTaskCounter counter;
+    private StreamsTaskCounter[] counters;
+    private JsonProjection[] projections;
+    private boolean reachedEnd;
 
     private DatumStatusCounter statusCounter = new DatumStatusCounter();
 
@@ -75,8 +87,32 @@ public class StreamsProcessorTask extends BaseStreamsTask implements DatumStatus
      * @param sleepTime time to sleep when incoming queue is empty
      */
     public StreamsProcessorTask(StreamsProcessor processor, long sleepTime, Map<String, Object> streamConfig) {
+        this(Collections.singletonList(processor), sleepTime, streamConfig);
+    }
+
+    /**
+     *
+     * @param processors fused chain of processors to run in task, in the order they are called
+     * @param streamConfig
+     */
+    public StreamsProcessorTask(List<StreamsProcessor> processors, Map<String, Object> streamConfig) {
+        this(processors, DEFAULT_SLEEP_TIME_MS, streamConfig);
+    }
+
+    /**
+     *
+     * @param processors fused chain of processors to run in task, in the order they are called
+     * @param sleepTime time to sleep when incoming queue is empty
+     */
+    public StreamsProcessorTask(List<StreamsProcessor> processors, long sleepTime, Map<String, Object> streamConfig) {
         super(streamConfig);
-        this.processor = processor;
+        if(processors == null || processors.isEmpty()) {
+            throw new IllegalArgumentException("StreamsProcessorTask requires at least one processor");
+        }
+        this.processors = new ArrayList<>(processors);
+        this.processor = this.processors.get(0);
+        this.counters = new StreamsTaskCounter[this.processors.size()];
+        this.projections = new JsonProjection[this.processors.size()];
         this.sleepTime = sleepTime;
         this.keepRunning = new AtomicBoolean(true);
         this.isRunning = new AtomicBoolean(true);
@@ -111,15 +147,15 @@ public class StreamsProcessorTask extends BaseStreamsTask implements DatumStatus
     @Override
     public void run() {
         try {
-            this.processor.prepare(this.streamConfig);
-            if(this.counter == null) {
-                this.counter = new StreamsTaskCounter(this.processor.getClass().getName()+ UUID.randomUUID().toString(), getStreamIdentifier(), getStartedAt());
-            }
+            prepareTask();
+            List<StreamsDatum> batch = new ArrayList<>(Math.max(1, getBatchSize()));
             while(this.keepRunning.get()) {
-                StreamsDatum datum = null;
+                batch.clear();
+                boolean ended = false;
                 try {
                     this.blocked.set(true);
-                    datum = this.inQueue.poll(5, TimeUnit.SECONDS);
+                    pollBatch(this.inQueue, batch, 5, TimeUnit.SECONDS);
+                    ended = removeEndOfStreamMarkers(this.inQueue, batch);
                 } catch (InterruptedException ie) {
                     LOGGER.debug("Received InteruptedException, shutting down and re-applying interrupt status.");
                     this.keepRunning.set(false);
@@ -130,38 +166,293 @@ public class StreamsProcessorTask extends BaseStreamsTask implements DatumStatus
                 } finally {
                     this.blocked.set(false);
                 }
-                if(datum != null) {
-                    this.counter.incrementReceivedCount();
-                    try {
-                        long startTime = System.currentTimeMillis();
-                        List<StreamsDatum> output = this.processor.process(datum);
-                        this.counter.addTime(System.currentTimeMillis() - startTime);
-                        if(output != null) {
-                            for(StreamsDatum outDatum : output) {
-                                super.addToOutgoingQueue(outDatum);
-                                this.counter.incrementEmittedCount();
-                                statusCounter.incrementStatus(DatumStatus.SUCCESS);
-                            }
-                        }
-                    } catch (InterruptedException ie) {
-                        LOGGER.warn("Received InteruptedException, shutting down and re-applying interrupt status.");
-                        this.keepRunning.set(false);
-                        Thread.currentThread().interrupt();
-                    } catch (Throwable t) {
-                        this.counter.incrementErrorCount();
-                        LOGGER.warn("Caught Throwable in processor, {} : {}", this.processor.getClass().getName(), t.getMessage());
-                        statusCounter.incrementStatus(DatumStatus.FAIL);
-                        //Add the error to the metadata, but keep processing
-                        DatumUtils.addErrorToMetadata(datum, t, this.processor.getClass());
-                    }
+                if(!batch.isEmpty()) {
+                    processBatch(batch);
                 } else {
                     LOGGER.debug("Removed NULL datum from queue at processor : {}", this.processor.getClass().getName());
                 }
+                if(ended) {
+                    LOGGER.debug("Received end of stream at processor : {}", this.processor.getClass().getName());
+                    this.reachedEnd = true;
+                    this.keepRunning.set(false);
+                }
             }
         } finally {
+            finishTask();
+        }
+    }
+
+    @Override
+    public void prepareTask() {
+        for(int i=0; i < this.processors.size(); ++i) {
+            StreamsProcessor stage = this.processors.get(i);
+            stage.prepare(this.streamConfig);
+            if(this.counters[i] == null) {
+                this.counters[i] = new StreamsTaskCounter(stage.getClass().getName()+ UUID.randomUUID().toString(), getStreamIdentifier(), getStartedAt());
+            }
+            if(stage instanceof StreamsProjectingProcessor) {
+                this.projections[i] = new JsonProjection(((StreamsProjectingProcessor) stage).getProjectedFields());
+            }
+        }
+    }
+
+    @Override
+    public boolean runAvailable(int maxBatches) {
+        List<StreamsDatum> batch = new ArrayList<>(Math.max(1, getBatchSize()));
+        for(int i=0; i < maxBatches && this.keepRunning.get(); ++i) {
+            batch.clear();
+            if(this.inQueue.drainTo(batch, Math.max(1, getBatchSize())) == 0) {
+                break;
+            }
+            boolean ended = false;
+            try {
+                ended = removeEndOfStreamMarkers(this.inQueue, batch);
+            } catch (InterruptedException ie) {
+                this.keepRunning.set(false);
+                Thread.currentThread().interrupt();
+            }
+            if(!batch.isEmpty()) {
+                processBatch(batch);
+            }
+            if(ended) {
+                this.reachedEnd = true;
+                this.keepRunning.set(false);
+            }
+        }
+        if(!this.keepRunning.get()) {
+            finishTask();
+            return false;
+        }
+        return true;
+    }
+
+    private void finishTask() {
+        try {
+            if(this.reachedEnd && !Thread.currentThread().isInterrupted()) {
+                flushWindows();
+            }
+            emitEndOfStream();
             this.isRunning.set(false);
-            this.processor.cleanUp();
+            for(StreamsProcessor stage : this.processors) {
+                stage.cleanUp();
+            }
+        } finally {
+            markCompleted();
+        }
+    }
+
+    /**
+     * Processes a batch of datums removed from the inbound queue.  Each processor in the chain is handed the output of
+     * the previous one, and its {@link org.apache.streams.local.counters.StreamsTaskCounter} is updated once for the
+     * whole batch.  A {@link org.apache.streams.core.StreamsBatchProcessor} is handed the whole batch in a single call,
+     * every other processor is called once per datum.  Datums read from a write ahead logged queue are acknowledged
+     * once the batch has been emitted.
+     * @param batch datums to process
+     */
+    private void processBatch(List<StreamsDatum> batch) {
+        long[] sequences = removeLogSequences(batch);
+        ensureWritable(batch);
+        runStages(0, batch);
+        if(!Thread.currentThread().isInterrupted()) {
+            //datums that failed are not retried, only an interrupted batch is replayed
+            acknowledge(sequences);
+        }
+    }
+
+    /**
+     * Flushes the {@link org.apache.streams.core.StreamsWindowedProcessor}s of the chain, in chain order, once the
+     * task has received its last datum.  The datums of the flushed windows are handed to the rest of the chain before
+     * the next processor is flushed.
+     */
+    private void flushWindows() {
+        for(int i=0; i < this.processors.size(); ++i) {
+            StreamsProcessor stage = this.processors.get(i);
+            if(!(stage instanceof StreamsWindowedProcessor)) {
+                continue;
+            }
+            List<StreamsDatum> flushed;
+            try {
+                flushed = ((StreamsWindowedProcessor) stage).flush();
+            } catch (Throwable t) {
+                LOGGER.warn("Caught Throwable flushing windowed processor, {} : {}", stage.getClass().getName(), t.getMessage());
+                this.counters[i].incrementErrorCount();
+                continue;
+            }
+            if(flushed != null && !flushed.isEmpty()) {
+                this.counters[i].incrementEmittedCount(flushed.size());
+                statusCounter.incrementStatus(DatumStatus.SUCCESS, flushed.size());
+                runStages(i + 1, flushed);
+            }
+        }
+    }
+
+    /**
+     * Hands datums to the chain, starting at one of its processors.  Each processor is handed the output of the
+     * previous one, and the output of the last one is put on the outbound queues.
+     * @param first index of the first processor to hand the datums to
+     * @param batch datums to process
+     */
+    private void runStages(int first, List<StreamsDatum> batch) {
+        List<StreamsDatum> input = batch;
+        int last = this.processors.size() - 1;
+        if(first > last) {
+            try {
+                emit(input, null, null, null);
+            } catch (InterruptedException ie) {
+                LOGGER.warn("Received InteruptedException, shutting down and re-applying interrupt status.");
+                this.keepRunning.set(false);
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        for(int i=first; i <= last && !input.isEmpty(); ++i) {
+            List<StreamsDatum> output = i < last ? new ArrayList<StreamsDatum>(input.size()) : null;
+            this.counters[i].incrementReceivedCount(input.size());
+            StreamsProcessor stage = this.processors.get(i);
+            String stageId = getLatencySampleInterval() > 0 ? getComponentId(i, stage) : null;
+            if(stage instanceof StreamsBatchProcessor) {
+                processWithBatchProcessor((StreamsBatchProcessor) stage, stageId, this.counters[i], input, output);
+            } else {
+                processStage(stage, this.projections[i], stageId, this.counters[i], input, output);
+            }
+            input = output;
+        }
+    }
+
+    /**
+     * Calls a processor once per datum in the batch.
+     * @param stage processor to run
+     * @param projection fields read by the processor if it is a {@link org.apache.streams.core.StreamsProjectingProcessor}, null otherwise
+     * @param stageId id the processor adds to the path of traced datums, or null if latency tracing is disabled
+     * @param counter counter of the processor
+     * @param batch datums to process
+     * @param output list to add the processed datums to, or null to put them on the outbound queues
+     */
+    private void processStage(StreamsProcessor stage, JsonProjection projection, String stageId, StreamsTaskCounter counter, List<StreamsDatum> batch, List<StreamsDatum> output) {
+        long batchTime = 0;
+        long maxTime = 0;
+        int emitted = 0;
+        int errors = 0;
+        try {
+            for(StreamsDatum datum : batch) {
+                try {
+                    DatumTrace trace = stageId != null ? DatumTrace.get(datum) : null;
+                    long startTime = System.nanoTime();
+                    List<StreamsDatum> processed;
+                    if(projection != null) {
+                        processed = ((StreamsProjectingProcessor) stage).process(datum, project(projection, datum.getDocument()));
+                    } else {
+                        processed = stage.process(datum);
+                    }
+                    long processTime = System.nanoTime() - startTime;
+                    counter.addNanoTime(processTime);
+                    batchTime += processTime;
+                    maxTime = Math.max(maxTime, processTime);
+                    emitted += emit(processed, output, trace, stageId);
+                } catch (InterruptedException ie) {
+                    LOGGER.warn("Received InteruptedException, shutting down and re-applying interrupt status.");
+                    this.keepRunning.set(false);
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Throwable t) {
+                    ++errors;
+                    LOGGER.warn("Caught Throwable in processor, {} : {}", stage.getClass().getName(), t.getMessage());
+                    //Add the error to the metadata, but keep processing
+                    DatumUtils.addErrorToMetadata(datum, t, stage.getClass());
+                }
+            }
+        } finally {
+            updateCounters(counter, batchTime, maxTime, emitted, errors);
+        }
+    }
+
+    /**
+     * Extracts the projected fields of a document, reading serialized documents without parsing the fields outside
+     * the projection.
+     * @param projection fields to extract
+     * @param document document of a datum
+     * @return the projected fields, empty if the datum has no document
+     */
+    private ObjectNode project(JsonProjection projection, Object document) {
+        if(document == null) {
+            return JsonNodeFactory.instance.objectNode();
+        } else if(document instanceof StreamsDocument) {
+            return ((StreamsDocument) document).project(projection);
         }
+        return projection.project(document);
+    }
+
+    /**
+     * Hands the whole batch to a {@link org.apache.streams.core.StreamsBatchProcessor}.  If the processor throws, every
+     * datum in the batch is counted as an error.  Only the emitted datums that carry a trace themselves are traced, as
+     * they can not be matched to the datums they were emitted for.
+     * @param batchProcessor processor to run
+     * @param stageId id the processor adds to the path of traced datums, or null if latency tracing is disabled
+     * @param counter counter of the processor
+     * @param batch datums to process
+     * @param output list to add the processed datums to, or null to put them on the outbound queues
+     */
+    private void processWithBatchProcessor(StreamsBatchProcessor batchProcessor, String stageId, StreamsTaskCounter counter, List<StreamsDatum> batch, List<StreamsDatum> output) {
+        long batchTime = 0;
+        int emitted = 0;
+        int errors = 0;
+        try {
+            long startTime = System.nanoTime();
+            List<StreamsDatum> processed = batchProcessor.process(batch);
+            batchTime = System.nanoTime() - startTime;
+            counter.addNanoTime(batchTime / batch.size(), batch.size());
+            emitted = emit(processed, output, null, stageId);
+        } catch (InterruptedException ie) {
+            LOGGER.warn("Received InteruptedException, shutting down and re-applying interrupt status.");
+            this.keepRunning.set(false);
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            errors = batch.size();
+            LOGGER.warn("Caught Throwable in batch processor, {} : {}", batchProcessor.getClass().getName(), t.getMessage());
+            //Add the error to the metadata, but keep processing
+            for(StreamsDatum datum : batch) {
+                DatumUtils.addErrorToMetadata(datum, t, batchProcessor.getClass());
+            }
+        } finally {
+            updateCounters(counter, batchTime, batchTime, emitted, errors);
+        }
+    }
+
+    /**
+     * @param processed datums emitted by a processor
+     * @param output list to add the processed datums to, or null to put them on the outbound queues
+     * @param trace trace of the datum the processor was called with, may be null
+     * @param stageId id the processor adds to the path of traced datums, or null if latency tracing is disabled
+     * @return number of emitted datums
+     */
+    private int emit(List<StreamsDatum> processed, List<StreamsDatum> output, DatumTrace trace, String stageId) throws InterruptedException {
+        int emitted = 0;
+        if(processed != null) {
+            for(StreamsDatum outDatum : processed) {
+                if(stageId != null) {
+                    DatumTrace.extend(outDatum, trace, stageId);
+                }
+                if(output != null) {
+                    output.add(outDatum);
+                } else {
+                    super.addToOutgoingQueue(outDatum);
+                }
+                ++emitted;
+            }
+        }
+        return emitted;
+    }
+
+    /**
+     * @param batchTime time spent processing the batch in nanoseconds
+     * @param maxTime longest time spent processing a single datum of the batch in nanoseconds
+     */
+    private void updateCounters(StreamsTaskCounter counter, long batchTime, long maxTime, int emitted, int errors) {
+        counter.addBatchTime(TimeUnit.NANOSECONDS.toMillis(batchTime), TimeUnit.NANOSECONDS.toMillis(maxTime));
+        counter.incrementEmittedCount(emitted);
+        counter.incrementErrorCount(errors);
+        statusCounter.incrementStatus(DatumStatus.SUCCESS, emitted);
+        statusCounter.incrementStatus(DatumStatus.FAIL, errors);
     }
 
     @Override
@@ -173,7 +464,26 @@ public class StreamsProcessorTask extends BaseStreamsTask implements DatumStatus
 
     @Override
     public void setStreamsTaskCounter(StreamsTaskCounter counter) {
-        this.counter = counter;
+        this.counters[0] = counter;
+    }
+
+    /**
+     * Sets the counters of a fused chain, one per processor in the order the processors are called.
+     * @param counters counters of the processors
+     */
+    public void setStreamsTaskCounters(List<StreamsTaskCounter> counters) {
+        if(counters.size() != this.counters.length) {
+            throw new IllegalArgumentException("Expected "+this.counters.length+" counters, received "+counters.size());
+        }
+        counters.toArray(this.counters);
+    }
+
+    /**
+     * The processors run by this task, in the order they are called
+     * @return processors run by this task
+     */
+    public List<StreamsProcessor> getProcessors() {
+        return Collections.unmodifiableList(this.processors);
     }
 
 
@@ -21,6 +21,7 @@ package org.apache.streams.local.tasks;
 import org.apache.streams.core.*;
 import org.apache.streams.core.util.DatumUtils;
 import org.apache.streams.local.counters.StreamsTaskCounter;
+import org.apache.streams.local.memory.HeapAdmissionController;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,10 +31,19 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Runs a {@link org.apache.streams.core.StreamsProvider}.  A perpetual stream polls
+ * {@link org.apache.streams.core.StreamsProvider#readCurrent()} and backs off while it is empty, unless the provider is a
+ * {@link org.apache.streams.core.StreamsPushProvider}, which is handed a {@link org.apache.streams.core.StreamsEmitter}
+ * that puts datums straight on the outbound queues.  With a
+ * {@link org.apache.streams.local.memory.HeapAdmissionController}, a perpetual stream is slowed down or paused before
+ * each read, or each emit of a push provider, while the heap is under pressure.
  */
 public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusCountable {
 
@@ -53,6 +63,17 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
     private static final int START = 0;
     private static final int END = 1;
 
+    /**
+     * Time to sleep after the first empty read of a perpetual stream.  Doubles on every consecutive empty read up to the
+     * sleep time.
+     */
+    public static final long MIN_SLEEP_TIME_MS = 10;
+
+    /**
+     * How often a perpetual stream checks whether a {@link org.apache.streams.core.StreamsPushProvider} is still running.
+     */
+    public static final long PUSH_CHECK_INTERVAL_MS = 100;
+
     private StreamsProvider provider;
     private final AtomicBoolean keepRunning = new AtomicBoolean(true);
     private final AtomicBoolean flushing = new AtomicBoolean(false);
@@ -67,6 +88,9 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
     private int zeros = 0;
     private DatumStatusCounter statusCounter = new DatumStatusCounter();
     private StreamsTaskCounter counter;
+    private HeapAdmissionController admissionController;
+    private final AtomicLong sampleCount = new AtomicLong(0);
+    private final CountDownLatch stopped = new CountDownLatch(1);
 
     /**
      * Constructor for a StreamsProvider to execute {@link org.apache.streams.core.StreamsProvider:readCurrent()}
@@ -122,6 +146,14 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
         this.sleepTime = sleepTime;
     }
 
+    /**
+     * Holds back the reads of a perpetual stream while the heap is under pressure
+     * @param admissionController controller shared by the providers of the stream, or null to read freely
+     */
+    public void setAdmissionController(HeapAdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
     @Override
     public boolean isWaiting() {
         return false; //providers don't have inbound queues
@@ -131,6 +163,7 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
     public void stopTask() {
         LOGGER.debug("Stopping Provider Task for {}", this.provider.getClass().getSimpleName());
         this.keepRunning.set(false);
+        this.stopped.countDown();
     }
 
     @Override
@@ -149,31 +182,56 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
         try {
             this.provider.prepare(this.config); //TODO allow for configuration objects
             StreamsResultSet resultSet = null;
-            //Negative values mean we want to run forever
-            long maxZeros = timeout < 0 ? Long.MAX_VALUE : (timeout / sleepTime);
             if(this.counter == null) { //should never be null
                 this.counter = new StreamsTaskCounter(this.provider.getClass().getName()+ UUID.randomUUID().toString(), getStreamIdentifier(), getStartedAt());
             }
             switch(this.type) {
                 case PERPETUAL: {
+                    if(this.provider instanceof StreamsPushProvider) {
+                        try {
+                            runPushProvider((StreamsPushProvider) this.provider);
+                        } catch (InterruptedException e) {
+                            this.counter.incrementErrorCount();
+                            LOGGER.warn("Thread interrupted");
+                            this.keepRunning.set(false);
+                        }
+                        break;
+                    }
                     provider.startStream();
                     this.started.set(true);
+                    long lastResult = System.currentTimeMillis();
+                    long backOff = MIN_SLEEP_TIME_MS;
                     while(this.isRunning()) {
                         try {
-                            long startTime = System.currentTimeMillis();
+                            if(this.admissionController != null) {
+                                long admitStart = System.currentTimeMillis();
+                                while(!this.admissionController.admit() && this.keepRunning.get()) {
+                                    LOGGER.debug("Reads of {} paused by heap pressure", this.provider.getClass().getSimpleName());
+                                }
+                                //time held back by heap pressure does not count towards the timeout
+                                lastResult += System.currentTimeMillis() - admitStart;
+                            }
+                            long startTime = System.nanoTime();
                             resultSet = provider.readCurrent();
-                            this.counter.addTime(System.currentTimeMillis() - startTime);
+                            long readTime = System.nanoTime() - startTime;
+                            this.counter.addTime(TimeUnit.NANOSECONDS.toMillis(readTime));
+                            this.counter.addNanoTime(readTime);
                             if( resultSet.size() == 0 )
                                 zeros++;
                             else {
                                 zeros = 0;
+                                lastResult = System.currentTimeMillis();
+                                backOff = MIN_SLEEP_TIME_MS;
                             }
                             flushResults(resultSet);
-                            // the way this works needs to change...
-                            if(zeros > maxZeros)
+                            //Negative timeouts mean we want to run forever
+                            if(zeros > 0 && timeout >= 0 && System.currentTimeMillis() - lastResult > timeout)
                                 this.keepRunning.set(false);
-                            if(zeros > 0)
-                                Thread.sleep(sleepTime);
+                            //back off while the provider is running but has no data, without sleeping once it has finished
+                            if(zeros > 0 && this.isRunning()) {
+                                Thread.sleep(Math.min(backOff, sleepTime));
+                                backOff = Math.min(backOff * 2, sleepTime);
+                            }
                         } catch (InterruptedException e) {
                             this.counter.incrementErrorCount();
                             LOGGER.warn("Thread interrupted");
@@ -203,11 +261,16 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
             LOGGER.error("Error in processing provider stream", e);
         } finally {
             LOGGER.debug("Complete Provider Task execution for {}", this.provider.getClass().getSimpleName());
-            this.provider.cleanUp();
-            //Setting started to 'true' here will allow the isRunning() method to return false in the event of an exception
-            //before started would normally be set to true n the run method.
-            this.started.set(true);
-            this.keepRunning.set(false);
+            try {
+                emitEndOfStream();
+                this.provider.cleanUp();
+            } finally {
+                //Setting started to 'true' here will allow the isRunning() method to return false in the event of an exception
+                //before started would normally be set to true n the run method.
+                this.started.set(true);
+                this.keepRunning.set(false);
+                markCompleted();
+            }
         }
     }
 
@@ -222,6 +285,7 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
 
     public void flushResults(StreamsResultSet resultSet) {
         Queue<StreamsDatum> queue = resultSet.getQueue();
+        String providerId = getLatencySampleInterval() > 0 ? getComponentId(0, this.provider) : null;
         this.flushing.set(true);
         while(!queue.isEmpty()) {
             StreamsDatum datum = queue.poll();
@@ -230,9 +294,7 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
             }
             if(datum != null) {
                 try {
-                    super.addToOutgoingQueue(datum);
-                    this.counter.incrementEmittedCount();
-                    statusCounter.incrementStatus(DatumStatus.SUCCESS);
+                    emitDatum(datum, providerId);
                 } catch( Exception e ) {
                     this.counter.incrementErrorCount();
                     statusCounter.incrementStatus(DatumStatus.FAIL);
@@ -243,6 +305,105 @@ public class StreamsProviderTask extends BaseStreamsTask implements DatumStatusC
         this.flushing.set(false);
     }
 
+    /**
+     * Puts a datum read from the provider on the outbound queues, starting a {@link org.apache.streams.local.tasks.DatumTrace}
+     * on every n-th datum if latency tracing is enabled.  Safe to call from several threads.
+     * @param datum datum read from the provider
+     * @param providerId id of the provider, or null if latency tracing is disabled
+     * @throws InterruptedException if interrupted while waiting for room on the outbound queues
+     */
+    private void emitDatum(StreamsDatum datum, String providerId) throws InterruptedException {
+        if(providerId != null && this.sampleCount.incrementAndGet() % getLatencySampleInterval() == 0) {
+            DatumTrace.start(datum, providerId);
+        }
+        super.addToOutgoingQueue(datum);
+        this.counter.incrementEmittedCount();
+        statusCounter.incrementStatus(DatumStatus.SUCCESS);
+    }
+
+    /**
+     * Hands a push provider an emitter and waits until the provider stops running, the task is stopped, or nothing has
+     * been emitted for longer than the timeout.  The emitter is closed before returning, so no datum can follow the end
+     * of stream markers.
+     * @param pushProvider provider to run
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void runPushProvider(StreamsPushProvider pushProvider) throws InterruptedException {
+        ProviderEmitter emitter = new ProviderEmitter();
+        try {
+            pushProvider.startStream(emitter);
+            this.started.set(true);
+            //Negative timeouts mean we want to run forever
+            while(this.provider.isRunning() && this.keepRunning.get() &&
+                    (timeout < 0 || System.currentTimeMillis() - emitter.lastEmitted <= timeout)) {
+                this.stopped.await(Math.min(PUSH_CHECK_INTERVAL_MS, sleepTime), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            emitter.close();
+        }
+    }
+
+    /**
+     * {@link org.apache.streams.core.StreamsEmitter} that puts the datums of a push provider straight on the outbound
+     * queues.  {@link #emit(org.apache.streams.core.StreamsDatum)} blocks while the outbound queues are full.
+     */
+    private class ProviderEmitter implements StreamsEmitter {
+
+        private final String providerId = getLatencySampleInterval() > 0 ? getComponentId(0, provider) : null;
+        private final AtomicInteger emitting = new AtomicInteger(0);
+        private volatile boolean closed = false;
+        private volatile long lastEmitted = System.currentTimeMillis();
+
+        @Override
+        public void emit(StreamsDatum datum) throws InterruptedException {
+            this.emitting.incrementAndGet();
+            try {
+                if(this.closed) {
+                    LOGGER.debug("Dropping datum emitted by {} after the stream stopped", provider.getClass().getSimpleName());
+                    return;
+                }
+                if(admissionController != null) {
+                    while(!admissionController.admit() && !this.closed) {
+                        //time held back by heap pressure does not count towards the timeout
+                        this.lastEmitted = System.currentTimeMillis();
+                    }
+                }
+                emitDatum(datum, this.providerId);
+                this.lastEmitted = System.currentTimeMillis();
+            } catch( InterruptedException ie ) {
+                counter.incrementErrorCount();
+                statusCounter.incrementStatus(DatumStatus.FAIL);
+                throw ie;
+            } catch( Exception e ) {
+                counter.incrementErrorCount();
+                statusCounter.incrementStatus(DatumStatus.FAIL);
+                DatumUtils.addErrorToMetadata(datum, e, provider.getClass());
+            } finally {
+                this.emitting.decrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean isStopped() {
+            return this.closed;
+        }
+
+        /**
+         * Stops accepting datums and waits for the calls to {@link #emit(org.apache.streams.core.StreamsDatum)} that are
+         * still putting datums on the outbound queues, for at most the task's timeout.
+         */
+        private void close() throws InterruptedException {
+            this.closed = true;
+            long waitUntil = System.currentTimeMillis() + Math.max(DEFAULT_TIMEOUT_MS, timeout);
+            while(this.emitting.get() > 0 && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(MIN_SLEEP_TIME_MS);
+            }
+            if(this.emitting.get() > 0) {
+                LOGGER.warn("{} datums were still being emitted by {} when the stream stopped", this.emitting.get(), provider.getClass().getSimpleName());
+            }
+        }
+    }
+
     @Override
     public void setStreamsTaskCounter(StreamsTaskCounter counter) {
         this.counter = counter;
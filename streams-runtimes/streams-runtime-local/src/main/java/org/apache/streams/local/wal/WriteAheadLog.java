@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.wal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Write ahead log of the datums on one inbound queue of a stream.  Entries are appended to segment files in a
+ * directory and numbered with increasing sequence ids.  An entry is acknowledged once the datum has been fully handled
+ * by the task that removed it, and segments are deleted once all of their entries and all entries of older segments
+ * have been acknowledged.  Appends and acknowledgements are buffered, {@link #sync()} makes them durable, see
+ * {@link org.apache.streams.local.wal.WriteAheadLogManager} for the group commit.
+ * <p/>
+ * Each record holds a payload length, a record type, a sequence id, the payload and a CRC32 checksum.  Opening a log
+ * recovers the entries that were never acknowledged, reading each segment up to its first incomplete or corrupt
+ * record.  Appends go to a new segment, so recovered segments are never written again.
+ */
+public class WriteAheadLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final byte ENTRY_RECORD = 0;
+    private static final byte ACK_RECORD = 1;
+    private static final int RECORD_OVERHEAD_BYTES = 4 + 1 + 8 + 4;
+    private static final int MAX_RECORD_BYTES = 1 << 30;
+
+    private final File directory;
+    private final int segmentBytes;
+    private final TreeMap<Long, Segment> segments;
+    private final List<Entry> recovered;
+    private final CRC32 crc;
+    private Segment active;
+    private DataOutputStream out;
+    private FileChannel channel;
+    private long nextSequence;
+    private long unacknowledged;
+
+    /**
+     * Opens the log in a directory, recovering the entries of the existing segments that were not acknowledged.
+     * @param directory directory holding the segments of this log, created if it does not exist
+     * @param segmentBytes size after which a new segment is started
+     * @throws IOException if the directory or the segments can not be read
+     */
+    public WriteAheadLog(File directory, int segmentBytes) throws IOException {
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Write ahead log directory does not exist and could not be created : "+directory);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segments = new TreeMap<>();
+        this.recovered = new ArrayList<>();
+        this.crc = new CRC32();
+        recover();
+    }
+
+    /**
+     * The entries that were not acknowledged when the log was opened, in the order they were appended.  They remain in
+     * the log until they are acknowledged.
+     * @return unacknowledged entries found when opening the log
+     */
+    public synchronized List<Entry> takeRecovered() {
+        List<Entry> entries = new ArrayList<>(this.recovered);
+        this.recovered.clear();
+        return entries;
+    }
+
+    /**
+     * Appends an entry.  The entry is durable after the next {@link #sync()}.
+     * @param payload entry to append
+     * @return sequence id of the entry
+     * @throws IOException if the entry can not be written
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        if(this.out == null) {
+            roll();
+        } else {
+            rollIfFull(RECORD_OVERHEAD_BYTES + payload.length);
+        }
+        long sequence = this.nextSequence++;
+        writeRecord(ENTRY_RECORD, sequence, payload);
+        ++this.active.unacknowledged;
+        ++this.unacknowledged;
+        return sequence;
+    }
+
+    /**
+     * Acknowledges entries, and deletes the segments that no longer hold unacknowledged entries.  Only the caller of
+     * {@link #append(byte[])} knows which entries exist, negative sequence ids are ignored.
+     * @param sequences sequence ids of the entries to acknowledge
+     * @throws IOException if the acknowledgements can not be written
+     */
+    public synchronized void acknowledge(long[] sequences) throws IOException {
+        for(long sequence : sequences) {
+            if(sequence < 0) {
+                continue;
+            }
+            Map.Entry<Long, Segment> segment = this.segments.floorEntry(sequence);
+            if(segment == null) {
+                continue;
+            }
+            if(this.out != null) {
+                rollIfFull(RECORD_OVERHEAD_BYTES);
+                writeRecord(ACK_RECORD, sequence, null);
+            }
+            --segment.getValue().unacknowledged;
+            --this.unacknowledged;
+        }
+        deleteAcknowledgedSegments();
+    }
+
+    /**
+     * Writes the buffered records to the active segment and forces them to disk.
+     * @throws IOException if the records can not be written
+     */
+    public void sync() throws IOException {
+        FileChannel toForce;
+        synchronized (this) {
+            if(this.out == null) {
+                return;
+            }
+            this.out.flush();
+            toForce = this.channel;
+        }
+        try {
+            toForce.force(false);
+        } catch (ClosedChannelException cce) {
+            //the segment was rolled, which forced it before closing
+        }
+    }
+
+    /**
+     * Syncs and closes the log.  The segments are deleted if every entry has been acknowledged.
+     * @throws IOException if the log can not be synced
+     */
+    public synchronized void close() throws IOException {
+        if(this.out != null) {
+            sync();
+            this.out.close();
+            this.out = null;
+            this.channel = null;
+        }
+        if(this.unacknowledged == 0 && this.recovered.isEmpty()) {
+            for(Segment segment : this.segments.values()) {
+                deleteSegment(segment);
+            }
+            this.segments.clear();
+        }
+        this.active = null;
+    }
+
+    /**
+     * Number of entries appended or recovered that have not been acknowledged
+     * @return number of unacknowledged entries
+     */
+    public synchronized long getUnacknowledgedCount() {
+        return this.unacknowledged;
+    }
+
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Starts a new segment if a record would not fit in the active segment.  A segment is named after the sequence id
+     * of its first entry, so a segment without entries is never rolled, even if a single record exceeds its size.
+     * @param recordBytes size of the record about to be written
+     */
+    private void rollIfFull(int recordBytes) throws IOException {
+        if(this.active.size + recordBytes > this.segmentBytes && this.segments.lastKey() < this.nextSequence) {
+            roll();
+        }
+    }
+
+    private void roll() throws IOException {
+        long firstSequence = this.nextSequence;
+        if(this.out != null) {
+            this.out.flush();
+            this.channel.force(false);
+            this.out.close();
+        }
+        File file = new File(this.directory, String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+        FileOutputStream stream = new FileOutputStream(file, true);
+        this.channel = stream.getChannel();
+        this.out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+        this.active = new Segment(file);
+        this.segments.put(firstSequence, this.active);
+        deleteAcknowledgedSegments();
+    }
+
+    private void writeRecord(byte type, long sequence, byte[] payload) throws IOException {
+        int length = payload == null ? 0 : payload.length;
+        this.crc.reset();
+        this.crc.update(type);
+        updateCrc(this.crc, sequence);
+        if(payload != null) {
+            this.crc.update(payload);
+        }
+        this.out.writeInt(length);
+        this.out.writeByte(type);
+        this.out.writeLong(sequence);
+        if(payload != null) {
+            this.out.write(payload);
+        }
+        this.out.writeInt((int) this.crc.getValue());
+        this.active.size += RECORD_OVERHEAD_BYTES + length;
+    }
+
+    /**
+     * Deletes the oldest segments while they are not being written to and hold no unacknowledged entries.
+     */
+    private void deleteAcknowledgedSegments() {
+        while(!this.segments.isEmpty()) {
+            Segment oldest = this.segments.firstEntry().getValue();
+            if(oldest == this.active || oldest.unacknowledged > 0) {
+                break;
+            }
+            this.segments.pollFirstEntry();
+            deleteSegment(oldest);
+        }
+    }
+
+    private void deleteSegment(Segment segment) {
+        if(!segment.file.delete()) {
+            LOGGER.warn("Failed to delete write ahead log segment {}", segment.file);
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = this.directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if(files == null) {
+            throw new IOException("Unable to list write ahead log directory : "+this.directory);
+        }
+        Arrays.sort(files);
+        LinkedHashMap<Long, byte[]> entries = new LinkedHashMap<>();
+        Map<Long, Segment> entrySegments = new HashMap<>();
+        for(File file : files) {
+            long firstSequence = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+            Segment segment = new Segment(file);
+            this.segments.put(firstSequence, segment);
+            readSegment(segment, entries, entrySegments);
+        }
+        for(Map.Entry<Long, byte[]> entry : entries.entrySet()) {
+            this.recovered.add(new Entry(entry.getKey(), entry.getValue()));
+            ++entrySegments.get(entry.getKey()).unacknowledged;
+            ++this.unacknowledged;
+            this.nextSequence = Math.max(this.nextSequence, entry.getKey() + 1);
+        }
+        if(!this.segments.isEmpty()) {
+            this.nextSequence = Math.max(this.nextSequence, this.segments.lastKey() + 1);
+        }
+        deleteAcknowledgedSegments();
+        if(!this.recovered.isEmpty()) {
+            LOGGER.info("Recovered {} unacknowledged entries from write ahead log {}", this.recovered.size(), this.directory);
+        }
+    }
+
+    private void readSegment(Segment segment, LinkedHashMap<Long, byte[]> entries, Map<Long, Segment> entrySegments) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)))) {
+            while(true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException eof) {
+                    return;
+                }
+                if(length < 0 || length > MAX_RECORD_BYTES) {
+                    LOGGER.warn("Corrupt record in write ahead log segment {}, ignoring the rest of the segment", segment.file);
+                    return;
+                }
+                byte type = in.readByte();
+                long sequence = in.readLong();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                int checksum = in.readInt();
+                this.crc.reset();
+                this.crc.update(type);
+                updateCrc(this.crc, sequence);
+                this.crc.update(payload);
+                if(checksum != (int) this.crc.getValue()) {
+                    LOGGER.warn("Corrupt record in write ahead log segment {}, ignoring the rest of the segment", segment.file);
+                    return;
+                }
+                this.nextSequence = Math.max(this.nextSequence, sequence + 1);
+                if(type == ENTRY_RECORD) {
+                    entries.put(sequence, payload);
+                    entrySegments.put(sequence, segment);
+                } else {
+                    entries.remove(sequence);
+                    entrySegments.remove(sequence);
+                }
+            }
+        } catch (EOFException eof) {
+            LOGGER.warn("Incomplete record at the end of write ahead log segment {}, ignoring it", segment.file);
+        }
+    }
+
+    private static void updateCrc(CRC32 crc, long value) {
+        for(int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (value >>> shift));
+        }
+    }
+
+    /**
+     * An entry of the log
+     */
+    public static class Entry {
+
+        private final long sequence;
+        private final byte[] payload;
+
+        private Entry(long sequence, byte[] payload) {
+            this.sequence = sequence;
+            this.payload = payload;
+        }
+
+        public long getSequence() {
+            return this.sequence;
+        }
+
+        public byte[] getPayload() {
+            return this.payload;
+        }
+    }
+
+    /**
+     * A segment file and the number of its entries that have not been acknowledged
+     */
+    private static class Segment {
+
+        private final File file;
+        private long size;
+        private long unacknowledged;
+
+        private Segment(File file) {
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.wal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the {@link org.apache.streams.local.wal.WriteAheadLog}s of a stream, one per log id, kept in sub directories of
+ * a common directory.  Acknowledgements are queued by the tasks and applied by a single commit thread, which syncs
+ * every log once per interval.  All appends made during an interval share one sync, and acknowledgements are only
+ * applied after the sync that follows them was requested, so a datum is never acknowledged before it is durable.
+ */
+public class WriteAheadLogManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteAheadLogManager.class);
+
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 50;
+
+    private final File directory;
+    private final int segmentBytes;
+    private final long syncIntervalMs;
+    private final Map<String, WriteAheadLog> logs;
+    private final ConcurrentLinkedQueue<PendingAcknowledgement> pending;
+    private ScheduledExecutorService committer;
+
+    /**
+     * @param directory directory holding one sub directory per log
+     * @param segmentBytes size after which a log starts a new segment
+     * @param syncIntervalMs interval between group commits in milliseconds
+     */
+    public WriteAheadLogManager(File directory, int segmentBytes, long syncIntervalMs) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncIntervalMs = syncIntervalMs;
+        this.logs = new ConcurrentHashMap<>();
+        this.pending = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Opens the log with the given id, recovering its unacknowledged entries.
+     * @param id id of the log, usually the id of the component reading the logged queue
+     * @return the opened log
+     * @throws IOException if the log can not be opened
+     */
+    public synchronized WriteAheadLog open(String id) throws IOException {
+        if(this.logs.containsKey(id)) {
+            throw new IllegalStateException("Write ahead log is already open : "+id);
+        }
+        WriteAheadLog log = new WriteAheadLog(new File(this.directory, id), this.segmentBytes);
+        this.logs.put(id, log);
+        return log;
+    }
+
+    /**
+     * Queues acknowledgements to be applied after the next sync.
+     * @param log log the entries belong to
+     * @param sequences sequence ids of the entries
+     */
+    public void acknowledge(WriteAheadLog log, long[] sequences) {
+        if(sequences.length > 0) {
+            this.pending.add(new PendingAcknowledgement(log, sequences));
+        }
+    }
+
+    /**
+     * Starts the commit thread
+     */
+    public synchronized void start() {
+        if(this.committer != null) {
+            return;
+        }
+        this.committer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "write-ahead-log-committer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.committer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    commit();
+                } catch (Throwable t) {
+                    LOGGER.error("Failed to commit write ahead logs : {}", t);
+                }
+            }
+        }, this.syncIntervalMs, this.syncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Syncs every log and then applies the acknowledgements that were queued before the sync.  Acknowledgements are
+     * written to the logs when they are applied and become durable with the following commit.
+     * @throws IOException if a log can not be synced or written
+     */
+    public void commit() throws IOException {
+        List<PendingAcknowledgement> acknowledgements = new ArrayList<>();
+        PendingAcknowledgement ack;
+        while((ack = this.pending.poll()) != null) {
+            acknowledgements.add(ack);
+        }
+        for(WriteAheadLog log : this.logs.values()) {
+            log.sync();
+        }
+        for(PendingAcknowledgement pendingAck : acknowledgements) {
+            pendingAck.log.acknowledge(pendingAck.sequences);
+        }
+    }
+
+    /**
+     * Stops the commit thread, commits the queued acknowledgements and closes every log.  Logs without unacknowledged
+     * entries are removed from disk.
+     */
+    public synchronized void shutdown() {
+        if(this.committer != null) {
+            this.committer.shutdown();
+            try {
+                this.committer.awaitTermination(this.syncIntervalMs * 10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            this.committer = null;
+        }
+        try {
+            commit();
+        } catch (IOException ioe) {
+            LOGGER.error("Failed to commit write ahead logs on shutdown : {}", ioe);
+        }
+        for(WriteAheadLog log : this.logs.values()) {
+            try {
+                log.close();
+                long unacknowledged = log.getUnacknowledgedCount();
+                if(unacknowledged == 0) {
+                    File[] remaining = log.getDirectory().listFiles();
+                    if(remaining != null && remaining.length == 0 && !log.getDirectory().delete()) {
+                        LOGGER.debug("Failed to delete write ahead log directory {}", log.getDirectory());
+                    }
+                } else {
+                    LOGGER.warn("Write ahead log {} closed with {} unacknowledged entries, they will be replayed on restart", log.getDirectory(), unacknowledged);
+                }
+            } catch (IOException ioe) {
+                LOGGER.error("Failed to close write ahead log {} : {}", log.getDirectory(), ioe);
+            }
+        }
+        this.logs.clear();
+    }
+
+    /**
+     * Acknowledgements of one task waiting for the next sync
+     */
+    private static class PendingAcknowledgement {
+
+        private final WriteAheadLog log;
+        private final long[] sequences;
+
+        private PendingAcknowledgement(WriteAheadLog log, long[] sequences) {
+            this.log = log;
+            this.sequences = sequences;
+        }
+    }
+}
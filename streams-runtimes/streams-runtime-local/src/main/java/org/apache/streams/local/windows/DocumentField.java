@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.windows;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.streams.core.StreamsDocument;
+import org.apache.streams.jackson.StreamsJacksonMapper;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Reads a field of the document of a {@link org.apache.streams.core.StreamsDatum} by its dotted path, for example
+ * <code>actor.id</code>.  Documents that are a {@link com.fasterxml.jackson.databind.JsonNode} are read directly, the
+ * tree of a {@link org.apache.streams.core.StreamsDocument} is parsed once and kept by the document, serialized json is
+ * parsed and other documents, like {@link org.apache.streams.pojo.json.Activity}s and maps, are converted to a tree
+ * first.
+ */
+public class DocumentField implements Serializable {
+
+    private final String path;
+    private final String[] names;
+    private transient ObjectMapper mapper;
+
+    /**
+     *
+     * @param path dotted path of the field
+     */
+    public DocumentField(String path) {
+        if(path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("DocumentField requires a path");
+        }
+        this.path = path;
+        this.names = path.split("\\.");
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * The value of the field
+     * @param document document to read the field from
+     * @return value of the field, or null if the document does not have the field or it is null
+     */
+    public JsonNode get(Object document) {
+        JsonNode node = toTree(document);
+        if(node == null) {
+            return null;
+        }
+        for(String name : this.names) {
+            node = node.path(name);
+        }
+        return node.isMissingNode() || node.isNull() ? null : node;
+    }
+
+    /**
+     * The value of the field as text.  Values that are objects or arrays are returned as json.
+     * @param document document to read the field from
+     * @return value of the field as text, or null if the document does not have the field or it is null
+     */
+    public String getText(Object document) {
+        JsonNode node = get(document);
+        if(node == null) {
+            return null;
+        }
+        return node.isValueNode() ? node.asText() : node.toString();
+    }
+
+    private JsonNode toTree(Object document) {
+        if(document == null) {
+            return null;
+        } else if(document instanceof JsonNode) {
+            return (JsonNode) document;
+        } else if(document instanceof StreamsDocument) {
+            try {
+                return ((StreamsDocument) document).getObjectNode();
+            } catch (IllegalArgumentException iae) {
+                return null;
+            }
+        }
+        if(this.mapper == null) {
+            this.mapper = StreamsJacksonMapper.getInstance();
+        }
+        try {
+            if(document instanceof String) {
+                return this.mapper.readTree((String) document);
+            }
+            return this.mapper.valueToTree(document);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.windows;
+
+import java.io.Serializable;
+
+/**
+ * The aggregates of one window, by key.  An open addressing hash map with linear probing that keeps the count, value
+ * count, sum, minimum and maximum of every key in primitive arrays, so that adding a datum to an existing key
+ * allocates nothing.
+ */
+public class KeyedAggregates implements Serializable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] keys;
+    private long[] counts;
+    private long[] valueCounts;
+    private double[] sums;
+    private double[] mins;
+    private double[] maxs;
+    private int size;
+
+    public KeyedAggregates() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Counts a datum without a value
+     * @param key key of the datum
+     */
+    public void add(String key) {
+        ++this.counts[slot(key)];
+    }
+
+    /**
+     * Counts a datum and aggregates its value
+     * @param key key of the datum
+     * @param value value of the datum
+     */
+    public void add(String key, double value) {
+        int slot = slot(key);
+        ++this.counts[slot];
+        if(this.valueCounts[slot]++ == 0) {
+            this.mins[slot] = value;
+            this.maxs[slot] = value;
+        } else {
+            this.mins[slot] = Math.min(this.mins[slot], value);
+            this.maxs[slot] = Math.max(this.maxs[slot], value);
+        }
+        this.sums[slot] += value;
+    }
+
+    /**
+     * The number of keys
+     * @return number of keys
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * The number of slots, some of which are empty.  Iterate over the slots with {@link #getKey(int)}.
+     * @return number of slots
+     */
+    public int capacity() {
+        return this.keys.length;
+    }
+
+    /**
+     * @param slot slot index
+     * @return key in the slot, or null if the slot is empty
+     */
+    public String getKey(int slot) {
+        return this.keys[slot];
+    }
+
+    public long getCount(int slot) {
+        return this.counts[slot];
+    }
+
+    public long getValueCount(int slot) {
+        return this.valueCounts[slot];
+    }
+
+    public double getSum(int slot) {
+        return this.sums[slot];
+    }
+
+    public double getMin(int slot) {
+        return this.mins[slot];
+    }
+
+    public double getMax(int slot) {
+        return this.maxs[slot];
+    }
+
+    /**
+     * The slot of a key, claiming an empty slot if the key is new
+     * @param key non null key
+     * @return slot of the key
+     */
+    private int slot(String key) {
+        int mask = this.keys.length - 1;
+        int slot = mix(key.hashCode()) & mask;
+        while(this.keys[slot] != null) {
+            if(this.keys[slot].equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if(this.size + 1 > this.keys.length * 3 / 4) {
+            grow();
+            return slot(key);
+        }
+        this.keys[slot] = key;
+        ++this.size;
+        return slot;
+    }
+
+    private void grow() {
+        String[] oldKeys = this.keys;
+        long[] oldCounts = this.counts;
+        long[] oldValueCounts = this.valueCounts;
+        double[] oldSums = this.sums;
+        double[] oldMins = this.mins;
+        double[] oldMaxs = this.maxs;
+        int oldSize = this.size;
+        allocate(oldKeys.length * 2);
+        int mask = this.keys.length - 1;
+        for(int i=0; i < oldKeys.length; ++i) {
+            if(oldKeys[i] == null) {
+                continue;
+            }
+            int slot = mix(oldKeys[i].hashCode()) & mask;
+            while(this.keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            this.keys[slot] = oldKeys[i];
+            this.counts[slot] = oldCounts[i];
+            this.valueCounts[slot] = oldValueCounts[i];
+            this.sums[slot] = oldSums[i];
+            this.mins[slot] = oldMins[i];
+            this.maxs[slot] = oldMaxs[i];
+        }
+        this.size = oldSize;
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new String[capacity];
+        this.counts = new long[capacity];
+        this.valueCounts = new long[capacity];
+        this.sums = new double[capacity];
+        this.mins = new double[capacity];
+        this.maxs = new double[capacity];
+        this.size = 0;
+    }
+
+    private static int mix(int hash) {
+        //spread the high bits of string hashes over the low bits used for the slot
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.windows;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsKeyExtractor;
+
+import java.io.Serializable;
+
+/**
+ * Describes a windowed aggregation run by a {@link WindowedAggregationProcessor}.  Datums are grouped by the value of
+ * a key field of their document and by event time, taken from {@link org.apache.streams.core.StreamsDatum#getTimestamp()}.
+ * Tumbling windows do not overlap, sliding windows of the same size start every slide, so that a datum falls in
+ * several windows.  Every window counts its datums and, when a value field is set, keeps the sum, minimum and maximum
+ * of the numeric values of the field.  Windows are emitted once the event time has passed their end by the allowed
+ * lateness, and datums that arrive for windows that have already been emitted are dropped.
+ */
+public class WindowedAggregation implements Serializable {
+
+    private final DocumentField keyField;
+    private final long sizeMs;
+    private final long slideMs;
+    private DocumentField valueField;
+    private long allowedLatenessMs;
+
+    private WindowedAggregation(String keyField, long sizeMs, long slideMs) {
+        if(sizeMs < 1 || slideMs < 1 || slideMs > sizeMs) {
+            throw new IllegalArgumentException("Windows must be at least 1ms long and slide by at most their size");
+        }
+        this.keyField = new DocumentField(keyField);
+        this.sizeMs = sizeMs;
+        this.slideMs = slideMs;
+    }
+
+    /**
+     * Windows of a fixed size that do not overlap
+     * @param keyField dotted path of the document field to group by
+     * @param sizeMs size of the windows in milliseconds
+     * @return aggregation over tumbling windows
+     */
+    public static WindowedAggregation tumbling(String keyField, long sizeMs) {
+        return new WindowedAggregation(keyField, sizeMs, sizeMs);
+    }
+
+    /**
+     * Windows of a fixed size that start every slide
+     * @param keyField dotted path of the document field to group by
+     * @param sizeMs size of the windows in milliseconds
+     * @param slideMs time between the starts of consecutive windows in milliseconds, at most the size
+     * @return aggregation over sliding windows
+     */
+    public static WindowedAggregation sliding(String keyField, long sizeMs, long slideMs) {
+        return new WindowedAggregation(keyField, sizeMs, slideMs);
+    }
+
+    /**
+     * Aggregates the numeric values of a document field besides counting datums
+     * @param valueField dotted path of the numeric document field
+     * @return this aggregation
+     */
+    public WindowedAggregation withValueField(String valueField) {
+        this.valueField = new DocumentField(valueField);
+        return this;
+    }
+
+    /**
+     * Keeps windows open for datums that arrive out of order, until the latest event time seen has passed their end by
+     * the allowed lateness
+     * @param allowedLatenessMs allowed lateness in milliseconds
+     * @return this aggregation
+     */
+    public WindowedAggregation withAllowedLateness(long allowedLatenessMs) {
+        if(allowedLatenessMs < 0) {
+            throw new IllegalArgumentException("Allowed lateness can not be negative");
+        }
+        this.allowedLatenessMs = allowedLatenessMs;
+        return this;
+    }
+
+    public DocumentField getKeyField() {
+        return this.keyField;
+    }
+
+    public DocumentField getValueField() {
+        return this.valueField;
+    }
+
+    public long getSizeMs() {
+        return this.sizeMs;
+    }
+
+    public long getSlideMs() {
+        return this.slideMs;
+    }
+
+    public long getAllowedLatenessMs() {
+        return this.allowedLatenessMs;
+    }
+
+    /**
+     * Keys datums by the key field, so that a runtime partitioning the aggregation routes every datum of a group to the
+     * same task
+     * @return key extractor returning the value of the key field as text
+     */
+    public StreamsKeyExtractor getKeyExtractor() {
+        return new StreamsKeyExtractor() {
+            @Override
+            public Object getKey(StreamsDatum datum) {
+                return keyField.getText(datum.getDocument());
+            }
+        };
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.windows;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsWindowedProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs a {@link WindowedAggregation}.  Open windows are kept by start time with their {@link KeyedAggregates}.  The
+ * watermark is the latest event time seen, less the allowed lateness, and every window that ends at or before the
+ * watermark is emitted and dropped, so memory is bounded by the windows spanning the allowed lateness.  Each emitted
+ * window is one datum per key, whose document holds the key, the window bounds, the count and, if the aggregation has
+ * a value field, the sum, minimum, maximum and average of the values.  Datums without a timestamp are placed by the time
+ * they are processed, and datums without a key are dropped.
+ *
+ * Run with several tasks, the processor has to be partitioned by {@link WindowedAggregation#getKeyExtractor()} so each
+ * task sees every datum of its keys.
+ */
+public class WindowedAggregationProcessor implements StreamsWindowedProcessor {
+
+    public static final String KEY_FIELD = "key";
+    public static final String WINDOW_START_FIELD = "windowStart";
+    public static final String WINDOW_END_FIELD = "windowEnd";
+    public static final String COUNT_FIELD = "count";
+    public static final String SUM_FIELD = "sum";
+    public static final String MIN_FIELD = "min";
+    public static final String MAX_FIELD = "max";
+    public static final String AVG_FIELD = "avg";
+
+    private final WindowedAggregation aggregation;
+    private TreeMap<Long, KeyedAggregates> windows;
+    private long watermark;
+    private long lateDatums;
+    private long unkeyedDatums;
+
+    public WindowedAggregationProcessor(WindowedAggregation aggregation) {
+        this.aggregation = aggregation;
+        this.windows = new TreeMap<>();
+        this.watermark = Long.MIN_VALUE;
+    }
+
+    @Override
+    public List<StreamsDatum> process(StreamsDatum entry) {
+        String key = this.aggregation.getKeyField().getText(entry.getDocument());
+        if(key == null) {
+            ++this.unkeyedDatums;
+            return Collections.emptyList();
+        }
+        JsonNode value = this.aggregation.getValueField() == null ? null : this.aggregation.getValueField().get(entry.getDocument());
+        long time = entry.hasTimestamp() ? entry.getTimestampMillis() : System.currentTimeMillis();
+
+        long size = this.aggregation.getSizeMs();
+        long slide = this.aggregation.getSlideMs();
+        boolean added = false;
+        //latest window containing the datum first, earlier windows have closed first
+        for(long start = floorToSlide(time); start > time - size; start -= slide) {
+            if(start + size <= this.watermark) {
+                break;
+            }
+            KeyedAggregates window = this.windows.get(start);
+            if(window == null) {
+                window = new KeyedAggregates();
+                this.windows.put(start, window);
+            }
+            if(value != null && value.isNumber()) {
+                window.add(key, value.doubleValue());
+            } else {
+                window.add(key);
+            }
+            added = true;
+        }
+        if(!added) {
+            ++this.lateDatums;
+            return Collections.emptyList();
+        }
+        long latest = time - this.aggregation.getAllowedLatenessMs();
+        if(latest > this.watermark) {
+            this.watermark = latest;
+            return closeWindows(false);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<StreamsDatum> flush() {
+        return closeWindows(true);
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+        if(this.windows == null) {
+            this.windows = new TreeMap<>();
+        }
+    }
+
+    @Override
+    public void cleanUp() {
+        this.windows.clear();
+    }
+
+    /**
+     * The number of datums dropped because every window they fall in had already been emitted
+     * @return number of late datums
+     */
+    public long getLateDatums() {
+        return this.lateDatums;
+    }
+
+    /**
+     * The number of datums dropped because their document has no key
+     * @return number of datums without a key
+     */
+    public long getUnkeyedDatums() {
+        return this.unkeyedDatums;
+    }
+
+    /**
+     * The number of windows that have not been emitted
+     * @return number of open windows
+     */
+    public int getOpenWindows() {
+        return this.windows.size();
+    }
+
+    /**
+     * Emits and drops the windows ending at or before the watermark, in the order they end.
+     * @param all true to emit every window regardless of the watermark
+     * @return datums of the emitted windows
+     */
+    private List<StreamsDatum> closeWindows(boolean all) {
+        List<StreamsDatum> closed = new ArrayList<>();
+        long size = this.aggregation.getSizeMs();
+        Iterator<Map.Entry<Long, KeyedAggregates>> entries = this.windows.entrySet().iterator();
+        while(entries.hasNext()) {
+            Map.Entry<Long, KeyedAggregates> entry = entries.next();
+            long start = entry.getKey();
+            if(!all && start + size > this.watermark) {
+                break;
+            }
+            emit(start, start + size, entry.getValue(), closed);
+            entries.remove();
+        }
+        return closed;
+    }
+
+    private void emit(long start, long end, KeyedAggregates window, List<StreamsDatum> closed) {
+        boolean hasValueField = this.aggregation.getValueField() != null;
+        for(int slot=0; slot < window.capacity(); ++slot) {
+            String key = window.getKey(slot);
+            if(key == null) {
+                continue;
+            }
+            ObjectNode document = JsonNodeFactory.instance.objectNode();
+            document.put(KEY_FIELD, key);
+            document.put(WINDOW_START_FIELD, start);
+            document.put(WINDOW_END_FIELD, end);
+            document.put(COUNT_FIELD, window.getCount(slot));
+            if(hasValueField && window.getValueCount(slot) > 0) {
+                document.put(SUM_FIELD, window.getSum(slot));
+                document.put(MIN_FIELD, window.getMin(slot));
+                document.put(MAX_FIELD, window.getMax(slot));
+                document.put(AVG_FIELD, window.getSum(slot) / window.getValueCount(slot));
+            }
+            StreamsDatum aggregate = new StreamsDatum(document, key + ":" + start);
+            aggregate.setTimestampMillis(end);
+            closed.add(aggregate);
+        }
+    }
+
+    /**
+     * The start of the latest window containing a time
+     * @param time event time in milliseconds
+     * @return start of the latest window containing the time
+     */
+    private long floorToSlide(long time) {
+        long slide = this.aggregation.getSlideMs();
+        return time - (((time % slide) + slide) % slide);
+    }
+}
@@ -23,6 +23,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -30,27 +31,37 @@ import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.PrintStream;
 import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
 import com.google.common.collect.Lists;
 import org.apache.streams.core.StreamBuilder;
 import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsKeyExtractor;
 import org.apache.streams.core.StreamsPersistWriter;
 import org.apache.streams.core.StreamsProcessor;
+import org.apache.streams.local.counters.DatumLatencyCounter;
 import org.apache.streams.local.counters.StreamsTaskCounter;
+import org.apache.streams.local.queues.DurableQueue;
+import org.apache.streams.local.queues.ThrottledQueue;
 import org.apache.streams.local.queues.ThroughputQueue;
+import org.apache.streams.local.test.processors.KeyAffinityProcessor;
 import org.apache.streams.local.test.processors.PassthroughDatumCounterProcessor;
 import org.apache.streams.local.test.processors.SlowProcessor;
 import org.apache.streams.local.test.providers.EmptyResultSetProvider;
 import org.apache.streams.local.test.providers.NumericMessageProvider;
+import org.apache.streams.local.test.providers.ThreadedPushProvider;
 import org.apache.streams.local.test.writer.DatumCounterWriter;
 import org.apache.streams.local.test.writer.SystemOutWriter;
+import org.apache.streams.local.wal.WriteAheadLogManager;
 import org.apache.streams.util.ComponentUtils;
 import org.joda.time.DateTime;
 import org.junit.After;
@@ -64,6 +75,7 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import javax.management.*;
+import javax.management.openmbean.TabularData;
 
 /**
  * Basic Tests for the LocalStreamBuilder.
@@ -74,6 +86,8 @@ import javax.management.*;
  *
  *
  */
+//pool threads may still be exiting when awaitTermination returns
+@ThreadLeakLingering(linger = 1000)
 public class LocalStreamBuilderTest extends RandomizedTest {
     private static final String MBEAN_ID = "test_id";
     private static final String STREAM_ID = "test_stream";
@@ -226,6 +240,438 @@ public class LocalStreamBuilderTest extends RandomizedTest {
         }
     }
 
+    @Test
+    public void testRingBufferParallelLinearStream() {
+        String processorId = "proc";
+        int numProcessors = randomIntBetween(1, 10);
+        int numDatums = randomIntBetween(1, 300000);
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.QUEUE_TYPE_KEY, LocalStreamBuilder.RING_BUFFER_QUEUE_TYPE);
+            StreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            String connectTo = null;
+            for(int i=0; i < numProcessors; ++i) {
+                if(i == 0) {
+                    connectTo = "numeric_provider";
+                } else {
+                    connectTo = processorId+(i-1);
+                }
+                int parallelHint = randomIntBetween(1,5);
+                builder.addStreamsProcessor(processorId+i, new PassthroughDatumCounterProcessor(processorId+i), parallelHint, connectTo);
+            }
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, processorId+(numProcessors-1));
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            for(int i=0; i < numProcessors; ++i) {
+                assertEquals(numDatums, PassthroughDatumCounterProcessor.COUNTS.get(processorId+i).get());
+            }
+        } finally {
+            for(int i=0; i < numProcessors; ++i) {
+                removeRegisteredMBeans(processorId+i);
+            }
+            removeRegisteredMBeans("writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testWorkStealingParallelLinearStream() {
+        String processorId = "proc";
+        int numProcessors = randomIntBetween(1, 10);
+        int numDatums = randomIntBetween(1, 300000);
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.EXECUTION_MODE_KEY, LocalStreamBuilder.WORK_STEALING_EXECUTION_MODE);
+            config.put(LocalStreamBuilder.PARALLELISM_KEY, randomIntBetween(1, 4));
+            StreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            String connectTo = null;
+            for(int i=0; i < numProcessors; ++i) {
+                if(i == 0) {
+                    connectTo = "numeric_provider";
+                } else {
+                    connectTo = processorId+(i-1);
+                }
+                int parallelHint = randomIntBetween(1,5);
+                builder.addStreamsProcessor(processorId+i, new PassthroughDatumCounterProcessor(processorId+i), parallelHint, connectTo);
+            }
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, processorId+(numProcessors-1));
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            for(int i=0; i < numProcessors; ++i) {
+                assertEquals(numDatums, PassthroughDatumCounterProcessor.COUNTS.get(processorId+i).get());
+            }
+        } finally {
+            for(int i=0; i < numProcessors; ++i) {
+                removeRegisteredMBeans(processorId+i);
+            }
+            removeRegisteredMBeans("writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testFusedLinearStream() {
+        String processorId = "proc";
+        int numProcessors = randomIntBetween(2, 5);
+        int numDatums = randomIntBetween(1, 300000);
+        int parallelHint = randomIntBetween(1, 3);
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.STREAM_IDENTIFIER_KEY, STREAM_ID);
+            config.put(LocalStreamBuilder.FUSE_PROCESSORS_KEY, true);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            long startedAt = (Long) config.get(LocalStreamBuilder.DEFAULT_STARTED_AT_KEY);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            String connectTo = "numeric_provider";
+            for(int i=0; i < numProcessors; ++i) {
+                builder.addStreamsProcessor(processorId+i, new PassthroughDatumCounterProcessor(processorId+i), parallelHint, connectTo);
+                connectTo = processorId+i;
+            }
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, connectTo);
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            for(int i=0; i < numProcessors; ++i) {
+                assertEquals(numDatums, PassthroughDatumCounterProcessor.COUNTS.get(processorId+i).get());
+                ObjectName counterName = new ObjectName(String.format(StreamsTaskCounter.NAME_TEMPLATE, processorId+i, STREAM_ID, startedAt));
+                assertEquals((long) numDatums, mbs.getAttribute(counterName, "NumReceived"));
+                assertEquals((long) numDatums, mbs.getAttribute(counterName, "NumEmitted"));
+                ObjectName queueName = new ObjectName(String.format(ThroughputQueue.NAME_TEMPLATE, processorId+i, STREAM_ID, startedAt));
+                assertEquals("Only the head of the chain should have an inbound queue", i == 0, mbs.isRegistered(queueName));
+            }
+        } catch (JMException e) {
+            fail("Failed to read fused processor counters : "+e.getMessage());
+        } finally {
+            for(int i=0; i < numProcessors; ++i) {
+                removeRegisteredMBeans(processorId+i);
+            }
+            removeRegisteredMBeans("writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testSpillingQueueStream() throws Exception {
+        int numDatums = randomIntBetween(1, 100000);
+        File spillDirectory = Files.createTempDirectory("spilling-stream-test").toFile();
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.QUEUE_TYPE_KEY, LocalStreamBuilder.SPILLING_QUEUE_TYPE);
+            config.put(LocalStreamBuilder.SPILL_DIRECTORY_KEY, spillDirectory.getAbsolutePath());
+            config.put(LocalStreamBuilder.SPILL_SEGMENT_BYTES_KEY, 64 * 1024);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("proc", new PassthroughDatumCounterProcessor("proc"), 2, "numeric_provider");
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc");
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            assertEquals(numDatums, PassthroughDatumCounterProcessor.COUNTS.get("proc").get());
+            assertEquals("Expected spill segments to be deleted", 0, spillDirectory.listFiles().length);
+        } finally {
+            removeRegisteredMBeans("proc", "writer", "numeric_provider");
+            spillDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testWriteAheadLogReplay() throws Exception {
+        int numDatums = randomIntBetween(1, 10000);
+        int numUnacknowledged = randomIntBetween(1, 100);
+        File logDirectory = Files.createTempDirectory("write-ahead-log-stream-test").toFile();
+        try {
+            //datums logged for the writer by a previous run that never acknowledged them
+            WriteAheadLogManager manager = new WriteAheadLogManager(logDirectory, 64 * 1024, 10);
+            DurableQueue previousRun = new DurableQueue(new LinkedBlockingQueue<StreamsDatum>(), manager.open("writer"), manager);
+            for(int i=0; i < numUnacknowledged; ++i) {
+                previousRun.put(new StreamsDatum(-1 - i));
+            }
+            manager.shutdown();
+
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.WRITE_AHEAD_LOG_DIRECTORY_KEY, logDirectory.getAbsolutePath());
+            config.put(LocalStreamBuilder.WRITE_AHEAD_LOG_SYNC_INTERVAL_MS_KEY, 10);
+            config.put(LocalStreamBuilder.WRITE_AHEAD_LOG_SEGMENT_BYTES_KEY, 64 * 1024);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("proc", new PassthroughDatumCounterProcessor("proc"), 2, "numeric_provider");
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc");
+            builder.start();
+
+            List<Object> received = DatumCounterWriter.RECEIVED.get("writer");
+            assertEquals(numDatums + numUnacknowledged, received.size());
+            for(int i=0; i < numUnacknowledged; ++i) {
+                assertEquals("Expected replayed datums to be written first", -1 - i, received.get(i));
+            }
+            assertEquals("Expected every logged datum to be acknowledged", 0, logDirectory.listFiles().length);
+        } finally {
+            removeRegisteredMBeans("proc", "writer", "numeric_provider");
+            logDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testRingBufferWriteAheadLogReplay() throws Exception {
+        int numDatums = randomIntBetween(1, 10000);
+        int numUnacknowledged = randomIntBetween(1, 1000);
+        File logDirectory = Files.createTempDirectory("write-ahead-log-stream-test").toFile();
+        try {
+            //datums logged for both the processor and the writer by a previous run that never acknowledged them
+            WriteAheadLogManager manager = new WriteAheadLogManager(logDirectory, 64 * 1024, 10);
+            for(String id : new String[] {"proc", "writer"}) {
+                DurableQueue previousRun = new DurableQueue(new LinkedBlockingQueue<StreamsDatum>(), manager.open(id), manager);
+                for(int i=0; i < numUnacknowledged; ++i) {
+                    previousRun.put(new StreamsDatum(-1 - i));
+                }
+            }
+            manager.shutdown();
+
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.QUEUE_TYPE_KEY, LocalStreamBuilder.RING_BUFFER_QUEUE_TYPE);
+            config.put(LocalStreamBuilder.WRITE_AHEAD_LOG_DIRECTORY_KEY, logDirectory.getAbsolutePath());
+            config.put(LocalStreamBuilder.WRITE_AHEAD_LOG_SYNC_INTERVAL_MS_KEY, 10);
+            config.put(LocalStreamBuilder.WRITE_AHEAD_LOG_SEGMENT_BYTES_KEY, 64 * 1024);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("proc", new PassthroughDatumCounterProcessor("proc"), 1, "numeric_provider");
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc");
+            builder.start();
+
+            //the processor's task forwards its replayed datums while the writer's log is replayed into the same queue
+            assertEquals(numDatums + 2 * numUnacknowledged, DatumCounterWriter.RECEIVED.get("writer").size());
+            assertEquals("Expected every logged datum to be acknowledged", 0, logDirectory.listFiles().length);
+        } finally {
+            removeRegisteredMBeans("proc", "writer", "numeric_provider");
+            logDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testRateLimitedStream() throws Exception {
+        int numDatums = randomIntBetween(20, 100);
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.STREAM_IDENTIFIER_KEY, STREAM_ID);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            long startedAt = (Long) config.get(LocalStreamBuilder.DEFAULT_STARTED_AT_KEY);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "numeric_provider");
+            builder.setRateLimit("writer", 200, 10);
+            long start = System.currentTimeMillis();
+            builder.start();
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            //every datum after the burst waits 5ms
+            assertTrue("Took "+elapsed+"ms", elapsed >= (numDatums - 10) * 5);
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(String.format(ThrottledQueue.NAME_TEMPLATE, "writer", STREAM_ID, startedAt));
+            assertTrue((Long) mbs.getAttribute(name, "NumThrottled") > 0);
+            assertEquals(200.0, (Double) mbs.getAttribute(name, "RateLimit"), 0.0);
+        } finally {
+            removeRegisteredMBeans("writer", "numeric_provider");
+        }
+    }
+
+    @Test(expected = InvalidStreamException.class)
+    public void testRateLimitValidation() {
+        new LocalStreamBuilder().setRateLimit("writer", 0, 1);
+    }
+
+    @Test
+    public void testAutoscaledStream() throws Exception {
+        int numDatums = randomIntBetween(200, 400);
+        SlowProcessor.THREADS.clear();
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.STREAM_IDENTIFIER_KEY, STREAM_ID);
+            config.put(LocalStreamBuilder.AUTOSCALE_INTERVAL_MS_KEY, 50);
+            config.put(LocalStreamBuilder.AUTOSCALE_STABILIZATION_INTERVALS_KEY, 2);
+            config.put(LocalStreamBuilder.AUTOSCALE_WAIT_HIGH_MS_KEY, 20);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("slow", new SlowProcessor(5), 1, "numeric_provider");
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "slow");
+            builder.setAutoscale("slow", 1, 4);
+            builder.start();
+
+            //every datum reaches the writer, and the writer only finishes once the added tasks have sent their markers
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            assertThat(SlowProcessor.THREADS.size(), greaterThan(1));
+            assertThat(SlowProcessor.THREADS.size(), lessThanOrEqualTo(4));
+        } finally {
+            removeRegisteredMBeans("slow", "writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testRingBufferAutoscaledStream() throws Exception {
+        int numDatums = randomIntBetween(200, 400);
+        SlowProcessor.THREADS.clear();
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.STREAM_IDENTIFIER_KEY, STREAM_ID);
+            config.put(LocalStreamBuilder.QUEUE_TYPE_KEY, LocalStreamBuilder.RING_BUFFER_QUEUE_TYPE);
+            config.put(LocalStreamBuilder.AUTOSCALE_INTERVAL_MS_KEY, 50);
+            config.put(LocalStreamBuilder.AUTOSCALE_STABILIZATION_INTERVALS_KEY, 2);
+            config.put(LocalStreamBuilder.AUTOSCALE_WAIT_HIGH_MS_KEY, 20);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("slow", new SlowProcessor(5), 1, "numeric_provider");
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "slow");
+            builder.setAutoscale("slow", 1, 4);
+            builder.start();
+
+            //the writer's queue was built for the single task of slow, but is written by every task added to it
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            assertThat(SlowProcessor.THREADS.size(), greaterThan(1));
+        } finally {
+            removeRegisteredMBeans("slow", "writer", "numeric_provider");
+        }
+    }
+
+    @Test
+    public void testRingBufferPushProviderStream() throws Exception {
+        int numDatums = randomIntBetween(20000, 50000);
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.STREAM_IDENTIFIER_KEY, STREAM_ID);
+            config.put(LocalStreamBuilder.QUEUE_TYPE_KEY, LocalStreamBuilder.RING_BUFFER_QUEUE_TYPE);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            builder.newPerpetualStream("push_provider", new ThreadedPushProvider(numDatums, randomIntBetween(2, 8)));
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "push_provider");
+            builder.start();
+
+            //the provider is a single upstream task, but emits from every one of its threads
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+        } finally {
+            removeRegisteredMBeans("writer", "push_provider");
+        }
+    }
+
+    @Test
+    public void testSharedRuntime() throws Exception {
+        int numStreams = randomIntBetween(2, 5);
+        final int numDatums = randomIntBetween(1, 10000);
+        SharedStreamRuntime runtime = new SharedStreamRuntime(randomIntBetween(1, 4), null);
+        ExecutorService starter = Executors.newFixedThreadPool(numStreams);
+        try {
+            List<Future<?>> started = Lists.newArrayList();
+            for(int i=0; i < numStreams; ++i) {
+                final String suffix = Integer.toString(i);
+                Map<String, Object> config = Maps.newHashMap();
+                config.put(LocalStreamBuilder.STREAM_IDENTIFIER_KEY, STREAM_ID + suffix);
+                config.put(LocalStreamBuilder.SCHEDULING_WEIGHT_KEY, i + 1);
+                final LocalStreamBuilder builder = new LocalStreamBuilder(50, config, runtime);
+                builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+                builder.addStreamsProcessor("proc" + suffix, new PassthroughDatumCounterProcessor("proc" + suffix), randomIntBetween(1, 3), "numeric_provider");
+                builder.addStreamsPersistWriter("writer" + suffix, new DatumCounterWriter("writer" + suffix), 1, "proc" + suffix);
+                started.add(starter.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        builder.start();
+                    }
+                }));
+            }
+            for(Future<?> future : started) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+
+            for(int i=0; i < numStreams; ++i) {
+                assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer" + i).size());
+                assertEquals(numDatums, PassthroughDatumCounterProcessor.COUNTS.get("proc" + i).get());
+            }
+            //streams detach from the runtime and unregister their metrics when they shut down
+            assertEquals(0, runtime.getAttachedStreams());
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(0, mbs.queryNames(new ObjectName("org.apache.streams.local:identifier=" + STREAM_ID + "0,*"), null).size());
+        } finally {
+            starter.shutdownNow();
+            runtime.shutdown();
+        }
+    }
+
+    @Test(expected = InvalidStreamException.class)
+    public void testAutoscaleValidation() {
+        LocalStreamBuilder builder = new LocalStreamBuilder();
+        builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(1));
+        builder.addStreamsProcessor("proc", new PassthroughDatumCounterProcessor("proc"), 5, "numeric_provider");
+        builder.setAutoscale("proc", 1, 4);
+        builder.start();
+    }
+
+    @Test
+    public void testLatencyTracing() throws Exception {
+        int sampleInterval = randomIntBetween(1, 10);
+        int numDatums = randomIntBetween(1, 10000);
+        ObjectName name = null;
+        try {
+            Map<String, Object> config = Maps.newHashMap();
+            config.put(LocalStreamBuilder.STREAM_IDENTIFIER_KEY, STREAM_ID);
+            config.put(LocalStreamBuilder.LATENCY_SAMPLE_INTERVAL_KEY, sampleInterval);
+            LocalStreamBuilder builder = new LocalStreamBuilder(50, config);
+            long startedAt = (Long) config.get(LocalStreamBuilder.DEFAULT_STARTED_AT_KEY);
+            name = new ObjectName(String.format(DatumLatencyCounter.NAME_TEMPLATE, STREAM_ID, startedAt));
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("proc", new PassthroughDatumCounterProcessor("proc"), 2, "numeric_provider");
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "proc");
+            builder.addStreamsPersistWriter("direct_writer", new DatumCounterWriter("direct_writer"), 1, "numeric_provider");
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("direct_writer").size());
+            int sampled = numDatums / sampleInterval;
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            assertEquals((long) (2 * sampled), mbs.getAttribute(name, "NumSampled"));
+            TabularData paths = (TabularData) mbs.getAttribute(name, "PathNumSampled");
+            if(sampled > 0) {
+                assertEquals(2, paths.size());
+                assertEquals((long) sampled, paths.get(new Object[] {"numeric_provider>proc>writer"}).get("value"));
+                assertEquals((long) sampled, paths.get(new Object[] {"numeric_provider>direct_writer"}).get("value"));
+                assertTrue((Double) mbs.getAttribute(name, "P50Latency") <= (Double) mbs.getAttribute(name, "P999Latency"));
+            } else {
+                assertEquals(0, paths.size());
+            }
+        } finally {
+            removeRegisteredMBeans("proc", "writer", "direct_writer", "numeric_provider");
+            if(name != null && ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        }
+    }
+
+    @Test
+    public void testKeyPartitionedStream() {
+        final int numKeys = randomIntBetween(1, 50);
+        int numDatums = randomIntBetween(1, 100000);
+        int numTasks = randomIntBetween(2, 5);
+        KeyAffinityProcessor.reset();
+        try {
+            LocalStreamBuilder builder = new LocalStreamBuilder(50);
+            builder.newPerpetualStream("numeric_provider", new NumericMessageProvider(numDatums));
+            builder.addStreamsProcessor("keyed", new KeyAffinityProcessor(numKeys), numTasks, new StreamsKeyExtractor() {
+                @Override
+                public Object getKey(StreamsDatum datum) {
+                    return KeyAffinityProcessor.getKey(datum, numKeys);
+                }
+            }, "numeric_provider");
+            builder.addStreamsPersistWriter("writer", new DatumCounterWriter("writer"), 1, "keyed");
+            builder.start();
+
+            assertEquals(numDatums, DatumCounterWriter.RECEIVED.get("writer").size());
+            assertEquals(Math.min(numKeys, numDatums), KeyAffinityProcessor.OWNERS.size());
+            assertEquals("Expected every key to be processed by a single task", 0, KeyAffinityProcessor.AFFINITY_VIOLATIONS.get());
+            assertEquals("Expected every key to be processed in order", 0, KeyAffinityProcessor.ORDER_VIOLATIONS.get());
+        } finally {
+            for(int i=0; i < numTasks; ++i) {
+                removeRegisteredMBeans("keyed-"+i);
+            }
+            removeRegisteredMBeans("keyed", "writer", "numeric_provider");
+        }
+    }
+
     @Test
     public void testBasicMergeStream() {
         try {
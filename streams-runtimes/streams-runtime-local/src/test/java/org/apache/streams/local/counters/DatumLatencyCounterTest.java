@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.local.tasks.DatumTrace;
+import org.apache.streams.util.SerializationUtil;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.counters.DatumLatencyCounter}
+ */
+public class DatumLatencyCounterTest extends RandomizedTest {
+
+    /**
+     * Test latencies are reported for the stream and for each path
+     */
+    @Test
+    public void testPathLatencies() {
+        DatumLatencyCounter counter = new DatumLatencyCounter();
+        int fast = randomIntBetween(1, 1000);
+        int slow = randomIntBetween(1, 1000);
+        for(int i=0; i < fast; ++i) {
+            counter.record("provider>writer", TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        for(int i=0; i < slow; ++i) {
+            counter.record("provider>processor>writer", TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertEquals(fast + slow, counter.getNumSampled());
+        assertEquals(2, counter.getPathNumSampled().size());
+        assertEquals(fast, counter.getPathNumSampled().get("provider>writer").longValue());
+        assertEquals(slow, counter.getPathNumSampled().get("provider>processor>writer").longValue());
+        assertEquals(1.0, counter.getPathP50Latency().get("provider>writer"), 0.02);
+        assertEquals(100.0, counter.getPathP999Latency().get("provider>processor>writer"), 2.0);
+        assertEquals(100.0, counter.getP999Latency(), 2.0);
+        assertTrue(counter.getP50Latency() <= counter.getP90Latency());
+    }
+
+    /**
+     * Test a trace follows a datum through the stream and keeps measuring after it has been serialized
+     */
+    @Test
+    public void testTrace() throws Exception {
+        StreamsDatum datum = new StreamsDatum("document");
+        DatumTrace.start(datum, "provider");
+        DatumTrace.extend(datum, null, "processor");
+        DatumTrace.extend(datum, null, "processor");
+        StreamsDatum emitted = new StreamsDatum("emitted");
+        DatumTrace.extend(emitted, DatumTrace.get(datum), "next");
+        Thread.sleep(10);
+
+        StreamsDatum copy = (StreamsDatum) SerializationUtil.cloneBySerialization(emitted);
+        DatumTrace trace = DatumTrace.remove(copy);
+        assertNull(DatumTrace.get(copy));
+        assertEquals("provider>processor>next", trace.getPath());
+        assertTrue(trace.getLatencyNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+
+        DatumLatencyCounter counter = new DatumLatencyCounter();
+        counter.record(trace.through("writer"));
+        assertEquals(1, counter.getPathNumSampled().get("provider>processor>next>writer").longValue());
+        assertNull(DatumTrace.remove(new StreamsDatum("not sampled")));
+    }
+}
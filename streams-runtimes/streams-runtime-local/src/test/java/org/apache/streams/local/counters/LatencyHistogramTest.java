@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+import com.carrotsearch.randomizedtesting.annotations.Repeat;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.counters.LatencyHistogram}
+ */
+//pool threads may still be exiting when awaitTermination returns
+@ThreadLeakLingering(linger = 1000)
+public class LatencyHistogramTest extends RandomizedTest {
+
+    /**
+     * Test that every value maps to a bucket whose highest value is within the expected precision of it, and that
+     * buckets are ordered by value
+     */
+    @Test
+    public void testBucketPrecision() {
+        int previous = -1;
+        for(long value = 0; value < LatencyHistogram.MAX_TRACKABLE_NANOS; value = value < 1000 ? value + 1 : value + value / 97) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(index >= previous);
+            previous = index;
+            long highest = LatencyHistogram.highestValueOf(index);
+            assertTrue(highest >= value);
+            assertTrue("Value "+value+" reported as "+highest, highest - value <= value / 64);
+        }
+        assertEquals(LatencyHistogram.indexOf(Long.MAX_VALUE), LatencyHistogram.indexOf(LatencyHistogram.MAX_TRACKABLE_NANOS * 2));
+        assertEquals(0, LatencyHistogram.indexOf(-5));
+    }
+
+    /**
+     * Test percentiles of random values against the exact percentiles
+     */
+    @Test
+    @Repeat(iterations = 3)
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        int count = randomIntBetween(1, 100000);
+        long[] values = new long[count];
+        for(int i=0; i < count; ++i) {
+            values[i] = randomIntBetween(0, (int) TimeUnit.SECONDS.toNanos(1));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(count, histogram.getCount());
+        for(double percentile : new double[] {50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(percentile / 100.0 * count) - 1];
+            long reported = histogram.getPercentile(percentile);
+            assertTrue("p"+percentile+" expected "+exact+" was "+reported, reported >= exact && reported - exact <= exact / 64);
+        }
+    }
+
+    /**
+     * Test that concurrent recording does not lose counts
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int perThread = randomIntBetween(1, 100000);
+        int threads = randomIntBetween(2, 8);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch finished = new CountDownLatch(threads);
+        for(int i=0; i < threads; ++i) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i=0; i < perThread; ++i) {
+                        histogram.record(i % 1000);
+                    }
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals((long) perThread * threads, histogram.getCount());
+        histogram.record(5000, 10);
+        assertEquals((long) perThread * threads + 10, histogram.getCount());
+    }
+}
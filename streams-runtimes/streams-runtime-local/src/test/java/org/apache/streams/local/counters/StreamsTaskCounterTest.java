@@ -158,4 +158,23 @@ public class StreamsTaskCounterTest extends RandomizedTest {
         assertEquals((double)failures / (double)(received), counter.getErrorRate(), 0);
     }
 
+    /**
+     * Test that processing time percentiles are reported in milliseconds and ordered
+     * @throws Exception
+     */
+    @Test
+    public void testTimePercentiles() throws Exception {
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, STREAM_ID, STREAM_START_TIME);
+        assertEquals(0.0, counter.getP99Time(), 0);
+        for(int i=1; i <= 1000; ++i) {
+            counter.addNanoTime(i * 1000000L);
+        }
+        assertEquals(500.0, counter.getP50Time(), 500.0 / 64);
+        assertEquals(900.0, counter.getP90Time(), 900.0 / 64);
+        assertEquals(990.0, counter.getP99Time(), 990.0 / 64);
+        assertEquals(999.0, counter.getP999Time(), 999.0 / 64);
+        assertTrue(counter.getP50Time() <= counter.getP90Time());
+        assertTrue(counter.getP99Time() <= counter.getP999Time());
+    }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.counters;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.counters.StripedCounter} and
+ * {@link org.apache.streams.local.counters.LongExtremum}
+ */
+//pool threads may still be exiting when awaitTermination returns
+@ThreadLeakLingering(linger = 1000)
+public class StripedCounterTest extends RandomizedTest {
+
+    /**
+     * Test that concurrent updates to a counter and an extremum are not lost
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        final LongExtremum max = LongExtremum.max(-1);
+        final LongExtremum min = LongExtremum.min(Long.MAX_VALUE);
+        final int perThread = randomIntBetween(1, 100000);
+        int threads = randomIntBetween(2, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch finished = new CountDownLatch(threads);
+        for(int t=0; t < threads; ++t) {
+            final int thread = t;
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i=0; i < perThread; ++i) {
+                        counter.increment();
+                        max.update(thread * perThread + i);
+                        min.update(thread * perThread + i);
+                    }
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals((long) perThread * threads, counter.sum());
+        assertEquals((long) perThread * threads - 1, max.get());
+        assertEquals(0, min.get());
+    }
+
+    /**
+     * Test that an extremum only reports values beyond its initial value
+     */
+    @Test
+    public void testExtremum() {
+        LongExtremum max = LongExtremum.max(10);
+        assertFalse(max.update(5));
+        assertEquals(10, max.get());
+        assertTrue(max.update(11));
+        assertEquals(11, max.get());
+
+        LongExtremum min = LongExtremum.min(10);
+        assertFalse(min.update(11));
+        assertTrue(min.update(-3));
+        assertEquals(-3, min.get());
+
+        StripedCounter counter = new StripedCounter();
+        counter.add(7);
+        counter.add(-2);
+        assertEquals(5, counter.sum());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.dedup;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.streams.core.StreamsDatum;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.dedup.DeduplicationProcessor}
+ */
+public class DeduplicationProcessorTest extends RandomizedTest {
+
+    @Test
+    public void testDropDuplicateIds() {
+        DeduplicationProcessor processor = new DeduplicationProcessor(10000, 0.0001, 60000);
+        processor.prepare(null);
+        int numIds = randomIntBetween(1, 1000);
+        int passed = 0;
+        for(int round=0; round < 3; ++round) {
+            for(int i=0; i < numIds; ++i) {
+                passed += processor.process(new StreamsDatum("document", "id"+i)).size();
+            }
+        }
+        assertEquals(numIds, passed);
+        assertEquals(2 * numIds, processor.getDuplicates());
+        //datums without an id can not be deduplicated
+        assertEquals(1, processor.process(new StreamsDatum("document")).size());
+        assertEquals(1, processor.process(new StreamsDatum("document")).size());
+        assertEquals(2, processor.getUnkeyed());
+    }
+
+    @Test
+    public void testDropDuplicateFields() {
+        DeduplicationProcessor processor = new DeduplicationProcessor(10000, 0.0001, 60000).withKeyField("object.url");
+        processor.prepare(null);
+        assertEquals(1, processor.process(new StreamsDatum(document("http://a"), "1")).size());
+        assertEquals(1, processor.process(new StreamsDatum(document("http://b"), "1")).size());
+        assertEquals(0, processor.process(new StreamsDatum(document("http://a"), "2")).size());
+        assertEquals(0, processor.process(new StreamsDatum("{\"object\":{\"url\":\"http://b\"}}", "3")).size());
+        assertEquals(2, processor.getDuplicates());
+    }
+
+    @Test
+    public void testRotation() {
+        ManualClockProcessor processor = new ManualClockProcessor(10000, 0.0001, 1000);
+        processor.prepare(null);
+        assertEquals(1, processor.process(new StreamsDatum("document", "old")).size());
+        processor.time = 1500;
+        assertEquals(1, processor.process(new StreamsDatum("document", "new")).size());
+        //still in the previous generation, and carried over to the current one
+        assertEquals(0, processor.process(new StreamsDatum("document", "old")).size());
+        processor.time = 2600;
+        assertEquals(0, processor.process(new StreamsDatum("document", "old")).size());
+        assertEquals(0, processor.process(new StreamsDatum("document", "new")).size());
+        processor.time = 3700;
+        processor.process(new StreamsDatum("document", "other"));
+        processor.time = 4800;
+        //forgotten after two rotations without being seen
+        assertEquals(1, processor.process(new StreamsDatum("document", "old")).size());
+    }
+
+    @Test
+    public void testRotateAtExpectedKeys() {
+        DeduplicationProcessor processor = new DeduplicationProcessor(100, 0.001, 60000);
+        processor.prepare(null);
+        for(int i=0; i < 300; ++i) {
+            processor.process(new StreamsDatum("document", "id"+i));
+        }
+        //the first hundred ids have been rotated out
+        int passed = 0;
+        for(int i=0; i < 100; ++i) {
+            passed += processor.process(new StreamsDatum("document", "id"+i)).size();
+        }
+        assertTrue("Expected most of the first ids to be forgotten, "+passed+" passed", passed > 90);
+    }
+
+    @Test
+    public void testSaveAndLoadState() throws Exception {
+        File directory = Files.createTempDirectory("dedup-test").toFile();
+        File stateFile = new File(directory, "state");
+        try {
+            DeduplicationProcessor processor = new DeduplicationProcessor(10000, 0.0001, 60000).withStateFile(stateFile);
+            processor.prepare(null);
+            for(int i=0; i < 100; ++i) {
+                processor.process(new StreamsDatum("document", "id"+i));
+            }
+            processor.cleanUp();
+            assertTrue(stateFile.exists());
+
+            processor = new DeduplicationProcessor(10000, 0.0001, 60000).withStateFile(stateFile);
+            processor.prepare(null);
+            for(int i=0; i < 100; ++i) {
+                assertEquals(0, processor.process(new StreamsDatum("document", "id"+i)).size());
+            }
+            assertEquals(1, processor.process(new StreamsDatum("document", "id100")).size());
+        } finally {
+            stateFile.delete();
+            directory.delete();
+        }
+    }
+
+    private ObjectNode document(String url) {
+        ObjectNode document = JsonNodeFactory.instance.objectNode();
+        document.putObject("object").put("url", url);
+        return document;
+    }
+
+    private static class ManualClockProcessor extends DeduplicationProcessor {
+
+        private long time;
+
+        private ManualClockProcessor(long expectedKeys, double falsePositiveRate, long rotationIntervalMs) {
+            super(expectedKeys, falsePositiveRate, rotationIntervalMs);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return this.time;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.executors;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.executors.WeightedFairExecutor}
+ */
+public class WeightedFairExecutorTest extends RandomizedTest {
+
+    @Test
+    public void testWeightedShare() throws Exception {
+        WeightedFairExecutor executor = new WeightedFairExecutor(1, "test-worker");
+        try {
+            WeightedFairExecutor.Lane light = executor.newLane("light", 1);
+            WeightedFairExecutor.Lane heavy = executor.newLane("heavy", 3);
+            final CountDownLatch gate = new CountDownLatch(1);
+            //hold the only worker until both lanes are full
+            executor.newLane("gate", 1).execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            final List<Spin> completed = Collections.synchronizedList(new LinkedList<Spin>());
+            final CountDownLatch done = new CountDownLatch(400);
+            for(int i=0; i < 600; ++i) {
+                light.execute(new Spin("light", completed, done));
+                heavy.execute(new Spin("heavy", completed, done));
+            }
+            gate.countDown();
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+
+            long heavyTime = 0;
+            long lightTime = 0;
+            synchronized (completed) {
+                for(Spin spin : completed.subList(0, 400)) {
+                    if("heavy".equals(spin.lane)) {
+                        heavyTime += spin.elapsed;
+                    } else {
+                        lightTime += spin.elapsed;
+                    }
+                }
+            }
+            //the heavy lane gets three quarters of the worker time, which includes the time runs were preempted
+            double heavyShare = (double) heavyTime / (heavyTime + lightTime);
+            assertTrue("Heavy lane had "+heavyShare+" of the worker", heavyShare >= 0.65 && heavyShare <= 0.85);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testLaneShutdown() throws Exception {
+        WeightedFairExecutor executor = new WeightedFairExecutor(randomIntBetween(1, 4), "test-worker");
+        try {
+            WeightedFairExecutor.Lane stopped = executor.newLane("stopped", 1);
+            WeightedFairExecutor.Lane running = executor.newLane("running", 1);
+            final AtomicInteger runs = new AtomicInteger();
+            Runnable count = new Runnable() {
+                @Override
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            };
+            int numRuns = randomIntBetween(1, 100);
+            for(int i=0; i < numRuns; ++i) {
+                stopped.execute(count);
+            }
+            stopped.shutdown();
+            assertTrue(stopped.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(numRuns, runs.get());
+            assertEquals(1, executor.getLaneCount());
+            try {
+                stopped.execute(count);
+                fail("Expected a shut down lane to reject runs");
+            } catch (RejectedExecutionException ree) {
+                //expected
+            }
+
+            final CountDownLatch ran = new CountDownLatch(1);
+            running.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ran.countDown();
+                }
+            });
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testBlockedRunCompensated() throws Exception {
+        WeightedFairExecutor executor = new WeightedFairExecutor(1, "test-worker");
+        try {
+            WeightedFairExecutor.Lane lane = executor.newLane("lane", 1);
+            final CountDownLatch released = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(1);
+            //the only worker blocks until a run queued behind it releases it
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WeightedFairExecutor.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                            @Override
+                            public boolean block() throws InterruptedException {
+                                released.await();
+                                return true;
+                            }
+
+                            @Override
+                            public boolean isReleasable() {
+                                return released.getCount() == 0;
+                            }
+                        });
+                        done.countDown();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    released.countDown();
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            //the spare worker exits once the blocked run has resumed
+            long deadline = System.currentTimeMillis() + 5000;
+            while(executor.getWorkerCount() > 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, executor.getWorkerCount());
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Keeps the worker busy for about a millisecond, then records its lane and how long it ran
+     */
+    private static class Spin implements Runnable {
+
+        private final String lane;
+        private final List<Spin> completed;
+        private final CountDownLatch done;
+        private long elapsed;
+
+        private Spin(String lane, List<Spin> completed, CountDownLatch done) {
+            this.lane = lane;
+            this.completed = completed;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            long end = start + TimeUnit.MILLISECONDS.toNanos(1);
+            while(System.nanoTime() < end) {
+                //spin
+            }
+            this.elapsed = System.nanoTime() - start;
+            this.completed.add(this);
+            this.done.countDown();
+        }
+    }
+}
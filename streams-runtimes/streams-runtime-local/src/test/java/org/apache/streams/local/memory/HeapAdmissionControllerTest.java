@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.memory;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.memory.HeapAdmissionController}
+ */
+public class HeapAdmissionControllerTest extends RandomizedTest {
+
+    @Test
+    public void testOldGenPressure() throws Exception {
+        FakeHeapController controller = new FakeHeapController(100);
+        controller.occupancy = 0.5;
+        assertTrue(controller.admit());
+        assertEquals(0.0, controller.getPressure(), 0.0);
+        assertEquals(0, controller.getNumHeldBack());
+
+        controller.occupancy = 0.8;
+        Thread.sleep(HeapAdmissionController.SAMPLE_INTERVAL_MS + 10);
+        long start = System.currentTimeMillis();
+        assertTrue(controller.admit());
+        assertEquals(0.5, controller.getPressure(), 0.001);
+        assertTrue("Expected the read to be delayed", System.currentTimeMillis() - start >= 50);
+        assertEquals(1, controller.getNumHeldBack());
+
+        controller.occupancy = 0.95;
+        Thread.sleep(HeapAdmissionController.SAMPLE_INTERVAL_MS + 10);
+        assertFalse(controller.admit());
+        assertTrue(controller.isPaused());
+
+        controller.occupancy = 0.6;
+        Thread.sleep(HeapAdmissionController.SAMPLE_INTERVAL_MS + 10);
+        assertTrue(controller.admit());
+        assertFalse(controller.isPaused());
+        assertTrue(controller.getHeldBackTime() >= 50 + HeapAdmissionController.SAMPLE_INTERVAL_MS);
+    }
+
+    @Test
+    public void testGcPressure() throws Exception {
+        FakeHeapController controller = new FakeHeapController(0);
+        assertTrue(controller.admit());
+        //collecting garbage the whole time
+        long last = System.currentTimeMillis();
+        for(int i=0; i < 20; ++i) {
+            Thread.sleep(HeapAdmissionController.SAMPLE_INTERVAL_MS + 10);
+            long now = System.currentTimeMillis();
+            controller.gcTimeMs += now - last;
+            last = now;
+            controller.admit();
+        }
+        assertTrue(controller.getGcTimeFraction() > 0.5);
+        assertTrue(controller.isPaused());
+        //no longer collecting
+        for(int i=0; i < 20 && controller.isPaused(); ++i) {
+            Thread.sleep(HeapAdmissionController.SAMPLE_INTERVAL_MS + 10);
+            controller.admit();
+        }
+        assertFalse(controller.isPaused());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThresholds() {
+        new HeapAdmissionController(0.9, 0.7, 0.1, 0.3, 100, null, -1);
+    }
+
+    private static class FakeHeapController extends HeapAdmissionController {
+
+        private volatile double occupancy;
+        private volatile long gcTimeMs;
+
+        private FakeHeapController(long maxDelayMs) {
+            super(0.7, 0.9, 0.1, 0.3, maxDelayMs, null, -1);
+        }
+
+        @Override
+        protected double readOldGenOccupancy() {
+            return this.occupancy;
+        }
+
+        @Override
+        protected long readGcTimeMs() {
+            return this.gcTimeMs;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.queues;
+
+import com.google.common.collect.Lists;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsKeyExtractor;
+import org.apache.streams.core.util.KeyExtractors;
+import org.apache.streams.local.tasks.EndOfStream;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.queues.PartitionedQueue}
+ */
+public class PartitionedQueueTest {
+
+    /**
+     * Test that datums with the same key land in the same partition in order, and keyless datums are spread
+     */
+    @Test
+    public void testRoutesByKey() throws Exception {
+        PartitionedQueue queue = new PartitionedQueue(createPartitions(4), KeyExtractors.datumId());
+        for(int i=0; i < 100; ++i) {
+            queue.put(new StreamsDatum(i, "key"+(i % 10)));
+        }
+        for(int i=0; i < 8; ++i) {
+            queue.put(new StreamsDatum(i));
+        }
+        assertEquals(108, queue.size());
+        int keyless = 0;
+        for(int p=0; p < queue.getNumPartitions(); ++p) {
+            BlockingQueue<StreamsDatum> partition = queue.getPartition(p);
+            int[] last = new int[10];
+            Arrays.fill(last, -1);
+            for(StreamsDatum datum : partition) {
+                if(datum.getId() == null) {
+                    ++keyless;
+                    continue;
+                }
+                int key = Integer.parseInt(datum.getId().substring(3));
+                int value = (Integer) datum.getDocument();
+                assertEquals(p, queue.partitionFor(datum));
+                assertTrue("Expected datums of a key in order", value > last[key]);
+                last[key] = value;
+            }
+            assertEquals("Expected keyless datums round robin", 2, countKeyless(partition));
+        }
+        assertEquals(8, keyless);
+    }
+
+    /**
+     * Test that end of stream markers are put on every partition
+     */
+    @Test
+    public void testMarkerOnEveryPartition() throws Exception {
+        PartitionedQueue queue = new PartitionedQueue(createPartitions(3), KeyExtractors.datumId());
+        queue.put(EndOfStream.MARKER);
+        assertTrue(queue.offer(EndOfStream.MARKER, 10, TimeUnit.MILLISECONDS));
+        for(int p=0; p < queue.getNumPartitions(); ++p) {
+            assertEquals(2, queue.getPartition(p).size());
+            assertTrue(EndOfStream.isMarker(queue.getPartition(p).poll()));
+        }
+    }
+
+    /**
+     * Test that a failing key extractor does not drop the datum, and that offers fail when the target partition is full
+     */
+    @Test
+    public void testOfferAndFailingExtractor() throws Exception {
+        List<BlockingQueue<StreamsDatum>> partitions = Lists.newArrayList();
+        partitions.add(new ArrayBlockingQueue<StreamsDatum>(1));
+        partitions.add(new ArrayBlockingQueue<StreamsDatum>(1));
+        PartitionedQueue queue = new PartitionedQueue(partitions, new StreamsKeyExtractor() {
+            @Override
+            public Object getKey(StreamsDatum datum) {
+                if(datum.getDocument() == null) {
+                    throw new IllegalStateException("no document");
+                }
+                return 1;
+            }
+        });
+        assertTrue(queue.offer(new StreamsDatum("a")));
+        assertFalse(queue.offer(new StreamsDatum("b")));
+        assertFalse(queue.offer(new StreamsDatum("c"), 10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.offer(new StreamsDatum(null)));
+        assertEquals(0, queue.remainingCapacity());
+        assertEquals(2, queue.drainTo(Lists.<StreamsDatum>newArrayList()));
+        assertNull(queue.poll());
+    }
+
+    private int countKeyless(BlockingQueue<StreamsDatum> partition) {
+        int count = 0;
+        for(StreamsDatum datum : partition) {
+            if(datum.getId() == null) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private List<BlockingQueue<StreamsDatum>> createPartitions(int numPartitions) {
+        List<BlockingQueue<StreamsDatum>> partitions = Lists.newArrayList();
+        for(int i=0; i < numPartitions; ++i) {
+            partitions.add(new LinkedBlockingQueue<StreamsDatum>());
+        }
+        return partitions;
+    }
+}
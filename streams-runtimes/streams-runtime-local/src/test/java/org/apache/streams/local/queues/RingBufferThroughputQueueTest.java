@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+import com.carrotsearch.randomizedtesting.annotations.Repeat;
+import org.apache.streams.util.ComponentUtils;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.queues.RingBufferThroughputQueue}
+ */
+//pool threads may still be exiting when awaitTermination returns
+@ThreadLeakLingering(linger = 1000)
+public class RingBufferThroughputQueueTest extends RandomizedTest {
+    private static final String MBEAN_ID = "test_id";
+    private static final String STREAM_ID = "test_stream";
+    private static long STREAM_START_TIME = (new DateTime()).getMillis();
+
+    @After
+    public void removeLocalMBeans() {
+        try {
+            ComponentUtils.removeAllMBeansOfDomain("org.apache.streams.local");
+        } catch (Exception e) {
+            //No op.  proceed to next test
+        }
+    }
+
+    /**
+     * Test that capacity is rounded up to a power of two
+     */
+    @Test
+    public void testCapacity() {
+        assertEquals(1, new RingBufferThroughputQueue<Integer>(1).getCapacity());
+        assertEquals(512, new RingBufferThroughputQueue<Integer>(500).getCapacity());
+        assertEquals(1024, new RingBufferThroughputQueue<Integer>(1024).getCapacity());
+    }
+
+    /**
+     * Test that put and take queue and dequeue data in order and all measurements from the queue are returning data.
+     * @throws Exception
+     */
+    @Test
+    @Repeat(iterations = 3)
+    public void testTakeAndPut() throws Exception {
+        int putCount = randomIntBetween(1, 1000);
+        RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(putCount, randomBoolean());
+        for(int i=0; i < putCount; ++i) {
+            queue.put(i);
+            assertEquals(i+1, queue.size());
+            assertEquals(queue.size(), queue.getCurrentSize());
+        }
+        safeSleep(100); //ensure measurable wait time
+        int takeCount = randomIntBetween(1, putCount);
+        for(int i=0; i < takeCount; ++i) {
+            Integer element = queue.take();
+            assertNotNull(element);
+            assertEquals(i, element.intValue());
+            assertEquals(putCount - (1+i), queue.size());
+            assertEquals(queue.size(), queue.getCurrentSize());
+        }
+        assertEquals(putCount-takeCount, queue.size());
+        assertTrue(0.0 < queue.getMaxWait());
+        assertTrue(0.0 < queue.getAvgWait());
+        assertTrue(0.0 < queue.getThroughput());
+        assertTrue(100.0 <= queue.getP50Wait());
+        assertTrue(queue.getP50Wait() <= queue.getP999Wait());
+        assertEquals(putCount, queue.getAdded());
+        assertEquals(takeCount, queue.getRemoved());
+    }
+
+    /**
+     * Test that waits shorter than a millisecond add up to the average wait
+     */
+    @Test
+    public void testSubMillisecondWait() throws Exception {
+        RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(16, randomBoolean());
+        for(int i=0; i < 100; ++i) {
+            queue.put(i);
+            queue.take();
+        }
+        assertTrue(queue.getAvgWait() > 0.0);
+        assertTrue(queue.getAvgWait() < 100.0);
+    }
+
+    /**
+     * Test that offer fails once the ring is full and succeeds again after an element is removed
+     */
+    @Test
+    public void testOfferOnFullQueue() {
+        RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(4);
+        for(int i=0; i < 4; ++i) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(0, queue.remainingCapacity());
+        assertEquals(0, queue.poll().intValue());
+        assertTrue(queue.offer(4));
+        for(int i=1; i < 5; ++i) {
+            assertEquals(i, queue.poll().intValue());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Test that drainTo removes elements in order and respects the max elements
+     */
+    @Test
+    public void testDrainTo() {
+        RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(16);
+        for(int i=0; i < 10; ++i) {
+            queue.offer(i);
+        }
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, queue.drainTo(drained, 4));
+        assertEquals(6, queue.drainTo(drained));
+        for(int i=0; i < 10; ++i) {
+            assertEquals(i, drained.get(i).intValue());
+        }
+        assertEquals(10, queue.getRemoved());
+    }
+
+    /**
+     * Test that poll with a timeout returns null after waiting on an empty queue
+     * @throws Exception
+     */
+    @Test
+    public void testPollTimeout() throws Exception {
+        RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(8);
+        long start = System.currentTimeMillis();
+        assertNull(queue.poll(200, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+
+    /**
+     * Test many producers and consumers with the multi producer variant, and many consumers with the single producer
+     * variant.  Every element put on the queue must be taken exactly once.
+     * @throws Exception
+     */
+    @Test
+    @Repeat(iterations = 3)
+    public void testMultiThreadAccess() throws Exception {
+        boolean singleProducer = randomBoolean();
+        int producers = singleProducer ? 1 : randomIntBetween(2, 8);
+        int consumers = randomIntBetween(1, 8);
+        final int dataCount = randomIntBetween(1, 200000);
+        final RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(randomIntBetween(1, 1000), singleProducer, MBEAN_ID, STREAM_ID, STREAM_START_TIME);
+        final AtomicLong sum = new AtomicLong(0);
+        final AtomicLong taken = new AtomicLong(0);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        final CountDownLatch finished = new CountDownLatch(producers);
+        for(int i=0; i < producers; ++i) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i=0; i < dataCount; ++i) {
+                            queue.put(i);
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finished.countDown();
+                }
+            });
+        }
+        for(int i=0; i < consumers; ++i) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while(true) {
+                            sum.addAndGet(queue.take());
+                            taken.incrementAndGet();
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        finished.await();
+        long total = ((long) dataCount) * producers;
+        while(taken.get() < total) {
+            safeSleep(10);
+        }
+        executor.shutdownNow();
+        executor.awaitTermination(1000, TimeUnit.MILLISECONDS);
+        assertEquals(total, queue.getAdded());
+        assertEquals(total, queue.getRemoved());
+        assertEquals(((long) dataCount) * (dataCount - 1) / 2 * producers, sum.get());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testUseMultipleProducers() throws Exception {
+        final RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(1024, true);
+        queue.put(0);
+        queue.useMultipleProducers();
+        assertFalse(queue.isSingleProducer());
+        final int producers = randomIntBetween(2, 8);
+        final int dataCount = randomIntBetween(1, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        for(int i=0; i < producers; ++i) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i=1; i <= dataCount; ++i) {
+                        queue.offer(i);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        long sum = 0;
+        Integer i;
+        while((i = queue.poll()) != null) {
+            sum += i;
+        }
+        assertEquals(((long) dataCount) * (dataCount + 1) / 2 * producers, sum);
+        assertEquals(dataCount * producers + 1, queue.getRemoved());
+    }
+
+    /**
+     * Test that queue will block on puts when the queue is full
+     * @throws Exception
+     */
+    @Test
+    public void testBlockOnFullQueue() throws Exception {
+        final RingBufferThroughputQueue<Integer> queue = new RingBufferThroughputQueue<>(2, true);
+        queue.put(0);
+        queue.put(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(2);
+                    finished.countDown();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertFalse(finished.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.take().intValue());
+        assertTrue(finished.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(2, queue.size());
+        executor.shutdownNow();
+        executor.awaitTermination(500, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Test that the mbean registers with the same name template as {@link org.apache.streams.local.queues.ThroughputQueue}
+     */
+    @Test
+    public void testMBeanRegistration() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            Integer beanCount = mbs.getMBeanCount();
+            RingBufferThroughputQueue queue = new RingBufferThroughputQueue(16, false, MBEAN_ID, STREAM_ID, STREAM_START_TIME);
+            assertEquals("Expected bean to be registered", new Integer(beanCount+1), mbs.getMBeanCount());
+            ObjectInstance mBean = mbs.getObjectInstance(new ObjectName(String.format(ThroughputQueue.NAME_TEMPLATE, MBEAN_ID, STREAM_ID, STREAM_START_TIME)));
+            assertNotNull(mBean);
+        } catch (Exception e) {
+            fail("Failed to register MXBean : "+e.getMessage());
+        }
+    }
+
+    private void safeSleep(long sleep) {
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.queues.SignallingQueue}
+ */
+public class SignallingQueueTest {
+
+    /**
+     * Test that the idle consumer is signalled on every successful add, and a failed offer does not signal
+     */
+    @Test
+    public void testSignalOnAdd() throws Exception {
+        SignallingQueue<Integer> queue = new SignallingQueue<>(new ArrayBlockingQueue<Integer>(3));
+        CountingConsumer consumer = new CountingConsumer(true);
+        queue.addConsumer(consumer);
+        queue.put(0);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+        assertFalse(queue.offer(3));
+        assertFalse(queue.offer(3, 10, TimeUnit.MILLISECONDS));
+        assertEquals(3, consumer.idleSignals.get());
+        assertEquals(0, consumer.signals.get());
+        assertEquals(3, queue.size());
+        assertEquals(0, queue.take().intValue());
+    }
+
+    /**
+     * Test that only one idle consumer is signalled per add, and that the first consumer is signalled when all of them
+     * are busy
+     */
+    @Test
+    public void testSignalBusyConsumers() throws Exception {
+        SignallingQueue<Integer> queue = new SignallingQueue<>(new LinkedBlockingQueue<Integer>());
+        CountingConsumer busy1 = new CountingConsumer(false);
+        CountingConsumer busy2 = new CountingConsumer(false);
+        CountingConsumer idle = new CountingConsumer(true);
+        queue.addConsumer(busy1);
+        queue.addConsumer(busy2);
+        queue.put(0);
+        assertEquals(1, busy1.signals.get());
+        assertEquals(0, busy2.signals.get());
+        queue.addConsumer(idle);
+        queue.put(1);
+        assertEquals(1, busy1.signals.get());
+        assertEquals(1, idle.idleSignals.get());
+    }
+
+    /**
+     * Test that producers blocked on a full queue in a single thread fork join pool do not prevent the pool from running
+     * the consumer
+     */
+    @Test
+    public void testManagedBlockingPut() throws Exception {
+        final SignallingQueue<Integer> queue = new SignallingQueue<>(new ArrayBlockingQueue<Integer>(1));
+        final int count = 100;
+        final AtomicInteger consumed = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(1);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i=0; i < count; ++i) {
+                            queue.put(i);
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while(consumed.get() < count) {
+                            queue.take();
+                            consumed.incrementAndGet();
+                        }
+                        done.countDown();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(count, consumed.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static class CountingConsumer implements SignallingQueue.Consumer {
+
+        private final boolean idle;
+        private final AtomicInteger idleSignals = new AtomicInteger(0);
+        private final AtomicInteger signals = new AtomicInteger(0);
+
+        private CountingConsumer(boolean idle) {
+            this.idle = idle;
+        }
+
+        @Override
+        public boolean signalIfIdle() {
+            if(this.idle) {
+                this.idleSignals.incrementAndGet();
+            }
+            return this.idle;
+        }
+
+        @Override
+        public void signal() {
+            this.signals.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.queues;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.streams.core.CompactStreamsDatum;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsDocument;
+import org.apache.streams.jackson.StreamsJacksonMapper;
+import org.apache.streams.local.tasks.EndOfStream;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.queues.SpillingThroughputQueue}
+ */
+public class SpillingThroughputQueueTest {
+
+    private File spillDirectory;
+
+    @Before
+    public void createSpillDirectory() throws Exception {
+        this.spillDirectory = Files.createTempDirectory("spilling-queue-test").toFile();
+    }
+
+    @After
+    public void deleteSpillDirectory() {
+        File[] files = this.spillDirectory.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        this.spillDirectory.delete();
+    }
+
+    /**
+     * Test that overflow is spilled across several segments, drained in the order it was added, and that drained
+     * segments are deleted
+     */
+    @Test
+    public void testSpillInOrder() throws Exception {
+        SpillingThroughputQueue queue = new SpillingThroughputQueue(4, this.spillDirectory, 1024, -1, null, null, -1);
+        for(int i=0; i < 1000; ++i) {
+            assertTrue(queue.offer(new StreamsDatum(i, "id"+i)));
+        }
+        assertEquals(1000, queue.size());
+        assertEquals(996, queue.getSpilledSize());
+        assertEquals(996, queue.getTotalSpilled());
+        assertTrue(queue.getSpilledBytes() > 0);
+        assertTrue(this.spillDirectory.listFiles().length > 1);
+        for(int i=0; i < 500; ++i) {
+            assertEquals(i, queue.take().getDocument());
+        }
+        queue.put(new StreamsDatum(1000, "id1000"));
+        assertEquals(500, queue.peek().getDocument());
+        List<StreamsDatum> drained = new ArrayList<>();
+        assertEquals(501, queue.drainTo(drained));
+        for(int i=0; i < drained.size(); ++i) {
+            assertEquals(500 + i, drained.get(i).getDocument());
+            assertEquals("id"+(500+i), drained.get(i).getId());
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getSpilledBytes());
+        assertEquals(1001, queue.getAdded());
+        assertEquals(1001, queue.getRemoved());
+        assertEquals("Expected only the last segment to be kept", 1, this.spillDirectory.listFiles().length);
+        queue.close();
+        assertEquals(0, this.spillDirectory.listFiles().length);
+    }
+
+    /**
+     * Test that spilled datums keep their id, timestamp, sequence id, metadata and json or string documents
+     */
+    @Test
+    public void testSpilledDatumFields() throws Exception {
+        SpillingThroughputQueue queue = new SpillingThroughputQueue(1, this.spillDirectory, 1024, -1, null, null, -1);
+        ObjectNode json = StreamsJacksonMapper.getInstance().createObjectNode();
+        json.put("verb", "post");
+        json.putObject("actor").put("id", "actor1");
+        DateTime timestamp = new DateTime(1400000000000L, DateTimeZone.forOffsetHours(2));
+        StreamsDatum datum = new StreamsDatum(json, "id1", timestamp, BigInteger.valueOf(42));
+        datum.getMetadata().put("source", "test");
+        queue.put(new StreamsDatum("in memory"));
+        queue.put(datum);
+        queue.put(new StreamsDatum("caf\u00e9"));
+        assertEquals(2, queue.getSpilledSize());
+        assertEquals("in memory", queue.take().getDocument());
+        StreamsDatum spilled = queue.take();
+        assertNotSame(datum, spilled);
+        assertEquals(json, spilled.getDocument());
+        assertEquals("id1", spilled.getId());
+        assertEquals(timestamp, spilled.getTimestamp());
+        assertEquals(BigInteger.valueOf(42), spilled.getSequenceid());
+        assertEquals("test", spilled.getMetadata().get("source"));
+        assertEquals("caf\u00e9", queue.take().getDocument());
+        queue.close();
+    }
+
+    /**
+     * Test that a spilled {@link org.apache.streams.core.CompactStreamsDatum} comes back compact with the same fields
+     */
+    @Test
+    public void testSpilledCompactDatum() throws Exception {
+        SpillingThroughputQueue queue = new SpillingThroughputQueue(1, this.spillDirectory, 1024, -1, null, null, -1);
+        queue.put(new StreamsDatum("in memory"));
+        queue.put(new CompactStreamsDatum("compact", "id1", 1400000000000L, 42));
+        assertEquals(1, queue.getSpilledSize());
+        assertEquals("in memory", queue.take().getDocument());
+        StreamsDatum spilled = queue.take();
+        assertTrue(spilled instanceof CompactStreamsDatum);
+        assertEquals("id1", spilled.getId());
+        assertEquals(1400000000000L, spilled.getTimestampMillis());
+        assertEquals(BigInteger.valueOf(42), spilled.getSequenceid());
+        assertFalse(spilled.hasMetadata());
+        queue.close();
+    }
+
+    /**
+     * Test that a spilled {@link org.apache.streams.core.StreamsDocument} comes back holding only its bytes
+     */
+    @Test
+    public void testSpilledStreamsDocument() throws Exception {
+        SpillingThroughputQueue queue = new SpillingThroughputQueue(1, this.spillDirectory, 1024, -1, null, null, -1);
+        ObjectNode json = StreamsJacksonMapper.getInstance().createObjectNode();
+        json.put("verb", "post");
+        StreamsDocument document = new StreamsDocument(json);
+        queue.put(new StreamsDatum("in memory"));
+        queue.put(new StreamsDatum(document, "id1"));
+        assertEquals(1, queue.getSpilledSize());
+        assertEquals("in memory", queue.take().getDocument());
+        StreamsDocument spilled = (StreamsDocument) queue.take().getDocument();
+        assertTrue(spilled.hasBytes());
+        assertFalse(spilled.hasObjectNode());
+        assertEquals(json, spilled.getObjectNode());
+        assertEquals(document, spilled);
+        queue.close();
+    }
+
+    /**
+     * Test that an end of stream marker keeps its identity and position when spilled
+     */
+    @Test
+    public void testSpilledMarker() throws Exception {
+        SpillingThroughputQueue queue = new SpillingThroughputQueue(1, this.spillDirectory, 1024, -1, null, null, -1);
+        queue.put(new StreamsDatum(0));
+        queue.put(new StreamsDatum(1));
+        queue.put(EndOfStream.MARKER);
+        queue.put(new StreamsDatum(2));
+        assertEquals(0, queue.take().getDocument());
+        assertEquals(1, queue.take().getDocument());
+        assertSame(EndOfStream.MARKER, queue.take());
+        assertEquals(2, queue.take().getDocument());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        queue.close();
+    }
+
+    /**
+     * Test that offers fail once the spill is full, and datums that can not be serialized wait for room in memory
+     */
+    @Test
+    public void testFullSpillAndUnserializableDatum() throws Exception {
+        SpillingThroughputQueue queue = new SpillingThroughputQueue(1, this.spillDirectory, 1024, 2048, null, null, -1);
+        assertTrue(queue.offer(new StreamsDatum(0)));
+        int spilled = 0;
+        while(queue.offer(new StreamsDatum(++spilled)));
+        assertTrue(spilled > 1);
+        assertFalse(queue.offer(new StreamsDatum(-1), 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+        StreamsDatum unserializable = new StreamsDatum(new Object());
+        queue.clear();
+        assertTrue(queue.offer(unserializable));
+        assertFalse(queue.offer(new StreamsDatum(new Object())));
+        assertTrue(queue.offer(new StreamsDatum(1)));
+        assertSame(unserializable, queue.take());
+        assertEquals(1, queue.take().getDocument());
+        queue.close();
+    }
+
+    /**
+     * Test many producers and consumers.  Every datum put on the queue must be taken exactly once.
+     */
+    @Test
+    public void testMultiThreadAccess() throws Exception {
+        final int producers = 4;
+        final int consumers = 3;
+        final int dataCount = 20000;
+        final SpillingThroughputQueue queue = new SpillingThroughputQueue(50, this.spillDirectory, 64 * 1024, -1, null, null, -1);
+        final AtomicLong sum = new AtomicLong(0);
+        final AtomicLong taken = new AtomicLong(0);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        final CountDownLatch finished = new CountDownLatch(producers);
+        for(int i=0; i < producers; ++i) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i=0; i < dataCount; ++i) {
+                            queue.put(new StreamsDatum(i));
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finished.countDown();
+                }
+            });
+        }
+        for(int i=0; i < consumers; ++i) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while(true) {
+                            sum.addAndGet((Integer) queue.take().getDocument());
+                            taken.incrementAndGet();
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        assertTrue(finished.await(60, TimeUnit.SECONDS));
+        long total = ((long) dataCount) * producers;
+        long deadline = System.currentTimeMillis() + 60000;
+        while(taken.get() < total && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        executor.shutdownNow();
+        executor.awaitTermination(1000, TimeUnit.MILLISECONDS);
+        assertEquals(total, taken.get());
+        assertEquals(((long) dataCount) * (dataCount - 1) / 2 * producers, sum.get());
+        assertTrue(queue.isEmpty());
+        queue.close();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.queues;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.local.tasks.EndOfStream;
+import org.junit.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.queues.ThrottledQueue} and
+ * {@link org.apache.streams.local.queues.TokenBucket}
+ */
+public class ThrottledQueueTest {
+
+    /**
+     * Test that a full bucket allows a burst, then spaces tokens out at the rate
+     */
+    @Test
+    public void testTokenBucket() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        for(int i=0; i < 3; ++i) {
+            assertEquals(0, bucket.reserve(0));
+        }
+        assertEquals(-1, bucket.reserve(0));
+        long wait = bucket.reserve(Long.MAX_VALUE);
+        assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(bucket.reserve(Long.MAX_VALUE) > wait);
+    }
+
+    /**
+     * Test that producers are held to the rate after the burst, and that end of stream markers are not throttled
+     */
+    @Test
+    public void testThrottledPut() throws Exception {
+        LinkedBlockingQueue<StreamsDatum> delegate = new LinkedBlockingQueue<>();
+        ThrottledQueue queue = new ThrottledQueue(delegate, 50, 5);
+        long start = System.nanoTime();
+        for(int i=0; i < 15; ++i) {
+            queue.put(new StreamsDatum(i));
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        //the 10 datums after the burst are spaced 20ms apart
+        assertTrue("Took "+elapsed+"ms", elapsed >= 180);
+        assertEquals(15, delegate.size());
+        assertEquals(10, queue.getNumThrottled());
+        assertTrue(queue.getThrottledTime() >= 180);
+
+        assertFalse(queue.offer(new StreamsDatum(15)));
+        assertFalse(queue.offer(new StreamsDatum(15), 1, TimeUnit.MILLISECONDS));
+        assertTrue(queue.offer(EndOfStream.MARKER));
+        assertEquals(16, delegate.size());
+        assertEquals(50.0, queue.getRateLimit(), 0.0);
+        assertEquals(5, queue.getBurst());
+    }
+}
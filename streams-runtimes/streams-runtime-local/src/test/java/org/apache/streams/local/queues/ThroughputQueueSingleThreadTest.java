@@ -29,6 +29,8 @@ import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 
@@ -78,6 +80,8 @@ public class ThroughputQueueSingleThreadTest extends RandomizedTest {
         assertTrue(0.0 < queue.getMaxWait());
         assertTrue(0.0 < queue.getAvgWait());
         assertTrue(0.0 < queue.getThroughput());
+        assertTrue(100.0 <= queue.getP50Wait());
+        assertTrue(queue.getP50Wait() <= queue.getP999Wait());
         assertEquals(putCount, queue.getAdded());
         assertEquals(takeCount, queue.getRemoved());
     }
@@ -148,6 +152,34 @@ public class ThroughputQueueSingleThreadTest extends RandomizedTest {
 
 
 
+    /**
+     * Test that drainTo dequeues data in order and updates the measurements for every drained element
+     */
+    @Test
+    @Repeat(iterations = 3)
+    public void testDrainTo() {
+        ThroughputQueue<Integer> queue = new ThroughputQueue<>();
+        int putCount = randomIntBetween(1, 1000);
+        for(int i=0; i < putCount; ++i) {
+            queue.offer(i);
+        }
+        safeSleep(100); //ensure measurable wait time
+        int drainCount = randomIntBetween(1, putCount);
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(drainCount, queue.drainTo(drained, drainCount));
+        for(int i=0; i < drainCount; ++i) {
+            assertEquals(i, drained.get(i).intValue());
+        }
+        assertEquals(putCount-drainCount, queue.size());
+        assertEquals(queue.size(), queue.getCurrentSize());
+        assertEquals(drainCount, queue.getRemoved());
+        assertTrue(0.0 < queue.getMaxWait());
+        assertTrue(0.0 < queue.getAvgWait());
+        assertEquals(putCount-drainCount, queue.drainTo(drained));
+        assertEquals(putCount, drained.size());
+        assertEquals(0, queue.size());
+    }
+
     /**
      * Test that max wait and avg wait return expected values
      * @throws Exception
@@ -171,6 +203,20 @@ public class ThroughputQueueSingleThreadTest extends RandomizedTest {
         assertTrue(queue.getAvgWait() >= 750);
     }
 
+    /**
+     * Test that waits shorter than a millisecond add up to the average wait
+     */
+    @Test
+    public void testSubMillisecondWait() throws Exception {
+        ThroughputQueue<Integer> queue = new ThroughputQueue<>();
+        for(int i=0; i < 100; ++i) {
+            queue.put(i);
+            queue.take();
+        }
+        assertTrue(queue.getAvgWait() > 0.0);
+        assertTrue(queue.getAvgWait() < 100.0);
+    }
+
     /**
      * Test that throughput returns expected values.
      * @throws Exception
@@ -18,20 +18,34 @@
 
 package org.apache.streams.local.tasks;
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
 import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsDocument;
+import org.apache.streams.local.builders.LocalStreamBuilder;
 import org.apache.streams.local.counters.DatumStatusCounter;
 import org.apache.streams.local.counters.StreamsTaskCounter;
 import org.apache.streams.local.queues.ThroughputQueue;
+import org.apache.streams.local.test.processors.BatchCountingProcessor;
+import org.apache.streams.local.test.processors.EditingProcessor;
 import org.apache.streams.local.test.processors.PassthroughDatumCounterProcessor;
+import org.apache.streams.local.test.processors.ProjectingFilterProcessor;
 import org.apache.streams.local.test.providers.NumericMessageProvider;
+import org.apache.streams.local.test.writer.BufferingBulkWriter;
+import org.apache.streams.local.test.writer.FailingBulkWriter;
 import org.apache.streams.local.test.writer.DatumCounterWriter;
+import org.apache.streams.local.test.writer.FailingWriter;
 import org.apache.streams.util.ComponentUtils;
+import org.apache.streams.util.SerializationUtil;
 import org.junit.After;
 import org.junit.Test;
 
 import javax.management.InstanceNotFoundException;
 import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.*;
 
@@ -191,6 +205,278 @@ public class BasicTasksTest {
         assertEquals(0.0, counter.getErrorRate(), 0.0);
     }
 
+    @Test
+    public void testBatchProcessorTask() {
+        int numMessages = 1000;
+        Map<String, Object> config = Maps.newHashMap();
+        config.put(LocalStreamBuilder.BATCH_SIZE_KEY, 64);
+        config.put(LocalStreamBuilder.BATCH_LINGER_MS_KEY, 10);
+        PassthroughDatumCounterProcessor processor = new PassthroughDatumCounterProcessor("");
+        StreamsProcessorTask task = new StreamsProcessorTask(processor, config);
+        assertEquals(64, task.getBatchSize());
+        assertEquals(10, task.getBatchLingerMs());
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, null, -1);
+        task.setStreamsTaskCounter(counter);
+        BlockingQueue<StreamsDatum> outQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<StreamsDatum> inQueue = new ThroughputQueue<>();
+        for(int i=0; i < numMessages; ++i) {
+            inQueue.add(new StreamsDatum(i));
+        }
+        task.addOutputQueue(outQueue);
+        task.addInputQueue(inQueue);
+        ExecutorService service = Executors.newFixedThreadPool(1);
+        service.submit(task);
+        int attempts = 0;
+        while(outQueue.size() != numMessages) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                //Ignore
+            }
+            ++attempts;
+            if(attempts == 10) {
+                fail("Processor task failed to output "+numMessages+" in a timely fashion.");
+            }
+        }
+        task.stopTask();
+        service.shutdown();
+        try {
+            if(!service.awaitTermination(10, TimeUnit.SECONDS)){
+                service.shutdownNow();
+                fail("Service did not terminate.");
+            }
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        for(int i=0; i < numMessages; ++i) {
+            assertEquals(i, outQueue.poll().getDocument());
+        }
+        assertEquals(numMessages, processor.getMessageCount());
+        assertEquals(numMessages, counter.getNumReceived());
+        assertEquals(numMessages, counter.getNumEmitted());
+        assertEquals(0, counter.getNumUnhandledErrors());
+    }
+
+    @Test
+    public void testStreamsBatchProcessorTask() {
+        int numMessages = 1000;
+        Map<String, Object> config = Maps.newHashMap();
+        config.put(LocalStreamBuilder.BATCH_SIZE_KEY, 100);
+        BatchCountingProcessor processor = new BatchCountingProcessor();
+        StreamsProcessorTask task = new StreamsProcessorTask(processor, config);
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, null, -1);
+        task.setStreamsTaskCounter(counter);
+        BlockingQueue<StreamsDatum> outQueue = new LinkedBlockingQueue<>();
+        task.addOutputQueue(outQueue);
+        task.addInputQueue(createInputQueue(numMessages));
+        ExecutorService service = Executors.newFixedThreadPool(1);
+        service.submit(task);
+        int attempts = 0;
+        while(outQueue.size() != numMessages) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                //Ignore
+            }
+            ++attempts;
+            if(attempts == 10) {
+                fail("Processor task failed to output "+numMessages+" in a timely fashion.");
+            }
+        }
+        task.stopTask();
+        service.shutdown();
+        try {
+            if(!service.awaitTermination(10, TimeUnit.SECONDS)){
+                service.shutdownNow();
+                fail("Service did not terminate.");
+            }
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        for(int i=0; i < numMessages; ++i) {
+            assertEquals(i, outQueue.poll().getDocument());
+        }
+        assertEquals(numMessages, processor.getMessageCount());
+        assertEquals(0, processor.getSingleCount());
+        assertEquals(numMessages / 100, processor.getBatchCount());
+        assertEquals(numMessages, counter.getNumReceived());
+        assertEquals(numMessages, counter.getNumEmitted());
+    }
+
+    @Test
+    public void testProjectingProcessorTask() {
+        ProjectingFilterProcessor processor = new ProjectingFilterProcessor("en");
+        StreamsProcessorTask task = new StreamsProcessorTask(processor);
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, null, -1);
+        task.setStreamsTaskCounter(counter);
+        BlockingQueue<StreamsDatum> outQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<StreamsDatum> inQueue = new LinkedBlockingQueue<>();
+        String english = "{\"id\":\"1\",\"content\":\"text\",\"extensions\":{\"language\":\"en\"}}";
+        String french = "{\"id\":\"2\",\"content\":\"texte\",\"extensions\":{\"language\":\"fr\"}}";
+        StreamsDocument document = new StreamsDocument(english);
+        ObjectNode tree = JsonNodeFactory.instance.objectNode();
+        tree.putObject("extensions").put("language", "en");
+        inQueue.add(new StreamsDatum(english));
+        inQueue.add(new StreamsDatum(french));
+        inQueue.add(new StreamsDatum(english.getBytes(Charsets.UTF_8)));
+        inQueue.add(new StreamsDatum(document));
+        inQueue.add(new StreamsDatum(tree));
+        inQueue.add(new StreamsDatum("{\"extensions\":"));
+        task.addOutputQueue(outQueue);
+        task.addInputQueue(inQueue);
+        ExecutorService service = Executors.newFixedThreadPool(1);
+        service.submit(task);
+        int attempts = 0;
+        while(counter.getNumReceived() != 6) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                //Ignore
+            }
+            ++attempts;
+            if(attempts == 10) {
+                fail("Processor task failed to process 6 datums in a timely fashion.");
+            }
+        }
+        task.stopTask();
+        service.shutdown();
+        try {
+            if(!service.awaitTermination(10, TimeUnit.SECONDS)){
+                service.shutdownNow();
+                fail("Service did not terminate.");
+            }
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        assertEquals(4, outQueue.size());
+        assertEquals(5, processor.getProjectedCount());
+        assertEquals(0, processor.getUnprojectedCount());
+        assertEquals(1, counter.getNumUnhandledErrors());
+        //the document was projected without being parsed into a tree
+        assertFalse(document.hasObjectNode());
+    }
+
+    @Test
+    public void testBatchWriterTask() {
+        int numMessages = 1000;
+        Map<String, Object> config = Maps.newHashMap();
+        config.put(LocalStreamBuilder.BATCH_SIZE_KEY, 64);
+        DatumCounterWriter writer = new DatumCounterWriter("");
+        StreamsPersistWriterTask task = new StreamsPersistWriterTask(writer, config);
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, null, -1);
+        task.setStreamsTaskCounter(counter);
+        BlockingQueue<StreamsDatum> inQueue = createInputQueue(numMessages);
+        task.addInputQueue(inQueue);
+        ExecutorService service = Executors.newFixedThreadPool(1);
+        service.submit(task);
+        int attempts = 0;
+        while(inQueue.size() != 0 ) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                //Ignore
+            }
+            ++attempts;
+            if(attempts == 10) {
+                fail("Writer task failed to write "+numMessages+" in a timely fashion.");
+            }
+        }
+        task.stopTask();
+        service.shutdown();
+        try {
+            if(!service.awaitTermination(10, TimeUnit.SECONDS)){
+                service.shutdownNow();
+                fail("Service did not terminate.");
+            }
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        assertEquals(numMessages, writer.getDatumsCounted());
+        assertEquals(numMessages, counter.getNumReceived());
+        assertEquals(0, counter.getNumUnhandledErrors());
+    }
+
+    @Test
+    public void testWriterTaskStopsOnFailedWrite() {
+        Map<String, Object> config = Maps.newHashMap();
+        config.put(LocalStreamBuilder.BATCH_SIZE_KEY, 64);
+        FailingWriter writer = new FailingWriter(10);
+        StreamsPersistWriterTask task = new StreamsPersistWriterTask(writer, config);
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, null, -1);
+        task.setStreamsTaskCounter(counter);
+        task.addInputQueue(createInputQueue(100));
+        //the failed write stops the task in the middle of the first batch
+        task.run();
+        assertFalse(task.isRunning());
+        assertEquals(11, writer.getAttempts());
+        assertEquals(10, writer.getWritten());
+        assertEquals(11, counter.getNumReceived());
+        assertEquals(1, counter.getNumUnhandledErrors());
+    }
+
+    @Test
+    public void testBulkWriterTask() {
+        int numMessages = 1000;
+        Map<String, Object> config = Maps.newHashMap();
+        config.put(LocalStreamBuilder.BATCH_SIZE_KEY, 100);
+        config.put(LocalStreamBuilder.FLUSH_INTERVAL_MS_KEY, 100);
+        BufferingBulkWriter writer = new BufferingBulkWriter();
+        StreamsPersistWriterTask task = new StreamsPersistWriterTask(writer, config);
+        assertEquals(100, task.getFlushIntervalMs());
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, null, -1);
+        task.setStreamsTaskCounter(counter);
+        BlockingQueue<StreamsDatum> inQueue = createInputQueue(numMessages);
+        task.addInputQueue(inQueue);
+        ExecutorService service = Executors.newFixedThreadPool(1);
+        service.submit(task);
+        int attempts = 0;
+        //writer only counts flushed datums, so this waits on the task flushing an idle queue
+        while(writer.getPersisted() != numMessages) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                //Ignore
+            }
+            ++attempts;
+            if(attempts == 10) {
+                fail("Writer task failed to flush "+numMessages+" in a timely fashion.");
+            }
+        }
+        task.stopTask();
+        service.shutdown();
+        try {
+            if(!service.awaitTermination(10, TimeUnit.SECONDS)){
+                service.shutdownNow();
+                fail("Service did not terminate.");
+            }
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        assertEquals(numMessages / 100, writer.getBulkWrites());
+        assertTrue(writer.getFlushes() >= 1);
+        assertEquals(numMessages, counter.getNumReceived());
+        assertEquals(0, counter.getNumUnhandledErrors());
+    }
+
+    @Test
+    public void testBulkWriterTaskStopsOnFailedFlush() {
+        Map<String, Object> config = Maps.newHashMap();
+        config.put(LocalStreamBuilder.BATCH_SIZE_KEY, 64);
+        config.put(LocalStreamBuilder.FLUSH_INTERVAL_MS_KEY, 100);
+        FailingBulkWriter writer = new FailingBulkWriter();
+        StreamsPersistWriterTask task = new StreamsPersistWriterTask(writer, config);
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, null, -1);
+        task.setStreamsTaskCounter(counter);
+        task.addInputQueue(createInputQueue(100));
+        //the failed flush of the idle queue stops the task, nothing written since the last flush counts as persisted
+        task.run();
+        assertFalse(task.isRunning());
+        assertEquals(100, writer.getWritten());
+        assertTrue(writer.getFlushes() >= 1);
+        assertEquals(100, counter.getNumReceived());
+        assertEquals(100, counter.getNumUnhandledErrors());
+    }
+
     @Test
     public void testMergeTask() {
         int numMessages = 100;
@@ -271,6 +557,218 @@ public class BasicTasksTest {
         assertEquals(numMessages, outQueue2.size());
     }
 
+    @Test
+    public void testCopyOnWriteBranching() {
+        int numMessages = 100;
+        Map<String, Object> config = Maps.newHashMap();
+        config.put(LocalStreamBuilder.FAN_OUT_MODE_KEY, LocalStreamBuilder.COPY_ON_WRITE_FAN_OUT_MODE);
+        StreamsProcessorTask task = new StreamsProcessorTask(new PassthroughDatumCounterProcessor(""), config);
+        StreamsProcessorTask downstream = new StreamsProcessorTask(new PassthroughDatumCounterProcessor(""), config);
+        assertTrue(task.isCopyOnWrite());
+        BlockingQueue<StreamsDatum> inQueue = new LinkedBlockingQueue<>();
+        for(int i=0; i < numMessages; ++i) {
+            inQueue.add(new StreamsDatum(JsonNodeFactory.instance.objectNode().put("id", i)));
+        }
+        BlockingQueue<StreamsDatum> outQueue1 = new LinkedBlockingQueue<>();
+        BlockingQueue<StreamsDatum> outQueue2 = new LinkedBlockingQueue<>();
+        BlockingQueue<StreamsDatum> outQueue3 = new LinkedBlockingQueue<>();
+        task.addInputQueue(inQueue);
+        task.addOutputQueue(outQueue1);
+        task.addOutputQueue(outQueue2);
+        downstream.addInputQueue(outQueue1);
+        downstream.addOutputQueue(outQueue3);
+        ExecutorService service = Executors.newFixedThreadPool(2);
+        service.submit(task);
+        int attempts = 0;
+        while(outQueue2.size() != numMessages) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                //Ignore
+            }
+            ++attempts;
+            if(attempts == 10) {
+                fail("Processor task failed to output "+numMessages+" in a timely fashion.");
+            }
+        }
+        //branches share the document until a processor takes it
+        StreamsDatum[] branch1 = outQueue1.toArray(new StreamsDatum[numMessages]);
+        StreamsDatum[] branch2 = outQueue2.toArray(new StreamsDatum[numMessages]);
+        for(int i=0; i < numMessages; ++i) {
+            assertNotSame(branch1[i], branch2[i]);
+            assertSame(branch1[i].getDocument(), branch2[i].getDocument());
+        }
+        service.submit(downstream);
+        attempts = 0;
+        while(outQueue3.size() != numMessages) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                //Ignore
+            }
+            ++attempts;
+            if(attempts == 10) {
+                fail("Downstream task failed to output "+numMessages+" in a timely fashion.");
+            }
+        }
+        task.stopTask();
+        downstream.stopTask();
+        service.shutdown();
+        try {
+            if(!service.awaitTermination(10, TimeUnit.SECONDS)){
+                service.shutdownNow();
+                fail("Service did not terminate.");
+            }
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        //the downstream processor worked on private copies
+        for(int i=0; i < numMessages; ++i) {
+            StreamsDatum copy = outQueue3.poll();
+            assertNotSame(branch2[i].getDocument(), copy.getDocument());
+            assertEquals(branch2[i].getDocument(), copy.getDocument());
+        }
+    }
+
+    @Test
+    public void testCopyOnWriteEditedDocument() {
+        int numMessages = 100;
+        Map<String, Object> config = Maps.newHashMap();
+        config.put(LocalStreamBuilder.FAN_OUT_MODE_KEY, LocalStreamBuilder.COPY_ON_WRITE_FAN_OUT_MODE);
+        StreamsProcessorTask task = new StreamsProcessorTask(new PassthroughDatumCounterProcessor(""), config);
+        StreamsProcessorTask downstream = new StreamsProcessorTask(new EditingProcessor("edited"), config);
+        BlockingQueue<StreamsDatum> inQueue = new LinkedBlockingQueue<>();
+        StreamsDatum[] emitted = new StreamsDatum[numMessages];
+        for(int i=0; i < numMessages; ++i) {
+            emitted[i] = new StreamsDatum(new StreamsDocument("{\"id\":" + i + "}"));
+            emitted[i].getMetadata().put("source", "test");
+            inQueue.add(emitted[i]);
+        }
+        BlockingQueue<StreamsDatum> outQueue1 = new LinkedBlockingQueue<>();
+        BlockingQueue<StreamsDatum> outQueue2 = new LinkedBlockingQueue<>();
+        BlockingQueue<StreamsDatum> outQueue3 = new LinkedBlockingQueue<>();
+        task.addInputQueue(inQueue);
+        task.addOutputQueue(outQueue1);
+        task.addOutputQueue(outQueue2);
+        downstream.addInputQueue(outQueue1);
+        downstream.addOutputQueue(outQueue3);
+        ExecutorService service = Executors.newFixedThreadPool(2);
+        service.submit(task);
+        service.submit(downstream);
+        int attempts = 0;
+        while(outQueue2.size() != numMessages || outQueue3.size() != numMessages) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                //Ignore
+            }
+            ++attempts;
+            if(attempts == 10) {
+                fail("Processor tasks failed to output "+numMessages+" in a timely fashion.");
+            }
+        }
+        task.stopTask();
+        downstream.stopTask();
+        service.shutdown();
+        try {
+            if(!service.awaitTermination(10, TimeUnit.SECONDS)){
+                service.shutdownNow();
+                fail("Service did not terminate.");
+            }
+        } catch (InterruptedException e) {
+            fail("Test Interupted.");
+        }
+        for(int i=0; i < numMessages; ++i) {
+            //the last branch got the emitted datum, with its own document and metadata
+            StreamsDatum original = outQueue2.poll();
+            assertSame(emitted[i], original);
+            StreamsDocument document = (StreamsDocument) original.getDocument();
+            assertFalse(document.hasObjectNode());
+            assertEquals("{\"id\":" + i + "}", document.getString());
+            assertEquals(1, original.getMetadata().size());
+
+            //the editing processor copied the document it got from the read-only branch
+            StreamsDatum edited = outQueue3.poll();
+            assertNotSame(document, edited.getDocument());
+            assertTrue(((StreamsDocument) edited.getDocument()).getObjectNode().get("edited").asBoolean());
+            assertEquals("test", edited.getMetadata().get("source"));
+            assertEquals(true, edited.getMetadata().get("edited"));
+        }
+    }
+
+    @Test
+    public void testSharedDatumIsReadOnly() {
+        StreamsDatum datum = new StreamsDatum(new StreamsDocument("{}"), "id");
+        datum.getMetadata().put("source", "test");
+        SharedStreamsDatum shared = new SharedStreamsDatum(datum, datum.getMetadata());
+        assertSame(datum.getDocument(), shared.getDocument());
+        assertEquals("id", shared.getId());
+        assertEquals("test", shared.getMetadata().get("source"));
+        try {
+            shared.getMetadata().put("source", "changed");
+            fail("Expected the metadata of a shared datum to be read-only");
+        } catch (UnsupportedOperationException uoe) {
+            //expected
+        }
+        try {
+            shared.putMetadata("source", "changed");
+            fail("Expected the metadata of a shared datum to be read-only");
+        } catch (UnsupportedOperationException uoe) {
+            //expected
+        }
+        try {
+            shared.setDocument("changed");
+            fail("Expected the document of a shared datum to be read-only");
+        } catch (UnsupportedOperationException uoe) {
+            //expected
+        }
+        assertEquals("test", datum.getMetadata().get("source"));
+        assertTrue(new SharedStreamsDatum(new StreamsDatum("document"), null).getMetadata().isEmpty());
+    }
+
+    @Test
+    public void testEndOfStreamMarkerIsImmutable() {
+        StreamsDatum marker = EndOfStream.MARKER;
+        assertTrue(marker.getMetadata().isEmpty());
+        try {
+            marker.putMetadata("key", "value");
+            fail("Expected the end of stream marker to be immutable");
+        } catch (UnsupportedOperationException uoe) {
+            //expected
+        }
+        try {
+            marker.setDocument("document");
+            fail("Expected the end of stream marker to be immutable");
+        } catch (UnsupportedOperationException uoe) {
+            //expected
+        }
+        try {
+            marker.setSequenceid(1);
+            fail("Expected the end of stream marker to be immutable");
+        } catch (UnsupportedOperationException uoe) {
+            //expected
+        }
+        assertNull(marker.getDocument());
+        assertTrue(EndOfStream.isMarker(SerializationUtil.cloneBySerialization(marker)));
+    }
+
+    @Test
+    public void testSharedDatumWriteError() {
+        StreamsDatum datum = new StreamsDatum(new StreamsDocument("{}"), "id");
+        BlockingQueue<StreamsDatum> inQueue = new LinkedBlockingQueue<>();
+        inQueue.add(new SharedStreamsDatum(datum, datum.getMetadata()));
+        StreamsPersistWriterTask task = new StreamsPersistWriterTask(new FailingWriter(0));
+        StreamsTaskCounter counter = new StreamsTaskCounter(MBEAN_ID, null, -1);
+        task.setStreamsTaskCounter(counter);
+        task.addInputQueue(inQueue);
+        //the failed write stops the task
+        task.run();
+        assertFalse(task.isRunning());
+        assertEquals(1, counter.getNumReceived());
+        assertEquals(1, counter.getNumUnhandledErrors());
+        assertTrue(datum.getMetadata().isEmpty());
+    }
+
     @Test
     public void testBranchingSerialization() {
         int numMessages = 1;
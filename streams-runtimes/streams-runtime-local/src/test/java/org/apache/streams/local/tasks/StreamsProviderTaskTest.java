@@ -20,15 +20,20 @@
 package org.apache.streams.local.tasks;
 
 import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsEmitter;
 import org.apache.streams.core.StreamsProvider;
+import org.apache.streams.core.StreamsPushProvider;
 import org.apache.streams.core.StreamsResultSet;
 import org.apache.streams.util.ComponentUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -85,6 +90,54 @@ public class StreamsProviderTaskTest {
         assertThat(out.size(), is(equalTo(3)));
     }
 
+    @Test
+    public void pushes() throws Exception {
+        final BlockingQueue<StreamsDatum> out = new ArrayBlockingQueue<>(1);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final int numElems = 20;
+        StreamsPushProvider pushProvider = mock(StreamsPushProvider.class);
+        when(pushProvider.isRunning()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return running.get();
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final StreamsEmitter emitter = (StreamsEmitter) invocationOnMock.getArguments()[0];
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for(int i=0; i < numElems; i++) {
+                                emitter.emit(new StreamsDatum(i));
+                            }
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.set(false);
+                    }
+                }).start();
+                return null;
+            }
+        }).when(pushProvider).startStream(any(StreamsEmitter.class));
+        StreamsProviderTask task = new StreamsProviderTask(pushProvider, true, null);
+        task.setTimeout(-1);
+        task.setSleepTime(10);
+        task.getOutputQueues().add(out);
+        Future<?> taskResult = pool.submit(task);
+        //The emitter blocks on the full outbound queue until each datum is taken
+        for(int i=0; i < numElems; i++) {
+            StreamsDatum datum = out.poll(5, TimeUnit.SECONDS);
+            assertThat(datum.getDocument(), is(equalTo((Object) i)));
+        }
+        taskResult.get(5, TimeUnit.SECONDS);
+        verifyNotRunning(task, taskResult);
+        verify(pushProvider, never()).readCurrent();
+        verify(pushProvider, never()).startStream();
+    }
+
     protected Queue<StreamsDatum> getQueue(int numElems) {
         Queue<StreamsDatum> results = new LinkedBlockingQueue<>();
         for(int i=0; i<numElems; i++) {
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.test.processors;
+
+import org.apache.streams.core.StreamsBatchProcessor;
+import org.apache.streams.core.StreamsDatum;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes datums through unchanged and records how many datums and batches it received.
+ */
+public class BatchCountingProcessor implements StreamsBatchProcessor {
+
+    private int messageCount = 0;
+    private int batchCount = 0;
+    private int singleCount = 0;
+
+    @Override
+    public List<StreamsDatum> process(List<StreamsDatum> entries) {
+        ++this.batchCount;
+        this.messageCount += entries.size();
+        return new ArrayList<>(entries);
+    }
+
+    @Override
+    public List<StreamsDatum> process(StreamsDatum entry) {
+        ++this.singleCount;
+        ++this.messageCount;
+        List<StreamsDatum> result = new ArrayList<>(1);
+        result.add(entry);
+        return result;
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+
+    }
+
+    @Override
+    public void cleanUp() {
+
+    }
+
+    public int getMessageCount() {
+        return this.messageCount;
+    }
+
+    public int getBatchCount() {
+        return this.batchCount;
+    }
+
+    public int getSingleCount() {
+        return this.singleCount;
+    }
+}
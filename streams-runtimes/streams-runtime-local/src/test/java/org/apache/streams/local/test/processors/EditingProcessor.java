@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.test.processors;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsDocument;
+import org.apache.streams.core.StreamsProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sets a field on the {@link org.apache.streams.core.StreamsDocument} of every datum, adds metadata and passes it on
+ */
+public class EditingProcessor implements StreamsProcessor {
+
+    private final String field;
+
+    public EditingProcessor(String field) {
+        this.field = field;
+    }
+
+    @Override
+    public List<StreamsDatum> process(StreamsDatum entry) {
+        ((StreamsDocument) entry.getDocument()).editObjectNode().put(this.field, true);
+        entry.putMetadata(this.field, true);
+        List<StreamsDatum> result = new ArrayList<>(1);
+        result.add(entry);
+        return result;
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+
+    }
+
+    @Override
+    public void cleanUp() {
+
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.streams.local.test.processors;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsProcessor;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes through numeric datums keyed by their value modulo the number of keys, and records whether any key was seen
+ * by more than one instance or out of order.
+ */
+public class KeyAffinityProcessor implements StreamsProcessor {
+
+    /**
+     * The instance that first received each key, across all instances
+     */
+    public static final ConcurrentHashMap<Integer, Integer> OWNERS = new ConcurrentHashMap<>();
+    /**
+     * Number of datums received by an instance that does not own their key
+     */
+    public static final AtomicInteger AFFINITY_VIOLATIONS = new AtomicInteger(0);
+    /**
+     * Number of datums received after a datum with the same key and a greater value
+     */
+    public static final AtomicInteger ORDER_VIOLATIONS = new AtomicInteger(0);
+    private static final AtomicInteger INSTANCE_IDS = new AtomicInteger(0);
+
+    private final int numKeys;
+    private int instanceId;
+    private Map<Integer, Integer> lastSeen;
+
+    public KeyAffinityProcessor(int numKeys) {
+        this.numKeys = numKeys;
+    }
+
+    public static int getKey(StreamsDatum datum, int numKeys) {
+        return (Integer) datum.getDocument() % numKeys;
+    }
+
+    public static void reset() {
+        OWNERS.clear();
+        AFFINITY_VIOLATIONS.set(0);
+        ORDER_VIOLATIONS.set(0);
+    }
+
+    @Override
+    public List<StreamsDatum> process(StreamsDatum entry) {
+        int key = getKey(entry, this.numKeys);
+        int value = (Integer) entry.getDocument();
+        Integer owner = OWNERS.putIfAbsent(key, this.instanceId);
+        if(owner != null && owner != this.instanceId) {
+            AFFINITY_VIOLATIONS.incrementAndGet();
+        }
+        Integer last = this.lastSeen.put(key, value);
+        if(last != null && last > value) {
+            ORDER_VIOLATIONS.incrementAndGet();
+        }
+        List<StreamsDatum> result = new LinkedList<>();
+        result.add(entry);
+        return result;
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+        this.instanceId = INSTANCE_IDS.incrementAndGet();
+        this.lastSeen = new HashMap<>();
+    }
+
+    @Override
+    public void cleanUp() {
+
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.test.processors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsDocument;
+import org.apache.streams.core.StreamsProjectingProcessor;
+import org.apache.streams.data.util.JsonProjection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Passes through the datums whose documents are in a language, and records how often it was handed a projection.
+ */
+public class ProjectingFilterProcessor implements StreamsProjectingProcessor {
+
+    private final String language;
+    private final JsonProjection projection;
+    private int projectedCount = 0;
+    private int unprojectedCount = 0;
+
+    public ProjectingFilterProcessor(String language) {
+        this.language = language;
+        this.projection = new JsonProjection(getProjectedFields());
+    }
+
+    @Override
+    public List<String> getProjectedFields() {
+        return Arrays.asList("extensions.language");
+    }
+
+    @Override
+    public List<StreamsDatum> process(StreamsDatum entry, ObjectNode projection) {
+        ++this.projectedCount;
+        return filter(entry, projection);
+    }
+
+    @Override
+    public List<StreamsDatum> process(StreamsDatum entry) {
+        ++this.unprojectedCount;
+        return filter(entry, StreamsDocument.of(entry.getDocument()).project(this.projection));
+    }
+
+    private List<StreamsDatum> filter(StreamsDatum entry, ObjectNode projection) {
+        List<StreamsDatum> result = new ArrayList<>(1);
+        JsonNode extensions = projection.get("extensions");
+        if(extensions != null && this.language.equals(extensions.path("language").asText())) {
+            result.add(entry);
+        }
+        return result;
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+
+    }
+
+    @Override
+    public void cleanUp() {
+
+    }
+
+    public int getProjectedCount() {
+        return this.projectedCount;
+    }
+
+    public int getUnprojectedCount() {
+        return this.unprojectedCount;
+    }
+}
@@ -23,15 +23,35 @@ import com.google.common.collect.Lists;
 import org.apache.streams.core.StreamsDatum;
 import org.apache.streams.core.StreamsProcessor;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  */
 public class SlowProcessor  implements StreamsProcessor {
+
+    /**
+     * Names of the threads that processed a datum
+     */
+    public static final Set<String> THREADS = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private long sleepMs;
+
+    public SlowProcessor() {
+        this(1000);
+    }
+
+    public SlowProcessor(long sleepMs) {
+        this.sleepMs = sleepMs;
+    }
+
     @Override
     public List<StreamsDatum> process(StreamsDatum entry) {
+        THREADS.add(Thread.currentThread().getName());
         try {
-            Thread.sleep(1000);
+            Thread.sleep(this.sleepMs);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.test.providers;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsEmitter;
+import org.apache.streams.core.StreamsPushProvider;
+import org.apache.streams.core.StreamsResultSet;
+import org.joda.time.DateTime;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test StreamsPushProvider that emits StreamsDatums numbered from 0 to numMessages from several threads at once.
+ */
+public class ThreadedPushProvider implements StreamsPushProvider {
+
+    private final int numMessages;
+    private final int numThreads;
+    private final AtomicInteger running = new AtomicInteger();
+
+    public ThreadedPushProvider(int numMessages, int numThreads) {
+        this.numMessages = numMessages;
+        this.numThreads = numThreads;
+    }
+
+    @Override
+    public void startStream(final StreamsEmitter emitter) {
+        this.running.set(this.numThreads);
+        //the threads emit at the same time
+        final CountDownLatch start = new CountDownLatch(1);
+        for(int t=0; t < this.numThreads; ++t) {
+            final int first = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for(int i=first; i < numMessages; i += numThreads) {
+                            emitter.emit(new StreamsDatum(i));
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }
+            }, "push-provider-" + t).start();
+        }
+        start.countDown();
+    }
+
+    @Override
+    public void startStream() {
+
+    }
+
+    @Override
+    public StreamsResultSet readCurrent() {
+        return new StreamsResultSet(new ConcurrentLinkedQueue<StreamsDatum>());
+    }
+
+    @Override
+    public StreamsResultSet readNew(BigInteger sequence) {
+        return readCurrent();
+    }
+
+    @Override
+    public StreamsResultSet readRange(DateTime start, DateTime end) {
+        return readCurrent();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.running.get() > 0;
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+
+    }
+
+    @Override
+    public void cleanUp() {
+
+    }
+}
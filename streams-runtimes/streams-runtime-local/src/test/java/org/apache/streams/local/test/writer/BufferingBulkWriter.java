@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.test.writer;
+
+import com.google.common.collect.Lists;
+import org.apache.streams.core.StreamsBulkPersistWriter;
+import org.apache.streams.core.StreamsDatum;
+
+import java.util.List;
+
+/**
+ * Buffers everything it is given and only counts datums as persisted once they have been flushed.
+ */
+public class BufferingBulkWriter implements StreamsBulkPersistWriter {
+
+    private List<StreamsDatum> buffer = Lists.newArrayList();
+    private int bulkWrites = 0;
+    private int flushes = 0;
+    private int persisted = 0;
+
+    @Override
+    public void write(StreamsDatum entry) {
+        this.buffer.add(entry);
+    }
+
+    @Override
+    public void write(List<StreamsDatum> entries) {
+        ++this.bulkWrites;
+        this.buffer.addAll(entries);
+    }
+
+    @Override
+    public synchronized void flush() {
+        ++this.flushes;
+        this.persisted += this.buffer.size();
+        this.buffer.clear();
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+
+    }
+
+    @Override
+    public void cleanUp() {
+
+    }
+
+    public synchronized int getPersisted() {
+        return this.persisted;
+    }
+
+    public int getBulkWrites() {
+        return this.bulkWrites;
+    }
+
+    public int getFlushes() {
+        return this.flushes;
+    }
+}
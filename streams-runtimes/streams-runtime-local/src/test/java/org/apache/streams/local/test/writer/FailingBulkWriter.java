@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.test.writer;
+
+import org.apache.streams.core.StreamsBulkPersistWriter;
+import org.apache.streams.core.StreamsDatum;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Bulk writer that accepts every write and fails every flush
+ */
+public class FailingBulkWriter implements StreamsBulkPersistWriter {
+
+    private int written;
+    private int flushes;
+
+    @Override
+    public void write(StreamsDatum entry) {
+        ++this.written;
+    }
+
+    @Override
+    public void write(List<StreamsDatum> entries) {
+        this.written += entries.size();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ++this.flushes;
+        throw new IOException("Failing flush of "+this.written+" datums");
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+
+    }
+
+    @Override
+    public void cleanUp() {
+
+    }
+
+    public int getWritten() {
+        return this.written;
+    }
+
+    public int getFlushes() {
+        return this.flushes;
+    }
+}
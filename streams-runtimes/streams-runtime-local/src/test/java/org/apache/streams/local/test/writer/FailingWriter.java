@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.test.writer;
+
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsPersistWriter;
+
+/**
+ * Writer that fails to write the datum at a given position and counts the datums written before it
+ */
+public class FailingWriter implements StreamsPersistWriter {
+
+    private final int failAt;
+    private int attempts;
+    private int written;
+
+    /**
+     * @param failAt zero based position of the datum to fail on
+     */
+    public FailingWriter(int failAt) {
+        this.failAt = failAt;
+    }
+
+    @Override
+    public void write(StreamsDatum entry) {
+        if(this.attempts++ == this.failAt) {
+            throw new RuntimeException("Failing write of datum "+this.failAt);
+        }
+        ++this.written;
+    }
+
+    @Override
+    public void prepare(Object configurationObject) {
+
+    }
+
+    @Override
+    public void cleanUp() {
+
+    }
+
+    public int getAttempts() {
+        return this.attempts;
+    }
+
+    public int getWritten() {
+        return this.written;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.streams.local.wal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.wal.WriteAheadLog} and
+ * {@link org.apache.streams.local.wal.WriteAheadLogManager}
+ */
+public class WriteAheadLogTest {
+
+    private File directory;
+
+    @Before
+    public void createLogDirectory() throws Exception {
+        this.directory = Files.createTempDirectory("write-ahead-log-test").toFile();
+    }
+
+    @After
+    public void deleteLogDirectory() {
+        delete(this.directory);
+    }
+
+    /**
+     * Test that unacknowledged entries are recovered in order when the log is reopened, and acknowledged ones are not
+     */
+    @Test
+    public void testRecoverUnacknowledged() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(this.directory, 1024);
+        long[] sequences = new long[100];
+        for(int i=0; i < sequences.length; ++i) {
+            sequences[i] = log.append(("entry"+i).getBytes("UTF-8"));
+        }
+        log.acknowledge(new long[] {sequences[0], sequences[2], sequences[99]});
+        assertEquals(97, log.getUnacknowledgedCount());
+        log.close();
+
+        log = new WriteAheadLog(this.directory, 1024);
+        List<WriteAheadLog.Entry> recovered = log.takeRecovered();
+        assertEquals(97, recovered.size());
+        assertEquals(97, log.getUnacknowledgedCount());
+        assertEquals("entry1", new String(recovered.get(0).getPayload(), "UTF-8"));
+        assertEquals("entry3", new String(recovered.get(1).getPayload(), "UTF-8"));
+        assertEquals("entry98", new String(recovered.get(96).getPayload(), "UTF-8"));
+        assertTrue("Expected new entries to follow the recovered ones", log.append(new byte[1]) > sequences[99]);
+        log.close();
+    }
+
+    /**
+     * Test that segments are deleted once every entry in them and in older segments has been acknowledged, and that a
+     * log closed without unacknowledged entries leaves no segments behind
+     */
+    @Test
+    public void testDeleteAcknowledgedSegments() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(this.directory, 256);
+        long[] sequences = new long[100];
+        for(int i=0; i < sequences.length; ++i) {
+            sequences[i] = log.append(new byte[32]);
+        }
+        int segments = this.directory.listFiles().length;
+        assertTrue(segments > 2);
+        long[] allButFirst = new long[99];
+        System.arraycopy(sequences, 1, allButFirst, 0, 99);
+        log.acknowledge(allButFirst);
+        assertTrue("Expected the oldest segment to keep every segment", this.directory.listFiles().length >= segments);
+        log.acknowledge(new long[] {sequences[0]});
+        assertEquals("Expected only the active segment to remain", 1, this.directory.listFiles().length);
+        log.close();
+        assertEquals(0, this.directory.listFiles().length);
+    }
+
+    /**
+     * Test that a record torn by a crash is ignored, along with anything after it, and the entries before it are
+     * recovered
+     */
+    @Test
+    public void testTornRecord() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(this.directory, 1024 * 1024);
+        for(int i=0; i < 10; ++i) {
+            log.append(("entry"+i).getBytes("UTF-8"));
+        }
+        log.sync();
+        File segment = this.directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        log = new WriteAheadLog(this.directory, 1024 * 1024);
+        List<WriteAheadLog.Entry> recovered = log.takeRecovered();
+        assertEquals(9, recovered.size());
+        assertEquals("entry8", new String(recovered.get(8).getPayload(), "UTF-8"));
+        log.close();
+    }
+
+    /**
+     * Test that the manager only applies acknowledgements on commit, and removes fully acknowledged logs on shutdown
+     */
+    @Test
+    public void testManagerCommit() throws Exception {
+        WriteAheadLogManager manager = new WriteAheadLogManager(this.directory, 1024, 10);
+        WriteAheadLog log = manager.open("component");
+        long first = log.append(new byte[8]);
+        long second = log.append(new byte[8]);
+        manager.acknowledge(log, new long[] {first});
+        assertEquals(2, log.getUnacknowledgedCount());
+        manager.commit();
+        assertEquals(1, log.getUnacknowledgedCount());
+        manager.shutdown();
+        assertTrue(new File(this.directory, "component").isDirectory());
+
+        manager = new WriteAheadLogManager(this.directory, 1024, 10);
+        manager.start();
+        log = manager.open("component");
+        List<WriteAheadLog.Entry> recovered = log.takeRecovered();
+        assertEquals(1, recovered.size());
+        assertEquals(second, recovered.get(0).getSequence());
+        manager.acknowledge(log, new long[] {second});
+        manager.shutdown();
+        assertFalse(new File(this.directory, "component").exists());
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if(files != null) {
+            for(File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
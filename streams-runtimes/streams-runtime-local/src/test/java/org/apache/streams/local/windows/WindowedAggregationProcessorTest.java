@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.local.windows;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.streams.core.StreamsDatum;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link org.apache.streams.local.windows.WindowedAggregationProcessor}
+ */
+public class WindowedAggregationProcessorTest extends RandomizedTest {
+
+    @Test
+    public void testTumblingWindows() {
+        WindowedAggregationProcessor processor = new WindowedAggregationProcessor(
+                WindowedAggregation.tumbling("user.name", 1000).withValueField("value"));
+        processor.prepare(null);
+        List<StreamsDatum> emitted = new ArrayList<>();
+        int numKeys = randomIntBetween(1, 50);
+        for(long time=0; time < 3000; time += 100) {
+            for(int key=0; key < numKeys; ++key) {
+                emitted.addAll(processor.process(datum("user"+key, time, time / 100)));
+            }
+        }
+        //the last window is still open
+        assertEquals(2 * numKeys, emitted.size());
+        emitted.addAll(processor.flush());
+        assertEquals(3 * numKeys, emitted.size());
+        assertEquals(0, processor.getOpenWindows());
+
+        for(StreamsDatum datum : emitted) {
+            JsonNode aggregate = (JsonNode) datum.getDocument();
+            long start = aggregate.get(WindowedAggregationProcessor.WINDOW_START_FIELD).asLong();
+            assertEquals(start + 1000, aggregate.get(WindowedAggregationProcessor.WINDOW_END_FIELD).asLong());
+            assertEquals(start + 1000, datum.getTimestamp().getMillis());
+            assertEquals(10, aggregate.get(WindowedAggregationProcessor.COUNT_FIELD).asLong());
+            long first = start / 100;
+            assertEquals((double) (first * 10 + 45), aggregate.get(WindowedAggregationProcessor.SUM_FIELD).asDouble(), 0.0);
+            assertEquals((double) first, aggregate.get(WindowedAggregationProcessor.MIN_FIELD).asDouble(), 0.0);
+            assertEquals((double) (first + 9), aggregate.get(WindowedAggregationProcessor.MAX_FIELD).asDouble(), 0.0);
+        }
+    }
+
+    @Test
+    public void testSlidingWindows() {
+        WindowedAggregationProcessor processor = new WindowedAggregationProcessor(
+                WindowedAggregation.sliding("user.name", 1000, 250));
+        processor.prepare(null);
+        List<StreamsDatum> emitted = new ArrayList<>();
+        for(long time=0; time < 2000; time += 50) {
+            emitted.addAll(processor.process(datum("user", time, 1)));
+        }
+        emitted.addAll(processor.flush());
+
+        Map<Long, Long> counts = new HashMap<>();
+        for(StreamsDatum datum : emitted) {
+            JsonNode aggregate = (JsonNode) datum.getDocument();
+            counts.put(aggregate.get(WindowedAggregationProcessor.WINDOW_START_FIELD).asLong(),
+                    aggregate.get(WindowedAggregationProcessor.COUNT_FIELD).asLong());
+        }
+        //windows starting from -750 to 1750 every 250ms
+        assertEquals(11, counts.size());
+        assertEquals(5L, (long) counts.get(-750L));
+        assertEquals(20L, (long) counts.get(0L));
+        assertEquals(20L, (long) counts.get(750L));
+        assertEquals(5L, (long) counts.get(1750L));
+    }
+
+    @Test
+    public void testAllowedLateness() {
+        WindowedAggregationProcessor processor = new WindowedAggregationProcessor(
+                WindowedAggregation.tumbling("user.name", 1000).withAllowedLateness(500));
+        processor.prepare(null);
+        assertTrue(processor.process(datum("user", 900, 1)).isEmpty());
+        //within the allowed lateness of the first window
+        assertTrue(processor.process(datum("user", 1400, 1)).isEmpty());
+        assertTrue(processor.process(datum("user", 800, 1)).isEmpty());
+        List<StreamsDatum> emitted = processor.process(datum("user", 1600, 1));
+        assertEquals(1, emitted.size());
+        assertEquals(2, ((JsonNode) emitted.get(0).getDocument()).get(WindowedAggregationProcessor.COUNT_FIELD).asLong());
+        //the first window has been emitted
+        assertTrue(processor.process(datum("user", 700, 1)).isEmpty());
+        assertEquals(1, processor.getLateDatums());
+
+        ObjectNode unkeyed = JsonNodeFactory.instance.objectNode();
+        assertTrue(processor.process(new StreamsDatum(unkeyed, new DateTime(1700))).isEmpty());
+        assertEquals(1, processor.getUnkeyedDatums());
+
+        emitted = processor.flush();
+        assertEquals(1, emitted.size());
+        assertEquals(2, ((JsonNode) emitted.get(0).getDocument()).get(WindowedAggregationProcessor.COUNT_FIELD).asLong());
+        assertEquals("user:1000", emitted.get(0).getId());
+    }
+
+    private StreamsDatum datum(String user, long time, long value) {
+        ObjectNode document = JsonNodeFactory.instance.objectNode();
+        document.putObject("user").put("name", user);
+        document.put("value", value);
+        return new StreamsDatum(document, new DateTime(time));
+    }
+}
@@ -64,6 +64,11 @@ public class StreamsPigBuilder implements StreamBuilder {
         return null;
     }
 
+    @Override
+    public StreamBuilder setRateLimit(String s, double v, int i) {
+        return null;
+    }
+
     @Override
     public void start() {
 
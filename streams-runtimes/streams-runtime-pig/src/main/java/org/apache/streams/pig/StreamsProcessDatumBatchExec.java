@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.pig;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.Accumulator;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.streams.core.StreamsBatchProcessor;
+import org.apache.streams.core.StreamsDatum;
+import org.apache.streams.core.StreamsProcessor;
+import org.apache.streams.data.util.RFC3339Utils;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * UDF Wrapper at the Datum / Map Input Record level for bags of records
+ *
+ * Takes a bag of (id, source, timestamp, object) tuples, for example the output of a GROUP, and hands them to the
+ * processor in micro-batches of streams.batch.size records.  A {@link org.apache.streams.core.StreamsBatchProcessor}
+ * receives each micro-batch in a single call, any other processor is called once per record.
+ */
+public class StreamsProcessDatumBatchExec extends EvalFunc<DataBag> implements Accumulator<DataBag> {
+
+    private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(StreamsProcessDatumBatchExec.class);
+
+    public static final String BATCH_SIZE_KEY = "streams.batch.size";
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final String SOURCE_METADATA_KEY = "source";
+
+    TupleFactory mTupleFactory = TupleFactory.getInstance();
+    BagFactory mBagFactory = BagFactory.getInstance();
+
+    StreamsProcessor streamsProcessor;
+
+    private int batchSize = -1;
+    private List<StreamsDatum> batch = Lists.newArrayList();
+    private DataBag output = BagFactory.getInstance().newDefaultBag();
+
+    public StreamsProcessDatumBatchExec(String... execArgs) throws ClassNotFoundException{
+        Preconditions.checkNotNull(execArgs);
+        Preconditions.checkArgument(execArgs.length > 0);
+        String classFullName = execArgs[0];
+        Preconditions.checkNotNull(classFullName);
+        String[] prepareArgs = (String[]) ArrayUtils.remove(execArgs, 0);
+        streamsProcessor = StreamsComponentFactory.getProcessorInstance(Class.forName(classFullName));
+        if( execArgs.length == 1 ) {
+            LOGGER.debug("prepare (null)");
+            streamsProcessor.prepare(null);
+        } else if( execArgs.length > 1 ) {
+            LOGGER.debug("prepare " + Arrays.toString(prepareArgs));
+            streamsProcessor.prepare(prepareArgs);
+        }
+    }
+
+    @Override
+    public DataBag exec(Tuple input) throws IOException {
+
+        if (input == null || input.size() == 0)
+            return null;
+
+        try {
+            accumulate(input);
+            return getValue();
+        } finally {
+            cleanup();
+        }
+    }
+
+    @Override
+    public void accumulate(Tuple input) throws IOException {
+
+        DataBag records = (DataBag) input.get(0);
+
+        for( Tuple record : records ) {
+            batch.add(toDatum(record));
+            if( batch.size() >= getBatchSize() )
+                processBatch();
+        }
+    }
+
+    @Override
+    public DataBag getValue() {
+        if( !batch.isEmpty() )
+            processBatch();
+        return output;
+    }
+
+    @Override
+    public void cleanup() {
+        batch.clear();
+        output = mBagFactory.newDefaultBag();
+    }
+
+    public void finish() {
+        streamsProcessor.cleanUp();
+    }
+
+    private int getBatchSize() {
+        if( batchSize < 1 ) {
+            batchSize = DEFAULT_BATCH_SIZE;
+            Configuration conf = UDFContext.getUDFContext().getJobConf();
+            if( conf != null )
+                batchSize = Math.max(1, conf.getInt(BATCH_SIZE_KEY, DEFAULT_BATCH_SIZE));
+        }
+        return batchSize;
+    }
+
+    private StreamsDatum toDatum(Tuple record) throws IOException {
+        String id = (String) record.get(0);
+        String source = (String) record.get(1);
+        Long timestamp;
+        try {
+            timestamp = (Long) record.get(2);
+        } catch( Exception e ) {
+            timestamp = RFC3339Utils.parseUTC((String)record.get(2)).getMillis();
+        }
+        String object = (String) record.get(3);
+
+        StreamsDatum entry = new StreamsDatum(object, id, new DateTime(timestamp));
+        entry.getMetadata().put(SOURCE_METADATA_KEY, source);
+        return entry;
+    }
+
+    private void processBatch() {
+        LOGGER.debug("Processing batch of {} records", batch.size());
+
+        List<StreamsDatum> resultSet;
+        if( streamsProcessor instanceof StreamsBatchProcessor ) {
+            resultSet = ((StreamsBatchProcessor) streamsProcessor).process(Lists.newArrayList(batch));
+        } else {
+            resultSet = Lists.newArrayList();
+            for( StreamsDatum entry : batch )
+                resultSet.addAll(streamsProcessor.process(entry));
+        }
+        batch.clear();
+
+        for( StreamsDatum resultDatum : resultSet ) {
+            Tuple tuple = mTupleFactory.newTuple();
+            tuple.append(resultDatum.getId());
+            tuple.append(resultDatum.getMetadata() == null ? null : resultDatum.getMetadata().get(SOURCE_METADATA_KEY));
+            tuple.append(resultDatum.getTimestamp() == null ? null : resultDatum.getTimestamp().getMillis());
+            tuple.append(resultDatum.getDocument());
+            output.add(tuple);
+        }
+    }
+}
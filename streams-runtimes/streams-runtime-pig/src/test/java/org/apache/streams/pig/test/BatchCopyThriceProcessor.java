@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+
+package org.apache.streams.pig.test;
+
+import org.apache.streams.core.StreamsBatchProcessor;
+import org.apache.streams.core.StreamsDatum;
+import org.slf4j.Logger;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Used to Test Pig batch processor wrapper when multiple datums are returned
+ */
+public class BatchCopyThriceProcessor extends CopyThriceProcessor implements StreamsBatchProcessor {
+
+    private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(BatchCopyThriceProcessor.class);
+
+    public BatchCopyThriceProcessor() {
+    }
+
+    @Override
+    public List<StreamsDatum> process(List<StreamsDatum> entries) {
+        LOGGER.debug("Processing batch of {}", entries.size());
+        List<StreamsDatum> result = new LinkedList<StreamsDatum>();
+        for( StreamsDatum entry : entries )
+            result.addAll(process(entry));
+        return result;
+    }
+
+}
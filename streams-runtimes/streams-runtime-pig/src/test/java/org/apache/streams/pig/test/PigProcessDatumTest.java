@@ -19,6 +19,7 @@
 
 package org.apache.streams.pig.test;
 
+import com.google.common.collect.Lists;
 import org.apache.pig.pigunit.PigTest;
 import org.apache.streams.core.StreamsDatum;
 import org.apache.streams.jackson.StreamsJacksonMapper;
@@ -94,4 +95,34 @@ public class PigProcessDatumTest {
         test.assertOutput("in", input, "out", output);
 
     }
+
+    @Test
+    public void testPigBatchCopyThriceSingleDatum() throws Exception {
+        String[] args = {};
+
+        String[] input = {
+                "159475541894897679\ttwitter,statuses/user_timeline\t1384499359006\t{content:\"content\",[\"a\":1,\"b\":\"c\"}",
+        };
+
+        BatchCopyThriceProcessor processor = new BatchCopyThriceProcessor();
+
+        String doc = (String) StringUtils.split(input[0], '\t').get(3);
+        StreamsDatum inputDatum = new StreamsDatum(doc);
+        inputDatum.setId((String) StringUtils.split(input[0], '\t').get(0));
+
+        processor.prepare(null);
+
+        List<StreamsDatum> resultSet = processor.process(Lists.newArrayList(inputDatum));
+
+        String[] output = new String[resultSet.size()];
+
+        for( int i = 0; i < output.length; i++ ) {
+            output[i] = "(159475541894897679,twitter,statuses/user_timeline,1384499359006," + resultSet.get(i).getDocument() + ")";
+        }
+
+        PigTest test;
+        test = new PigTest("src/test/resources/pigprocessdatumbatchcopytest.pig", args);
+        test.assertOutput("in", input, "out", output);
+
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.streams.storm.trident;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.streams.core.StreamsBatchProcessor;
+import org.apache.streams.core.StreamsDatum;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import storm.trident.operation.BaseAggregator;
+import storm.trident.operation.TridentCollector;
+import storm.trident.operation.TridentOperationContext;
+import storm.trident.tuple.TridentTuple;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a {@link org.apache.streams.core.StreamsBatchProcessor} over a trident batch.  Tuples are collected into
+ * micro-batches of at most batchSize datums, each micro-batch is handed to the processor in one call, and any remainder
+ * is processed when the trident batch completes.  The trident batch boundary takes the place of a linger time.
+ */
+public class StreamsBatchProcessorAggregator extends BaseAggregator<List<StreamsDatum>> {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(StreamsBatchProcessorAggregator.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    StreamsBatchProcessor processor;
+    int batchSize;
+
+    public StreamsBatchProcessorAggregator(StreamsBatchProcessor processor) {
+        this(processor, DEFAULT_BATCH_SIZE);
+    }
+
+    public StreamsBatchProcessorAggregator(StreamsBatchProcessor processor, int batchSize) {
+        Preconditions.checkNotNull(processor);
+        Preconditions.checkArgument(batchSize > 0);
+        this.processor = processor;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public List<StreamsDatum> init(Object batchId, TridentCollector tridentCollector) {
+        return Lists.newArrayListWithCapacity(this.batchSize);
+    }
+
+    @Override
+    public void aggregate(List<StreamsDatum> batch, TridentTuple objects, TridentCollector tridentCollector) {
+        batch.add(new StreamsDatum(
+                objects.getValueByField("document"),
+                new DateTime(objects.getLongByField("timestamp")),
+                new BigInteger(objects.getStringByField("sequenceid"))
+        ));
+        if(batch.size() >= this.batchSize) {
+            processBatch(batch, tridentCollector);
+        }
+    }
+
+    @Override
+    public void complete(List<StreamsDatum> batch, TridentCollector tridentCollector) {
+        if(!batch.isEmpty()) {
+            processBatch(batch, tridentCollector);
+        }
+    }
+
+    private void processBatch(List<StreamsDatum> batch, TridentCollector tridentCollector) {
+        LOGGER.debug("Processing batch of {} datums", batch.size());
+        List<StreamsDatum> results = processor.process(Lists.newArrayList(batch));
+        batch.clear();
+        for( StreamsDatum result : results ) {
+            tridentCollector.emit( Lists.<Object>newArrayList(
+                    result.getTimestamp(),
+                    result.getSequenceid(),
+                    result.getDocument()
+            ));
+        }
+    }
+
+    @Override
+    public void prepare(Map map, TridentOperationContext tridentOperationContext) {
+        processor.prepare(map);
+    }
+
+    @Override
+    public void cleanup() {
+        processor.cleanUp();
+    }
+}
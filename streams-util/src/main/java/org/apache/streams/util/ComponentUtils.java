@@ -138,4 +138,20 @@ public class ComponentUtils {
         }
     }
 
+    /**
+     * Attempts to unregister an object from the local MBeanServer.  Does nothing if no bean is registered with the name.
+     * @param name name the bean was registered with
+     */
+    public static void removeLocalMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            if(mbs.isRegistered(objectName)) {
+                mbs.unregisterMBean(objectName);
+            }
+        } catch (MalformedObjectNameException | InstanceNotFoundException | MBeanRegistrationException e) {
+            LOGGER.warn("Failed to unregister MXBean : {}", e);
+        }
+    }
+
 }